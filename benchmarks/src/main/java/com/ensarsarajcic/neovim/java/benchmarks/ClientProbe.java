@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Reads sizes of internal structures of the client stack, which are not exposed by the public API
+ * <p>
+ * It follows the default composition ({@code RpcClient -> PackStream -> BackgroundRpcListener} and
+ * {@code ReactiveRpcStreamerWrapper}) using reflection. Any structure which can't be found
+ * (for example when custom implementations are used) is reported as {@value #UNAVAILABLE}.
+ */
+public final class ClientProbe {
+    private static final Logger log = LoggerFactory.getLogger(ClientProbe.class);
+
+    public static final int UNAVAILABLE = -1;
+
+    private final Object rpcClient;
+    private final Object reactiveStreamer;
+
+    /**
+     * Creates a new {@link ClientProbe}
+     *
+     * @param rpcClient        {@link com.ensarsarajcic.neovim.java.corerpc.client.RpcClient} to inspect
+     * @param reactiveStreamer {@link com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamerWrapper}
+     *                         wrapping the client
+     */
+    public ClientProbe(Object rpcClient, Object reactiveStreamer) {
+        this.rpcClient = rpcClient;
+        this.reactiveStreamer = reactiveStreamer;
+    }
+
+    /**
+     * @return number of response callbacks waiting for a response in {@code BackgroundRpcListener}
+     */
+    public int pendingResponseCallbacks() {
+        return size(field(field(field(rpcClient, "rpcStreamer"), "rpcListener"), "responseCallbacks"));
+    }
+
+    /**
+     * @return number of request callbacks registered in {@code PackStream}
+     */
+    public int requestCallbacks() {
+        return size(field(field(rpcClient, "rpcStreamer"), "requestCallbacks"));
+    }
+
+    /**
+     * @return number of notification callbacks registered in {@code PackStream}
+     */
+    public int notificationCallbacks() {
+        return size(field(field(rpcClient, "rpcStreamer"), "notificationCallbacks"));
+    }
+
+    /**
+     * @return estimated maximum number of buffered items across subscribers of both reactive publishers
+     */
+    public int publisherLag() {
+        var requests = publisher("requestMessagePublisher");
+        var notifications = publisher("notificationMessagePublisher");
+        if (requests == null || notifications == null) {
+            return UNAVAILABLE;
+        }
+        return requests.estimateMaximumLag() + notifications.estimateMaximumLag();
+    }
+
+    /**
+     * @return number of subscribers across both reactive publishers
+     */
+    public int publisherSubscribers() {
+        var requests = publisher("requestMessagePublisher");
+        var notifications = publisher("notificationMessagePublisher");
+        if (requests == null || notifications == null) {
+            return UNAVAILABLE;
+        }
+        return requests.getNumberOfSubscribers() + notifications.getNumberOfSubscribers();
+    }
+
+    private SubmissionPublisher<?> publisher(String name) {
+        var publisher = field(reactiveStreamer, name);
+        return publisher instanceof SubmissionPublisher ? (SubmissionPublisher<?>) publisher : null;
+    }
+
+    private static int size(Object structure) {
+        if (structure instanceof Map) {
+            return ((Map<?, ?>) structure).size();
+        } else if (structure instanceof Collection) {
+            return ((Collection<?>) structure).size();
+        }
+        return UNAVAILABLE;
+    }
+
+    private static Object field(Object target, String name) {
+        if (target == null) {
+            return null;
+        }
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                // Check superclass
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.debug("Failed to read {} of {}", name, target, e);
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import com.ensarsarajcic.neovim.java.corerpc.client.StdIoRpcConnection;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Minimal msgpack-rpc peer standing in for Neovim in benchmarks
+ * <p>
+ * It works directly on msgpack streams (no object mapping), so measurements are dominated by the transport and
+ * the client side of the library. Supported requests:
+ * <ul>
+ *     <li>{@value #ECHO_METHOD} - responds with the first argument</li>
+ *     <li>{@value #PAYLOAD_METHOD} - responds with a string of length given as the first argument</li>
+ *     <li>{@value #GET_VAR_METHOD} - responds with the variable name, unless it starts with {@value #ERROR_PREFIX}
+ *     (error response) or {@value #DROP_PREFIX} (no response at all)</li>
+ *     <li>{@value #COMMAND_METHOD} - responds with nil, after sending N {@value #EVENT_NOTIFICATION} notifications
+ *     if the command is {@code notify N}</li>
+ * </ul>
+ * Any other request is answered with an error. Notifications are ignored.
+ * <p>
+ * {@link #main(String[])} serves a single client over standard input and output,
+ * which is used by {@link Transport#PROCESS}.
+ */
+public final class EchoPeer implements Runnable {
+    public static final String ECHO_METHOD = "echo";
+    public static final String PAYLOAD_METHOD = "payload";
+    public static final String GET_VAR_METHOD = "nvim_get_var";
+    public static final String COMMAND_METHOD = "nvim_command";
+    public static final String EVENT_NOTIFICATION = "peer_event";
+    public static final String ERROR_PREFIX = "error";
+    public static final String DROP_PREFIX = "drop";
+
+    private static final String NOTIFY_COMMAND = "notify ";
+
+    private static final int REQUEST = 0;
+    private static final int RESPONSE = 1;
+    private static final int NOTIFICATION = 2;
+
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    private String payload = "";
+
+    /**
+     * Creates a new {@link EchoPeer} serving requests read from given stream
+     *
+     * @param inputStream  stream to read requests from
+     * @param outputStream stream to write responses to
+     * @throws NullPointerException if any of the streams is null
+     */
+    public EchoPeer(InputStream inputStream, OutputStream outputStream) {
+        Objects.requireNonNull(inputStream, "inputStream may not be null");
+        Objects.requireNonNull(outputStream, "outputStream may not be null");
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Serves requests until the input stream is closed
+     */
+    @Override
+    public void run() {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(inputStream);
+             MessagePacker packer = MessagePack.newDefaultPacker(new BufferedOutputStream(outputStream))) {
+            while (unpacker.hasNext()) {
+                int size = unpacker.unpackArrayHeader();
+                int type = unpacker.unpackInt();
+                if (type != REQUEST) {
+                    for (int i = 1; i < size; i++) {
+                        unpacker.skipValue();
+                    }
+                    continue;
+                }
+                int id = unpacker.unpackInt();
+                String method = unpacker.unpackString();
+                int argumentsSize = unpacker.unpackArrayHeader();
+                Value argument = argumentsSize > 0 ? unpacker.unpackValue() : null;
+                for (int i = 1; i < argumentsSize; i++) {
+                    unpacker.skipValue();
+                }
+
+                if (GET_VAR_METHOD.equals(method) && argument != null && argument.isStringValue()) {
+                    var name = argument.asStringValue().asString();
+                    if (name.startsWith(DROP_PREFIX)) {
+                        continue;
+                    }
+                    packer.packArrayHeader(4).packInt(RESPONSE).packInt(id);
+                    if (name.startsWith(ERROR_PREFIX)) {
+                        packError(packer, "Key not found: " + name);
+                    } else {
+                        packer.packNil().packString(name);
+                    }
+                } else if (COMMAND_METHOD.equals(method) && argument != null && argument.isStringValue()) {
+                    var command = argument.asStringValue().asString();
+                    if (command.startsWith(NOTIFY_COMMAND)) {
+                        int count = Integer.parseInt(command.substring(NOTIFY_COMMAND.length()).trim());
+                        for (int i = 0; i < count; i++) {
+                            packer.packArrayHeader(3).packInt(NOTIFICATION).packString(EVENT_NOTIFICATION)
+                                    .packArrayHeader(1).packInt(i);
+                        }
+                    }
+                    packer.packArrayHeader(4).packInt(RESPONSE).packInt(id).packNil().packNil();
+                } else {
+                    packer.packArrayHeader(4).packInt(RESPONSE).packInt(id);
+                    if (ECHO_METHOD.equals(method) && argument != null) {
+                        packer.packNil().packValue(argument);
+                    } else if (PAYLOAD_METHOD.equals(method) && argument != null) {
+                        packer.packNil().packString(payloadOfSize(argument.asIntegerValue().asInt()));
+                    } else {
+                        packError(packer, "Unknown method: " + method);
+                    }
+                }
+                packer.flush();
+            }
+        } catch (IOException | MessagePackException e) {
+            // Peer is stopped by closing its streams
+        }
+    }
+
+    private static void packError(MessagePacker packer, String message) throws IOException {
+        packer.packArrayHeader(2).packInt(0).packString(message).packNil();
+    }
+
+    private String payloadOfSize(int size) {
+        if (payload.length() != size) {
+            payload = "x".repeat(size);
+        }
+        return payload;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        var connection = new StdIoRpcConnection();
+        new EchoPeer(connection.getIncomingStream(), connection.getOutgoingStream()).run();
+    }
+}
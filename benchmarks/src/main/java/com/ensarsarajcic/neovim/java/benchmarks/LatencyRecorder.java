@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of a single benchmark run
+ * <p>
+ * Samples are kept as raw nanoseconds and sorted once percentiles are requested, so recording is cheap.
+ * Recording is thread safe, since responses may complete on the listener thread.
+ */
+public final class LatencyRecorder {
+    private long[] samples;
+    private int count = 0;
+    private boolean sorted = true;
+
+    /**
+     * Creates a new {@link LatencyRecorder}
+     *
+     * @param expectedSamples expected number of samples, used to size the buffer
+     */
+    public LatencyRecorder(int expectedSamples) {
+        this.samples = new long[Math.max(16, expectedSamples)];
+    }
+
+    /**
+     * Records a single sample
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+        sorted = false;
+    }
+
+    /**
+     * @return number of recorded samples
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Calculates a percentile using the nearest-rank method
+     *
+     * @param percentile percentile to calculate, between 0 and 100
+     * @return latency in nanoseconds or 0 if nothing was recorded
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    public synchronized long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return samples[Math.max(0, rank - 1)];
+    }
+}
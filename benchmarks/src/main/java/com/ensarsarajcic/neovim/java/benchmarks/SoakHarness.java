@@ -0,0 +1,445 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import com.ensarsarajcic.neovim.java.corerpc.client.BackgroundRpcListener;
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcClient;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamerWrapper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Long-running soak test of {@link RpcClient} and {@link NeovimStreamApi} against a local {@link EchoPeer}
+ * <p>
+ * It continuously (at a fixed rate) mixes successful calls, error responses, dropped responses (never answered) and notification
+ * bursts, and reconnects periodically. Heap occupancy, thread count and sizes of internal structures
+ * (see {@link ClientProbe}) are sampled periodically and printed as CSV. Once done, samples are checked for growth
+ * which can't be explained by the mix of calls, and the process exits with status 1 if any is found.
+ * <p>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     java -cp benchmarks-jar-with-dependencies.jar com.ensarsarajcic.neovim.java.benchmarks.SoakHarness \
+ *         [--duration=PT4H] [--sample-interval=PT1M] [--reconnect-interval=PT10M] [--transport=pipe] \
+ *         [--calls-per-second=2000] [--concurrency=16] [--drop-rate=0.0001] [--error-rate=0.05] [--notify-rate=0.05] [--seed=1]
+ *     }
+ * </pre>
+ */
+public final class SoakHarness {
+    private static final String HEADER = "elapsed_s,heap_used_mb,threads,pending_responses,"
+            + "dropped_on_session,request_callbacks,notification_callbacks,publisher_lag,publisher_subscribers,"
+            + "retained_sessions,calls,errors,notifications";
+    private static final long CALL_TIMEOUT_SECONDS = 30;
+    private static final int NOTIFICATION_BURST = 10;
+    // Threads which may come and go regardless of client state (common pool, GC helpers...)
+    private static final int THREAD_TOLERANCE = 8;
+
+    private final Options options;
+    private final Random random;
+    private final List<Sample> samples = new ArrayList<>();
+    private final List<WeakReference<Object>> closedSessions = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong unexpected = new AtomicLong();
+
+    private volatile Session session;
+    private long startNanos;
+    private int baselineThreads;
+
+    /**
+     * Creates a new {@link SoakHarness}
+     *
+     * @param options options of the soak run
+     */
+    public SoakHarness(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed());
+    }
+
+    /**
+     * Runs the soak test for configured duration
+     *
+     * @return list of detected problems - empty if none were found
+     * @throws Exception if peer can't be started or harness gets interrupted
+     */
+    public List<String> run() throws Exception {
+        var permits = new Semaphore(options.concurrency());
+        var sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "soak-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        session = new Session(options.transport());
+        startNanos = System.nanoTime();
+        collectGarbage();
+        baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.println(HEADER);
+        scheduleSampling(sampler);
+
+        long endNanos = startNanos + options.duration().toNanos();
+        long nextReconnect = System.nanoTime() + options.reconnectInterval().toNanos();
+        long nanosPerCall = TimeUnit.SECONDS.toNanos(1) / options.callsPerSecond();
+        long nextCall = System.nanoTime();
+        long callIndex = 0;
+        while (System.nanoTime() < endNanos && failures.isEmpty()) {
+            LockSupport.parkNanos(nextCall - System.nanoTime());
+            nextCall += nanosPerCall;
+            if (System.nanoTime() >= nextReconnect) {
+                reconnect(permits);
+                nextReconnect = System.nanoTime() + options.reconnectInterval().toNanos();
+            }
+            if (!permits.tryAcquire(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                failures.add("Calls stalled: no response for " + CALL_TIMEOUT_SECONDS + " seconds");
+                break;
+            }
+            call(session, permits, callIndex++);
+        }
+
+        sampler.shutdown();
+        sampler.awaitTermination(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        permits.tryAcquire(options.concurrency(), CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        synchronized (samples) {
+            samples.add(sample());
+            System.out.println(samples.get(samples.size() - 1));
+        }
+        session.close();
+        return analyze();
+    }
+
+    private void call(Session current, Semaphore permits, long index) {
+        calls.incrementAndGet();
+        double roll = random.nextDouble();
+        if (roll < options.dropRate()) {
+            // Response never comes, so this call never releases its permit - release it right away
+            current.dropped.incrementAndGet();
+            permits.release();
+            current.api.getVariable(EchoPeer.DROP_PREFIX + index);
+        } else if (roll < options.dropRate() + options.errorRate()) {
+            current.api.getVariable(EchoPeer.ERROR_PREFIX + index).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    unexpected.incrementAndGet();
+                } else {
+                    errors.incrementAndGet();
+                }
+                permits.release();
+            });
+        } else if (roll < options.dropRate() + options.errorRate() + options.notifyRate()) {
+            current.api.executeCommand("notify " + NOTIFICATION_BURST).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    unexpected.incrementAndGet();
+                }
+                permits.release();
+            });
+        } else {
+            var name = "ok" + index;
+            current.api.getVariable(name).whenComplete((result, throwable) -> {
+                if (throwable != null || !name.equals(result)) {
+                    unexpected.incrementAndGet();
+                }
+                permits.release();
+            });
+        }
+    }
+
+    private void reconnect(Semaphore permits) throws Exception {
+        // Let in-flight calls finish, so the new session starts clean
+        if (!permits.tryAcquire(options.concurrency(), CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            failures.add("In-flight calls did not complete before reconnect");
+            return;
+        }
+        try {
+            var old = session;
+            session = new Session(options.transport());
+            old.close();
+            synchronized (closedSessions) {
+                closedSessions.add(new WeakReference<>(old.rpcClient));
+            }
+        } finally {
+            permits.release(options.concurrency());
+        }
+    }
+
+    private void scheduleSampling(ScheduledExecutorService sampler) {
+        long interval = options.sampleInterval().toMillis();
+        sampler.scheduleAtFixedRate(() -> {
+            synchronized (samples) {
+                var sample = sample();
+                samples.add(sample);
+                System.out.println(sample);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private Sample sample() {
+        collectGarbage();
+        var current = session;
+        int retained;
+        synchronized (closedSessions) {
+            closedSessions.removeIf(reference -> reference.get() == null);
+            retained = closedSessions.size();
+        }
+        return new Sample(
+                (System.nanoTime() - startNanos) / 1_000_000_000L,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0),
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                current.probe.pendingResponseCallbacks(),
+                current.dropped.get(),
+                current.probe.requestCallbacks(),
+                current.probe.notificationCallbacks(),
+                current.probe.publisherLag(),
+                current.probe.publisherSubscribers(),
+                retained,
+                calls.get(),
+                errors.get(),
+                notifications.get()
+        );
+    }
+
+    private List<String> analyze() {
+        var problems = new ArrayList<>(failures);
+        if (unexpected.get() > 0) {
+            problems.add(unexpected.get() + " calls completed with unexpected results");
+        }
+        if (samples.isEmpty()) {
+            return problems;
+        }
+        var first = samples.get(0);
+        var last = samples.get(samples.size() - 1);
+        for (var sample : samples) {
+            // Every dropped response legitimately keeps one callback until the session is closed
+            if (sample.pendingResponses() > sample.droppedOnSession() + options.concurrency()) {
+                problems.add("Pending response callbacks not explained by dropped responses at "
+                        + sample.elapsedSeconds() + "s: " + sample.pendingResponses());
+                break;
+            }
+        }
+        if (maxOf(samples, Sample::requestCallbacks) > first.requestCallbacks()
+                || maxOf(samples, Sample::notificationCallbacks) > first.notificationCallbacks()) {
+            problems.add("Callback lists in PackStream grew during the run");
+        }
+        if (last.retainedSessions() > 0) {
+            problems.add(last.retainedSessions() + " closed sessions were not garbage collected");
+        }
+        // ReactiveRpcStreamerWrapper blocks one executor thread per response which never comes,
+        // and both client and response executors may keep a thread per in-flight call
+        long unexplainedThreads = last.threads() - baselineThreads - last.droppedOnSession() - 2L * options.concurrency();
+        if (unexplainedThreads > THREAD_TOLERANCE) {
+            problems.add("Thread count grew by " + unexplainedThreads + " beyond dropped responses");
+        }
+        if (last.publisherLag() > NOTIFICATION_BURST * options.concurrency()) {
+            problems.add("Publisher buffers are not drained: lag of " + last.publisherLag());
+        }
+
+        System.out.printf(Locale.ROOT, "%nHeap slope: %.2f MB/h, threads: %d -> %d, samples: %d%n",
+                heapSlopePerHour(), first.threads(), last.threads(), samples.size());
+        return problems;
+    }
+
+    private double heapSlopePerHour() {
+        // Least squares slope of heap usage over time
+        int n = samples.size();
+        if (n < 2) {
+            return 0;
+        }
+        double meanX = samples.stream().mapToDouble(Sample::elapsedSeconds).average().orElse(0);
+        double meanY = samples.stream().mapToDouble(Sample::heapUsedMb).average().orElse(0);
+        double numerator = 0;
+        double denominator = 0;
+        for (var sample : samples) {
+            numerator += (sample.elapsedSeconds() - meanX) * (sample.heapUsedMb() - meanY);
+            denominator += (sample.elapsedSeconds() - meanX) * (sample.elapsedSeconds() - meanX);
+        }
+        return denominator == 0 ? 0 : numerator / denominator * 3600;
+    }
+
+    private static int maxOf(List<Sample> samples, ToIntFunction<Sample> metric) {
+        return samples.stream().mapToInt(metric).max().orElse(0);
+    }
+
+    private static void collectGarbage() {
+        System.gc();
+        System.runFinalization();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        // Closed sessions are expected to fail reading, and error responses are part of the mix
+        System.setProperty("org.slf4j.simpleLogger.log." + BackgroundRpcListener.class.getName(), "off");
+        System.setProperty("org.slf4j.simpleLogger.log." + ReactiveRpcStreamerWrapper.class.getName(), "off");
+
+        var problems = new SoakHarness(Options.parse(args)).run();
+        if (problems.isEmpty()) {
+            System.out.println("No leaks detected");
+        } else {
+            problems.forEach(problem -> System.out.println("LEAK: " + problem));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Single sample of the observed state
+     */
+    public record Sample(long elapsedSeconds, double heapUsedMb, int threads, int pendingResponses,
+                         long droppedOnSession, int requestCallbacks, int notificationCallbacks,
+                         int publisherLag, int publisherSubscribers, int retainedSessions,
+                         long calls, long errors, long notifications) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d",
+                    elapsedSeconds, heapUsedMb, threads, pendingResponses, droppedOnSession, requestCallbacks,
+                    notificationCallbacks, publisherLag, publisherSubscribers, retainedSessions,
+                    calls, errors, notifications);
+        }
+    }
+
+    /**
+     * Options of a soak run
+     */
+    public record Options(Duration duration, Duration sampleInterval, Duration reconnectInterval,
+                          Transport transport, int callsPerSecond, int concurrency, double dropRate, double errorRate,
+                          double notifyRate, long seed) {
+
+        /**
+         * Parses options from {@code --name=value} arguments, using defaults for missing ones
+         *
+         * @param args command line arguments
+         * @return parsed options
+         * @throws IllegalArgumentException if an argument is unknown or malformed
+         */
+        public static Options parse(String[] args) {
+            var duration = Duration.ofHours(1);
+            var sampleInterval = Duration.ofSeconds(30);
+            var reconnectInterval = Duration.ofMinutes(5);
+            var transport = Transport.PIPE;
+            int callsPerSecond = 2000;
+            int concurrency = 16;
+            double dropRate = 0.0001;
+            double errorRate = 0.05;
+            double notifyRate = 0.05;
+            long seed = System.nanoTime();
+            for (var arg : args) {
+                var parts = arg.split("=", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Arguments are expected in --name=value form, got: " + arg);
+                }
+                switch (parts[0]) {
+                    case "--duration" -> duration = Duration.parse(parts[1]);
+                    case "--sample-interval" -> sampleInterval = Duration.parse(parts[1]);
+                    case "--reconnect-interval" -> reconnectInterval = Duration.parse(parts[1]);
+                    case "--transport" -> transport = Transport.valueOf(parts[1].toUpperCase(Locale.ROOT));
+                    case "--calls-per-second" -> callsPerSecond = Integer.parseInt(parts[1]);
+                    case "--concurrency" -> concurrency = Integer.parseInt(parts[1]);
+                    case "--drop-rate" -> dropRate = Double.parseDouble(parts[1]);
+                    case "--error-rate" -> errorRate = Double.parseDouble(parts[1]);
+                    case "--notify-rate" -> notifyRate = Double.parseDouble(parts[1]);
+                    case "--seed" -> seed = Long.parseLong(parts[1]);
+                    default -> throw new IllegalArgumentException("Unknown argument: " + parts[0]);
+                }
+            }
+            if (callsPerSecond <= 0 || concurrency <= 0) {
+                throw new IllegalArgumentException("Calls per second and concurrency must be positive");
+            }
+            if (dropRate + errorRate + notifyRate > 1) {
+                throw new IllegalArgumentException("Sum of rates may not be larger than 1");
+            }
+            return new Options(duration, sampleInterval, reconnectInterval, transport, callsPerSecond, concurrency,
+                    dropRate, errorRate, notifyRate, seed);
+        }
+    }
+
+    private final class Session implements AutoCloseable {
+        private final Transport.Endpoint endpoint;
+        private final RpcClient rpcClient;
+        private final ExecutorService responseExecutor = Executors.newCachedThreadPool();
+        private final NeovimApi api;
+        private final ClientProbe probe;
+        private final AtomicLong dropped = new AtomicLong();
+
+        private Session(Transport transport) throws IOException {
+            endpoint = transport.open();
+            rpcClient = new RpcClient.Builder()
+                    .withObjectMapper(ObjectMappers.defaultNeovimMapper())
+                    .withExecutorService(Executors.newCachedThreadPool())
+                    .build();
+            var reactiveStreamer = new ReactiveRpcStreamerWrapper(rpcClient, responseExecutor);
+            reactiveStreamer.attach(endpoint.getConnection());
+            reactiveStreamer.notificationsFlow().subscribe(new Flow.Subscriber<NotificationMessage>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(NotificationMessage item) {
+                    notifications.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            api = new NeovimStreamApi(reactiveStreamer);
+            probe = new ClientProbe(rpcClient, reactiveStreamer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            rpcClient.stop();
+            // Unblocks threads still waiting for dropped responses
+            responseExecutor.shutdownNow();
+            endpoint.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import com.ensarsarajcic.neovim.java.corerpc.client.ProcessRpcConnection;
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcConnection;
+import com.ensarsarajcic.neovim.java.corerpc.client.TcpSocketRpcConnection;
+import com.ensarsarajcic.neovim.java.unix.socket.UnixDomainSocketRpcConnection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Transports which can be benchmarked
+ * Each of them connects an {@link RpcConnection} of this library to a local {@link EchoPeer}
+ */
+public enum Transport {
+    /**
+     * In-process OS pipes, which is the same kind of channel {@link com.ensarsarajcic.neovim.java.corerpc.client.StdIoRpcConnection}
+     * uses, without the cost of a separate process
+     */
+    PIPE {
+        @Override
+        Endpoint open() throws IOException {
+            var toPeer = Pipe.open();
+            var fromPeer = Pipe.open();
+            var endpoint = new Endpoint(new StreamRpcConnection(
+                    Channels.newInputStream(fromPeer.source()),
+                    Channels.newOutputStream(toPeer.sink())));
+            endpoint.closeWithPeer(toPeer.sink());
+            endpoint.closeWithPeer(fromPeer.source());
+            endpoint.closeWithPeer(toPeer.source());
+            endpoint.closeWithPeer(fromPeer.sink());
+            startPeer(Channels.newInputStream(toPeer.source()), Channels.newOutputStream(fromPeer.sink()));
+            return endpoint;
+        }
+    },
+
+    /**
+     * {@link ProcessRpcConnection} to a child JVM running {@link EchoPeer#main(String[])} over its standard streams
+     */
+    PROCESS {
+        @Override
+        Endpoint open() throws IOException {
+            var command = new ArrayList<String>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            var modulePath = System.getProperty("jdk.module.path");
+            if (modulePath != null) {
+                command.addAll(List.of("-p", modulePath, "-m",
+                        EchoPeer.class.getModule().getName() + "/" + EchoPeer.class.getName()));
+            } else {
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), EchoPeer.class.getName()));
+            }
+            var process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            return new Endpoint(new ProcessRpcConnection(process, true));
+        }
+    },
+
+    /**
+     * {@link TcpSocketRpcConnection} to a peer listening on the loopback interface
+     */
+    TCP {
+        @Override
+        Endpoint open() throws IOException {
+            var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            var socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            socket.setTcpNoDelay(true);
+            var peerSocket = serverSocket.accept();
+            peerSocket.setTcpNoDelay(true);
+            var endpoint = new Endpoint(new TcpSocketRpcConnection(socket));
+            endpoint.closeWithPeer(peerSocket);
+            endpoint.closeWithPeer(serverSocket);
+            startPeer(peerSocket.getInputStream(), peerSocket.getOutputStream());
+            return endpoint;
+        }
+    },
+
+    /**
+     * {@link UnixDomainSocketRpcConnection} to a peer listening on a socket file in a temporary directory
+     */
+    UNIX_SOCKET {
+        @Override
+        Endpoint open() throws IOException {
+            var directory = Files.createTempDirectory("neovim-java-benchmark");
+            var path = directory.resolve("peer.sock");
+            var serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            serverChannel.bind(UnixDomainSocketAddress.of(path));
+            var endpoint = new Endpoint(new UnixDomainSocketRpcConnection(path.toFile()));
+            var peerChannel = serverChannel.accept();
+            endpoint.closeWithPeer(peerChannel);
+            endpoint.closeWithPeer(serverChannel);
+            endpoint.closeWithPeer(() -> {
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(directory);
+            });
+            startPeer(Channels.newInputStream(peerChannel), Channels.newOutputStream(peerChannel));
+            return endpoint;
+        }
+
+        @Override
+        boolean isSupported() {
+            return File.separatorChar == '/';
+        }
+    };
+
+    /**
+     * Opens a new connection to a freshly started {@link EchoPeer}
+     *
+     * @return endpoint holding the connection, which stops the peer once closed
+     * @throws IOException if connection can't be established
+     */
+    abstract Endpoint open() throws IOException;
+
+    /**
+     * Checks whether this transport can be used on current platform
+     *
+     * @return true if this transport is supported
+     */
+    boolean isSupported() {
+        return true;
+    }
+
+    private static void startPeer(InputStream inputStream, OutputStream outputStream) {
+        var thread = new Thread(new EchoPeer(inputStream, outputStream), "echo-peer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Connection to a peer, together with resources which need to be released once benchmark is done
+     */
+    static final class Endpoint implements Closeable {
+        private final RpcConnection connection;
+        private final List<Closeable> peerResources = new ArrayList<>();
+
+        Endpoint(RpcConnection connection) {
+            this.connection = Objects.requireNonNull(connection, "connection may not be null");
+        }
+
+        RpcConnection getConnection() {
+            return connection;
+        }
+
+        void closeWithPeer(Closeable closeable) {
+            peerResources.add(closeable);
+        }
+
+        @Override
+        public void close() throws IOException {
+            connection.close();
+            for (var resource : peerResources) {
+                resource.close();
+            }
+        }
+    }
+
+    private static final class StreamRpcConnection implements RpcConnection {
+        private final InputStream incomingStream;
+        private final OutputStream outgoingStream;
+
+        private StreamRpcConnection(InputStream incomingStream, OutputStream outgoingStream) {
+            this.incomingStream = incomingStream;
+            this.outgoingStream = outgoingStream;
+        }
+
+        @Override
+        public InputStream getIncomingStream() {
+            return incomingStream;
+        }
+
+        @Override
+        public OutputStream getOutgoingStream() {
+            return outgoingStream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            incomingStream.close();
+            outgoingStream.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import com.ensarsarajcic.neovim.java.corerpc.client.BackgroundRpcListener;
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs every {@link Workload} over every {@link Transport} and reports latency percentiles and throughput
+ * <p>
+ * Each combination gets a fresh {@link RpcClient} and a fresh {@link EchoPeer}, and a warmup run whose
+ * results are discarded. Usage:
+ * <pre>
+ *     {@code
+ *     java -jar benchmarks-jar-with-dependencies.jar [--messages=N] [--warmup=N] [--transports=pipe,tcp] [--workloads=ping_pong]
+ *     }
+ * </pre>
+ */
+public final class TransportBenchmark {
+    private static final int DEFAULT_MESSAGES = 10000;
+    private static final int DEFAULT_WARMUP = 2000;
+
+    private final int messages;
+    private final int warmup;
+
+    /**
+     * Creates a new {@link TransportBenchmark}
+     *
+     * @param messages number of measured messages per run
+     * @param warmup   number of warmup messages per run
+     * @throws IllegalArgumentException if messages is not positive or warmup is negative
+     */
+    public TransportBenchmark(int messages, int warmup) {
+        if (messages <= 0) {
+            throw new IllegalArgumentException("messages must be positive");
+        }
+        if (warmup < 0) {
+            throw new IllegalArgumentException("warmup may not be negative");
+        }
+        this.messages = messages;
+        this.warmup = warmup;
+    }
+
+    /**
+     * Runs a single workload over a single transport
+     *
+     * @param transport transport to use
+     * @param workload  workload to run
+     * @return result of the measured run
+     * @throws Exception if transport can't be opened or workload fails
+     */
+    public Result run(Transport transport, Workload workload) throws Exception {
+        try (var endpoint = transport.open()) {
+            var client = new RpcClient.Builder()
+                    .withExecutorService(Executors.newCachedThreadPool())
+                    .build();
+            try {
+                client.attach(endpoint.getConnection());
+                if (warmup > 0) {
+                    workload.run(client, warmup, new LatencyRecorder(workload.messageCount(warmup)));
+                }
+                var recorder = new LatencyRecorder(workload.messageCount(messages));
+                long start = System.nanoTime();
+                workload.run(client, messages, recorder);
+                long elapsed = System.nanoTime() - start;
+                return new Result(transport, workload, recorder, elapsed);
+            } finally {
+                client.stop();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        // Listener reports closed streams as errors, which is expected once each run is done
+        System.setProperty("org.slf4j.simpleLogger.log." + BackgroundRpcListener.class.getName(), "off");
+        int messages = DEFAULT_MESSAGES;
+        int warmup = DEFAULT_WARMUP;
+        List<Transport> transports = Arrays.asList(Transport.values());
+        List<Workload> workloads = Arrays.asList(Workload.values());
+        for (var arg : args) {
+            var parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Arguments are expected in --name=value form, got: " + arg);
+            }
+            switch (parts[0]) {
+                case "--messages" -> messages = Integer.parseInt(parts[1]);
+                case "--warmup" -> warmup = Integer.parseInt(parts[1]);
+                case "--transports" -> transports = parseList(parts[1], Transport::valueOf);
+                case "--workloads" -> workloads = parseList(parts[1], Workload::valueOf);
+                default -> throw new IllegalArgumentException("Unknown argument: " + parts[0]);
+            }
+        }
+
+        var benchmark = new TransportBenchmark(messages, warmup);
+        var results = new ArrayList<Result>();
+        for (var transport : transports) {
+            if (!transport.isSupported()) {
+                System.err.println("Skipping unsupported transport: " + transport);
+                continue;
+            }
+            for (var workload : workloads) {
+                results.add(benchmark.run(transport, workload));
+            }
+        }
+
+        System.out.println(Result.HEADER);
+        results.forEach(System.out::println);
+    }
+
+    private static <T> List<T> parseList(String value, Function<String, T> parser) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .map(name -> parser.apply(name.toUpperCase(Locale.ROOT)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Result of a single measured run
+     */
+    public static final class Result {
+        static final String HEADER = String.format(Locale.ROOT, "%-12s %-16s %10s %12s %12s %12s",
+                "transport", "workload", "messages", "msg/s", "p50 (us)", "p99 (us)");
+
+        private final Transport transport;
+        private final Workload workload;
+        private final int messages;
+        private final double messagesPerSecond;
+        private final long p50Nanos;
+        private final long p99Nanos;
+
+        Result(Transport transport, Workload workload, LatencyRecorder recorder, long elapsedNanos) {
+            this.transport = transport;
+            this.workload = workload;
+            this.messages = recorder.getCount();
+            this.messagesPerSecond = messages / (elapsedNanos / 1e9);
+            this.p50Nanos = recorder.percentile(50);
+            this.p99Nanos = recorder.percentile(99);
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        public Workload getWorkload() {
+            return workload;
+        }
+
+        public int getMessages() {
+            return messages;
+        }
+
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-12s %-16s %10d %12.0f %12.1f %12.1f",
+                    transport.name().toLowerCase(Locale.ROOT), workload.name().toLowerCase(Locale.ROOT), messages,
+                    messagesPerSecond, p50Nanos / 1000.0, p99Nanos / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.benchmarks;
+
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcStreamer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Workloads driven against each {@link Transport}
+ * Every workload sends {@code messages} requests and records latency of each of them
+ */
+public enum Workload {
+    /**
+     * Small requests, each one sent only once the previous response arrived
+     */
+    PING_PONG {
+        @Override
+        void run(RpcStreamer streamer, int messages, LatencyRecorder recorder) throws Exception {
+            for (int i = 0; i < messages; i++) {
+                long start = System.nanoTime();
+                request(streamer, new RequestMessage.Builder(EchoPeer.ECHO_METHOD).addArgument(i)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                recorder.record(System.nanoTime() - start);
+            }
+        }
+    },
+
+    /**
+     * Small requests sent in bursts of {@value #BURST_SIZE}, without waiting for responses in between
+     */
+    PIPELINED_BURST {
+        @Override
+        void run(RpcStreamer streamer, int messages, LatencyRecorder recorder) throws Exception {
+            for (int sent = 0; sent < messages; sent += BURST_SIZE) {
+                int burst = Math.min(BURST_SIZE, messages - sent);
+                var latch = new CountDownLatch(burst);
+                for (int i = 0; i < burst; i++) {
+                    long start = System.nanoTime();
+                    streamer.send(new RequestMessage.Builder(EchoPeer.ECHO_METHOD).addArgument(i), (id, response) -> {
+                        recorder.record(System.nanoTime() - start);
+                        latch.countDown();
+                    });
+                }
+                if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new TimeoutException("Burst did not complete in " + TIMEOUT_SECONDS + " seconds");
+                }
+            }
+        }
+    },
+
+    /**
+     * Small requests answered with large ({@value #PAYLOAD_SIZE} bytes) responses
+     * Runs 1/{@value #PAYLOAD_DIVISOR} of the requested messages, to keep run time comparable to other workloads
+     */
+    LARGE_PAYLOAD {
+        @Override
+        void run(RpcStreamer streamer, int messages, LatencyRecorder recorder) throws Exception {
+            for (int i = 0; i < messageCount(messages); i++) {
+                long start = System.nanoTime();
+                var response = request(streamer, new RequestMessage.Builder(EchoPeer.PAYLOAD_METHOD).addArgument(PAYLOAD_SIZE))
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                recorder.record(System.nanoTime() - start);
+                if (!(response.getResult() instanceof String) || ((String) response.getResult()).length() != PAYLOAD_SIZE) {
+                    throw new IllegalStateException("Unexpected payload response: " + response.getError());
+                }
+            }
+        }
+
+        @Override
+        int messageCount(int messages) {
+            return Math.max(1, messages / PAYLOAD_DIVISOR);
+        }
+    };
+
+    static final int BURST_SIZE = 100;
+    static final int PAYLOAD_SIZE = 1024 * 1024;
+    static final int PAYLOAD_DIVISOR = 100;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * Runs this workload
+     *
+     * @param streamer streamer attached to a peer
+     * @param messages requested number of messages
+     * @param recorder recorder for latency samples
+     * @throws Exception if requests fail or time out
+     */
+    abstract void run(RpcStreamer streamer, int messages, LatencyRecorder recorder) throws Exception;
+
+    /**
+     * Provides number of messages actually sent when {@code messages} are requested
+     *
+     * @param messages requested number of messages
+     * @return number of messages which will be sent
+     */
+    int messageCount(int messages) {
+        return messages;
+    }
+
+    private static CompletableFuture<ResponseMessage> request(RpcStreamer streamer, RequestMessage.Builder builder) throws IOException {
+        var future = new CompletableFuture<ResponseMessage>();
+        streamer.send(builder, (id, response) -> future.complete(response));
+        return future;
+    }
+}
@@ -28,14 +28,19 @@ import com.ensarsarajcic.neovim.java.corerpc.message.MessageType;
 import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
 import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
 import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.ensarsarajcic.neovim.java.corerpc.message.RpcError;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.value.ValueType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,6 +57,12 @@ import java.util.concurrent.Future;
  * <p>
  * Messages are deserialized using {@link ObjectMapper} passed in the constructor
  * <p>
+ * Incoming stream is first split into raw messages and only the header of each message is decoded right away.
+ * Requests are then fully deserialized, while responses are created with just their id and error decoded and
+ * notifications with just their name decoded - their result and arguments are decoded lazily, only if a callback
+ * actually reads them (see {@link ResponseMessage#getResult()} and {@link NotificationMessage#getArguments()}).
+ * If no {@link RpcListener.NotificationCallback} is registered, notifications are skipped without any decoding.
+ * <p>
  * This class supports 3 types of callbacks required by {@link RpcListener}:
  * - {@link RpcListener.RequestCallback}
  * - {@link RpcListener.ResponseCallback} with a specific id to respond to
@@ -95,6 +106,9 @@ import java.util.concurrent.Future;
 public final class BackgroundRpcListener implements RpcListener {
     public static final Logger log = LoggerFactory.getLogger(BackgroundRpcListener.class);
 
+    private static final TypeReference<ArrayList<Object>> ARGUMENTS_TYPE = new TypeReference<>() {
+    };
+
     private final ExecutorService executorService;
     private final ObjectMapper responseObjectMapper;
 
@@ -226,49 +240,88 @@ public final class BackgroundRpcListener implements RpcListener {
 
     // executes on background thread
     private void listenForMessages(InputStream inputStream) throws IOException {
-        var objectReader = responseObjectMapper.reader();
-        JsonNode readNode;
-        while ((readNode = objectReader.readTree(inputStream)) != null) {
-            log.debug("Received message: {}", readNode);
-
-            if (!readNode.isArray()
-                    || !(readNode instanceof ArrayNode)
-                    || readNode.size() < 3
-                    || readNode.size() > 4) {
-                log.warn("Received a bad message: {}", readNode);
-                continue;
-            }
-
-            var arrayNode = (ArrayNode) readNode;
+        var frameReader = new MessageFrameReader(inputStream);
+        byte[] frame;
+        while ((frame = frameReader.nextFrame()) != null) {
+            try (var unpacker = MessagePack.newDefaultUnpacker(frame)) {
+                if (unpacker.getNextFormat().getValueType() != ValueType.ARRAY) {
+                    log.warn("Received a bad message: {}", unpacker.unpackValue());
+                    continue;
+                }
 
-            var messageType = MessageType.fromInt(arrayNode.get(0).asInt());
-            // Pop off the type
-            arrayNode.remove(0);
+                var size = unpacker.unpackArrayHeader();
+                if (size < 3 || size > 4) {
+                    log.warn("Received a bad message of size {}", size);
+                    continue;
+                }
 
-            switch (messageType) {
-                case REQUEST:
-                    var requestMessage = responseObjectMapper.treeToValue(arrayNode, RequestMessage.class);
-                    if (requestCallback != null) {
-                        log.debug("Notifying request callback with: {}", requestMessage);
-                        requestCallback.requestReceived(requestMessage);
-                    }
-                    break;
-                case RESPONSE:
-                    var responseMessage = responseObjectMapper.treeToValue(arrayNode, ResponseMessage.class);
-                    if (responseCallbacks.containsKey(responseMessage.getId())) {
-                        log.debug("Notifying response callback for id({}) with: {}", responseMessage.getId(), responseMessage);
-                        responseCallbacks.get(responseMessage.getId()).responseReceived(responseMessage.getId(), responseMessage);
-                        responseCallbacks.remove(responseMessage.getId());
-                    }
-                    break;
-                case NOTIFICATION:
-                    var notificationMessage = responseObjectMapper.treeToValue(arrayNode, NotificationMessage.class);
-                    if (notificationCallback != null) {
+                var messageType = MessageType.fromInt(unpacker.unpackInt());
+                switch (messageType) {
+                    case REQUEST:
+                        var requestMessage = responseObjectMapper.treeToValue(readWithoutType(frame), RequestMessage.class);
+                        log.debug("Received message: {}", requestMessage);
+                        if (requestCallback != null) {
+                            log.debug("Notifying request callback with: {}", requestMessage);
+                            requestCallback.requestReceived(requestMessage);
+                        }
+                        break;
+                    case RESPONSE:
+                        if (size != 4) {
+                            log.warn("Received a bad response of size {}", size);
+                            continue;
+                        }
+                        // Id and error are decoded right away, result is decoded once somebody asks for it
+                        var id = unpacker.unpackInt();
+                        RpcError error = null;
+                        if (!unpacker.tryUnpackNil()) {
+                            var errorOffset = Math.toIntExact(unpacker.getTotalReadBytes());
+                            unpacker.skipValue();
+                            var errorLength = Math.toIntExact(unpacker.getTotalReadBytes()) - errorOffset;
+                            error = responseObjectMapper.readValue(frame, errorOffset, errorLength, RpcError.class);
+                        }
+                        var resultOffset = Math.toIntExact(unpacker.getTotalReadBytes());
+                        var responseMessage = new ResponseMessage(
+                                id, error, frame, resultOffset, frame.length - resultOffset, this::decodeResult);
+                        log.debug("Received message: {}", responseMessage);
+                        var responseCallback = responseCallbacks.remove(responseMessage.getId());
+                        if (responseCallback != null) {
+                            log.debug("Notifying response callback for id({}) with: {}", responseMessage.getId(), responseMessage);
+                            responseCallback.responseReceived(responseMessage.getId(), responseMessage);
+                        }
+                        break;
+                    case NOTIFICATION:
+                        var currentNotificationCallback = notificationCallback;
+                        if (currentNotificationCallback == null) {
+                            // Nobody is interested, skip decoding altogether
+                            break;
+                        }
+                        // Only the name is decoded, arguments are decoded once somebody asks for them
+                        var name = unpacker.unpackString();
+                        var argumentsOffset = Math.toIntExact(unpacker.getTotalReadBytes());
+                        var notificationMessage = new NotificationMessage(
+                                name, frame, argumentsOffset, frame.length - argumentsOffset, this::decodeArguments);
                         log.debug("Notifying notification callback with: {}", notificationMessage);
-                        notificationCallback.notificationReceived(notificationMessage);
-                    }
-                    break;
+                        currentNotificationCallback.notificationReceived(notificationMessage);
+                        break;
+                }
+            } catch (MessagePackException e) {
+                log.warn("Received a malformed message", e);
             }
         }
     }
+
+    private ArrayNode readWithoutType(byte[] frame) throws IOException {
+        var arrayNode = (ArrayNode) responseObjectMapper.readTree(frame);
+        // Pop off the type
+        arrayNode.remove(0);
+        return arrayNode;
+    }
+
+    private Object decodeResult(byte[] data, int offset, int length) throws IOException {
+        return responseObjectMapper.readValue(data, offset, length, Object.class);
+    }
+
+    private ArrayList<Object> decodeArguments(byte[] data, int offset, int length) throws IOException {
+        return responseObjectMapper.readValue(data, offset, length, ARGUMENTS_TYPE);
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.corerpc.client;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Splits a msgpack stream into raw frames - one frame per top level msgpack value - without decoding them
+ * <p>
+ * Boundaries of values are found by skipping them using {@link MessageUnpacker}, which does not materialize
+ * any objects. Chunks read from the underlying stream are retained only until the frame they belong to is extracted,
+ * which means every byte is copied just once into the resulting frame.
+ * <p>
+ * This class is not thread safe and is meant to be used only by a single reading thread
+ */
+final class MessageFrameReader implements MessageBufferInput {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final InputStream inputStream;
+    private final MessageUnpacker unpacker;
+    private final ArrayDeque<MessageBuffer> chunks = new ArrayDeque<>();
+
+    // Absolute stream offset of the first retained chunk
+    private long firstChunkOffset = 0;
+
+    MessageFrameReader(InputStream inputStream) {
+        Objects.requireNonNull(inputStream, "inputStream may not be null");
+        this.inputStream = inputStream;
+        this.unpacker = MessagePack.DEFAULT_UNPACKER_CONFIG.newUnpacker(this);
+    }
+
+    /**
+     * Reads next complete msgpack value from the stream, blocking until it is available
+     *
+     * @return raw bytes of the next value or null if end of stream is reached
+     * @throws IOException if reading fails or stream ends in the middle of a value
+     */
+    byte[] nextFrame() throws IOException {
+        try {
+            if (!unpacker.hasNext()) {
+                return null;
+            }
+            long start = unpacker.getTotalReadBytes();
+            unpacker.skipValue();
+            long end = unpacker.getTotalReadBytes();
+            return extract(start, end);
+        } catch (MessagePackException e) {
+            throw new IOException("Failed to read msgpack value from stream", e);
+        }
+    }
+
+    @Override
+    public MessageBuffer next() throws IOException {
+        var chunk = new byte[CHUNK_SIZE];
+        int read = inputStream.read(chunk);
+        if (read == -1) {
+            return null;
+        }
+        var buffer = MessageBuffer.wrap(chunk, 0, read);
+        chunks.addLast(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        inputStream.close();
+    }
+
+    private byte[] extract(long start, long end) {
+        var frame = new byte[Math.toIntExact(end - start)];
+        long chunkOffset = firstChunkOffset;
+        for (var chunk : chunks) {
+            long chunkEnd = chunkOffset + chunk.size();
+            long from = Math.max(start, chunkOffset);
+            long to = Math.min(end, chunkEnd);
+            if (from < to) {
+                chunk.getBytes((int) (from - chunkOffset), frame, (int) (from - start), (int) (to - from));
+            }
+            if (chunkEnd >= end) {
+                break;
+            }
+            chunkOffset = chunkEnd;
+        }
+
+        // Drop chunks which are fully consumed
+        while (!chunks.isEmpty() && firstChunkOffset + chunks.peekFirst().size() <= end) {
+            firstChunkOffset += chunks.removeFirst().size();
+        }
+        return frame;
+    }
+}
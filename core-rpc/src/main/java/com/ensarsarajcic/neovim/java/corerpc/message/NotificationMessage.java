@@ -26,12 +26,16 @@ package com.ensarsarajcic.neovim.java.corerpc.message;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Objects;
 
 /**
  * Defines a notification
@@ -42,14 +46,40 @@ import java.util.ArrayList;
  * * type as Integer
  * * name (event name) as String
  * * arguments as Array
+ * <p>
+ * Incoming notifications may be created with raw (still encoded) arguments, using
+ * {@link #NotificationMessage(String, byte[], int, int, ArgumentsDecoder)}. In that case arguments are decoded only
+ * once {@link #getArguments()} is called for the first time, so notifications which are only routed by their name
+ * never pay the price of decoding.
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
 @JsonPropertyOrder({"type", "name", "arguments"})
 @JsonDeserialize(builder = NotificationMessage.Builder.class)
 public final class NotificationMessage implements Message {
 
+    /**
+     * Decoder used to lazily turn raw arguments of a {@link NotificationMessage} into a list
+     */
+    @FunctionalInterface
+    public interface ArgumentsDecoder {
+        /**
+         * Decodes raw arguments
+         *
+         * @param data   array holding the encoded arguments
+         * @param offset offset of the encoded arguments in the array
+         * @param length length of the encoded arguments
+         * @return decoded list of arguments
+         * @throws IOException if data can't be decoded
+         */
+        ArrayList<Object> decode(byte[] data, int offset, int length) throws IOException;
+    }
+
     private final String name;
-    private final ArrayList<Object> arguments;
+    private final byte[] rawData;
+    private final int rawOffset;
+    private final int rawLength;
+    private ArgumentsDecoder argumentsDecoder;
+    private volatile ArrayList<Object> arguments;
 
     private NotificationMessage(Builder builder) {
         this(builder.name, builder.arguments);
@@ -65,6 +95,32 @@ public final class NotificationMessage implements Message {
     public NotificationMessage(String name, ArrayList<Object> arguments) {
         this.name = name;
         this.arguments = new ArrayList<>(arguments);
+        this.rawData = null;
+        this.rawOffset = 0;
+        this.rawLength = 0;
+    }
+
+    /**
+     * Creates a new {@link NotificationMessage} with arguments which are not yet decoded
+     * Arguments are decoded using given {@link ArgumentsDecoder} the first time they are requested
+     * This should not be used outside this library, since it represents incoming notifications
+     *
+     * @param name             notification name
+     * @param rawData          array holding encoded arguments - it is not copied and must not be modified afterwards
+     * @param rawOffset        offset of encoded arguments in rawData
+     * @param rawLength        length of encoded arguments
+     * @param argumentsDecoder decoder used to decode arguments once they are needed
+     * @throws NullPointerException if rawData or argumentsDecoder are null
+     */
+    public NotificationMessage(String name, byte[] rawData, int rawOffset, int rawLength, ArgumentsDecoder argumentsDecoder) {
+        Objects.requireNonNull(rawData, "rawData is required for lazy arguments");
+        Objects.requireNonNull(argumentsDecoder, "argumentsDecoder is required for lazy arguments");
+        Objects.checkFromIndexSize(rawOffset, rawLength, rawData.length);
+        this.name = name;
+        this.rawData = rawData;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+        this.argumentsDecoder = argumentsDecoder;
     }
 
     @JsonProperty("name")
@@ -72,9 +128,56 @@ public final class NotificationMessage implements Message {
         return name;
     }
 
+    /**
+     * Provides arguments of this notification
+     * If this notification was created with raw arguments, they are decoded on the first call
+     *
+     * @return list of arguments
+     * @throws RuntimeException if raw arguments could not be decoded
+     */
     @JsonProperty("arguments")
     public ArrayList<?> getArguments() {
-        return arguments;
+        var decoded = arguments;
+        if (decoded == null) {
+            synchronized (this) {
+                decoded = arguments;
+                if (decoded == null) {
+                    try {
+                        decoded = argumentsDecoder.decode(rawData, rawOffset, rawLength);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    arguments = decoded;
+                    argumentsDecoder = null;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Provides raw (msgpack encoded) arguments of this notification, if it was created with them
+     * This allows consumers to decode arguments directly into the types they need
+     *
+     * @return read-only {@link ByteBuffer} with encoded arguments array or null if this notification was created
+     * with already decoded arguments
+     */
+    @JsonIgnore
+    public ByteBuffer getRawArguments() {
+        if (rawData == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(rawData, rawOffset, rawLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether arguments of this notification were already decoded
+     *
+     * @return true if {@link #getArguments()} does not need to decode anything
+     */
+    @JsonIgnore
+    public boolean isDecoded() {
+        return arguments != null;
     }
 
     @Override
@@ -153,8 +256,10 @@ public final class NotificationMessage implements Message {
 
     @Override
     public String toString() {
+        // Avoid decoding arguments just for logging
+        var decoded = arguments;
         return "NotificationMessage{"
                 + "name='" + name + '\''
-                + ", arguments=" + arguments + '}';
+                + ", arguments=" + (decoded != null ? decoded : "<" + rawLength + " encoded bytes>") + '}';
     }
 }
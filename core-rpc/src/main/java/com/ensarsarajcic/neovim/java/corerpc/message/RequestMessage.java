@@ -118,6 +118,13 @@ public final class RequestMessage implements IdentifiableMessage {
             this.arguments = new ArrayList<>(arguments);
         }
 
+        /**
+         * @return name of the method this builder builds a request for
+         */
+        public String getMethod() {
+            return method;
+        }
+
         /**
          * Adds id to the message. This should be added just before sending the message.
          * Outside of library, this should not be used
@@ -26,11 +26,16 @@ package com.ensarsarajcic.neovim.java.corerpc.message;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
 /**
  * Defines a response
  * <p>
@@ -39,15 +44,41 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
  * * id as Integer
  * * error as RpcError
  * * result
+ * <p>
+ * Incoming responses may be created with raw (still encoded) result, using
+ * {@link #ResponseMessage(int, RpcError, byte[], int, int, ResultDecoder)}. In that case result is decoded only once
+ * {@link #getResult()} is called for the first time, so consumers which read {@link #getRawResult()} directly never
+ * pay the price of generic decoding.
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
 @JsonPropertyOrder({"type", "id", "error", "result"})
 @JsonDeserialize(builder = ResponseMessage.Builder.class)
 public final class ResponseMessage implements IdentifiableMessage {
 
+    /**
+     * Decoder used to lazily turn raw result of a {@link ResponseMessage} into an object
+     */
+    @FunctionalInterface
+    public interface ResultDecoder {
+        /**
+         * Decodes raw result
+         *
+         * @param data   array holding the encoded result
+         * @param offset offset of the encoded result in the array
+         * @param length length of the encoded result
+         * @return decoded result
+         * @throws IOException if data can't be decoded
+         */
+        Object decode(byte[] data, int offset, int length) throws IOException;
+    }
+
     private final int id;
     private final RpcError error;
-    private final Object result;
+    private final byte[] rawData;
+    private final int rawOffset;
+    private final int rawLength;
+    private volatile ResultDecoder resultDecoder;
+    private Object result;
 
     private ResponseMessage(Builder builder) {
         this(builder.id, builder.error, builder.result);
@@ -64,6 +95,34 @@ public final class ResponseMessage implements IdentifiableMessage {
         this.id = id;
         this.error = error;
         this.result = result;
+        this.rawData = null;
+        this.rawOffset = 0;
+        this.rawLength = 0;
+    }
+
+    /**
+     * Creates a new {@link ResponseMessage} with result which is not yet decoded
+     * Result is decoded using given {@link ResultDecoder} the first time it is requested
+     * This should not be used outside this library, since it represents incoming responses
+     *
+     * @param id            response id - it should match id of request
+     * @param error         error if present
+     * @param rawData       array holding encoded result - it is not copied and must not be modified afterwards
+     * @param rawOffset     offset of encoded result in rawData
+     * @param rawLength     length of encoded result
+     * @param resultDecoder decoder used to decode result once it is needed
+     * @throws NullPointerException if rawData or resultDecoder are null
+     */
+    public ResponseMessage(int id, RpcError error, byte[] rawData, int rawOffset, int rawLength, ResultDecoder resultDecoder) {
+        Objects.requireNonNull(rawData, "rawData is required for lazy result");
+        Objects.requireNonNull(resultDecoder, "resultDecoder is required for lazy result");
+        Objects.checkFromIndexSize(rawOffset, rawLength, rawData.length);
+        this.id = id;
+        this.error = error;
+        this.rawData = rawData;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+        this.resultDecoder = resultDecoder;
     }
 
     @JsonProperty("error")
@@ -71,11 +130,56 @@ public final class ResponseMessage implements IdentifiableMessage {
         return error;
     }
 
+    /**
+     * Provides result of this response
+     * If this response was created with raw result, it is decoded on the first call
+     *
+     * @return result
+     * @throws RuntimeException if raw result could not be decoded
+     */
     @JsonProperty("result")
     public Object getResult() {
+        if (resultDecoder != null) {
+            synchronized (this) {
+                var decoder = resultDecoder;
+                if (decoder != null) {
+                    try {
+                        result = decoder.decode(rawData, rawOffset, rawLength);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    resultDecoder = null;
+                }
+            }
+        }
         return result;
     }
 
+    /**
+     * Provides raw (msgpack encoded) result of this response, if it was created with it
+     * This allows consumers to decode result directly into the types they need
+     *
+     * @return read-only {@link ByteBuffer} with encoded result or null if this response was created with already
+     * decoded result
+     */
+    @JsonIgnore
+    public ByteBuffer getRawResult() {
+        if (rawData == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(rawData, rawOffset, rawLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether result of this response was already decoded
+     *
+     * @return true if {@link #getResult()} does not need to decode anything
+     */
+    @JsonIgnore
+    public boolean isDecoded() {
+        return resultDecoder == null;
+    }
+
     @Override
     @JsonProperty("id")
     public int getId() {
@@ -183,9 +287,10 @@ public final class ResponseMessage implements IdentifiableMessage {
 
     @Override
     public String toString() {
+        // Avoid decoding result just for logging
         return "ResponseMessage{"
                 + "id=" + id
                 + ", error=" + error
-                + ", result=" + result + '}';
+                + ", result=" + (isDecoded() ? result : "<" + rawLength + " encoded bytes>") + '}';
     }
 }
@@ -9,4 +9,5 @@ module com.ensarsarajcic.neovim.java.corerpc {
     requires com.fasterxml.jackson.core;
     requires com.fasterxml.jackson.annotation;
     requires jackson.dataformat.msgpack;
+    requires msgpack.core;
 }
\ No newline at end of file
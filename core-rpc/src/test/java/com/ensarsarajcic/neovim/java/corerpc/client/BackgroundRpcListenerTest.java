@@ -28,24 +28,35 @@ import com.ensarsarajcic.neovim.java.corerpc.message.MessageType;
 import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
 import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
 import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
-import com.ensarsarajcic.neovim.java.testing.MultiLatch;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.ensarsarajcic.neovim.java.corerpc.message.RpcError;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
@@ -53,6 +64,7 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -62,50 +74,51 @@ public class BackgroundRpcListenerTest {
     @Mock
     ExecutorService executorService;
 
-    @Mock
-    ObjectMapper objectMapper;
-
-    @Mock
-    ObjectReader objectReader;
-
     @Mock
     InputStream inputStream;
 
-    @InjectMocks
+    ObjectMapper objectMapper;
+
     BackgroundRpcListener backgroundRpcListener;
 
+    @Before
+    public void setUp() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+        backgroundRpcListener = new BackgroundRpcListener(executorService, objectMapper);
+    }
+
     @Test
-    public void testStart() throws IOException {
+    public void testStart() {
         // Given a proper executor service and object mapper
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willReturn(objectReader);
-        given(objectReader.readTree(inputStream)).willReturn(JsonNodeFactory.instance.arrayNode(), (JsonNode) null);
 
         // When start is called, nothing special happens
-        backgroundRpcListener.start(inputStream);
+        backgroundRpcListener.start(new ByteArrayInputStream(new byte[0]));
     }
 
     @Test
     public void testRequestListener() throws IOException {
         // Given a proper executor service and object mapper
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willReturn(objectReader);
-        var requestNode = prepareRequestNode();
-        var requestMessage = new RequestMessage.Builder("test").build();
-        given(objectMapper.treeToValue(any(), eq(RequestMessage.class))).willReturn(requestMessage);
-        given(objectReader.readTree(inputStream)).willReturn(requestNode, (JsonNode) null);
+        var input = prepareInput(prepareRequest(1, "test", List.of("arg")));
         var requestCallback = Mockito.mock(RpcListener.RequestCallback.class);
 
         backgroundRpcListener.listenForRequests(requestCallback);
-        backgroundRpcListener.start(inputStream);
+        backgroundRpcListener.start(input);
 
-        verify(requestCallback).requestReceived(requestMessage);
+        var captor = ArgumentCaptor.forClass(RequestMessage.class);
+        verify(requestCallback).requestReceived(captor.capture());
+        assertEquals(1, captor.getValue().getId());
+        assertEquals("test", captor.getValue().getMethod());
+        assertEquals(List.of("arg"), captor.getValue().getArguments());
     }
 
     @Test
-    public void testRequestListenerWithoutStart() throws IOException {
+    public void testRequestListenerWithoutStart() {
         // Given a proper executor service and object mapper
-        prepareSequentialExecutorService();
         var requestCallback = Mockito.mock(RpcListener.RequestCallback.class);
 
         backgroundRpcListener.listenForRequests(requestCallback);
@@ -117,23 +130,77 @@ public class BackgroundRpcListenerTest {
     public void testResponseListener() throws IOException {
         // Given a proper executor service and object mapper
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willReturn(objectReader);
-        var responseNode = prepareResponseNode();
-        var responseMessage = new ResponseMessage.Builder("test").build();
-        given(objectMapper.treeToValue(any(), eq(ResponseMessage.class))).willReturn(responseMessage);
-        given(objectReader.readTree(inputStream)).willReturn(responseNode, (JsonNode) null);
+        var input = prepareInput(prepareResponse(5, "test"));
         var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
 
-        backgroundRpcListener.listenForResponse(responseMessage.getId(), responseCallback);
-        backgroundRpcListener.start(inputStream);
+        backgroundRpcListener.listenForResponse(5, responseCallback);
+        backgroundRpcListener.start(input);
 
-        verify(responseCallback).responseReceived(responseMessage.getId(), responseMessage);
+        var captor = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(responseCallback).responseReceived(eq(5), captor.capture());
+        assertEquals(5, captor.getValue().getId());
+        assertEquals("test", captor.getValue().getResult());
+        assertNull(captor.getValue().getError());
     }
 
     @Test
-    public void testResponseListenerWithoutStart() throws IOException {
-        // Given a proper executor service and object mapper
+    public void testResponseResultIsDecodedLazily() throws IOException {
+        // Given a response with a list result
         prepareSequentialExecutorService();
+        var input = prepareInput(prepareResponse(5, List.of("line", 2)));
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+
+        backgroundRpcListener.listenForResponse(5, responseCallback);
+        backgroundRpcListener.start(input);
+
+        var captor = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(responseCallback).responseReceived(eq(5), captor.capture());
+        var responseMessage = captor.getValue();
+        // Raw result is the encoded result, result is not decoded until requested
+        var raw = responseMessage.getRawResult();
+        var bytes = new byte[raw.remaining()];
+        raw.get(bytes);
+        assertTrue(Arrays.equals(objectMapper.writeValueAsBytes(List.of("line", 2)), bytes));
+        assertFalse(responseMessage.isDecoded());
+        assertEquals(List.of("line", 2), responseMessage.getResult());
+        assertTrue(responseMessage.isDecoded());
+    }
+
+    @Test
+    public void testResponseErrorIsDecoded() throws IOException {
+        // Given an error response
+        prepareSequentialExecutorService();
+        var input = prepareInput(objectMapper.writeValueAsBytes(
+                Arrays.asList(MessageType.RESPONSE.asInt(), 7, List.of(1, "Invalid buffer id"), null)));
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+
+        backgroundRpcListener.listenForResponse(7, responseCallback);
+        backgroundRpcListener.start(input);
+
+        var captor = ArgumentCaptor.forClass(ResponseMessage.class);
+        verify(responseCallback).responseReceived(eq(7), captor.capture());
+        assertEquals(RpcError.Type.VALIDATION, captor.getValue().getError().getType());
+        assertEquals("Invalid buffer id", captor.getValue().getError().getMessage());
+        assertNull(captor.getValue().getResult());
+    }
+
+    @Test
+    public void testResponseListenerCalledOnlyOnce() throws IOException {
+        // Given two responses with the same id
+        prepareSequentialExecutorService();
+        var input = prepareInput(prepareResponse(5, "test"), prepareResponse(5, "test"));
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+
+        backgroundRpcListener.listenForResponse(5, responseCallback);
+        backgroundRpcListener.start(input);
+
+        // Callback is removed after first response
+        verify(responseCallback, times(1)).responseReceived(eq(5), any());
+    }
+
+    @Test
+    public void testResponseListenerWithoutStart() {
+        // Given a proper executor service and object mapper
         var requestCallback = Mockito.mock(RpcListener.ResponseCallback.class);
 
         backgroundRpcListener.listenForResponse(1, requestCallback);
@@ -145,23 +212,45 @@ public class BackgroundRpcListenerTest {
     public void testNotificationListener() throws IOException {
         // Given a proper executor service and object mapper
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willReturn(objectReader);
-        var notificationNode = prepareNotificationNode();
-        var notificationMessage = new NotificationMessage.Builder("test").build();
-        given(objectMapper.treeToValue(any(), eq(NotificationMessage.class))).willReturn(notificationMessage);
-        given(objectReader.readTree(inputStream)).willReturn(notificationNode, (JsonNode) null);
+        var input = prepareInput(prepareNotification("test", List.of("arg", 1)));
         var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
 
         backgroundRpcListener.listenForNotifications(notificationCallback);
-        backgroundRpcListener.start(inputStream);
-
-        verify(notificationCallback).notificationReceived(notificationMessage);
+        backgroundRpcListener.start(input);
+
+        var captor = ArgumentCaptor.forClass(NotificationMessage.class);
+        verify(notificationCallback).notificationReceived(captor.capture());
+        var notificationMessage = captor.getValue();
+        assertEquals("test", notificationMessage.getName());
+        // Arguments are not decoded until requested
+        assertFalse(notificationMessage.isDecoded());
+        assertEquals(List.of("arg", 1), notificationMessage.getArguments());
+        assertTrue(notificationMessage.isDecoded());
     }
 
     @Test
-    public void testNotificationListenerWithoutStart() throws IOException {
+    public void testNotificationRawArguments() throws IOException {
         // Given a proper executor service and object mapper
         prepareSequentialExecutorService();
+        var input = prepareInput(prepareNotification("test", List.of("arg")));
+        var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+
+        backgroundRpcListener.listenForNotifications(notificationCallback);
+        backgroundRpcListener.start(input);
+
+        var captor = ArgumentCaptor.forClass(NotificationMessage.class);
+        verify(notificationCallback).notificationReceived(captor.capture());
+        // Raw arguments are the encoded arguments array
+        var raw = captor.getValue().getRawArguments();
+        var bytes = new byte[raw.remaining()];
+        raw.get(bytes);
+        assertTrue(Arrays.equals(objectMapper.writeValueAsBytes(List.of("arg")), bytes));
+        assertFalse(captor.getValue().isDecoded());
+    }
+
+    @Test
+    public void testNotificationListenerWithoutStart() {
+        // Given a proper executor service and object mapper
         var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
 
         backgroundRpcListener.listenForNotifications(notificationCallback);
@@ -169,20 +258,39 @@ public class BackgroundRpcListenerTest {
         verify(notificationCallback, never()).notificationReceived(any());
     }
 
+    @Test
+    public void testMultipleMessages() throws IOException {
+        // Given a stream with multiple messages of different types, including bad ones
+        prepareSequentialExecutorService();
+        var input = prepareInput(
+                prepareNotification("first", List.of()),
+                objectMapper.writeValueAsBytes("bad message"),
+                objectMapper.writeValueAsBytes(List.of(MessageType.NOTIFICATION.asInt())),
+                prepareRequest(2, "request", List.of()),
+                prepareNotification("second", List.of(largeString()))
+        );
+        var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        var requestCallback = Mockito.mock(RpcListener.RequestCallback.class);
+
+        backgroundRpcListener.listenForNotifications(notificationCallback);
+        backgroundRpcListener.listenForRequests(requestCallback);
+        backgroundRpcListener.start(input);
+
+        // Bad messages are skipped and all valid ones are received in order
+        var captor = ArgumentCaptor.forClass(NotificationMessage.class);
+        verify(notificationCallback, times(2)).notificationReceived(captor.capture());
+        verify(requestCallback).requestReceived(any());
+        assertEquals("first", captor.getAllValues().get(0).getName());
+        assertEquals("second", captor.getAllValues().get(1).getName());
+        assertEquals(List.of(largeString()), captor.getAllValues().get(1).getArguments());
+    }
+
     @Test(timeout = 2000)
-    public void testStopping() throws IOException, InterruptedException {
+    public void testStopping() throws IOException {
         // Given a proper executor service and object mapper
-        var multiLatch = new MultiLatch(10);
+        var chunks = new LinkedBlockingQueue<byte[]>();
         executorService = Executors.newSingleThreadScheduledExecutor();
         backgroundRpcListener = new BackgroundRpcListener(executorService, objectMapper);
-        given(objectMapper.reader()).willReturn(objectReader);
-        var notificationNode = prepareNotificationNode();
-        var notificationMessage = new NotificationMessage.Builder("test").build();
-        given(objectMapper.treeToValue(any(), eq(NotificationMessage.class))).willReturn(notificationMessage);
-        given(objectReader.readTree(inputStream)).will(invocationOnMock -> {
-            multiLatch.await();
-            return notificationNode;
-        });
 
         var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
         doAnswer(invocationOnMock -> {
@@ -191,27 +299,25 @@ public class BackgroundRpcListenerTest {
         }).when(notificationCallback).notificationReceived(any());
 
         backgroundRpcListener.listenForNotifications(notificationCallback);
-        backgroundRpcListener.start(inputStream);
+        backgroundRpcListener.start(new QueueInputStream(chunks));
 
-        multiLatch.countDown();
-        verify(notificationCallback, timeout(100)).notificationReceived(notificationMessage);
-        multiLatch.countDown();
-        verify(notificationCallback, timeout(100)).notificationReceived(notificationMessage);
+        chunks.add(prepareNotification("test", List.of()));
+        verify(notificationCallback, timeout(100)).notificationReceived(any());
+        chunks.add(prepareNotification("test", List.of()));
+        verify(notificationCallback, timeout(100).times(2)).notificationReceived(any());
 
         // After listener is stopped, no more notifications should arrive
         backgroundRpcListener.stop();
-        multiLatch.countDown();
-        multiLatch.countDown();
-        multiLatch.countDown();
-        multiLatch.countDown();
+        chunks.add(prepareNotification("test", List.of()));
+        chunks.add(prepareNotification("test", List.of()));
         verifyNoMoreInteractions(notificationCallback);
     }
 
     @Test(expected = RuntimeException.class)
-    public void exceptionOnStartIsThrown() {
+    public void exceptionOnStartIsThrown() throws IOException {
         // Given an error in reading from stream
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willThrow(new IOException());
+        given(inputStream.read(any(byte[].class))).willThrow(new IOException());
 
         // When listener is started, app should crash
         backgroundRpcListener.start(inputStream);
@@ -229,30 +335,29 @@ public class BackgroundRpcListenerTest {
         new BackgroundRpcListener(executorService, null);
     }
 
-    private ArrayNode prepareRequestNode() {
-        var arrayNode = JsonNodeFactory.instance.arrayNode(4);
-        arrayNode.add(MessageType.REQUEST.asInt());
-        arrayNode.add(MessageType.REQUEST.asInt());
-        arrayNode.add(MessageType.REQUEST.asInt());
-        arrayNode.add(MessageType.REQUEST.asInt());
-        return arrayNode;
+    private byte[] prepareRequest(int id, String method, List<?> arguments) throws IOException {
+        return objectMapper.writeValueAsBytes(List.of(MessageType.REQUEST.asInt(), id, method, arguments));
+    }
+
+    private byte[] prepareResponse(int id, Object result) throws IOException {
+        return objectMapper.writeValueAsBytes(Arrays.asList(MessageType.RESPONSE.asInt(), id, null, result));
     }
 
-    private ArrayNode prepareResponseNode() {
-        var arrayNode = JsonNodeFactory.instance.arrayNode(4);
-        arrayNode.add(MessageType.RESPONSE.asInt());
-        arrayNode.add(MessageType.RESPONSE.asInt());
-        arrayNode.add(MessageType.RESPONSE.asInt());
-        arrayNode.add(MessageType.RESPONSE.asInt());
-        return arrayNode;
+    private byte[] prepareNotification(String name, List<?> arguments) throws IOException {
+        return objectMapper.writeValueAsBytes(List.of(MessageType.NOTIFICATION.asInt(), name, arguments));
     }
 
-    private ArrayNode prepareNotificationNode() {
-        var arrayNode = JsonNodeFactory.instance.arrayNode(3);
-        arrayNode.add(MessageType.NOTIFICATION.asInt());
-        arrayNode.add(MessageType.NOTIFICATION.asInt());
-        arrayNode.add(MessageType.NOTIFICATION.asInt());
-        return arrayNode;
+    private InputStream prepareInput(byte[]... messages) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        for (var message : messages) {
+            outputStream.write(message);
+        }
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+
+    private String largeString() {
+        // Larger than a single read chunk, to ensure messages spanning multiple chunks are read properly
+        return "a".repeat(20000);
     }
 
     private void prepareSequentialExecutorService() {
@@ -261,4 +366,36 @@ public class BackgroundRpcListenerTest {
             return null;
         }).when(executorService).submit(any(Runnable.class));
     }
-}
\ No newline at end of file
+
+    private static final class QueueInputStream extends InputStream {
+        private final BlockingQueue<byte[]> chunks;
+        private byte[] current = new byte[0];
+        private int position = 0;
+
+        private QueueInputStream(BlockingQueue<byte[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position == current.length) {
+                try {
+                    current = chunks.take();
+                    position = 0;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            var count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.corerpc.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class MessageFrameReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void testFramesAreSplitByValue() throws IOException {
+        var first = objectMapper.writeValueAsBytes(List.of(2, "name", List.of(1, 2, 3)));
+        var second = objectMapper.writeValueAsBytes(Map.of("key", "value"));
+        var third = objectMapper.writeValueAsBytes("string");
+        var reader = new MessageFrameReader(concat(first, second, third));
+
+        assertArrayEquals(first, reader.nextFrame());
+        assertArrayEquals(second, reader.nextFrame());
+        assertArrayEquals(third, reader.nextFrame());
+        assertNull(reader.nextFrame());
+    }
+
+    @Test
+    public void testFramesSpanningMultipleChunks() throws IOException {
+        var small = objectMapper.writeValueAsBytes(List.of(1));
+        var large = objectMapper.writeValueAsBytes(List.of("a".repeat(20000), "b".repeat(9000)));
+        var reader = new MessageFrameReader(trickle(concat(small, large, small, large)));
+
+        assertArrayEquals(small, reader.nextFrame());
+        assertArrayEquals(large, reader.nextFrame());
+        assertArrayEquals(small, reader.nextFrame());
+        assertArrayEquals(large, reader.nextFrame());
+        assertNull(reader.nextFrame());
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        var reader = new MessageFrameReader(new ByteArrayInputStream(new byte[0]));
+
+        assertNull(reader.nextFrame());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedValue() throws IOException {
+        var value = objectMapper.writeValueAsBytes(List.of("truncated value"));
+        var truncated = new byte[value.length - 3];
+        System.arraycopy(value, 0, truncated, 0, truncated.length);
+        var reader = new MessageFrameReader(new ByteArrayInputStream(truncated));
+
+        reader.nextFrame();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void noNullInputStream() {
+        new MessageFrameReader(null);
+    }
+
+    private ByteArrayInputStream concat(byte[]... values) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        for (var value : values) {
+            outputStream.write(value);
+        }
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+
+    // Returns at most 1000 bytes per read, to simulate a slow pipe
+    private InputStream trickle(InputStream inputStream) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return inputStream.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return inputStream.read(b, off, Math.min(len, 1000));
+            }
+        };
+    }
+}
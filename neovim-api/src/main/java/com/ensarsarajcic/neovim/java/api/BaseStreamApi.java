@@ -25,17 +25,24 @@
 package com.ensarsarajcic.neovim.java.api;
 
 import com.ensarsarajcic.neovim.java.api.types.msgpack.BaseCustomIdType;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimCustomType;
 import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimTypeDeserializer;
+import com.ensarsarajcic.neovim.java.api.util.ByteLines;
 import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
 import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
 import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -79,29 +86,51 @@ public abstract class BaseStreamApi {
     }
 
     protected <T extends BaseCustomIdType> CompletableFuture<T> sendWithResponseOfMsgPackType(RequestMessage.Builder request, Class<T> type) {
-        return sendWithBytesResponse(request).thenApply(bytes -> {
-            try {
-                return objectMapper.readerFor(type).readValue(bytes);
-            } catch (IOException e) {
-                log.error("Failed to read bytes as " + type, e);
-                e.printStackTrace();
-                throw new CompletionException(e);
-            }
-        });
+        var customType = NeovimCustomType.forType(type);
+        return reactiveRpcStreamer.response(request)
+                .thenApply(ResponseMessage::getResult)
+                .thenApply(result -> {
+                    if (customType != null && result instanceof MessagePackExtensionType extensionType) {
+                        // Decode handles directly, instead of encoding them again just to parse them
+                        return decodeHandle(customType, extensionType, type);
+                    }
+                    return readEncoded(result, objectMapper.getTypeFactory().constructType(type));
+                });
     }
 
     protected <T extends BaseCustomIdType> CompletableFuture<List<T>> sendWithResponseOfListOfMsgPackType(RequestMessage.Builder request, Class<T> type) {
-        return sendWithBytesResponse(request).thenApply(bytes -> {
-            try {
-                return objectMapper.readerFor(
-                        objectMapper.getTypeFactory().constructCollectionType(List.class, type)
-                ).readValue(bytes);
-            } catch (IOException e) {
-                log.error("Failed to construct a list of " + type, e);
-                e.printStackTrace();
-                throw new CompletionException(e);
-            }
-        });
+        var customType = NeovimCustomType.forType(type);
+        return reactiveRpcStreamer.response(request)
+                .thenApply(ResponseMessage::getResult)
+                .thenApply(result -> {
+                    if (customType != null && result instanceof List<?> list
+                            && list.stream().allMatch(MessagePackExtensionType.class::isInstance)) {
+                        var handles = new ArrayList<T>(list.size());
+                        for (var item : list) {
+                            handles.add(decodeHandle(customType, (MessagePackExtensionType) item, type));
+                        }
+                        return handles;
+                    }
+                    return readEncoded(result, objectMapper.getTypeFactory().constructCollectionType(List.class, type));
+                });
+    }
+
+    private static <T extends BaseCustomIdType> T decodeHandle(NeovimCustomType customType, MessagePackExtensionType extensionType, Class<T> type) {
+        try {
+            return type.cast(customType.getDeserializer().decode(extensionType));
+        } catch (IllegalArgumentException e) {
+            log.error("Failed to decode " + type, e);
+            throw new CompletionException(e);
+        }
+    }
+
+    private <T> T readEncoded(Object result, JavaType type) {
+        try {
+            return objectMapper.readerFor(type).readValue(objectMapper.writeValueAsBytes(result));
+        } catch (IOException e) {
+            log.error("Failed to read result as " + type, e);
+            throw new CompletionException(e);
+        }
     }
 
     protected <T> CompletableFuture<List<T>> sendWithResponseOfListType(RequestMessage.Builder request, Class<T> type) {
@@ -114,6 +143,26 @@ public abstract class BaseStreamApi {
                 ));
     }
 
+    /**
+     * Sends a request responding with a list of lines, reading them as raw bytes
+     * Lines are read directly from the encoded response, without decoding them into strings
+     */
+    protected CompletableFuture<List<ByteBuffer>> sendWithResponseOfByteLines(RequestMessage.Builder request) {
+        return reactiveRpcStreamer.response(request)
+                .thenApply(response -> {
+                    var raw = response.getRawResult();
+                    if (raw == null) {
+                        return ByteLines.fromDecoded((List<?>) response.getResult());
+                    }
+                    try (var unpacker = ByteLines.newUnpacker(raw)) {
+                        return ByteLines.unpackLines(unpacker, raw);
+                    } catch (IOException | MessagePackException e) {
+                        log.error("Failed to read result as lines", e);
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
     protected <K, V> CompletableFuture<Map<K, V>> sendWithResponseOfMapType(RequestMessage.Builder request, Class<K> keyType, Class<V> valueType) {
         return sendWithGenericResponse(
                 request)
@@ -24,6 +24,7 @@
 
 package com.ensarsarajcic.neovim.java.api;
 
+import com.ensarsarajcic.neovim.java.api.atomic.MicroBatchingRpcStreamer;
 import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.ensarsarajcic.neovim.java.corerpc.client.RpcClient;
 import com.ensarsarajcic.neovim.java.corerpc.client.RpcConnection;
@@ -43,6 +44,12 @@ public final class NeovimApis {
         return new NeovimStreamApi(reactiveRpcStreamer);
     }
 
+    public static NeovimApi getMicroBatchingApiForConnection(RpcConnection rpcConnection, MicroBatchingRpcStreamer.FlushPolicy flushPolicy) {
+        var reactiveRpcStreamer = getNeovimReactiveRpcStreamer();
+        reactiveRpcStreamer.attach(rpcConnection);
+        return new NeovimStreamApi(new MicroBatchingRpcStreamer(reactiveRpcStreamer, flushPolicy));
+    }
+
     public static ReactiveRpcStreamer getNeovimReactiveRpcStreamer() {
         return ReactiveRpcClient.createDefaultInstanceWithCustomStreamer(getNeovimRpcStreamer());
     }
@@ -0,0 +1,253 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.atomic;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.buffer.BufferStreamApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.tabpage.NeovimTabpageApi;
+import com.ensarsarajcic.neovim.java.api.tabpage.TabpageStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Tabpage;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.api.window.NeovimWindowApi;
+import com.ensarsarajcic.neovim.java.api.window.WindowStreamApi;
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcConnection;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RpcError;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.RpcException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Typed batch of calls sent together in a single {@code nvim_call_atomic} round trip
+ * <p>
+ * Calls are queued using regular {@link NeovimApi}, {@link NeovimBufferApi}, {@link NeovimWindowApi} and
+ * {@link NeovimTabpageApi} instances provided by this batch. Each call returns a typed {@link CompletableFuture},
+ * just like it would when sent directly, but it is only resolved once {@link #execute()} is called and its
+ * response arrives.
+ * <p>
+ * Neovim stops executing atomic calls on the first error. The call which failed completes exceptionally with
+ * {@link RpcException} and calls queued after it are cancelled, while calls before it complete normally.
+ * <p>
+ * Once executed, instances provided by this batch (and APIs resolved from its calls, such as
+ * {@link NeovimApi#getCurrentBuffer()}) send further calls directly, using the underlying {@link ReactiveRpcStreamer}.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     AtomicBatch batch = new AtomicBatch(reactiveRpcStreamer);
+ *     CompletableFuture<String> line = batch.api().getCurrentLine();
+ *     CompletableFuture<VimCoords> cursor = batch.window(window).getCursor();
+ *     CompletableFuture<Integer> lineCount = batch.buffer(buffer).getLineCount();
+ *     batch.execute(); // single nvim_call_atomic request resolves all three futures
+ *     }
+ * </pre>
+ */
+public final class AtomicBatch {
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final BatchingRpcStreamer batchingRpcStreamer = new BatchingRpcStreamer();
+    private final NeovimApi api;
+
+    private final List<RequestMessage> requests = new ArrayList<>();
+    private final List<CompletableFuture<ResponseMessage>> responses = new ArrayList<>();
+    private boolean executed = false;
+
+    /**
+     * Creates a new empty {@link AtomicBatch}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send the batch once it is executed
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public AtomicBatch(ReactiveRpcStreamer reactiveRpcStreamer) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to send atomic batch");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.api = new NeovimStreamApi(batchingRpcStreamer);
+    }
+
+    /**
+     * Provides {@link NeovimApi} which queues calls in this batch
+     *
+     * @return {@link NeovimApi} bound to this batch
+     */
+    public NeovimApi api() {
+        return api;
+    }
+
+    /**
+     * Provides {@link NeovimBufferApi} which queues calls for given buffer in this batch
+     *
+     * @param buffer buffer to make calls for
+     * @return {@link NeovimBufferApi} bound to this batch
+     * @throws NullPointerException if buffer is null
+     */
+    public NeovimBufferApi buffer(Buffer buffer) {
+        return new BufferStreamApi(batchingRpcStreamer, buffer);
+    }
+
+    /**
+     * Provides {@link NeovimWindowApi} which queues calls for given window in this batch
+     *
+     * @param window window to make calls for
+     * @return {@link NeovimWindowApi} bound to this batch
+     * @throws NullPointerException if window is null
+     */
+    public NeovimWindowApi window(Window window) {
+        return new WindowStreamApi(batchingRpcStreamer, window);
+    }
+
+    /**
+     * Provides {@link NeovimTabpageApi} which queues calls for given tabpage in this batch
+     *
+     * @param tabpage tabpage to make calls for
+     * @return {@link NeovimTabpageApi} bound to this batch
+     * @throws NullPointerException if tabpage is null
+     */
+    public NeovimTabpageApi tabpage(Tabpage tabpage) {
+        return new TabpageStreamApi(batchingRpcStreamer, tabpage);
+    }
+
+    /**
+     * @return number of calls currently queued in this batch
+     */
+    public synchronized int size() {
+        return requests.size();
+    }
+
+    /**
+     * Sends all queued calls in a single {@code nvim_call_atomic} request
+     * Futures of queued calls are resolved before the returned future completes
+     * If batch is empty, nothing is sent
+     *
+     * @return {@link CompletableFuture} with raw {@link AtomicCallResponse}, which fails only if the atomic call
+     * itself fails - in that case all queued calls fail with the same exception
+     * @throws IllegalStateException if this batch was already executed
+     */
+    public CompletableFuture<AtomicCallResponse> execute() {
+        List<RequestMessage> queuedRequests;
+        List<CompletableFuture<ResponseMessage>> queuedResponses;
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Atomic batch was already executed");
+            }
+            executed = true;
+            queuedRequests = List.copyOf(requests);
+            queuedResponses = List.copyOf(responses);
+            requests.clear();
+            responses.clear();
+        }
+
+        if (queuedRequests.isEmpty()) {
+            return CompletableFuture.completedFuture(new AtomicCallResponse(List.of(), null));
+        }
+
+        return new NeovimStreamApi(reactiveRpcStreamer).sendAtomic(queuedRequests)
+                .whenComplete((atomicCallResponse, throwable) -> {
+                    if (throwable != null) {
+                        queuedResponses.forEach(response -> response.completeExceptionally(throwable));
+                    } else {
+                        resolve(atomicCallResponse, queuedResponses);
+                    }
+                });
+    }
+
+    /**
+     * Queues given request in this batch, or sends it directly if this batch was already executed
+     *
+     * @param requestMessage request to queue
+     * @return {@link CompletableFuture} resolved once this batch is executed
+     */
+    CompletableFuture<ResponseMessage> enqueue(RequestMessage.Builder requestMessage) {
+        synchronized (this) {
+            if (!executed) {
+                var response = new CompletableFuture<ResponseMessage>();
+                requests.add(requestMessage.build());
+                responses.add(response);
+                return response;
+            }
+        }
+        return reactiveRpcStreamer.response(requestMessage);
+    }
+
+    private static void resolve(AtomicCallResponse atomicCallResponse, List<CompletableFuture<ResponseMessage>> queuedResponses) {
+        var results = atomicCallResponse.getResponses() != null ? atomicCallResponse.getResponses() : List.of();
+        var error = atomicCallResponse.getError();
+        for (int i = 0; i < queuedResponses.size(); i++) {
+            var response = queuedResponses.get(i);
+            if (error != null && i == error.getIndex()) {
+                response.completeExceptionally(new RpcException(toRpcError(error)));
+            } else if (i < results.size() && (error == null || i < error.getIndex())) {
+                response.complete(new ResponseMessage(i, null, results.get(i)));
+            } else {
+                // Not executed, because an earlier call failed
+                response.cancel(false);
+            }
+        }
+    }
+
+    private static RpcError toRpcError(AtomicCallError error) {
+        try {
+            return new RpcError(Integer.parseInt(error.getErrorType()), error.getErrorMessage());
+        } catch (NumberFormatException e) {
+            return RpcError.exception(error.getErrorMessage());
+        }
+    }
+
+    /**
+     * {@link ReactiveRpcStreamer} which queues requests until the batch is executed
+     * and passes them down to the real streamer afterwards
+     */
+    private final class BatchingRpcStreamer implements ReactiveRpcStreamer {
+
+        @Override
+        public void attach(RpcConnection rpcConnection) {
+            throw new UnsupportedOperationException("Atomic batch can't be attached to a connection");
+        }
+
+        @Override
+        public CompletableFuture<ResponseMessage> response(RequestMessage.Builder requestMessage) {
+            return enqueue(requestMessage);
+        }
+
+        @Override
+        public Flow.Publisher<RequestMessage> requestsFlow() {
+            return reactiveRpcStreamer.requestsFlow();
+        }
+
+        @Override
+        public Flow.Publisher<NotificationMessage> notificationsFlow() {
+            return reactiveRpcStreamer.notificationsFlow();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.atomic;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.corerpc.client.RpcConnection;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReactiveRpcStreamer} decorator which transparently merges requests into {@code nvim_call_atomic} calls
+ * <p>
+ * Requests are collected until {@link FlushPolicy#getMaxDelay()} passes since the first collected request, or until
+ * {@link FlushPolicy#getMaxCalls()} requests are collected, whichever comes first. They are then sent as a single
+ * {@link AtomicBatch} and each caller's future is resolved with its own result. A flush containing just one request
+ * sends it as is.
+ * <p>
+ * Since Neovim stops executing atomic calls on first error, requests which were not executed because of an
+ * unrelated failed request are transparently sent again. To keep them ahead of newer requests, nothing else is sent
+ * while an atomic call is running - requests collected in the meantime are sent as soon as it completes, right after
+ * the skipped ones. Flushes never merge more than {@link FlushPolicy#getMaxCalls()} requests into a single atomic
+ * call - larger flushes are sent as multiple atomic calls, one after another.
+ * <p>
+ * Requests for methods in {@link FlushPolicy#getExcludedMethods()} and requests made through {@link #direct()}
+ * are never merged. They are queued together with collected requests and flush them, so ordering of requests is
+ * preserved.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     ReactiveRpcStreamer batching = new MicroBatchingRpcStreamer(reactiveRpcStreamer, FlushPolicy.DEFAULT);
+ *     NeovimApi api = new NeovimStreamApi(batching);
+ *
+ *     // These are sent as a single request
+ *     api.setVariable("a", 1);
+ *     api.setVariable("b", 2);
+ *     api.executeCommand("redraw");
+ *     }
+ * </pre>
+ */
+public final class MicroBatchingRpcStreamer implements ReactiveRpcStreamer {
+    private static final Logger log = LoggerFactory.getLogger(MicroBatchingRpcStreamer.class);
+
+    private static volatile ScheduledExecutorService defaultScheduler;
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final FlushPolicy flushPolicy;
+    private final ScheduledExecutorService scheduler;
+    private final ReactiveRpcStreamer directStreamer = new DirectRpcStreamer();
+
+    private final Deque<PendingCall> pendingCalls = new ArrayDeque<>();
+    // Number of pending calls (from the head of the queue) which are sent without waiting for the delay
+    private int readyCalls = 0;
+    private boolean atomicCallRunning = false;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Creates a new {@link MicroBatchingRpcStreamer} using a shared daemon scheduler for delayed flushes
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send requests
+     * @param flushPolicy         policy deciding when collected requests are sent
+     * @throws NullPointerException if any parameter is null
+     */
+    public MicroBatchingRpcStreamer(ReactiveRpcStreamer reactiveRpcStreamer, FlushPolicy flushPolicy) {
+        this(reactiveRpcStreamer, flushPolicy, getDefaultScheduler());
+    }
+
+    /**
+     * Creates a new {@link MicroBatchingRpcStreamer}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send requests
+     * @param flushPolicy         policy deciding when collected requests are sent
+     * @param scheduler           {@link ScheduledExecutorService} used for delayed flushes
+     * @throws NullPointerException if any parameter is null
+     */
+    public MicroBatchingRpcStreamer(ReactiveRpcStreamer reactiveRpcStreamer, FlushPolicy flushPolicy, ScheduledExecutorService scheduler) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to send requests");
+        Objects.requireNonNull(flushPolicy, "flushPolicy is required for batching");
+        Objects.requireNonNull(scheduler, "scheduler is required for delayed flushes");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.flushPolicy = flushPolicy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Attaches underlying {@link ReactiveRpcStreamer}
+     */
+    @Override
+    public void attach(RpcConnection rpcConnection) {
+        reactiveRpcStreamer.attach(rpcConnection);
+    }
+
+    /**
+     * Collects given request, to be sent with other requests in a single atomic call
+     * Requests for excluded methods are sent directly, after already collected requests are flushed
+     */
+    @Override
+    public CompletableFuture<ResponseMessage> response(RequestMessage.Builder requestMessage) {
+        if (flushPolicy.getExcludedMethods().contains(requestMessage.getMethod())) {
+            return directStreamer.response(requestMessage);
+        }
+
+        var pendingCall = new PendingCall(requestMessage, false);
+        synchronized (this) {
+            pendingCalls.add(pendingCall);
+            if (pendingCalls.size() - readyCalls >= flushPolicy.getMaxCalls()) {
+                markAllReady();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, flushPolicy.getMaxDelay().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        drain();
+        return pendingCall.response;
+    }
+
+    @Override
+    public Flow.Publisher<RequestMessage> requestsFlow() {
+        return reactiveRpcStreamer.requestsFlow();
+    }
+
+    @Override
+    public Flow.Publisher<NotificationMessage> notificationsFlow() {
+        return reactiveRpcStreamer.notificationsFlow();
+    }
+
+    /**
+     * Sends all collected requests right away (or as soon as running atomic call completes)
+     */
+    public void flush() {
+        synchronized (this) {
+            markAllReady();
+        }
+        drain();
+    }
+
+    /**
+     * Provides a {@link ReactiveRpcStreamer} which sends requests without merging them
+     * Collected requests are flushed before each such request, to preserve ordering - if an atomic call is
+     * running, request is sent once it completes
+     *
+     * @return {@link ReactiveRpcStreamer} which opts out of batching
+     */
+    public ReactiveRpcStreamer direct() {
+        return directStreamer;
+    }
+
+    /**
+     * @return number of requests currently waiting to be sent
+     */
+    public synchronized int getPendingCount() {
+        return pendingCalls.size();
+    }
+
+    private void markAllReady() {
+        readyCalls = pendingCalls.size();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Sends ready calls, until an atomic call has to be awaited
+     * Calls sent on their own can't be skipped, so following calls may be sent right after them
+     */
+    private void drain() {
+        while (true) {
+            var calls = new ArrayList<PendingCall>();
+            synchronized (this) {
+                if (atomicCallRunning || readyCalls == 0) {
+                    return;
+                }
+                calls.add(pendingCalls.poll());
+                while (!calls.get(0).direct && calls.size() < Math.min(readyCalls, flushPolicy.getMaxCalls())
+                        && !pendingCalls.peek().direct) {
+                    calls.add(pendingCalls.poll());
+                }
+                readyCalls -= calls.size();
+                atomicCallRunning = calls.size() > 1;
+            }
+            if (calls.size() == 1) {
+                var call = calls.get(0);
+                pipe(reactiveRpcStreamer.response(call.request), call, null, 0);
+            } else {
+                sendAtomic(calls);
+            }
+        }
+    }
+
+    private void sendAtomic(List<PendingCall> calls) {
+        var atomicBatch = new AtomicBatch(reactiveRpcStreamer);
+        var skipped = new PendingCall[calls.size()];
+        var settled = new CompletableFuture<?>[calls.size()];
+        for (int i = 0; i < calls.size(); i++) {
+            settled[i] = pipe(atomicBatch.enqueue(calls.get(i).request), calls.get(i), skipped, i);
+        }
+        CompletableFuture.allOf(settled).whenComplete((ignored, throwable) -> atomicCallCompleted(skipped));
+        log.debug("Flushing {} requests as an atomic call", calls.size());
+        atomicBatch.execute();
+    }
+
+    private CompletableFuture<ResponseMessage> pipe(CompletableFuture<ResponseMessage> source, PendingCall call,
+                                                    PendingCall[] skipped, int index) {
+        return source.whenComplete((responseMessage, throwable) -> {
+            if (throwable == null) {
+                call.response.complete(responseMessage);
+            } else if (skipped != null && unwrap(throwable) instanceof CancellationException) {
+                // Not executed because of another request in the same atomic call - safe to send again
+                skipped[index] = call;
+            } else {
+                call.response.completeExceptionally(unwrap(throwable));
+            }
+        });
+    }
+
+    private void atomicCallCompleted(PendingCall[] skipped) {
+        synchronized (this) {
+            // Skipped calls were issued before anything still pending, so they go first
+            for (int i = skipped.length - 1; i >= 0; i--) {
+                if (skipped[i] != null) {
+                    pendingCalls.addFirst(skipped[i]);
+                }
+            }
+            // Calls collected while the atomic call was running have already waited for it
+            markAllReady();
+            atomicCallRunning = false;
+        }
+        drain();
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static ScheduledExecutorService getDefaultScheduler() {
+        if (defaultScheduler == null) {
+            synchronized (MicroBatchingRpcStreamer.class) {
+                if (defaultScheduler == null) {
+                    defaultScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        var thread = new Thread(runnable, "neovim-micro-batching");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return defaultScheduler;
+    }
+
+    private static final class PendingCall {
+        private final RequestMessage.Builder request;
+        private final boolean direct;
+        private final CompletableFuture<ResponseMessage> response = new CompletableFuture<>();
+
+        private PendingCall(RequestMessage.Builder request, boolean direct) {
+            this.request = request;
+            this.direct = direct;
+        }
+    }
+
+    private final class DirectRpcStreamer implements ReactiveRpcStreamer {
+
+        @Override
+        public void attach(RpcConnection rpcConnection) {
+            MicroBatchingRpcStreamer.this.attach(rpcConnection);
+        }
+
+        @Override
+        public CompletableFuture<ResponseMessage> response(RequestMessage.Builder requestMessage) {
+            var pendingCall = new PendingCall(requestMessage, true);
+            synchronized (MicroBatchingRpcStreamer.this) {
+                pendingCalls.add(pendingCall);
+                markAllReady();
+            }
+            drain();
+            return pendingCall.response;
+        }
+
+        @Override
+        public Flow.Publisher<RequestMessage> requestsFlow() {
+            return reactiveRpcStreamer.requestsFlow();
+        }
+
+        @Override
+        public Flow.Publisher<NotificationMessage> notificationsFlow() {
+            return reactiveRpcStreamer.notificationsFlow();
+        }
+    }
+
+    /**
+     * Policy deciding when collected requests are flushed and which requests are never merged
+     */
+    public static final class FlushPolicy {
+        /**
+         * Methods which are never merged by default - UI and input methods, which are latency sensitive
+         * or bound to the calling channel, and atomic calls themselves
+         */
+        public static final Set<String> DEFAULT_EXCLUDED_METHODS = Set.of(
+                NeovimApi.CALL_ATOMIC,
+                NeovimApi.ATTACH_UI,
+                NeovimApi.DETACH_UI,
+                NeovimApi.RESIZE_UI,
+                NeovimApi.INPUT,
+                NeovimApi.INPUT_MOUSE,
+                NeovimApi.PASTE,
+                NeovimApi.GET_API_INFO,
+                NeovimApi.SET_CLIENT_INFO
+        );
+
+        /**
+         * Flushes after 1 millisecond or 64 collected requests, excluding {@link #DEFAULT_EXCLUDED_METHODS}
+         */
+        public static final FlushPolicy DEFAULT = new Builder().build();
+
+        private final Duration maxDelay;
+        private final int maxCalls;
+        private final Set<String> excludedMethods;
+
+        private FlushPolicy(Builder builder) {
+            this.maxDelay = builder.maxDelay;
+            this.maxCalls = builder.maxCalls;
+            this.excludedMethods = Set.copyOf(builder.excludedMethods);
+        }
+
+        /**
+         * @return maximum time the first collected request waits before it is sent
+         */
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        /**
+         * @return number of collected requests which triggers a flush right away
+         */
+        public int getMaxCalls() {
+            return maxCalls;
+        }
+
+        /**
+         * @return names of methods which are never merged
+         */
+        public Set<String> getExcludedMethods() {
+            return excludedMethods;
+        }
+
+        @Override
+        public String toString() {
+            return "FlushPolicy{"
+                    + "maxDelay=" + maxDelay
+                    + ", maxCalls=" + maxCalls
+                    + ", excludedMethods=" + excludedMethods + '}';
+        }
+
+        /**
+         * Builder for {@link FlushPolicy}
+         */
+        public static final class Builder {
+            private Duration maxDelay = Duration.ofMillis(1);
+            private int maxCalls = 64;
+            private final Set<String> excludedMethods = new HashSet<>(DEFAULT_EXCLUDED_METHODS);
+
+            /**
+             * Sets maximum time the first collected request waits before it is sent
+             *
+             * @param maxDelay maximum delay
+             * @throws IllegalArgumentException if maxDelay is negative
+             */
+            public Builder withMaxDelay(Duration maxDelay) {
+                Objects.requireNonNull(maxDelay, "maxDelay may not be null");
+                if (maxDelay.isNegative()) {
+                    throw new IllegalArgumentException("maxDelay may not be negative");
+                }
+                this.maxDelay = maxDelay;
+                return this;
+            }
+
+            /**
+             * Sets number of collected requests which triggers a flush right away
+             *
+             * @param maxCalls maximum number of requests in a single atomic call
+             * @throws IllegalArgumentException if maxCalls is not positive
+             */
+            public Builder withMaxCalls(int maxCalls) {
+                if (maxCalls <= 0) {
+                    throw new IllegalArgumentException("maxCalls must be positive");
+                }
+                this.maxCalls = maxCalls;
+                return this;
+            }
+
+            /**
+             * Excludes given method from batching - it will always be sent directly
+             *
+             * @param method name of the method
+             */
+            public Builder excludeMethod(String method) {
+                this.excludedMethods.add(Objects.requireNonNull(method, "method may not be null"));
+                return this;
+            }
+
+            /**
+             * Allows batching of given method, even if it is excluded by default
+             *
+             * @param method name of the method
+             */
+            public Builder includeMethod(String method) {
+                this.excludedMethods.remove(method);
+                return this;
+            }
+
+            /**
+             * Creates a new {@link FlushPolicy}
+             *
+             * @return a new {@link FlushPolicy}. Multiple calls will create different instances.
+             */
+            public FlushPolicy build() {
+                return new FlushPolicy(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams lines of a buffer in chunks, instead of reading the whole buffer at once
+ * <p>
+ * Each subscriber pages through the buffer independently, reading a chunk of lines only when it is requested, so at
+ * most one chunk per subscriber is held in memory and in flight at any time. Each chunk is read together with
+ * {@code b:changedtick} in a single atomic request. If publisher was created with {@code failOnChange}, stream fails
+ * with {@link ConcurrentModificationException} as soon as buffer changes while it is being streamed. Otherwise, buffer
+ * is streamed until a chunk shorter than the chunk size is read, which allows following buffers which are being
+ * appended to.
+ * <p>
+ * Lines can also be written to a file chunk by chunk, using {@link #writeTo(Path)}.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferChunkPublisher publisher = new BufferChunkPublisher(reactiveRpcStreamer, buffer, 10_000, true);
+ *     publisher.subscribe(subscriber);
+ *
+ *     long writtenBytes = publisher.writeTo(Path.of("buffer.log")).get();
+ *     }
+ * </pre>
+ */
+public final class BufferChunkPublisher implements Flow.Publisher<List<String>> {
+
+    /**
+     * Default number of lines in a chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final Buffer buffer;
+    private final int chunkSize;
+    private final boolean failOnChange;
+
+    /**
+     * Creates a new {@link BufferChunkPublisher} with {@link #DEFAULT_CHUNK_SIZE}, which fails if buffer changes
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read lines
+     * @param buffer              buffer to stream
+     * @throws NullPointerException if reactiveRpcStreamer or buffer is null
+     */
+    public BufferChunkPublisher(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer) {
+        this(reactiveRpcStreamer, buffer, DEFAULT_CHUNK_SIZE, true);
+    }
+
+    /**
+     * Creates a new {@link BufferChunkPublisher}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read lines
+     * @param buffer              buffer to stream
+     * @param chunkSize           maximum number of lines in a single chunk
+     * @param failOnChange        whether stream should fail if buffer changes while it is being streamed
+     * @throws NullPointerException     if reactiveRpcStreamer or buffer is null
+     * @throws IllegalArgumentException if chunkSize is not positive
+     */
+    public BufferChunkPublisher(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, int chunkSize, boolean failOnChange) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to stream buffer");
+        Objects.requireNonNull(buffer, "buffer is required to stream buffer");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.buffer = buffer;
+        this.chunkSize = chunkSize;
+        this.failOnChange = failOnChange;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<String>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber is required");
+        var subscription = new ChunkSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Writes lines of the buffer to a file, chunk by chunk, using {@link ForkJoinPool#commonPool()} for writes
+     * Each line is terminated by a newline and encoded as UTF-8. Existing file is replaced.
+     *
+     * @param path file to write to
+     * @return {@link CompletableFuture} which completes with number of written bytes once file is written and closed
+     * @throws NullPointerException if path is null
+     */
+    public CompletableFuture<Long> writeTo(Path path) {
+        return writeTo(path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes lines of the buffer to a file, chunk by chunk
+     * Each line is terminated by a newline and encoded as UTF-8. Existing file is replaced.
+     *
+     * @param path     file to write to
+     * @param executor executor used for blocking writes, to keep them off the thread delivering responses
+     * @return {@link CompletableFuture} which completes with number of written bytes once file is written and closed
+     * @throws NullPointerException if path or executor is null
+     */
+    public CompletableFuture<Long> writeTo(Path path, Executor executor) {
+        Objects.requireNonNull(path, "path is required to write buffer");
+        Objects.requireNonNull(executor, "executor is required to write buffer");
+        var fileSubscriber = new FileChannelSubscriber(path, executor);
+        subscribe(fileSubscriber);
+        return fileSubscriber.result;
+    }
+
+    private final class ChunkSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super List<String>> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean fetching = false;
+        private volatile boolean done = false;
+        private int nextLine = 0;
+        private Long changedTick = null;
+
+        ChunkSubscription(Flow.Subscriber<? super List<String>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested number of chunks must be positive (§3.9)"));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        private void drain() {
+            // Chunks completing synchronously loop here, instead of recursing
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (!done && !fetching && demand.get() > 0) {
+                    fetching = true;
+                    fetchNextChunk();
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void fetchNextChunk() {
+            var batch = new AtomicBatch(reactiveRpcStreamer);
+            var bufferApi = batch.buffer(buffer);
+            var tick = bufferApi.getChangedTick();
+            var lines = bufferApi.getLines(nextLine, nextLine + chunkSize, false);
+            batch.execute();
+            tick.thenCombine(lines, ChunkResult::new).whenComplete((chunk, throwable) -> {
+                if (throwable != null) {
+                    fail(throwable);
+                } else {
+                    onChunk(chunk);
+                }
+            });
+        }
+
+        private void onChunk(ChunkResult chunk) {
+            if (done) {
+                return;
+            }
+            var tick = ((Number) chunk.changedTick()).longValue();
+            if (failOnChange && changedTick != null && changedTick != tick) {
+                fail(new ConcurrentModificationException("Buffer " + buffer.getId() + " changed while it was streamed"));
+                return;
+            }
+            changedTick = tick;
+            nextLine += chunk.lines().size();
+            if (!chunk.lines().isEmpty()) {
+                demand.decrementAndGet();
+                subscriber.onNext(chunk.lines());
+            }
+            if (chunk.lines().size() < chunkSize) {
+                done = true;
+                subscriber.onComplete();
+                return;
+            }
+            fetching = false;
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            subscriber.onError(throwable);
+        }
+    }
+
+    private record ChunkResult(Object changedTick, List<String> lines) {
+    }
+
+    private static final class FileChannelSubscriber implements Flow.Subscriber<List<String>> {
+        private final Path path;
+        private final Executor executor;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private FileChannel fileChannel;
+        private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+        private long writtenBytes = 0;
+
+        FileChannelSubscriber(Path path, Executor executor) {
+            this.path = path;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            lastWrite = CompletableFuture.runAsync(() -> {
+                try {
+                    fileChannel = FileChannel.open(path, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor).whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    subscription.cancel();
+                    result.completeExceptionally(throwable);
+                } else {
+                    subscription.request(1);
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<String> lines) {
+            lastWrite = lastWrite.thenRunAsync(() -> write(lines), executor).whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    subscription.cancel();
+                    close(throwable);
+                } else {
+                    subscription.request(1);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            lastWrite.whenComplete((ignored, writeError) -> close(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            lastWrite.whenComplete((ignored, writeError) -> close(writeError));
+        }
+
+        private void write(List<String> lines) {
+            var builder = new StringBuilder();
+            for (var line : lines) {
+                builder.append(line).append('\n');
+            }
+            var bytes = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                while (bytes.hasRemaining()) {
+                    writtenBytes += fileChannel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private synchronized void close(Throwable failure) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                if (fileChannel != null) {
+                    fileChannel.close();
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(writtenBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Loads large files into buffers, without reading whole file into memory
+ * <p>
+ * File is memory mapped and split into lines directly from the mapping. Lines are never decoded - slices of the
+ * mapping are sent to Neovim as binary values, in chunks bounded by size, using {@code nvim_buf_set_lines}. First
+ * chunk replaces contents of the buffer and others are appended to it. Up to {@code maxInFlight} chunks are sent
+ * without waiting for previous ones to be acknowledged, so sending is pipelined, while memory used for pending chunks
+ * stays bounded. Reading continues once a chunk is acknowledged - no thread is blocked waiting for it.
+ * <p>
+ * Lines are split on {@code \n} and a {@code \r} before it is dropped, so files with CRLF line endings are loaded
+ * without trailing {@code ^M} characters. Final newline does not produce an empty line, just like when Neovim reads
+ * a file.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferFileLoader loader = new BufferFileLoader(reactiveRpcStreamer);
+ *     BufferFileLoader.LoadResult result = loader.load(buffer, Path.of("report.txt"),
+ *             progress -> log.info("Loaded {}/{} bytes", progress.loadedBytes(), progress.totalBytes())).get();
+ *     }
+ * </pre>
+ */
+public final class BufferFileLoader {
+
+    /**
+     * Default maximum size of a single chunk in bytes
+     */
+    public static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * Default maximum number of chunks sent, but not yet acknowledged
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final long MAPPING_WINDOW = 256L * 1024 * 1024;
+
+    /**
+     * Progress of a load, reported each time a chunk is acknowledged by Neovim
+     *
+     * @param loadedBytes bytes of the file loaded into the buffer so far
+     * @param totalBytes  size of the file
+     * @param loadedLines lines loaded into the buffer so far
+     */
+    public record Progress(long loadedBytes, long totalBytes, long loadedLines) {
+    }
+
+    /**
+     * Result of a completed load
+     *
+     * @param buffer   buffer the file was loaded into
+     * @param lines    number of loaded lines
+     * @param bytes    size of the loaded file
+     * @param chunks   number of chunks sent
+     * @param duration total time of the load
+     */
+    public record LoadResult(Buffer buffer, long lines, long bytes, int chunks, Duration duration) {
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final int chunkBytes;
+    private final int maxInFlight;
+
+    /**
+     * Creates a new {@link BufferFileLoader} using {@link #DEFAULT_CHUNK_BYTES} and {@link #DEFAULT_MAX_IN_FLIGHT}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send lines
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public BufferFileLoader(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, DEFAULT_CHUNK_BYTES, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a new {@link BufferFileLoader}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send lines
+     * @param chunkBytes          maximum size of a single chunk in bytes (a single longer line is still sent whole)
+     * @param maxInFlight         maximum number of chunks sent, but not yet acknowledged
+     * @throws NullPointerException     if reactiveRpcStreamer is null
+     * @throws IllegalArgumentException if chunkBytes or maxInFlight is not positive
+     */
+    public BufferFileLoader(ReactiveRpcStreamer reactiveRpcStreamer, int chunkBytes, int maxInFlight) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to load files");
+        if (chunkBytes <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("chunkBytes and maxInFlight must be positive");
+        }
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.chunkBytes = chunkBytes;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Creates a new unlisted scratch buffer and loads given file into it
+     *
+     * @param path             file to load
+     * @param progressListener listener notified each time a chunk is acknowledged
+     * @return {@link CompletableFuture} which completes with {@link LoadResult} once whole file is loaded
+     * @throws NullPointerException if path or progressListener is null
+     */
+    public CompletableFuture<LoadResult> loadIntoScratchBuffer(Path path, Consumer<Progress> progressListener) {
+        Objects.requireNonNull(path, "path is required to load a file");
+        Objects.requireNonNull(progressListener, "progressListener is required to load a file");
+        return new NeovimStreamApi(reactiveRpcStreamer).createBuffer(false, true)
+                .thenCompose(bufferApi -> load(bufferApi.get(), path, progressListener));
+    }
+
+    /**
+     * Replaces contents of given buffer with contents of given file
+     *
+     * @param buffer buffer to load the file into
+     * @param path   file to load
+     * @return {@link CompletableFuture} which completes with {@link LoadResult} once whole file is loaded
+     * @throws NullPointerException if buffer or path is null
+     */
+    public CompletableFuture<LoadResult> load(Buffer buffer, Path path) {
+        return load(buffer, path, progress -> { });
+    }
+
+    /**
+     * Replaces contents of given buffer with contents of given file, reading the file on
+     * {@link ForkJoinPool#commonPool()}
+     *
+     * @param buffer           buffer to load the file into
+     * @param path             file to load
+     * @param progressListener listener notified each time a chunk is acknowledged
+     * @return {@link CompletableFuture} which completes with {@link LoadResult} once whole file is loaded
+     * @throws NullPointerException if buffer, path or progressListener is null
+     */
+    public CompletableFuture<LoadResult> load(Buffer buffer, Path path, Consumer<Progress> progressListener) {
+        return load(buffer, path, progressListener, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replaces contents of given buffer with contents of given file
+     * Reading the file is done on given executor, which is never blocked waiting for acknowledgements.
+     * Progress listener is notified on the thread which receives responses.
+     *
+     * @param buffer           buffer to load the file into
+     * @param path             file to load
+     * @param progressListener listener notified each time a chunk is acknowledged
+     * @param executor         executor used to read the file
+     * @return {@link CompletableFuture} which completes with {@link LoadResult} once whole file is loaded
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public CompletableFuture<LoadResult> load(Buffer buffer, Path path, Consumer<Progress> progressListener, Executor executor) {
+        Objects.requireNonNull(buffer, "buffer is required to load a file");
+        Objects.requireNonNull(path, "path is required to load a file");
+        Objects.requireNonNull(progressListener, "progressListener is required to load a file");
+        Objects.requireNonNull(executor, "executor is required to load a file");
+        return new Load(buffer, progressListener, executor).start(path);
+    }
+
+    private final class Load {
+        private final BufferStreamApi bufferApi;
+        private final Consumer<Progress> progressListener;
+        private final Executor executor;
+        private final CompletableFuture<LoadResult> result = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+        private FileChannel channel;
+        private long totalBytes;
+        private MappedByteBuffer mapping;
+        private long mappingOffset;
+        private int position;
+        private int chunks = 0;
+        private long lines = 0;
+        // Guarded by this
+        private int inFlight = 0;
+        private boolean reading = true;
+        private boolean readingDone = false;
+
+        Load(Buffer buffer, Consumer<Progress> progressListener, Executor executor) {
+            this.bufferApi = new BufferStreamApi(reactiveRpcStreamer, buffer);
+            this.progressListener = progressListener;
+            this.executor = executor;
+        }
+
+        CompletableFuture<LoadResult> start(Path path) {
+            executor.execute(() -> {
+                try {
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    totalBytes = channel.size();
+                } catch (IOException e) {
+                    result.completeExceptionally(new UncheckedIOException(e));
+                    return;
+                }
+                read();
+            });
+            return result;
+        }
+
+        /**
+         * Sends chunks until maximum number of chunks is in flight - reading is resumed once one is acknowledged
+         */
+        private void read() {
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (inFlight >= maxInFlight || result.isDone()) {
+                            reading = false;
+                            return;
+                        }
+                    }
+                    var chunk = nextChunk();
+                    if (chunk == null) {
+                        channel.close();
+                        synchronized (this) {
+                            reading = false;
+                            readingDone = true;
+                        }
+                        completeIfDone();
+                        return;
+                    }
+                    sendChunk(chunk);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e instanceof IOException ioException ? new UncheckedIOException(ioException) : e);
+            }
+        }
+
+        private void sendChunk(List<ByteBuffer> chunk) {
+            // First chunk replaces buffer contents, others are appended
+            var startLine = chunks == 0 ? 0 : -1;
+            var loadedBytes = mappingOffset + position;
+            var loadedLines = lines + chunk.size();
+            lines = loadedLines;
+            chunks++;
+            synchronized (this) {
+                inFlight++;
+            }
+            bufferApi.setLinesBytes(startLine, -1, false, chunk).whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    fail(throwable);
+                    return;
+                }
+                progressListener.accept(new Progress(loadedBytes, totalBytes, loadedLines));
+                boolean resume;
+                synchronized (this) {
+                    inFlight--;
+                    resume = !reading && !readingDone;
+                    reading = reading || resume;
+                }
+                if (resume) {
+                    executor.execute(this::read);
+                } else {
+                    completeIfDone();
+                }
+            });
+        }
+
+        private void completeIfDone() {
+            synchronized (this) {
+                if (!readingDone || inFlight > 0) {
+                    return;
+                }
+            }
+            result.complete(new LoadResult(bufferApi.get(), lines, totalBytes, chunks, Duration.ofNanos(System.nanoTime() - start)));
+        }
+
+        private void fail(Throwable throwable) {
+            if (result.completeExceptionally(throwable)) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throwable.addSuppressed(e);
+                }
+            }
+        }
+
+        /**
+         * @return next chunk of lines, empty chunk for an empty file or null once whole file is read
+         */
+        private List<ByteBuffer> nextChunk() throws IOException {
+            var chunk = new ArrayList<ByteBuffer>();
+            var chunkSize = 0;
+            while (chunkSize < chunkBytes) {
+                var line = nextLine();
+                if (line == null) {
+                    break;
+                }
+                chunk.add(line);
+                chunkSize += line.remaining() + 1;
+            }
+            return chunk.isEmpty() && chunks > 0 ? null : chunk;
+        }
+
+        /**
+         * @return slice of the mapping holding the next line or null at the end of file
+         */
+        private ByteBuffer nextLine() throws IOException {
+            while (true) {
+                if (mapping != null) {
+                    var limit = mapping.limit();
+                    for (var i = position; i < limit; i++) {
+                        if (mapping.get(i) == '\n') {
+                            var line = slice(position, i);
+                            position = i + 1;
+                            return line;
+                        }
+                    }
+                    if (mappingOffset + limit == totalBytes) {
+                        if (position == limit) {
+                            return null;
+                        }
+                        var line = slice(position, limit);
+                        position = limit;
+                        return line;
+                    }
+                }
+                // Incomplete line at the end of the mapping - map again from its start
+                var windowStart = mapping == null ? 0 : mappingOffset + position;
+                if (windowStart >= totalBytes) {
+                    return null;
+                }
+                var windowSize = Math.min(MAPPING_WINDOW, totalBytes - windowStart);
+                if (mapping != null && position == 0) {
+                    // Single line longer than the mapping window - map until its end
+                    windowSize = findLineEnd(windowStart + windowSize) - windowStart;
+                }
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+                mappingOffset = windowStart;
+                position = 0;
+            }
+        }
+
+        private ByteBuffer slice(int from, int to) {
+            var end = to > from && mapping.get(to - 1) == '\r' ? to - 1 : to;
+            return mapping.slice(from, end - from);
+        }
+
+        private long findLineEnd(long from) throws IOException {
+            var position = from;
+            while (position < totalBytes) {
+                var size = Math.min(MAPPING_WINDOW, totalBytes - position);
+                var window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                for (int i = 0; i < size; i++) {
+                    if (window.get(i) == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                position += size;
+            }
+            return totalBytes;
+        }
+    }
+}
@@ -36,9 +36,11 @@ import com.ensarsarajcic.neovim.java.api.types.api.HighlightedText;
 import com.ensarsarajcic.neovim.java.api.types.api.VimCoords;
 import com.ensarsarajcic.neovim.java.api.types.api.VimKeyMap;
 import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.util.ByteLines;
 import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
 import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -93,6 +95,27 @@ public final class BufferStreamApi extends BaseStreamApi implements NeovimBuffer
         );
     }
 
+    @Override
+    public CompletableFuture<List<ByteBuffer>> getLinesBytes(int start, int end, boolean strictIndexing) {
+        return sendWithResponseOfByteLines(
+                prepareMessage(GET_LINES)
+                        .addArgument(start)
+                        .addArgument(end)
+                        .addArgument(strictIndexing)
+        );
+    }
+
+    @Override
+    public CompletableFuture<Void> setLinesBytes(int start, int end, boolean strictIndexing, List<ByteBuffer> replacement) {
+        return sendWithNoResponse(
+                prepareMessage(SET_LINES)
+                        .addArgument(start)
+                        .addArgument(end)
+                        .addArgument(strictIndexing)
+                        .addArgument(ByteLines.toBinary(replacement))
+        );
+    }
+
     @Override
     public CompletableFuture<Integer> getOffset(int index) {
         return sendWithResponseOfType(
@@ -267,6 +290,17 @@ public final class BufferStreamApi extends BaseStreamApi implements NeovimBuffer
                         .addArgument(lines));
     }
 
+    @Override
+    public CompletableFuture<Void> setTextBytes(int startRow, int startCol, int endRow, int endCol, List<ByteBuffer> lines) {
+        return sendWithNoResponse(
+                prepareMessage(SET_TEXT)
+                        .addArgument(startRow)
+                        .addArgument(startCol)
+                        .addArgument(endRow)
+                        .addArgument(endCol)
+                        .addArgument(ByteLines.toBinary(lines)));
+    }
+
     @Override
     public CompletableFuture<Void> delete(DeleteBufferOptions options) {
         return sendWithNoResponse(prepareMessage(DELETE).addArgument(options));
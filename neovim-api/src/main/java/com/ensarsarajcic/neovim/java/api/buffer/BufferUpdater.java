@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Replaces contents of buffers by sending only the changed parts
+ * <p>
+ * Instead of replacing whole buffer using {@code nvim_buf_set_lines(0, -1, ...)}, new contents are diffed against
+ * current contents using {@link LineDiff} and only changed hunks are sent, all in a single {@code nvim_call_atomic}
+ * request. Hunks are applied bottom-up, so indexes of earlier hunks stay valid. Hunks which replace lines one for one
+ * are sent as {@code nvim_buf_set_text} calls covering only changed part of each line, while other hunks are sent as
+ * {@code nvim_buf_set_lines} calls. This keeps payloads small and preserves cursor, marks and extmarks outside of
+ * changed regions.
+ * <p>
+ * Hunks are sent with strict indexing, so if buffer was changed since its current contents were read and is now
+ * shorter, update fails with {@link com.ensarsarajcic.neovim.java.corerpc.reactive.RpcException} of the first failed
+ * call. Since calls are applied bottom-up, hunks below the failed one are already applied in that case.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferUpdater bufferUpdater = new BufferUpdater(reactiveRpcStreamer);
+ *     List<LineDiff.Hunk> appliedHunks = bufferUpdater.update(buffer, formattedLines).get();
+ *     }
+ * </pre>
+ */
+public final class BufferUpdater {
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+
+    /**
+     * Creates a new {@link BufferUpdater}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read and update buffers
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public BufferUpdater(ReactiveRpcStreamer reactiveRpcStreamer) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to update buffers");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+    }
+
+    /**
+     * Reads current contents of the buffer and replaces them with given lines, sending only changed hunks
+     *
+     * @param buffer   buffer to update
+     * @param newLines desired contents of the buffer
+     * @return {@link CompletableFuture} which completes with applied hunks once buffer is updated
+     * @throws NullPointerException if buffer or newLines are null
+     */
+    public CompletableFuture<List<LineDiff.Hunk>> update(Buffer buffer, List<String> newLines) {
+        Objects.requireNonNull(buffer, "buffer is required for update");
+        Objects.requireNonNull(newLines, "newLines are required for update");
+        return new BufferStreamApi(reactiveRpcStreamer, buffer).getLines(0, -1, false)
+                .thenCompose(currentLines -> update(buffer, currentLines, newLines));
+    }
+
+    /**
+     * Replaces contents of the buffer with given lines, sending only hunks which differ from known current contents
+     * This avoids reading the buffer when its contents are already known (e.g. from a cache or a mirror)
+     *
+     * @param buffer       buffer to update
+     * @param currentLines current contents of the buffer
+     * @param newLines     desired contents of the buffer
+     * @return {@link CompletableFuture} which completes with applied hunks once buffer is updated
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public CompletableFuture<List<LineDiff.Hunk>> update(Buffer buffer, List<String> currentLines, List<String> newLines) {
+        Objects.requireNonNull(buffer, "buffer is required for update");
+        var hunks = LineDiff.diff(currentLines, newLines);
+        if (hunks.isEmpty()) {
+            return CompletableFuture.completedFuture(hunks);
+        }
+        var batch = new AtomicBatch(reactiveRpcStreamer);
+        var bufferApi = batch.buffer(buffer);
+        var calls = new ArrayList<CompletableFuture<Void>>();
+        for (int i = hunks.size() - 1; i >= 0; i--) {
+            var hunk = hunks.get(i);
+            if (hunk.oldLength() == hunk.newLength()) {
+                // Go from last line to first, just like with hunks
+                for (int line = hunk.oldLength() - 1; line >= 0; line--) {
+                    setChangedText(bufferApi, calls, hunk.oldStart() + line,
+                            currentLines.get(hunk.oldStart() + line), newLines.get(hunk.newStart() + line));
+                }
+            } else {
+                calls.add(bufferApi.setLines(hunk.oldStart(), hunk.oldEnd(), true,
+                        List.copyOf(newLines.subList(hunk.newStart(), hunk.newEnd()))));
+            }
+        }
+        return batch.execute().thenCompose(response -> {
+            if (response.getError() != null) {
+                // Neovim stops on the first failed call - report its failure
+                return calls.get(response.getError().getIndex()).thenApply(ignored -> hunks);
+            }
+            return CompletableFuture.completedFuture(hunks);
+        });
+    }
+
+    private static void setChangedText(NeovimBufferApi bufferApi, List<CompletableFuture<Void>> calls, int row, String oldLine, String newLine) {
+        if (oldLine.equals(newLine)) {
+            return;
+        }
+        int maxCommon = Math.min(oldLine.length(), newLine.length());
+        int prefix = 0;
+        while (prefix < maxCommon && oldLine.charAt(prefix) == newLine.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix > 0 && Character.isHighSurrogate(oldLine.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && oldLine.charAt(oldLine.length() - 1 - suffix) == newLine.charAt(newLine.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(oldLine.charAt(oldLine.length() - suffix))) {
+            suffix--;
+        }
+        int startCol = utf8Length(oldLine, 0, prefix);
+        int endCol = startCol + utf8Length(oldLine, prefix, oldLine.length() - suffix);
+        calls.add(bufferApi.setText(row, startCol, row, endCol, List.of(newLine.substring(prefix, newLine.length() - suffix))));
+    }
+
+    private static int utf8Length(String text, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.api.GetBufferExtmarksOptions;
+import com.ensarsarajcic.neovim.java.api.types.api.VimCoords;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps extmarks (and extmark based highlights) of a namespace in sync with a declared set
+ * <p>
+ * Instead of clearing a namespace and adding all marks again on every change, caller declares the whole desired set
+ * of marks (optionally only for a range of lines) using {@link #apply(List)}. Marks applied before are remembered
+ * together with ids Neovim assigned to them, so only the difference is sent:
+ * <ul>
+ *     <li>marks which are already in place are left alone</li>
+ *     <li>marks which are no longer needed are reused for new marks, by updating them in place using their id
+ *     (this covers moved marks as well)</li>
+ *     <li>remaining marks are deleted and remaining new marks are created</li>
+ * </ul>
+ * Changes are sent in {@code nvim_call_atomic} batches of at most {@code batchSize} calls, all sent without waiting
+ * for each other.
+ * <p>
+ * Since Neovim moves extmarks when text is edited, positions of applied marks are refreshed using
+ * {@code nvim_buf_get_extmarks} (including end positions of ranges) whenever buffer changed since the last apply.
+ * Otherwise, a single
+ * {@code nvim_buf_get_changedtick} request is enough to validate them. Marks found in the namespace which were not
+ * placed by this synchronizer (e.g. by an earlier session) are reused or deleted on the first apply.
+ * <p>
+ * Namespace is expected to be used only by this synchronizer. Applies are executed one after another, in order
+ * they were requested.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     ExtmarkSynchronizer diagnostics = new ExtmarkSynchronizer(reactiveRpcStreamer, buffer, namespaceId);
+ *     diagnostics.apply(List.of(
+ *             ExtmarkSynchronizer.Mark.highlight(10, 4, 12, "DiagnosticUnderlineError"),
+ *             ExtmarkSynchronizer.Mark.highlight(42, 0, 8, "DiagnosticUnderlineWarn")
+ *     ));
+ *     }
+ * </pre>
+ */
+public final class ExtmarkSynchronizer {
+
+    /**
+     * Default maximum number of calls in a single atomic batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    /**
+     * Desired extmark
+     *
+     * @param line    line of the mark (0-indexed)
+     * @param col     column of the mark (0-indexed, in bytes)
+     * @param options options passed to {@code nvim_buf_set_extmark} - must not contain {@code id}
+     */
+    public record Mark(int line, int col, Map<String, Object> options) {
+
+        /**
+         * Creates a new {@link Mark}
+         *
+         * @throws NullPointerException     if options are null
+         * @throws IllegalArgumentException if options contain {@code id}
+         */
+        public Mark {
+            options = Map.copyOf(options);
+            if (options.containsKey("id")) {
+                throw new IllegalArgumentException("Id of a mark is managed by the synchronizer");
+            }
+        }
+
+        /**
+         * Creates a mark highlighting part of a single line, just like {@code nvim_buf_add_highlight}
+         *
+         * @param line     line to highlight (0-indexed)
+         * @param colStart first highlighted column (inclusive, 0-indexed, in bytes)
+         * @param colEnd   last highlighted column (exclusive, 0-indexed, in bytes)
+         * @param hlGroup  highlight group to use
+         * @return a new {@link Mark}
+         */
+        public static Mark highlight(int line, int colStart, int colEnd, String hlGroup) {
+            return new Mark(line, colStart, Map.of("end_row", line, "end_col", colEnd, "hl_group", hlGroup));
+        }
+    }
+
+    /**
+     * Summary of a single apply
+     *
+     * @param unchanged number of marks which were already in place
+     * @param updated   number of existing marks updated in place (moved or changed)
+     * @param created   number of created marks
+     * @param deleted   number of deleted marks
+     * @param batches   number of atomic batches sent
+     */
+    public record ApplyResult(int unchanged, int updated, int created, int deleted, int batches) {
+    }
+
+    /**
+     * Mark known to be in the namespace - options are null for marks which were not placed by this synchronizer
+     */
+    private record AppliedMark(int line, int col, Map<String, Object> options) {
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final Buffer buffer;
+    private final int namespaceId;
+    private final int batchSize;
+
+    private final Map<Integer, AppliedMark> appliedMarks = new HashMap<>();
+    private Long changedTick = null;
+    private CompletableFuture<?> lastApply = CompletableFuture.completedFuture(null);
+
+    /**
+     * Creates a new {@link ExtmarkSynchronizer} using {@link #DEFAULT_BATCH_SIZE}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send changes
+     * @param buffer              buffer to place marks in
+     * @param namespaceId         namespace of marks
+     * @throws NullPointerException if reactiveRpcStreamer or buffer is null
+     */
+    public ExtmarkSynchronizer(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, int namespaceId) {
+        this(reactiveRpcStreamer, buffer, namespaceId, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a new {@link ExtmarkSynchronizer}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to send changes
+     * @param buffer              buffer to place marks in
+     * @param namespaceId         namespace of marks
+     * @param batchSize           maximum number of calls in a single atomic batch
+     * @throws NullPointerException     if reactiveRpcStreamer or buffer is null
+     * @throws IllegalArgumentException if batchSize is not positive
+     */
+    public ExtmarkSynchronizer(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, int namespaceId, int batchSize) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to synchronize extmarks");
+        Objects.requireNonNull(buffer, "buffer is required to synchronize extmarks");
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.buffer = buffer;
+        this.namespaceId = namespaceId;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Makes marks of the namespace equal to given marks
+     *
+     * @param marks desired marks of the whole buffer
+     * @return {@link CompletableFuture} which completes once all changes are applied
+     * @throws NullPointerException if marks are null
+     */
+    public CompletableFuture<ApplyResult> apply(List<Mark> marks) {
+        return apply(marks, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes marks of the namespace placed on lines {@code [startLine, endLine)} equal to given marks
+     * Marks outside of the range are not touched.
+     *
+     * @param marks     desired marks of the range - marks outside of the range are placed as well
+     * @param startLine first line of the range (inclusive)
+     * @param endLine   last line of the range (exclusive)
+     * @return {@link CompletableFuture} which completes once all changes are applied
+     * @throws NullPointerException if marks are null
+     */
+    public CompletableFuture<ApplyResult> apply(List<Mark> marks, int startLine, int endLine) {
+        var desired = List.copyOf(marks);
+        synchronized (this) {
+            var result = lastApply
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> refreshPositions())
+                    .thenCompose(ignored -> send(desired, startLine, endLine));
+            lastApply = result;
+            return result;
+        }
+    }
+
+    /**
+     * Clears the namespace and forgets all applied marks
+     *
+     * @return {@link CompletableFuture} which completes once namespace is cleared
+     */
+    public CompletableFuture<Void> clear() {
+        synchronized (this) {
+            var result = lastApply
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> new BufferStreamApi(reactiveRpcStreamer, buffer).clearNamespace(namespaceId, 0, -1))
+                    .whenComplete((ignored, throwable) -> forget());
+            lastApply = result;
+            return result;
+        }
+    }
+
+    /**
+     * @return number of marks currently known to be applied
+     */
+    public synchronized int getAppliedCount() {
+        return appliedMarks.size();
+    }
+
+    private synchronized void forget() {
+        appliedMarks.clear();
+        changedTick = null;
+    }
+
+    private CompletableFuture<Void> refreshPositions() {
+        var bufferApi = new BufferStreamApi(reactiveRpcStreamer, buffer);
+        return bufferApi.getChangedTick().thenCompose(tick -> {
+            var currentTick = ((Number) tick).longValue();
+            synchronized (this) {
+                if (changedTick != null && changedTick == currentTick) {
+                    return CompletableFuture.completedFuture(null);
+                }
+            }
+            return bufferApi.getExtmarks(namespaceId, new VimCoords(0, 0), new VimCoords(-1, -1), new GetBufferExtmarksOptions(-1, true))
+                    .thenAccept(extmarks -> {
+                        synchronized (this) {
+                            var refreshed = new HashMap<Integer, AppliedMark>();
+                            for (var extmark : extmarks) {
+                                var applied = appliedMarks.get(extmark.getExtmarkId());
+                                refreshed.put(extmark.getExtmarkId(), new AppliedMark(extmark.getRow(), extmark.getCol(),
+                                        applied != null ? refreshOptions(applied.options(), extmark.getDetails()) : null));
+                            }
+                            appliedMarks.clear();
+                            appliedMarks.putAll(refreshed);
+                            changedTick = currentTick;
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Edits move the end of a range independently of its start, so end position is taken from the details as well
+     * Without details, mark can't be validated and is treated as unknown
+     */
+    private static Map<String, Object> refreshOptions(Map<String, Object> options, Map<String, Object> details) {
+        if (options == null || details == null) {
+            return null;
+        }
+        var refreshed = new HashMap<>(options);
+        refreshed.remove("end_row");
+        refreshed.remove("end_col");
+        if (details.get("end_row") instanceof Number endRow) {
+            refreshed.put("end_row", endRow.intValue());
+        }
+        if (details.get("end_col") instanceof Number endCol) {
+            refreshed.put("end_col", endCol.intValue());
+        }
+        return refreshed;
+    }
+
+    private CompletableFuture<ApplyResult> send(List<Mark> desired, int startLine, int endLine) {
+        var available = new LinkedHashMap<Mark, ArrayDeque<Integer>>();
+        var reusable = new ArrayDeque<Integer>();
+        synchronized (this) {
+            appliedMarks.forEach((id, applied) -> {
+                if (applied.line() < startLine || applied.line() >= endLine) {
+                    return;
+                }
+                if (applied.options() == null) {
+                    // Unknown mark can't be matched, but it can be reused or deleted
+                    reusable.add(id);
+                } else {
+                    var mark = new Mark(applied.line(), applied.col(), applied.options());
+                    available.computeIfAbsent(mark, key -> new ArrayDeque<>()).add(id);
+                }
+            });
+        }
+        var missing = new ArrayList<Mark>();
+        int unchanged = 0;
+        for (var mark : desired) {
+            var ids = available.get(mark);
+            if (ids != null && !ids.isEmpty()) {
+                ids.removeFirst();
+                unchanged++;
+            } else {
+                missing.add(mark);
+            }
+        }
+        available.values().forEach(reusable::addAll);
+
+        var calls = new ArrayList<CompletableFuture<?>>();
+        var batches = new ArrayList<AtomicBatch>();
+        int updated = 0;
+        int created = 0;
+        int deleted = 0;
+        for (var mark : missing) {
+            var reusedId = reusable.pollFirst();
+            var options = new HashMap<>(mark.options());
+            if (reusedId != null) {
+                options.put("id", reusedId);
+                updated++;
+            } else {
+                created++;
+            }
+            calls.add(nextBatch(batches).buffer(buffer).setExtmark(namespaceId, mark.line(), mark.col(), options)
+                    .thenAccept(id -> markApplied(id, mark)));
+        }
+        for (var id : reusable) {
+            deleted++;
+            calls.add(nextBatch(batches).buffer(buffer).deleteExtmark(namespaceId, id)
+                    .thenRun(() -> markDeleted(id)));
+        }
+        batches.forEach(AtomicBatch::execute);
+        var result = new ApplyResult(unchanged, updated, created, deleted, batches.size());
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        // State of the namespace is unknown - read it again on next apply
+                        forgetChangedTick();
+                    }
+                })
+                .thenApply(ignored -> result);
+    }
+
+    private AtomicBatch nextBatch(List<AtomicBatch> batches) {
+        if (batches.isEmpty() || batches.get(batches.size() - 1).size() >= batchSize) {
+            batches.add(new AtomicBatch(reactiveRpcStreamer));
+        }
+        return batches.get(batches.size() - 1);
+    }
+
+    private synchronized void markApplied(int id, Mark mark) {
+        appliedMarks.put(id, new AppliedMark(mark.line(), mark.col(), mark.options()));
+    }
+
+    private synchronized void markDeleted(int id) {
+        appliedMarks.remove(id);
+    }
+
+    private synchronized void forgetChangedTick() {
+        changedTick = null;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Line based diff, used to turn a rewrite of a buffer into a minimal set of changes
+ * <p>
+ * Common prefix and suffix of both versions are skipped first, so usual edits (changes concentrated in one place)
+ * are found in linear time. Remaining lines are diffed using Myers algorithm, with lines interned into integers
+ * beforehand, so they are compared only once. If versions differ in more than {@link #MAX_EDIT_DISTANCE} lines,
+ * whole remaining region is reported as a single hunk instead, to keep time and memory bounded.
+ */
+public final class LineDiff {
+
+    /**
+     * Maximum number of inserted and deleted lines diffed precisely
+     */
+    public static final int MAX_EDIT_DISTANCE = 1024;
+
+    /**
+     * Single change - lines {@code [oldStart, oldEnd)} of old version are replaced by
+     * lines {@code [newStart, newEnd)} of new version
+     *
+     * @param oldStart first replaced line of old version (inclusive)
+     * @param oldEnd   last replaced line of old version (exclusive)
+     * @param newStart first replacing line of new version (inclusive)
+     * @param newEnd   last replacing line of new version (exclusive)
+     */
+    public record Hunk(int oldStart, int oldEnd, int newStart, int newEnd) {
+
+        /**
+         * @return number of replaced lines of old version
+         */
+        public int oldLength() {
+            return oldEnd - oldStart;
+        }
+
+        /**
+         * @return number of replacing lines of new version
+         */
+        public int newLength() {
+            return newEnd - newStart;
+        }
+    }
+
+    private LineDiff() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Finds changes needed to turn old lines into new lines
+     *
+     * @param oldLines old version
+     * @param newLines new version
+     * @return hunks ordered by position, never overlapping or touching each other - empty if versions are equal
+     * @throws NullPointerException if any of the versions is null
+     */
+    public static List<Hunk> diff(List<String> oldLines, List<String> newLines) {
+        Objects.requireNonNull(oldLines, "oldLines are required for diff");
+        Objects.requireNonNull(newLines, "newLines are required for diff");
+        int oldEnd = oldLines.size();
+        int newEnd = newLines.size();
+        int prefix = 0;
+        while (prefix < oldEnd && prefix < newEnd && oldLines.get(prefix).equals(newLines.get(prefix))) {
+            prefix++;
+        }
+        while (oldEnd > prefix && newEnd > prefix && oldLines.get(oldEnd - 1).equals(newLines.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+        }
+        if (prefix == oldEnd && prefix == newEnd) {
+            return List.of();
+        }
+        if (prefix == oldEnd || prefix == newEnd) {
+            // Pure insertion or deletion
+            return List.of(new Hunk(prefix, oldEnd, prefix, newEnd));
+        }
+
+        var interned = new HashMap<String, Integer>();
+        var a = intern(oldLines, prefix, oldEnd, interned);
+        var b = intern(newLines, prefix, newEnd, interned);
+        var hunks = myers(a, b);
+        if (hunks == null) {
+            return List.of(new Hunk(prefix, oldEnd, prefix, newEnd));
+        }
+        var shifted = new ArrayList<Hunk>(hunks.size());
+        for (var hunk : hunks) {
+            shifted.add(new Hunk(hunk.oldStart() + prefix, hunk.oldEnd() + prefix,
+                    hunk.newStart() + prefix, hunk.newEnd() + prefix));
+        }
+        return shifted;
+    }
+
+    private static int[] intern(List<String> lines, int from, int to, HashMap<String, Integer> interned) {
+        var result = new int[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = interned.computeIfAbsent(lines.get(i), line -> interned.size());
+        }
+        return result;
+    }
+
+    /**
+     * Greedy Myers diff, keeping a copy of the frontier for each edit distance to recover the path
+     *
+     * @return hunks or null if edit distance exceeds {@link #MAX_EDIT_DISTANCE}
+     */
+    private static List<Hunk> myers(int[] a, int[] b) {
+        int n = a.length;
+        int m = b.length;
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        var v = new int[2 * max + 3];
+        var trace = new ArrayList<int[]>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, n, m);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<Hunk> backtrack(List<int[]> trace, int n, int m) {
+        var hunks = new ArrayList<Hunk>();
+        int x = n;
+        int y = m;
+        // Current hunk is extended backwards while consecutive edits are found
+        int hunkOldEnd = -1;
+        int hunkNewEnd = -1;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            var v = trace.get(d);
+            int base = d + 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[base + k - 1] < v[base + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = v[base + prevK];
+            int prevY = prevX - prevK;
+            if (x > prevX + (prevK < k ? 1 : 0) || y > prevY + (prevK > k ? 1 : 0)) {
+                // Snake of equal lines ends current hunk
+                if (hunkOldEnd >= 0) {
+                    hunks.add(0, new Hunk(x, hunkOldEnd, y, hunkNewEnd));
+                    hunkOldEnd = -1;
+                }
+                int snake = Math.min(x - prevX - (prevK < k ? 1 : 0), y - prevY - (prevK > k ? 1 : 0));
+                x -= snake;
+                y -= snake;
+            }
+            if (hunkOldEnd < 0) {
+                hunkOldEnd = x;
+                hunkNewEnd = y;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        if (hunkOldEnd >= 0) {
+            hunks.add(0, new Hunk(x, hunkOldEnd, y, hunkNewEnd));
+        }
+        return hunks;
+    }
+}
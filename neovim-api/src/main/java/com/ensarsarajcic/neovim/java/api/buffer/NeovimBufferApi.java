@@ -36,6 +36,7 @@ import com.ensarsarajcic.neovim.java.api.types.api.VimCoords;
 import com.ensarsarajcic.neovim.java.api.types.api.VimKeyMap;
 import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -97,6 +98,22 @@ public interface NeovimBufferApi {
     @NeovimApiFunction(name = SET_LINES, since = 1)
     CompletableFuture<Void> setLines(int start, int end, boolean strictIndexing, List<String> replacement);
 
+    /**
+     * Same as {@link #getLines(int, int, boolean)}, but lines are provided as raw bytes
+     * Lines are read directly from the response without decoding or copying them, so invalid UTF-8 is preserved
+     *
+     * @return read-only buffers, one per line
+     */
+    @NeovimApiFunction(name = GET_LINES, since = 1)
+    CompletableFuture<List<ByteBuffer>> getLinesBytes(int start, int end, boolean strictIndexing);
+
+    /**
+     * Same as {@link #setLines(int, int, boolean, List)}, but lines are provided as raw bytes
+     * Lines are sent as they are, without encoding them
+     */
+    @NeovimApiFunction(name = SET_LINES, since = 1)
+    CompletableFuture<Void> setLinesBytes(int start, int end, boolean strictIndexing, List<ByteBuffer> replacement);
+
     @NeovimApiFunction(name = GET_OFFSET, since = 5)
     CompletableFuture<Integer> getOffset(int index);
 
@@ -170,6 +187,13 @@ public interface NeovimBufferApi {
     @NeovimApiFunction(name = SET_TEXT, since = 7)
     CompletableFuture<Void> setText(int startRow, int startCol, int endRow, int endCol, List<String> lines);
 
+    /**
+     * Same as {@link #setText(int, int, int, int, List)}, but lines are provided as raw bytes
+     * Lines are sent as they are, without encoding them
+     */
+    @NeovimApiFunction(name = SET_TEXT, since = 7)
+    CompletableFuture<Void> setTextBytes(int startRow, int startCol, int endRow, int endCol, List<ByteBuffer> lines);
+
     @NeovimApiFunction(name = DELETE, since = 7)
     CompletableFuture<Void> delete(DeleteBufferOptions options);
 
@@ -0,0 +1,381 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Read cache of buffer lines, validated using {@code b:changedtick} instead of buffer attachment
+ * <p>
+ * Every range of lines read through this cache is kept together with the changedtick of the buffer it was read at.
+ * A new read first checks the current changedtick and fetches lines only if it has changed, so repeated reads of
+ * unchanged buffers cost a single tiny request. Reads passed together to {@link #getLines(List)} check all
+ * changedticks (and fetch ranges which are not cached at all) in a single {@code nvim_call_atomic} request. Once
+ * it completes, all stale ranges are refreshed together in a second atomic request.
+ * <p>
+ * Ranges are matched exactly, with one exception: once a whole buffer ({@code 0} to {@code -1}) is cached, any
+ * other range of the same buffer is served from it.
+ * <p>
+ * Cache is bounded by an approximate byte budget, shared by all buffers. Least recently used ranges are evicted
+ * first. Ranges larger than the whole budget are never cached.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferLineCache cache = new BufferLineCache(reactiveRpcStreamer, 16 * 1024 * 1024);
+ *
+ *     List<String> lines = cache.getLines(buffer, 0, -1, false).get();
+ *     // Only checks nvim_buf_get_changedtick, unless buffer was modified in the meantime
+ *     List<String> sameLines = cache.getLines(buffer, 0, -1, false).get();
+ *     }
+ * </pre>
+ */
+public final class BufferLineCache {
+
+    /**
+     * Default byte budget of the cache
+     */
+    public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final long ENTRY_OVERHEAD = 96;
+    private static final long LINE_OVERHEAD = 40;
+
+    /**
+     * Single read of a range of lines, with the same semantics as {@code nvim_buf_get_lines}
+     *
+     * @param buffer         buffer to read lines from
+     * @param start          first line index (inclusive), negative values are counted from the end
+     * @param end            last line index (exclusive), negative values are counted from the end
+     * @param strictIndexing whether out of bounds indexes should be an error
+     */
+    public record LineRead(Buffer buffer, int start, int end, boolean strictIndexing) {
+
+        /**
+         * Creates a new {@link LineRead}
+         *
+         * @throws NullPointerException if buffer is null
+         */
+        public LineRead {
+            Objects.requireNonNull(buffer, "buffer is required to read lines");
+        }
+    }
+
+    private record RangeKey(long bufferId, int start, int end, boolean strictIndexing) {
+    }
+
+    private record Entry(long changedTick, List<String> lines, long bytes) {
+    }
+
+    private record CachedRead(LineRead lineRead, Entry cached, CompletableFuture<Object> changedTick,
+                              CompletableFuture<List<String>> result) {
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final long maxBytes;
+
+    private final LinkedHashMap<RangeKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Set<RangeKey>> bufferRanges = new HashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * Creates a new {@link BufferLineCache} with {@link #DEFAULT_MAX_BYTES} budget
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read lines
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public BufferLineCache(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a new {@link BufferLineCache}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read lines
+     * @param maxBytes            approximate maximum size of cached lines in bytes
+     * @throws NullPointerException     if reactiveRpcStreamer is null
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public BufferLineCache(ReactiveRpcStreamer reactiveRpcStreamer, long maxBytes) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for line cache");
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes can't be negative");
+        }
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads lines of a buffer, using cached lines if buffer was not changed since they were read
+     *
+     * @param buffer         buffer to read lines from
+     * @param start          first line index (inclusive), negative values are counted from the end
+     * @param end            last line index (exclusive), negative values are counted from the end
+     * @param strictIndexing whether out of bounds indexes should be an error
+     * @return {@link CompletableFuture} which completes with unmodifiable list of lines
+     * @throws NullPointerException if buffer is null
+     */
+    public CompletableFuture<List<String>> getLines(Buffer buffer, int start, int end, boolean strictIndexing) {
+        return read(List.of(new LineRead(buffer, start, end, strictIndexing)), true).get(0);
+    }
+
+    /**
+     * Performs multiple reads, checking changedticks of all involved buffers in a single atomic request
+     * <p>
+     * Each read completes on its own, so a failed read (e.g. of a deleted buffer) does not fail other reads.
+     *
+     * @param reads reads to perform
+     * @return {@link CompletableFuture} of unmodifiable list of lines for each read, in order of reads
+     * @throws NullPointerException if reads is null
+     */
+    public List<CompletableFuture<List<String>>> getLines(List<LineRead> reads) {
+        Objects.requireNonNull(reads, "reads are required");
+        return read(reads, true);
+    }
+
+    /**
+     * Drops cached lines of given buffer
+     *
+     * @param buffer buffer to drop lines of
+     */
+    public synchronized void invalidate(Buffer buffer) {
+        var ranges = bufferRanges.remove(buffer.getId());
+        if (ranges != null) {
+            ranges.forEach(this::removeEntry);
+        }
+    }
+
+    /**
+     * Drops all cached lines
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bufferRanges.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * @return approximate size of currently cached lines in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return number of currently cached line ranges
+     */
+    public synchronized int getCachedRangeCount() {
+        return entries.size();
+    }
+
+    private List<CompletableFuture<List<String>>> read(List<LineRead> reads, boolean retryCancelled) {
+        var batch = new AtomicBatch(reactiveRpcStreamer);
+        var changedTicks = new HashMap<Long, CompletableFuture<Object>>();
+        var cachedReads = new ArrayList<CachedRead>();
+        var results = new ArrayList<CompletableFuture<List<String>>>(reads.size());
+        for (var lineRead : reads) {
+            var buffer = lineRead.buffer();
+            var changedTick = changedTicks.computeIfAbsent(buffer.getId(), id -> batch.buffer(buffer).getChangedTick());
+            var cached = lookup(lineRead);
+            CompletableFuture<List<String>> result;
+            if (cached != null) {
+                // Completed once all changedticks are known, so that stale reads can be fetched together
+                result = new CompletableFuture<>();
+                cachedReads.add(new CachedRead(lineRead, cached, changedTick, result));
+            } else {
+                var lines = batch.buffer(buffer).getLines(lineRead.start(), lineRead.end(), lineRead.strictIndexing());
+                result = changedTick.thenCombine(lines, (tick, fetched) -> store(lineRead, toLong(tick), fetched));
+            }
+            if (retryCancelled) {
+                // Calls queued after a failed call are not executed - read those again on their own
+                result = result.exceptionallyCompose(throwable -> isCancellation(throwable)
+                        ? read(List.of(lineRead), false).get(0)
+                        : CompletableFuture.failedFuture(throwable));
+            }
+            results.add(result);
+        }
+        batch.execute();
+        if (!cachedReads.isEmpty()) {
+            CompletableFuture.allOf(changedTicks.values().toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, throwable) -> refreshStale(cachedReads));
+        }
+        return results;
+    }
+
+    /**
+     * Completes cached reads which are still valid and fetches all stale ones in a single atomic request
+     */
+    private void refreshStale(List<CachedRead> cachedReads) {
+        var batch = new AtomicBatch(reactiveRpcStreamer);
+        var changedTicks = new HashMap<Long, CompletableFuture<Object>>();
+        for (var cachedRead : cachedReads) {
+            var tickFuture = cachedRead.changedTick();
+            if (tickFuture.isCompletedExceptionally()) {
+                tickFuture.whenComplete((tick, throwable) -> cachedRead.result().completeExceptionally(throwable));
+                continue;
+            }
+            var tick = tickFuture.join();
+            if (toLong(tick) == cachedRead.cached().changedTick()) {
+                cachedRead.result().complete(cachedRead.cached().lines());
+                continue;
+            }
+            var lineRead = cachedRead.lineRead();
+            var buffer = lineRead.buffer();
+            var changedTick = changedTicks.computeIfAbsent(buffer.getId(), id -> batch.buffer(buffer).getChangedTick());
+            var lines = batch.buffer(buffer).getLines(lineRead.start(), lineRead.end(), lineRead.strictIndexing());
+            changedTick.thenCombine(lines, (newTick, fetched) -> store(lineRead, toLong(newTick), fetched))
+                    .whenComplete((fetched, throwable) -> {
+                        if (throwable != null) {
+                            cachedRead.result().completeExceptionally(throwable);
+                        } else {
+                            cachedRead.result().complete(fetched);
+                        }
+                    });
+        }
+        if (batch.size() > 0) {
+            batch.execute();
+        }
+    }
+
+    private synchronized Entry lookup(LineRead lineRead) {
+        var bufferId = lineRead.buffer().getId();
+        var exact = entries.get(new RangeKey(bufferId, lineRead.start(), lineRead.end(), lineRead.strictIndexing()));
+        if (exact != null) {
+            return exact;
+        }
+        var whole = entries.get(new RangeKey(bufferId, 0, -1, false));
+        if (whole == null) {
+            whole = entries.get(new RangeKey(bufferId, 0, -1, true));
+        }
+        if (whole == null) {
+            return null;
+        }
+        var lines = slice(whole.lines(), lineRead);
+        return lines != null ? new Entry(whole.changedTick(), lines, 0) : null;
+    }
+
+    private synchronized List<String> store(LineRead lineRead, long changedTick, List<String> fetched) {
+        var lines = List.copyOf(fetched);
+        var bufferId = lineRead.buffer().getId();
+        var ranges = bufferRanges.computeIfAbsent(bufferId, id -> new HashSet<>());
+        for (var range : List.copyOf(ranges)) {
+            var existing = entries.get(range);
+            if (existing.changedTick() > changedTick) {
+                // A newer read already completed - don't replace it with older lines
+                return lines;
+            }
+            if (existing.changedTick() < changedTick) {
+                ranges.remove(range);
+                removeEntry(range);
+            }
+        }
+        var bytes = estimateSize(lines);
+        if (bytes > maxBytes) {
+            if (ranges.isEmpty()) {
+                bufferRanges.remove(bufferId);
+            }
+            return lines;
+        }
+        var key = new RangeKey(bufferId, lineRead.start(), lineRead.end(), lineRead.strictIndexing());
+        ranges.add(key);
+        removeEntry(key);
+        entries.put(key, new Entry(changedTick, lines, bytes));
+        usedBytes += bytes;
+        evict();
+        return lines;
+    }
+
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            usedBytes -= eldest.getValue().bytes();
+            var ranges = bufferRanges.get(eldest.getKey().bufferId());
+            ranges.remove(eldest.getKey());
+            if (ranges.isEmpty()) {
+                bufferRanges.remove(eldest.getKey().bufferId());
+            }
+        }
+    }
+
+    private void removeEntry(RangeKey key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.bytes();
+        }
+    }
+
+    /**
+     * Applies {@code nvim_buf_get_lines} indexing to a locally available whole buffer
+     *
+     * @return lines in range or null if the read would fail in Neovim (strict indexing out of bounds)
+     */
+    private static List<String> slice(List<String> lines, LineRead lineRead) {
+        int lineCount = lines.size();
+        var start = normalizeIndex(lineRead.start(), lineCount);
+        var end = normalizeIndex(lineRead.end(), lineCount);
+        if (lineRead.strictIndexing() && (start < 0 || start > lineCount || end < 0 || end > lineCount)) {
+            return null;
+        }
+        start = Math.max(0, Math.min(start, lineCount));
+        end = Math.max(0, Math.min(end, lineCount));
+        return start >= end ? List.of() : lines.subList(start, end);
+    }
+
+    private static int normalizeIndex(int index, int lineCount) {
+        return index < 0 ? lineCount + 1 + index : index;
+    }
+
+    private static long estimateSize(List<String> lines) {
+        long size = ENTRY_OVERHEAD;
+        for (var line : lines) {
+            size += LINE_OVERHEAD + line.length();
+        }
+        return size;
+    }
+
+    private static long toLong(Object changedTick) {
+        return ((Number) changedTick).longValue();
+    }
+
+    private static boolean isCancellation(Throwable throwable) {
+        var cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause instanceof CancellationException;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Helpers shared by caches in this package
+ */
+final class CacheSupport {
+
+    private CacheSupport() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Provides cached value for given key, loading it if it is not present
+     * Failed loads are not kept in cache, so next request for the same key tries to load it again
+     *
+     * @param cache  map holding cached values
+     * @param key    key of the value
+     * @param loader loads the value if it is not in cache
+     * @return {@link CompletableFuture} of cached or loaded value
+     */
+    static <K, V> CompletableFuture<V> cached(Map<K, CompletableFuture<V>> cache, K key, Supplier<CompletableFuture<V>> loader) {
+        var cachedValue = cache.get(key);
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+        var loaded = cache.computeIfAbsent(key, k -> loader.get());
+        loaded.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                cache.remove(key, loaded);
+            }
+        });
+        return loaded;
+    }
+}
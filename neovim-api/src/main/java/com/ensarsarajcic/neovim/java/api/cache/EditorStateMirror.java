@@ -0,0 +1,326 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimHandles;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Tabpage;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Local mirror of current buffer, window, tabpage, mode and cursor position, kept up to date using autocommands
+ * <p>
+ * Once {@link #start()} is called, a small set of autocommands ({@code BufEnter}, {@code WinEnter},
+ * {@code TabEnter}, {@code ModeChanged}, {@code CursorMoved} and {@code CursorMovedI}) is registered in Neovim. Each
+ * of them sends the whole state in a single notification over this connection, so {@link #getSnapshot()} answers
+ * "where am I" questions without any requests. Cursor movements are throttled - at most one notification is sent per
+ * throttle interval, carrying the latest position, so cursor position may lag behind by up to that interval.
+ * <p>
+ * Snapshots are immutable and versioned - each applied update increments the version, so handlers can cheaply check
+ * whether anything changed since they last looked.
+ * <p>
+ * Only one {@link EditorStateMirror} should be started per connection.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     EditorStateMirror mirror = new EditorStateMirror(reactiveRpcStreamer);
+ *     mirror.start().get();
+ *
+ *     EditorStateMirror.Snapshot snapshot = mirror.getSnapshot();
+ *     Buffer currentBuffer = snapshot.buffer();
+ *     }
+ * </pre>
+ */
+public final class EditorStateMirror {
+    private static final Logger log = LoggerFactory.getLogger(EditorStateMirror.class);
+
+    /**
+     * Name of notifications sent by registered autocommands
+     */
+    public static final String NOTIFICATION_NAME = "neovim_java_editor_state";
+
+    /**
+     * Default interval of cursor movement notifications
+     */
+    public static final Duration DEFAULT_CURSOR_THROTTLE = Duration.ofMillis(20);
+
+    private static final String GROUP_PREFIX = "NeovimJavaEditorState";
+
+    /**
+     * State of the editor at a point in time
+     *
+     * @param version version of this snapshot, incremented with every update (0 before the mirror is started)
+     * @param buffer  current buffer
+     * @param window  current window
+     * @param tabpage current tabpage
+     * @param mode    current mode, as reported by {@code mode(1)}
+     * @param line    cursor line (1-indexed, just like {@code nvim_win_get_cursor})
+     * @param column  cursor column (0-indexed, in bytes, just like {@code nvim_win_get_cursor})
+     */
+    public record Snapshot(long version, Buffer buffer, Window window, Tabpage tabpage, String mode, int line, int column) {
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(0, null, null, null, null, 0, 0);
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final NeovimApi neovimApi;
+    private final Duration cursorThrottle;
+
+    private volatile Snapshot snapshot = EMPTY;
+    private volatile boolean active = false;
+    private Integer channelId;
+    private StateSubscriber subscriber;
+
+    /**
+     * Creates a new {@link EditorStateMirror} throttling cursor movements to {@link #DEFAULT_CURSOR_THROTTLE}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to register autocommands and receive notifications
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public EditorStateMirror(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, DEFAULT_CURSOR_THROTTLE);
+    }
+
+    /**
+     * Creates a new {@link EditorStateMirror}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to register autocommands and receive notifications
+     * @param cursorThrottle      minimum interval between cursor movement notifications
+     * @throws NullPointerException     if reactiveRpcStreamer or cursorThrottle is null
+     * @throws IllegalArgumentException if cursorThrottle is negative
+     */
+    public EditorStateMirror(ReactiveRpcStreamer reactiveRpcStreamer, Duration cursorThrottle) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for editor state mirror");
+        Objects.requireNonNull(cursorThrottle, "cursorThrottle is required for editor state mirror");
+        if (cursorThrottle.isNegative()) {
+            throw new IllegalArgumentException("cursorThrottle can't be negative");
+        }
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+        this.cursorThrottle = cursorThrottle;
+    }
+
+    /**
+     * Registers autocommands and reads initial state
+     *
+     * @return {@link CompletableFuture} which completes once initial state is available
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (subscriber == null) {
+            subscriber = new StateSubscriber();
+            reactiveRpcStreamer.notificationsFlow().subscribe(subscriber);
+        }
+        return neovimApi.getChannelInfo(0)
+                .thenCompose(channelInfo -> {
+                    synchronized (this) {
+                        channelId = channelInfo.getId();
+                    }
+                    return neovimApi.exec(createRegistrationScript(channelInfo.getId(), cursorThrottle.toMillis()), false)
+                            .thenCompose(output -> neovimApi.callFunction(stateFunction(channelInfo.getId()), List.of()));
+                })
+                .thenAccept(state -> {
+                    synchronized (this) {
+                        // Notifications may have already delivered a newer state
+                        if (snapshot.version() == 0) {
+                            update((List<?>) state, 0);
+                        }
+                    }
+                    active = true;
+                });
+    }
+
+    /**
+     * Removes registered autocommands and stops updating the snapshot
+     *
+     * @return {@link CompletableFuture} which completes once autocommands are removed
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        active = false;
+        if (subscriber != null) {
+            subscriber.cancel();
+            subscriber = null;
+        }
+        if (channelId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var script = createRemovalScript(channelId);
+        channelId = null;
+        return neovimApi.exec(script, false).thenApply(output -> null);
+    }
+
+    /**
+     * @return true if snapshot is currently being updated
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Provides latest known state of the editor
+     * If mirror is not started, returned snapshot has version 0 and no state
+     *
+     * @return latest {@link Snapshot}
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Applies a state tuple - {@code [buffer, window, tabpage, mode, line, column]}, starting at given index
+     */
+    private synchronized void update(List<?> state, int offset) {
+        var current = snapshot;
+        snapshot = new Snapshot(
+                current.version() + 1,
+                NeovimHandles.buffer(((Number) state.get(offset)).longValue()),
+                NeovimHandles.window(((Number) state.get(offset + 1)).longValue()),
+                NeovimHandles.tabpage(((Number) state.get(offset + 2)).longValue()),
+                (String) state.get(offset + 3),
+                ((Number) state.get(offset + 4)).intValue(),
+                ((Number) state.get(offset + 5)).intValue()
+        );
+    }
+
+    private static String stateFunction(int channelId) {
+        return GROUP_PREFIX + "State" + channelId;
+    }
+
+    private static String createRegistrationScript(int channelId, long throttleMillis) {
+        var state = stateFunction(channelId);
+        var notify = GROUP_PREFIX + "Notify" + channelId;
+        var cursor = GROUP_PREFIX + "Cursor" + channelId;
+        var flush = GROUP_PREFIX + "Flush" + channelId;
+        var timer = "g:" + GROUP_PREFIX + "Timer" + channelId;
+        return String.join("\n",
+                "function! " + state + "() abort",
+                "  return [nvim_get_current_buf(), nvim_get_current_win(), nvim_get_current_tabpage(),"
+                        + " mode(1), line('.'), col('.') - 1]",
+                "endfunction",
+                "function! " + notify + "(event) abort",
+                "  call rpcnotify(" + channelId + ", '" + NOTIFICATION_NAME + "', a:event, " + state + "())",
+                "endfunction",
+                "let " + timer + " = -1",
+                "function! " + flush + "(timer) abort",
+                "  let " + timer + " = -1",
+                "  call " + notify + "('CursorMoved')",
+                "endfunction",
+                "function! " + cursor + "() abort",
+                "  if " + timer + " == -1",
+                "    let " + timer + " = timer_start(" + throttleMillis + ", '" + flush + "')",
+                "  endif",
+                "endfunction",
+                "augroup " + GROUP_PREFIX + channelId,
+                "  autocmd!",
+                "  autocmd BufEnter * call " + notify + "('BufEnter')",
+                "  autocmd WinEnter * call " + notify + "('WinEnter')",
+                "  autocmd TabEnter * call " + notify + "('TabEnter')",
+                "  autocmd ModeChanged * call " + notify + "('ModeChanged')",
+                "  autocmd CursorMoved,CursorMovedI * call " + cursor + "()",
+                "augroup END"
+        );
+    }
+
+    private static String createRemovalScript(int channelId) {
+        var timer = "g:" + GROUP_PREFIX + "Timer" + channelId;
+        return String.join("\n",
+                "augroup " + GROUP_PREFIX + channelId,
+                "  autocmd!",
+                "augroup END",
+                "augroup! " + GROUP_PREFIX + channelId,
+                "if " + timer + " != -1",
+                "  call timer_stop(" + timer + ")",
+                "endif",
+                "unlet " + timer,
+                "delfunction " + GROUP_PREFIX + "Cursor" + channelId,
+                "delfunction " + GROUP_PREFIX + "Flush" + channelId,
+                "delfunction " + GROUP_PREFIX + "Notify" + channelId,
+                "delfunction " + stateFunction(channelId)
+        );
+    }
+
+    private final class StateSubscriber implements Flow.Subscriber<NotificationMessage> {
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            var current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(NotificationMessage item) {
+            if (cancelled || !NOTIFICATION_NAME.equals(item.getName())) {
+                return;
+            }
+            try {
+                var arguments = item.getArguments();
+                log.trace("Editor state changed on {}", arguments.get(0));
+                update((List<?>) arguments.get(1), 0);
+            } catch (RuntimeException e) {
+                log.error("Failed to process editor state notification {}", item, e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (cancelled) {
+                return;
+            }
+            log.error("Editor state notifications failed - mirror stopped", throwable);
+            active = false;
+        }
+
+        @Override
+        public void onComplete() {
+            active = false;
+        }
+    }
+}
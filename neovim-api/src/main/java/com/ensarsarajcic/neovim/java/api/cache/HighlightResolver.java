@@ -0,0 +1,348 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.api.HighlightDefinition;
+import com.ensarsarajcic.neovim.java.api.util.ByteLines;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.value.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+
+/**
+ * Typed and cached resolution of highlight groups and colors
+ * <p>
+ * Highlight definitions are cached by id and by name and are dropped when color scheme changes. Once
+ * {@link #start()} is called, a {@code ColorScheme} autocommand is registered which notifies this resolver over
+ * the connection. Highlight ids and colors by name do not depend on color scheme and stay cached.
+ * Highlights changed without loading a color scheme (e.g. by {@code :highlight} or {@code nvim_set_hl}) are not
+ * detected - use {@link #invalidate()} after such changes.
+ * <p>
+ * When a UI is attached on the same connection, {@code hl_attr_define} and {@code hl_group_set} events of
+ * {@code redraw} notifications are picked up after {@link #start()} (they may also be fed manually, using
+ * {@link #defineAttributes(int, HighlightDefinition)} and {@link #setGroupAttributes(String, int)}). Attributes of
+ * UI groups are then resolved by name without any requests. Only these events are decoded from {@code redraw}
+ * notifications which were received with raw arguments - all other UI events are skipped without decoding them.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     HighlightResolver resolver = new HighlightResolver(reactiveRpcStreamer);
+ *     resolver.start().get();
+ *
+ *     CompletableFuture<HighlightDefinition> comment = resolver.getHighlightByName("Comment");
+ *     }
+ * </pre>
+ */
+public final class HighlightResolver {
+    private static final Logger log = LoggerFactory.getLogger(HighlightResolver.class);
+
+    /**
+     * Name of notifications sent by registered autocommand
+     */
+    public static final String NOTIFICATION_NAME = "neovim_java_highlight_resolver";
+
+    private static final String GROUP_PREFIX = "NeovimJavaHighlightResolver";
+    private static final String REDRAW = "redraw";
+    private static final String HL_ATTR_DEFINE = "hl_attr_define";
+    private static final String HL_GROUP_SET = "hl_group_set";
+
+    private final NeovimApi neovimApi;
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final ObjectMapper objectMapper;
+    private final Map<Integer, CompletableFuture<HighlightDefinition>> highlightsById = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<HighlightDefinition>> highlightsByName = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Integer>> highlightIds = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Integer>> colors = new ConcurrentHashMap<>();
+    private final Map<Integer, HighlightDefinition> attributes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> groupAttributes = new ConcurrentHashMap<>();
+
+    private Integer channelId;
+    private Flow.Subscription subscription;
+    private boolean subscribed = false;
+
+    /**
+     * Creates a new {@link HighlightResolver}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to resolve highlights and receive notifications
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public HighlightResolver(ReactiveRpcStreamer reactiveRpcStreamer) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for highlight resolver");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+        this.objectMapper = ObjectMappers.defaultNeovimMapper();
+    }
+
+    /**
+     * Registers {@code ColorScheme} autocommand which invalidates cached highlights
+     * Until it is called, highlights are cached, but never invalidated automatically
+     *
+     * @return {@link CompletableFuture} which completes once autocommand is registered
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (!subscribed) {
+            subscribed = true;
+            reactiveRpcStreamer.notificationsFlow().subscribe(new InvalidationSubscriber());
+        }
+        return neovimApi.getChannelInfo(0)
+                .thenCompose(channelInfo -> {
+                    synchronized (this) {
+                        channelId = channelInfo.getId();
+                    }
+                    return neovimApi.exec(String.join("\n",
+                            "augroup " + GROUP_PREFIX + channelInfo.getId(),
+                            "  autocmd!",
+                            "  autocmd ColorScheme * call rpcnotify(" + channelInfo.getId() + ", '" + NOTIFICATION_NAME + "', expand('<amatch>'))",
+                            "augroup END"
+                    ), false);
+                })
+                .thenApply(output -> null);
+    }
+
+    /**
+     * Removes registered autocommand and stops receiving notifications
+     *
+     * @return {@link CompletableFuture} which completes once autocommand is removed
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+        subscribed = false;
+        if (channelId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var group = GROUP_PREFIX + channelId;
+        channelId = null;
+        return neovimApi.exec(String.join("\n",
+                "augroup " + group,
+                "  autocmd!",
+                "augroup END",
+                "augroup! " + group
+        ), false).thenApply(output -> null);
+    }
+
+    /**
+     * Provides RGB definition of highlight group with given id
+     *
+     * @param id id of the highlight group
+     * @return {@link CompletableFuture} which completes with {@link HighlightDefinition}
+     */
+    public CompletableFuture<HighlightDefinition> getHighlightById(int id) {
+        return CacheSupport.cached(highlightsById, id, () -> neovimApi.getHighlightById(id, true)
+                .thenApply(map -> objectMapper.convertValue(map, HighlightDefinition.class)));
+    }
+
+    /**
+     * Provides RGB definition of highlight group with given name
+     * Definitions of UI groups received through {@link #setGroupAttributes(String, int)} are resolved locally
+     *
+     * @param name name of the highlight group
+     * @return {@link CompletableFuture} which completes with {@link HighlightDefinition}
+     */
+    public CompletableFuture<HighlightDefinition> getHighlightByName(String name) {
+        var attributeId = groupAttributes.get(name);
+        if (attributeId != null) {
+            var definition = attributes.get(attributeId);
+            if (definition != null) {
+                return CompletableFuture.completedFuture(definition);
+            }
+        }
+        return CacheSupport.cached(highlightsByName, name, () -> neovimApi.getHighlightByName(name, true)
+                .thenApply(map -> objectMapper.convertValue(map, HighlightDefinition.class)));
+    }
+
+    /**
+     * Provides id of highlight group with given name
+     *
+     * @param name name of the highlight group
+     * @return {@link CompletableFuture} which completes with id of the highlight group
+     */
+    public CompletableFuture<Integer> getHighlightId(String name) {
+        return CacheSupport.cached(highlightIds, name, () -> neovimApi.getHlIdByName(name));
+    }
+
+    /**
+     * Provides RGB value of a color name or "#rrggbb" hexadecimal string
+     *
+     * @param name name of the color
+     * @return {@link CompletableFuture} which completes with 24-bit RGB value or -1 for invalid color
+     */
+    public CompletableFuture<Integer> getColorByName(String name) {
+        return CacheSupport.cached(colors, name, () -> neovimApi.getColorByName(name));
+    }
+
+    /**
+     * Provides attributes defined by UI event {@code hl_attr_define}
+     *
+     * @param attributeId id of attributes, as used in grid events
+     * @return {@link Optional} with attributes or empty if they were not defined yet
+     */
+    public Optional<HighlightDefinition> getAttributes(int attributeId) {
+        return Optional.ofNullable(attributes.get(attributeId));
+    }
+
+    /**
+     * Stores attributes defined by UI event {@code hl_attr_define}
+     *
+     * @param attributeId id of attributes
+     * @param definition  RGB attributes
+     */
+    public void defineAttributes(int attributeId, HighlightDefinition definition) {
+        attributes.put(attributeId, Objects.requireNonNull(definition, "definition may not be null"));
+    }
+
+    /**
+     * Stores attributes used for UI group, as received through UI event {@code hl_group_set}
+     *
+     * @param name        name of UI highlight group
+     * @param attributeId id of attributes used for the group
+     */
+    public void setGroupAttributes(String name, int attributeId) {
+        groupAttributes.put(Objects.requireNonNull(name, "name may not be null"), attributeId);
+    }
+
+    /**
+     * Drops cached highlight definitions
+     * Highlight ids, colors and attributes received from UI are kept, since they don't depend on color scheme
+     */
+    public void invalidate() {
+        highlightsById.clear();
+        highlightsByName.clear();
+    }
+
+    private void readRedraw(NotificationMessage redraw) throws IOException {
+        var rawArguments = redraw.getRawArguments();
+        if (rawArguments == null) {
+            readRedraw(redraw.getArguments());
+            return;
+        }
+        try (var unpacker = ByteLines.newUnpacker(rawArguments)) {
+            var eventCount = unpacker.unpackArrayHeader();
+            for (var i = 0; i < eventCount; i++) {
+                var start = Math.toIntExact(unpacker.getTotalReadBytes());
+                var size = unpacker.unpackArrayHeader();
+                if (size == 0) {
+                    continue;
+                }
+                if (unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+                    unpacker.skipValue(size);
+                    continue;
+                }
+                var name = unpacker.unpackString();
+                unpacker.skipValue(size - 1);
+                if (HL_ATTR_DEFINE.equals(name) || HL_GROUP_SET.equals(name)) {
+                    var end = Math.toIntExact(unpacker.getTotalReadBytes());
+                    readRedraw(List.of(decode(rawArguments, start, end)));
+                }
+            }
+        }
+    }
+
+    private List<?> decode(ByteBuffer source, int start, int end) throws IOException {
+        var event = new byte[end - start];
+        source.duplicate().position(source.position() + start).get(event);
+        return objectMapper.readValue(event, List.class);
+    }
+
+    private void readRedraw(List<?> events) {
+        for (var event : events) {
+            var eventData = (List<?>) event;
+            if (eventData.isEmpty()) {
+                continue;
+            }
+            var name = eventData.get(0);
+            if (HL_ATTR_DEFINE.equals(name)) {
+                for (var arguments : eventData.subList(1, eventData.size())) {
+                    var attributeArguments = (List<?>) arguments;
+                    defineAttributes(
+                            ((Number) attributeArguments.get(0)).intValue(),
+                            objectMapper.convertValue(attributeArguments.get(1), HighlightDefinition.class)
+                    );
+                }
+            } else if (HL_GROUP_SET.equals(name)) {
+                for (var arguments : eventData.subList(1, eventData.size())) {
+                    var groupArguments = (List<?>) arguments;
+                    setGroupAttributes((String) groupArguments.get(0), ((Number) groupArguments.get(1)).intValue());
+                }
+            }
+        }
+    }
+
+    private final class InvalidationSubscriber implements Flow.Subscriber<NotificationMessage> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (HighlightResolver.this) {
+                if (!subscribed) {
+                    subscription.cancel();
+                    return;
+                }
+                HighlightResolver.this.subscription = subscription;
+            }
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(NotificationMessage item) {
+            if (NOTIFICATION_NAME.equals(item.getName())) {
+                log.debug("Color scheme changed - dropping cached highlights");
+                invalidate();
+            } else if (REDRAW.equals(item.getName())) {
+                try {
+                    readRedraw(item);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Failed to read highlights from redraw notification", e);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.error("Highlight resolver notifications failed", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.buffer.BufferStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.api.window.WindowStreamApi;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in cache of option and global variable values, kept consistent using autocommands
+ * <p>
+ * Once {@link #start()} is called, an autocommand group and a dictionary watcher are registered in Neovim. They send
+ * a notification over this connection whenever a cached value may have changed:
+ * <ul>
+ *     <li>{@code OptionSet} - option is dropped from global, buffer and window scopes</li>
+ *     <li>{@code BufEnter}, {@code FileType} - options of the buffer (and of the window it is shown in) are dropped</li>
+ *     <li>{@code WinEnter} - options of the entered window and its buffer are dropped</li>
+ *     <li>{@code BufWipeout}, {@code WinClosed} - entries of the removed buffer or window are released</li>
+ *     <li>changes of {@code g:} dictionary - changed variable is dropped</li>
+ * </ul>
+ * Values which are not cached are fetched from Neovim and cached until invalidated, so repeated reads need no
+ * round trip. Options changed without triggering {@code OptionSet} (e.g. using {@code :noautocmd}) are refreshed on
+ * the next buffer or window event. Before {@link #start()} completes and after {@link #stop()}, all reads are
+ * passed to Neovim directly.
+ * <p>
+ * Only one {@link OptionValueCache} should be started per connection.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     OptionValueCache cache = new OptionValueCache(reactiveRpcStreamer);
+ *     cache.start().get();
+ *
+ *     CompletableFuture<Object> shiftWidth = cache.getBufferOption(buffer, "shiftwidth");
+ *     }
+ * </pre>
+ */
+public final class OptionValueCache {
+    private static final Logger log = LoggerFactory.getLogger(OptionValueCache.class);
+
+    /**
+     * Name of notifications sent by registered autocommands
+     */
+    public static final String NOTIFICATION_NAME = "neovim_java_option_cache";
+
+    private static final String GROUP_PREFIX = "NeovimJavaOptionCache";
+    private static final String WATCHER_PREFIX = "NeovimJavaOptionCacheWatcher";
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final NeovimApi neovimApi;
+    private final Map<String, CompletableFuture<Object>> globalOptions = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Object>> variables = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, CompletableFuture<Object>>> bufferOptions = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, CompletableFuture<Object>>> windowOptions = new ConcurrentHashMap<>();
+
+    private volatile boolean active = false;
+    private Integer channelId;
+    private InvalidationSubscriber subscriber;
+
+    /**
+     * Creates a new {@link OptionValueCache}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read values and receive notifications
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public OptionValueCache(ReactiveRpcStreamer reactiveRpcStreamer) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for option cache");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+    }
+
+    /**
+     * Registers autocommands keeping this cache consistent and starts caching values
+     *
+     * @return {@link CompletableFuture} which completes once caching is active
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (subscriber == null) {
+            subscriber = new InvalidationSubscriber();
+            reactiveRpcStreamer.notificationsFlow().subscribe(subscriber);
+        }
+        return neovimApi.getChannelInfo(0)
+                .thenCompose(channelInfo -> {
+                    synchronized (this) {
+                        channelId = channelInfo.getId();
+                    }
+                    return neovimApi.exec(createRegistrationScript(channelInfo.getId()), false);
+                })
+                .thenRun(() -> active = true);
+    }
+
+    /**
+     * Stops caching, clears cached values and removes registered autocommands
+     *
+     * @return {@link CompletableFuture} which completes once autocommands are removed
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        active = false;
+        invalidateAll();
+        if (subscriber != null) {
+            subscriber.cancel();
+            subscriber = null;
+        }
+        if (channelId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var script = createRemovalScript(channelId);
+        channelId = null;
+        return neovimApi.exec(script, false).thenApply(output -> null);
+    }
+
+    /**
+     * @return true if values are currently being cached
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Provides global value of an option
+     *
+     * @param name name of the option
+     * @return {@link CompletableFuture} which completes with option value
+     */
+    public CompletableFuture<Object> getOption(String name) {
+        return cached(globalOptions, name, () -> neovimApi.getOption(name));
+    }
+
+    /**
+     * Provides value of a buffer local option
+     *
+     * @param buffer buffer to read the option from
+     * @param name   name of the option
+     * @return {@link CompletableFuture} which completes with option value
+     */
+    public CompletableFuture<Object> getBufferOption(Buffer buffer, String name) {
+        var options = active ? bufferOptions.computeIfAbsent(buffer.getId(), id -> new ConcurrentHashMap<>()) : null;
+        return cached(options, name, () -> new BufferStreamApi(reactiveRpcStreamer, buffer).getOption(name));
+    }
+
+    /**
+     * Provides value of a window local option
+     *
+     * @param window window to read the option from
+     * @param name   name of the option
+     * @return {@link CompletableFuture} which completes with option value
+     */
+    public CompletableFuture<Object> getWindowOption(Window window, String name) {
+        var options = active ? windowOptions.computeIfAbsent(window.getId(), id -> new ConcurrentHashMap<>()) : null;
+        return cached(options, name, () -> new WindowStreamApi(reactiveRpcStreamer, window).getOption(name));
+    }
+
+    /**
+     * Provides value of a global ({@code g:}) variable
+     *
+     * @param name name of the variable
+     * @return {@link CompletableFuture} which completes with variable value
+     */
+    public CompletableFuture<Object> getVariable(String name) {
+        return cached(variables, name, () -> neovimApi.getVariable(name));
+    }
+
+    /**
+     * Drops all cached values
+     */
+    public void invalidateAll() {
+        globalOptions.clear();
+        variables.clear();
+        bufferOptions.clear();
+        windowOptions.clear();
+    }
+
+    private CompletableFuture<Object> cached(Map<String, CompletableFuture<Object>> cache, String key, Supplier<CompletableFuture<Object>> loader) {
+        if (!active || cache == null) {
+            return loader.get();
+        }
+        return CacheSupport.cached(cache, key, loader);
+    }
+
+    private void invalidate(List<?> arguments) {
+        var event = (String) arguments.get(0);
+        var name = (String) arguments.get(1);
+        var bufferId = ((Number) arguments.get(2)).longValue();
+        var windowId = ((Number) arguments.get(3)).longValue();
+        log.debug("Invalidating option cache on {} (name: {}, buffer: {}, window: {})", event, name, bufferId, windowId);
+        switch (event) {
+            case "OptionSet" -> {
+                globalOptions.remove(name);
+                bufferOptions.values().forEach(options -> options.remove(name));
+                windowOptions.values().forEach(options -> options.remove(name));
+            }
+            case "BufEnter", "FileType", "WinEnter" -> {
+                bufferOptions.remove(bufferId);
+                windowOptions.remove(windowId);
+            }
+            case "BufWipeout" -> bufferOptions.remove(bufferId);
+            case "WinClosed" -> windowOptions.remove(windowId);
+            case "VarChanged" -> variables.remove(name);
+            default -> {
+                log.warn("Unknown option cache event {} - dropping all cached values", event);
+                invalidateAll();
+            }
+        }
+    }
+
+    private static String createRegistrationScript(int channelId) {
+        var notify = "call rpcnotify(" + channelId + ", '" + NOTIFICATION_NAME + "', ";
+        var watcher = WATCHER_PREFIX + channelId;
+        return String.join("\n",
+                "augroup " + GROUP_PREFIX + channelId,
+                "  autocmd!",
+                "  autocmd OptionSet * " + notify + "'OptionSet', expand('<amatch>'), bufnr(), win_getid())",
+                "  autocmd BufEnter * " + notify + "'BufEnter', '', str2nr(expand('<abuf>')), win_getid())",
+                "  autocmd FileType * " + notify + "'FileType', '', str2nr(expand('<abuf>')), win_getid())",
+                "  autocmd WinEnter * " + notify + "'WinEnter', '', bufnr(), win_getid())",
+                "  autocmd BufWipeout * " + notify + "'BufWipeout', '', str2nr(expand('<abuf>')), 0)",
+                "  autocmd WinClosed * " + notify + "'WinClosed', '', 0, str2nr(expand('<amatch>')))",
+                "augroup END",
+                "function! " + watcher + "(dict, key, change) abort",
+                "  " + notify + "'VarChanged', a:key, 0, 0)",
+                "endfunction",
+                "call dictwatcheradd(g:, '*', '" + watcher + "')"
+        );
+    }
+
+    private static String createRemovalScript(int channelId) {
+        var watcher = WATCHER_PREFIX + channelId;
+        return String.join("\n",
+                "augroup " + GROUP_PREFIX + channelId,
+                "  autocmd!",
+                "augroup END",
+                "augroup! " + GROUP_PREFIX + channelId,
+                "call dictwatcherdel(g:, '*', '" + watcher + "')",
+                "delfunction " + watcher
+        );
+    }
+
+    private final class InvalidationSubscriber implements Flow.Subscriber<NotificationMessage> {
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            var current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(NotificationMessage item) {
+            if (cancelled || !NOTIFICATION_NAME.equals(item.getName())) {
+                return;
+            }
+            try {
+                invalidate(item.getArguments());
+            } catch (RuntimeException e) {
+                log.error("Failed to process option cache notification {} - dropping all cached values", item, e);
+                invalidateAll();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (cancelled) {
+                return;
+            }
+            log.error("Option cache notifications failed - caching stopped", throwable);
+            active = false;
+            invalidateAll();
+        }
+
+        @Override
+        public void onComplete() {
+            if (cancelled) {
+                return;
+            }
+            active = false;
+            invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.local;
+
+/**
+ * Local implementation of display width calculation used by Neovim ({@code nvim_strwidth}, {@code strwidth()})
+ * <p>
+ * Width of each character follows Neovim rules:
+ * <ul>
+ *     <li>ASCII characters (including control characters like tab) take one cell</li>
+ *     <li>East Asian wide and fullwidth characters take two cells</li>
+ *     <li>Emoji which are not already wide take two cells if {@code 'emoji'} option is on</li>
+ *     <li>East Asian ambiguous characters take two cells if {@code 'ambiwidth'} is {@code double}</li>
+ *     <li>Unprintable characters are displayed as {@code <xx>} or {@code <xxxx>}, taking four or six cells</li>
+ *     <li>Composing characters take no cells when they follow another character</li>
+ * </ul>
+ * Instances are immutable and thread safe.
+ */
+public final class DisplayWidth {
+
+    /**
+     * Display width for default Neovim options - {@code 'ambiwidth'} single and {@code 'emoji'} on
+     */
+    public static final DisplayWidth DEFAULT = new DisplayWidth(false, true);
+
+    // East Asian Width W and F (Unicode 15)
+    private static final int[] DOUBLE_WIDTH = {
+            0x1100, 0x115f, 0x231a, 0x231b, 0x2329, 0x232a, 0x23e9, 0x23ec, 0x23f0, 0x23f0, 0x23f3, 0x23f3,
+            0x25fd, 0x25fe, 0x2614, 0x2615, 0x2648, 0x2653, 0x267f, 0x267f, 0x2693, 0x2693, 0x26a1, 0x26a1,
+            0x26aa, 0x26ab, 0x26bd, 0x26be, 0x26c4, 0x26c5, 0x26ce, 0x26ce, 0x26d4, 0x26d4, 0x26ea, 0x26ea,
+            0x26f2, 0x26f3, 0x26f5, 0x26f5, 0x26fa, 0x26fa, 0x26fd, 0x26fd, 0x2705, 0x2705, 0x270a, 0x270b,
+            0x2728, 0x2728, 0x274c, 0x274c, 0x274e, 0x274e, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+            0x27b0, 0x27b0, 0x27bf, 0x27bf, 0x2b1b, 0x2b1c, 0x2b50, 0x2b50, 0x2b55, 0x2b55, 0x2e80, 0x2e99,
+            0x2e9b, 0x2ef3, 0x2f00, 0x2fd5, 0x2ff0, 0x2ffb, 0x3000, 0x303e, 0x3041, 0x3096, 0x3099, 0x30ff,
+            0x3105, 0x312f, 0x3131, 0x318e, 0x3190, 0x31e3, 0x31f0, 0x321e, 0x3220, 0x3247, 0x3250, 0x4dbf,
+            0x4e00, 0xa48c, 0xa490, 0xa4c6, 0xa960, 0xa97c, 0xac00, 0xd7a3, 0xf900, 0xfaff, 0xfe10, 0xfe19,
+            0xfe30, 0xfe52, 0xfe54, 0xfe66, 0xfe68, 0xfe6b, 0xff01, 0xff60, 0xffe0, 0xffe6, 0x16fe0, 0x16fe4,
+            0x16ff0, 0x16ff1, 0x17000, 0x187f7, 0x18800, 0x18cd5, 0x18d00, 0x18d08, 0x1aff0, 0x1aff3,
+            0x1aff5, 0x1affb, 0x1affd, 0x1affe, 0x1b000, 0x1b122, 0x1b132, 0x1b132, 0x1b150, 0x1b152,
+            0x1b155, 0x1b155, 0x1b164, 0x1b167, 0x1b170, 0x1b2fb, 0x1f004, 0x1f004, 0x1f0cf, 0x1f0cf,
+            0x1f18e, 0x1f18e, 0x1f191, 0x1f19a, 0x1f200, 0x1f202, 0x1f210, 0x1f23b, 0x1f240, 0x1f248,
+            0x1f250, 0x1f251, 0x1f260, 0x1f265, 0x1f300, 0x1f320, 0x1f32d, 0x1f335, 0x1f337, 0x1f37c,
+            0x1f37e, 0x1f393, 0x1f3a0, 0x1f3ca, 0x1f3cf, 0x1f3d3, 0x1f3e0, 0x1f3f0, 0x1f3f4, 0x1f3f4,
+            0x1f3f8, 0x1f43e, 0x1f440, 0x1f440, 0x1f442, 0x1f4fc, 0x1f4ff, 0x1f53d, 0x1f54b, 0x1f54e,
+            0x1f550, 0x1f567, 0x1f57a, 0x1f57a, 0x1f595, 0x1f596, 0x1f5a4, 0x1f5a4, 0x1f5fb, 0x1f64f,
+            0x1f680, 0x1f6c5, 0x1f6cc, 0x1f6cc, 0x1f6d0, 0x1f6d2, 0x1f6d5, 0x1f6d7, 0x1f6dc, 0x1f6df,
+            0x1f6eb, 0x1f6ec, 0x1f6f4, 0x1f6fc, 0x1f7e0, 0x1f7eb, 0x1f7f0, 0x1f7f0, 0x1f90c, 0x1f93a,
+            0x1f93c, 0x1f945, 0x1f947, 0x1f9ff, 0x1fa70, 0x1fa7c, 0x1fa80, 0x1fa88, 0x1fa90, 0x1fabd,
+            0x1fabf, 0x1fac5, 0x1face, 0x1fadb, 0x1fae0, 0x1fae8, 0x1faf0, 0x1faf8, 0x20000, 0x2fffd,
+            0x30000, 0x3fffd
+    };
+
+    // Emoji which are not East Asian wide, taking two cells when 'emoji' is on (Neovim emoji_wide)
+    private static final int[] EMOJI_WIDE = {
+            0x1f1e6, 0x1f1ff, 0x1f321, 0x1f321, 0x1f324, 0x1f32c, 0x1f336, 0x1f336, 0x1f37d, 0x1f37d,
+            0x1f396, 0x1f397, 0x1f399, 0x1f39b, 0x1f39e, 0x1f39f, 0x1f3cb, 0x1f3ce, 0x1f3d4, 0x1f3df,
+            0x1f3f3, 0x1f3f5, 0x1f3f7, 0x1f3f7, 0x1f43f, 0x1f43f, 0x1f441, 0x1f441, 0x1f4fd, 0x1f4fd,
+            0x1f549, 0x1f54a, 0x1f56f, 0x1f570, 0x1f573, 0x1f579, 0x1f587, 0x1f587, 0x1f58a, 0x1f58d,
+            0x1f590, 0x1f590, 0x1f5a5, 0x1f5a5, 0x1f5a8, 0x1f5a8, 0x1f5b1, 0x1f5b2, 0x1f5bc, 0x1f5bc,
+            0x1f5c2, 0x1f5c4, 0x1f5d1, 0x1f5d3, 0x1f5dc, 0x1f5de, 0x1f5e1, 0x1f5e1, 0x1f5e3, 0x1f5e3,
+            0x1f5e8, 0x1f5e8, 0x1f5ef, 0x1f5ef, 0x1f5f3, 0x1f5f3, 0x1f5fa, 0x1f5fa, 0x1f6cb, 0x1f6cb,
+            0x1f6cd, 0x1f6cf, 0x1f6e0, 0x1f6e5, 0x1f6e9, 0x1f6e9, 0x1f6f0, 0x1f6f0, 0x1f6f3, 0x1f6f3
+    };
+
+    // Extended_Pictographic (Unicode 15) from U+1F000 - ones which are not East Asian wide depend on 'emoji' and
+    // on the version of Neovim emoji tables
+    private static final int[] PICTOGRAPHIC = {
+            0x1f000, 0x1f0ff, 0x1f10d, 0x1f10f, 0x1f12f, 0x1f12f, 0x1f16c, 0x1f171, 0x1f17e, 0x1f17f,
+            0x1f18e, 0x1f18e, 0x1f191, 0x1f19a, 0x1f1ad, 0x1f1e5, 0x1f201, 0x1f20f, 0x1f21a, 0x1f21a,
+            0x1f22f, 0x1f22f, 0x1f232, 0x1f23a, 0x1f23c, 0x1f23f, 0x1f249, 0x1f3fa, 0x1f400, 0x1f53d,
+            0x1f546, 0x1f64f, 0x1f680, 0x1f6ff, 0x1f774, 0x1f77f, 0x1f7d5, 0x1f7ff, 0x1f80c, 0x1f80f,
+            0x1f848, 0x1f84f, 0x1f85a, 0x1f85f, 0x1f888, 0x1f88f, 0x1f8ae, 0x1f8ff, 0x1f90c, 0x1f93a,
+            0x1f93c, 0x1f945, 0x1f947, 0x1faff, 0x1fc00, 0x1fffd
+    };
+
+    // East Asian Width A (Unicode 15), excluding composing characters
+    private static final int[] AMBIGUOUS = {
+            0x00a1, 0x00a1, 0x00a4, 0x00a4, 0x00a7, 0x00a8, 0x00aa, 0x00aa, 0x00ad, 0x00ae, 0x00b0, 0x00b4,
+            0x00b6, 0x00ba, 0x00bc, 0x00bf, 0x00c6, 0x00c6, 0x00d0, 0x00d0, 0x00d7, 0x00d8, 0x00de, 0x00e1,
+            0x00e6, 0x00e6, 0x00e8, 0x00ea, 0x00ec, 0x00ed, 0x00f0, 0x00f0, 0x00f2, 0x00f3, 0x00f7, 0x00fa,
+            0x00fc, 0x00fc, 0x00fe, 0x00fe, 0x0101, 0x0101, 0x0111, 0x0111, 0x0113, 0x0113, 0x011b, 0x011b,
+            0x0126, 0x0127, 0x012b, 0x012b, 0x0131, 0x0133, 0x0138, 0x0138, 0x013f, 0x0142, 0x0144, 0x0144,
+            0x0148, 0x014b, 0x014d, 0x014d, 0x0152, 0x0153, 0x0166, 0x0167, 0x016b, 0x016b, 0x01ce, 0x01ce,
+            0x01d0, 0x01d0, 0x01d2, 0x01d2, 0x01d4, 0x01d4, 0x01d6, 0x01d6, 0x01d8, 0x01d8, 0x01da, 0x01da,
+            0x01dc, 0x01dc, 0x0251, 0x0251, 0x0261, 0x0261, 0x02c4, 0x02c4, 0x02c7, 0x02c7, 0x02c9, 0x02cb,
+            0x02cd, 0x02cd, 0x02d0, 0x02d0, 0x02d8, 0x02db, 0x02dd, 0x02dd, 0x02df, 0x02df, 0x0391, 0x03a1,
+            0x03a3, 0x03a9, 0x03b1, 0x03c1, 0x03c3, 0x03c9, 0x0401, 0x0401, 0x0410, 0x044f, 0x0451, 0x0451,
+            0x2010, 0x2010, 0x2013, 0x2016, 0x2018, 0x2019, 0x201c, 0x201d, 0x2020, 0x2022, 0x2024, 0x2027,
+            0x2030, 0x2030, 0x2032, 0x2033, 0x2035, 0x2035, 0x203b, 0x203b, 0x203e, 0x203e, 0x2074, 0x2074,
+            0x207f, 0x207f, 0x2081, 0x2084, 0x20ac, 0x20ac, 0x2103, 0x2103, 0x2105, 0x2105, 0x2109, 0x2109,
+            0x2113, 0x2113, 0x2116, 0x2116, 0x2121, 0x2122, 0x2126, 0x2126, 0x212b, 0x212b, 0x2153, 0x2154,
+            0x215b, 0x215e, 0x2160, 0x216b, 0x2170, 0x2179, 0x2189, 0x2189, 0x2190, 0x2199, 0x21b8, 0x21b9,
+            0x21d2, 0x21d2, 0x21d4, 0x21d4, 0x21e7, 0x21e7, 0x2200, 0x2200, 0x2202, 0x2203, 0x2207, 0x2208,
+            0x220b, 0x220b, 0x220f, 0x220f, 0x2211, 0x2211, 0x2215, 0x2215, 0x221a, 0x221a, 0x221d, 0x2220,
+            0x2223, 0x2223, 0x2225, 0x2225, 0x2227, 0x222c, 0x222e, 0x222e, 0x2234, 0x2237, 0x223c, 0x223d,
+            0x2248, 0x2248, 0x224c, 0x224c, 0x2252, 0x2252, 0x2260, 0x2261, 0x2264, 0x2267, 0x226a, 0x226b,
+            0x226e, 0x226f, 0x2282, 0x2283, 0x2286, 0x2287, 0x2295, 0x2295, 0x2299, 0x2299, 0x22a5, 0x22a5,
+            0x22bf, 0x22bf, 0x2312, 0x2312, 0x2460, 0x24e9, 0x24eb, 0x254b, 0x2550, 0x2573, 0x2580, 0x258f,
+            0x2592, 0x2595, 0x25a0, 0x25a1, 0x25a3, 0x25a9, 0x25b2, 0x25b3, 0x25b6, 0x25b7, 0x25bc, 0x25bd,
+            0x25c0, 0x25c1, 0x25c6, 0x25c8, 0x25cb, 0x25cb, 0x25ce, 0x25d1, 0x25e2, 0x25e5, 0x25ef, 0x25ef,
+            0x2605, 0x2606, 0x2609, 0x2609, 0x260e, 0x260f, 0x261c, 0x261c, 0x261e, 0x261e, 0x2640, 0x2640,
+            0x2642, 0x2642, 0x2660, 0x2661, 0x2663, 0x2665, 0x2667, 0x266a, 0x266c, 0x266d, 0x266f, 0x266f,
+            0x269e, 0x269f, 0x26bf, 0x26bf, 0x26c6, 0x26cd, 0x26cf, 0x26d3, 0x26d5, 0x26e1, 0x26e3, 0x26e3,
+            0x26e8, 0x26e9, 0x26eb, 0x26f1, 0x26f4, 0x26f4, 0x26f6, 0x26f9, 0x26fb, 0x26fc, 0x26fe, 0x26ff,
+            0x273d, 0x273d, 0x2776, 0x277f, 0x2b56, 0x2b59, 0x3248, 0x324f, 0xe000, 0xf8ff, 0xfffd, 0xfffd,
+            0x1f100, 0x1f10a, 0x1f110, 0x1f12d, 0x1f130, 0x1f169, 0x1f170, 0x1f18d, 0x1f18f, 0x1f190,
+            0x1f19b, 0x1f1ac, 0xf0000, 0xffffd, 0x100000, 0x10fffd
+    };
+
+    // Characters which Neovim does not consider printable (displayed as <xxxx>)
+    private static final int[] UNPRINTABLE = {
+            0x070f, 0x070f, 0x180b, 0x180e, 0x200b, 0x200f, 0x202a, 0x202e, 0x2060, 0x206f, 0xd800, 0xdfff,
+            0xfeff, 0xfeff, 0xfff9, 0xfffb, 0xfffe, 0xffff
+    };
+
+    // Characters whose width differs between Neovim versions (grapheme clusters, emoji sequences)
+    private static final int[] VERSION_DEPENDENT = {
+            0x200d, 0x200d, 0xfe0e, 0xfe0f, 0x1f1e6, 0x1f1ff, 0x1f3fb, 0x1f3ff, 0xe0020, 0xe007f
+    };
+
+    private final boolean ambiguousDouble;
+    private final boolean emojiWide;
+
+    private DisplayWidth(boolean ambiguousDouble, boolean emojiWide) {
+        this.ambiguousDouble = ambiguousDouble;
+        this.emojiWide = emojiWide;
+    }
+
+    /**
+     * Provides display width for given option values
+     *
+     * @param ambiwidth value of {@code 'ambiwidth'} option ({@code single} or {@code double})
+     * @param emoji     value of {@code 'emoji'} option
+     * @return {@link DisplayWidth} matching the options
+     */
+    public static DisplayWidth of(String ambiwidth, boolean emoji) {
+        var ambiguousDouble = "double".equals(ambiwidth);
+        if (!ambiguousDouble && emoji) {
+            return DEFAULT;
+        }
+        return new DisplayWidth(ambiguousDouble, emoji);
+    }
+
+    /**
+     * Calculates number of cells taken by a single character, ignoring its position
+     *
+     * @param codePoint character to check
+     * @return number of cells
+     */
+    public int charWidth(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0xa0) {
+            return 4;
+        }
+        if (codePoint >= 0x100) {
+            if (inTable(UNPRINTABLE, codePoint)) {
+                return 6;
+            }
+            if (inTable(DOUBLE_WIDTH, codePoint) || emojiWide && inTable(EMOJI_WIDE, codePoint)) {
+                return 2;
+            }
+        }
+        if (ambiguousDouble && inTable(AMBIGUOUS, codePoint)) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Calculates number of cells taken by given text, just like {@code nvim_strwidth}
+     *
+     * @param text text to measure
+     * @return number of cells
+     */
+    public int stringWidth(CharSequence text) {
+        var width = 0;
+        var previous = false;
+        for (var i = 0; i < text.length(); ) {
+            var codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (previous && isComposing(codePoint)) {
+                continue;
+            }
+            width += charWidth(codePoint);
+            previous = true;
+        }
+        return width;
+    }
+
+    /**
+     * Checks whether width of given text calculated locally is known to match every Neovim version
+     * Width of emoji sequences, grapheme clusters, pictographs which are not East Asian wide, unassigned and invalid
+     * characters differs between versions and options, so such text should be measured by Neovim itself
+     *
+     * @param text text to check
+     * @return true if {@link #stringWidth(CharSequence)} gives the same result as Neovim
+     */
+    public boolean isExact(CharSequence text) {
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            var codePoint = Character.codePointAt(text, i);
+            if (Character.isSurrogate(c) && !Character.isSupplementaryCodePoint(codePoint)
+                    || codePoint < 0xa0
+                    || inTable(VERSION_DEPENDENT, codePoint)
+                    || inTable(UNPRINTABLE, codePoint)
+                    || inTable(PICTOGRAPHIC, codePoint) && !inTable(DOUBLE_WIDTH, codePoint)
+                    || Character.getType(codePoint) == Character.UNASSIGNED) {
+                return false;
+            }
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isComposing(int codePoint) {
+        var type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    /**
+     * Checks whether given character is in a table of sorted, inclusive ranges
+     */
+    private static boolean inTable(int[] table, int codePoint) {
+        if (codePoint < table[0] || codePoint > table[table.length - 1]) {
+            return false;
+        }
+        // Search range starts, then check the end of the closest one
+        var low = 0;
+        var high = table.length / 2 - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            if (table[middle * 2] <= codePoint) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && codePoint <= table[high * 2 + 1];
+    }
+
+    @Override
+    public String toString() {
+        return "DisplayWidth{"
+                + "ambiguousDouble=" + ambiguousDouble
+                + ", emojiWide=" + emojiWide + '}';
+    }
+}
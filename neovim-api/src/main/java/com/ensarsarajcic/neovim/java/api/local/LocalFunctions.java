@@ -0,0 +1,202 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.local;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Local (JVM side) implementations of pure Neovim functions, which would otherwise need a round trip for each call
+ * <p>
+ * Implemented functions:
+ * <ul>
+ *     <li>{@link #stringWidth(String)} - {@code nvim_strwidth}, using {@link DisplayWidth} configured with
+ *     {@code 'ambiwidth'} and {@code 'emoji'} options read once in {@link #start()}</li>
+ *     <li>{@link #replaceTermcodes(String, boolean, boolean, boolean)} - {@code nvim_replace_termcodes} for keys
+ *     translated to plain characters, with results cached</li>
+ * </ul>
+ * Edge cases whose results depend on Neovim version or configuration (emoji sequences, special keys,
+ * {@code <Leader>}...) are passed to Neovim using {@link NeovimApi}. Options changed after {@link #start()} are not
+ * picked up until it is called again.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     LocalFunctions localFunctions = new LocalFunctions(neovimApi);
+ *     localFunctions.start().get();
+ *
+ *     int width = localFunctions.localStringWidth("日本語");
+ *     CompletableFuture<String> keys = localFunctions.replaceTermcodes("<Esc>:w<CR>", true, true, true);
+ *     }
+ * </pre>
+ */
+public final class LocalFunctions {
+    private static final Logger log = LoggerFactory.getLogger(LocalFunctions.class);
+
+    /**
+     * Default number of {@code replaceTermcodes} results kept in cache
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final NeovimApi neovimApi;
+    private final Map<TermcodesKey, String> termcodesCache;
+    private volatile DisplayWidth displayWidth = DisplayWidth.DEFAULT;
+
+    private record TermcodesKey(String string, boolean fromPart, boolean doLt, boolean special) {
+    }
+
+    /**
+     * Creates a new {@link LocalFunctions} with {@link #DEFAULT_CACHE_SIZE}
+     *
+     * @param neovimApi {@link NeovimApi} used to read options and to handle edge cases
+     * @throws NullPointerException if neovimApi is null
+     */
+    public LocalFunctions(NeovimApi neovimApi) {
+        this(neovimApi, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new {@link LocalFunctions}
+     *
+     * @param neovimApi {@link NeovimApi} used to read options and to handle edge cases
+     * @param cacheSize maximum number of {@code replaceTermcodes} results kept in cache
+     * @throws NullPointerException     if neovimApi is null
+     * @throws IllegalArgumentException if cacheSize is negative
+     */
+    public LocalFunctions(NeovimApi neovimApi, int cacheSize) {
+        Objects.requireNonNull(neovimApi, "neovimApi is required for local functions");
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize can't be negative");
+        }
+        this.neovimApi = neovimApi;
+        this.termcodesCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TermcodesKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Reads {@code 'ambiwidth'} and {@code 'emoji'} options used for width calculations
+     * Until it completes, default values of these options are assumed
+     *
+     * @return {@link CompletableFuture} which completes once options are read
+     */
+    public CompletableFuture<Void> start() {
+        var ambiwidth = neovimApi.getOption("ambiwidth");
+        var emoji = neovimApi.getOption("emoji");
+        return ambiwidth.thenCombine(emoji, (ambiwidthValue, emojiValue) -> {
+            displayWidth = DisplayWidth.of(String.valueOf(ambiwidthValue), !Boolean.FALSE.equals(emojiValue));
+            log.debug("Using {}", displayWidth);
+            return null;
+        });
+    }
+
+    /**
+     * Provides {@link DisplayWidth} used for width calculations
+     *
+     * @return current {@link DisplayWidth}
+     */
+    public DisplayWidth getDisplayWidth() {
+        return displayWidth;
+    }
+
+    /**
+     * Calculates number of display cells taken by given string, just like {@code nvim_strwidth}
+     * Strings whose width depends on Neovim version are measured by Neovim
+     *
+     * @param string string to measure
+     * @return {@link CompletableFuture} with number of cells
+     * @throws NullPointerException if string is null
+     */
+    public CompletableFuture<Integer> stringWidth(String string) {
+        Objects.requireNonNull(string, "string is required for width calculation");
+        var width = displayWidth;
+        if (width.isExact(string)) {
+            return CompletableFuture.completedFuture(width.stringWidth(string));
+        }
+        return neovimApi.stringWidth(string);
+    }
+
+    /**
+     * Calculates number of display cells taken by given string locally, without any fallback to Neovim
+     *
+     * @param string string to measure
+     * @return number of cells
+     * @throws NullPointerException if string is null
+     * @see DisplayWidth#isExact(CharSequence)
+     */
+    public int localStringWidth(String string) {
+        Objects.requireNonNull(string, "string is required for width calculation");
+        return displayWidth.stringWidth(string);
+    }
+
+    /**
+     * Replaces terminal codes and key notation in given string, just like {@code nvim_replace_termcodes}
+     * Strings containing keys which are not plain characters are passed to Neovim. Results are cached either way.
+     *
+     * @param strToReplace string to translate
+     * @param fromPart     legacy Vim parameter, usually true
+     * @param doLt         whether {@code <lt>} should be translated too
+     * @param special      whether key codes should be replaced
+     * @return {@link CompletableFuture} with translated string
+     * @throws NullPointerException if strToReplace is null
+     */
+    public CompletableFuture<String> replaceTermcodes(String strToReplace, boolean fromPart, boolean doLt, boolean special) {
+        Objects.requireNonNull(strToReplace, "strToReplace is required for termcodes replacement");
+        var key = new TermcodesKey(strToReplace, fromPart, doLt, special);
+        var cached = termcodesCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        var translated = Termcodes.translate(strToReplace, fromPart, doLt, special);
+        if (translated != null) {
+            termcodesCache.put(key, translated);
+            return CompletableFuture.completedFuture(translated);
+        }
+        return neovimApi.replaceTermcodes(strToReplace, fromPart, doLt, special)
+                .thenApply(result -> {
+                    termcodesCache.put(key, result);
+                    return result;
+                });
+    }
+
+    /**
+     * Clears cached {@code replaceTermcodes} results
+     * Results passed through Neovim depend on its configuration (e.g. {@code mapleader}), so this should be called
+     * once that changes
+     */
+    public void invalidate() {
+        termcodesCache.clear();
+    }
+}
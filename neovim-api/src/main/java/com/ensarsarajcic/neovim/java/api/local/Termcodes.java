@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.local;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Local implementation of {@code nvim_replace_termcodes} for keys which translate to plain characters
+ * <p>
+ * Keys which Neovim translates into internal special key sequences ({@code <BS>}, {@code <F1>}, {@code <M-x>}...),
+ * script dependent keys ({@code <Leader>}, {@code <SID>}, {@code <Plug>}) and literal escapes (CTRL-V, backslash)
+ * are not handled locally - {@link #translate(String, boolean, boolean, boolean)} returns null for those, so they
+ * can be replaced by Neovim itself. The same goes for non-ASCII strings (Neovim escapes {@code 0x80} bytes of their
+ * UTF-8 encoding) and for a leading {@code #<digit>}, which is a function key when {@code fromPart} is set.
+ */
+final class Termcodes {
+
+    private static final Map<String, String> KEYS = Map.ofEntries(
+            Map.entry("cr", "\r"),
+            Map.entry("return", "\r"),
+            Map.entry("enter", "\r"),
+            Map.entry("nl", "\n"),
+            Map.entry("newline", "\n"),
+            Map.entry("linefeed", "\n"),
+            Map.entry("lf", "\n"),
+            Map.entry("tab", "\t"),
+            Map.entry("esc", "\u001b"),
+            Map.entry("space", " "),
+            Map.entry("bar", "|"),
+            Map.entry("bslash", "\\"),
+            Map.entry("lt", "<")
+    );
+
+    private Termcodes() {
+        //no instance
+    }
+
+    /**
+     * Replaces key notation in given string, following {@code nvim_replace_termcodes}
+     *
+     * @param string   string to translate
+     * @param fromPart whether a leading {@code #<digit>} is a function key
+     * @param doLt     whether {@code <lt>} should be translated too
+     * @param special  whether key codes should be replaced at all
+     * @return translated string or null if it contains keys which need to be translated by Neovim
+     */
+    static String translate(String string, boolean fromPart, boolean doLt, boolean special) {
+        if (string.indexOf('\u0016') >= 0 || string.indexOf('\\') >= 0 || !isAscii(string)) {
+            return null;
+        }
+        if (fromPart && string.length() > 1 && string.charAt(0) == '#' && Character.isDigit(string.charAt(1))) {
+            return null;
+        }
+        if (!special) {
+            return string;
+        }
+        var result = new StringBuilder(string.length());
+        var index = 0;
+        while (index < string.length()) {
+            var c = string.charAt(index);
+            var end = c == '<' ? string.indexOf('>', index + 1) : -1;
+            if (end < 0) {
+                result.append(c);
+                index++;
+                continue;
+            }
+            var name = string.substring(index + 1, end);
+            if (!doLt && name.equalsIgnoreCase("lt")) {
+                result.append(c);
+                index++;
+                continue;
+            }
+            var key = translateKey(name);
+            if (key == null) {
+                if (isKeyNotation(name)) {
+                    return null;
+                }
+                // Not a key, kept as it is
+                result.append(c);
+                index++;
+                continue;
+            }
+            result.append(key);
+            index = end + 1;
+        }
+        return result.toString();
+    }
+
+    private static boolean isAscii(String string) {
+        for (var i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String translateKey(String name) {
+        var lowerCase = name.toLowerCase(Locale.ROOT);
+        var key = KEYS.get(lowerCase);
+        if (key != null) {
+            return key;
+        }
+        if (lowerCase.length() == 3 && lowerCase.startsWith("c-")) {
+            var c = lowerCase.charAt(2);
+            if (c >= 'a' && c <= 'z' || c == '[' || c == ']' || c == '^' || c == '_') {
+                return String.valueOf((char) (Character.toUpperCase(c) & 0x1f));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether given name may be a key known to Neovim, which is not handled locally
+     * Anything else inside angle brackets is left untouched by Neovim too
+     */
+    private static boolean isKeyNotation(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (var i = 0; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (c <= ' ' || c == '<' || c >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
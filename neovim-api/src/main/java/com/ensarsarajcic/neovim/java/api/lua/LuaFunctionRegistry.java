@@ -0,0 +1,232 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.lua;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of Lua functions which are uploaded to Neovim once and later invoked using just a handle
+ * <p>
+ * {@link NeovimApi#execLua(String, List)} sends (and Neovim compiles) the whole source on every call. Functions
+ * registered here are identified by hash of their source - the source is sent along with the first call only and
+ * Neovim keeps the compiled chunk in a global table, together with a global dispatcher function. Following calls
+ * send just the hash and arguments, with a one line chunk invoking the dispatcher.
+ * <p>
+ * If the function is missing in Neovim (e.g. the table was cleared), the dispatcher reports it and the call is
+ * transparently repeated together with the source.
+ * <p>
+ * Registered source is a Lua chunk, just like the one passed to {@link NeovimApi#execLua(String, List)} - arguments
+ * are available through {@code ...} and only the first returned value is used.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     LuaFunctionRegistry registry = new LuaFunctionRegistry(reactiveRpcStreamer);
+ *     LuaFunctionRegistry.Handle lineCount = registry.register("return vim.api.nvim_buf_line_count(...)");
+ *
+ *     CompletableFuture<Integer> count = registry.call(lineCount, List.of(0), Integer.class);
+ *     }
+ * </pre>
+ */
+public final class LuaFunctionRegistry {
+    private static final Logger log = LoggerFactory.getLogger(LuaFunctionRegistry.class);
+
+    private static final String TABLE_NAME = "NeovimJavaLuaFunctions";
+    private static final String DISPATCHER_NAME = "NeovimJavaLuaDispatch";
+
+    // Arguments: hash, source, function arguments...
+    // Installs the dispatcher and the function, then calls it - returns a list holding the result
+    static final String UPLOAD_CHUNK = "local id, source = ... "
+            + "local functions = rawget(_G, '" + TABLE_NAME + "') "
+            + "if functions == nil then functions = {} rawset(_G, '" + TABLE_NAME + "', functions) end "
+            + "if rawget(_G, '" + DISPATCHER_NAME + "') == nil then "
+            + "rawset(_G, '" + DISPATCHER_NAME + "', function(fid, ...) "
+            + "local fns = rawget(_G, '" + TABLE_NAME + "') "
+            + "local fn = fns and fns[fid] "
+            + "if fn == nil then return false end "
+            + "return {(fn(...))} "
+            + "end) "
+            + "end "
+            + "functions[id] = assert((loadstring or load)(source, '=neovim-java:' .. id:sub(1, 8))) "
+            + "return " + DISPATCHER_NAME + "(id, select(3, ...))";
+
+    // Arguments: hash, function arguments...
+    // Returns false if function (or the dispatcher) is missing, or a list holding the result otherwise
+    static final String CALL_CHUNK = "local d = rawget(_G, '" + DISPATCHER_NAME + "') "
+            + "if d == nil then return false end return d(...)";
+
+    /**
+     * Handle of a registered function
+     *
+     * @param hash hash of function source, identifying it in Neovim
+     */
+    public record Handle(String hash) {
+        public Handle {
+            Objects.requireNonNull(hash, "hash is required for handle");
+        }
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final ObjectMapper objectMapper = ObjectMappers.defaultNeovimMapper();
+    private final Map<String, String> sources = new ConcurrentHashMap<>();
+    private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new {@link LuaFunctionRegistry}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to call functions
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public LuaFunctionRegistry(ReactiveRpcStreamer reactiveRpcStreamer) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for lua function registry");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+    }
+
+    /**
+     * Registers given Lua chunk
+     * Nothing is sent to Neovim until the function is called for the first time
+     * Registering the same source multiple times returns equal handles
+     *
+     * @param source Lua chunk
+     * @return {@link Handle} used to call the function
+     * @throws NullPointerException if source is null
+     */
+    public Handle register(String source) {
+        Objects.requireNonNull(source, "source is required for lua function");
+        var hash = hash(source);
+        sources.putIfAbsent(hash, source);
+        return new Handle(hash);
+    }
+
+    /**
+     * Calls a registered function
+     *
+     * @param handle    handle of the function, returned by {@link #register(String)}
+     * @param arguments arguments passed to the function
+     * @return {@link CompletableFuture} with the first value returned by the function
+     * @throws NullPointerException     if handle or arguments are null
+     * @throws IllegalArgumentException if handle was not registered in this registry
+     */
+    public CompletableFuture<Object> call(Handle handle, List<?> arguments) {
+        Objects.requireNonNull(handle, "handle is required to call lua function");
+        Objects.requireNonNull(arguments, "arguments are required to call lua function");
+        var source = sources.get(handle.hash());
+        if (source == null) {
+            throw new IllegalArgumentException("Lua function " + handle.hash() + " is not registered");
+        }
+        var upload = !uploaded.contains(handle.hash());
+        return dispatch(handle.hash(), upload ? source : null, arguments)
+                .thenCompose(result -> {
+                    if (!Boolean.FALSE.equals(result)) {
+                        uploaded.add(handle.hash());
+                        return CompletableFuture.completedFuture(unwrap(result));
+                    }
+                    // Function is no longer available in Neovim - upload it again
+                    log.debug("Lua function {} is missing in Neovim, uploading it again", handle.hash());
+                    uploaded.remove(handle.hash());
+                    return dispatch(handle.hash(), source, arguments).thenApply(reuploaded -> {
+                        uploaded.add(handle.hash());
+                        return unwrap(reuploaded);
+                    });
+                });
+    }
+
+    /**
+     * Calls a registered function, converting its result to given type
+     *
+     * @param handle    handle of the function, returned by {@link #register(String)}
+     * @param arguments arguments passed to the function
+     * @param type      type of the result
+     * @param <T>       type of the result
+     * @return {@link CompletableFuture} with the first value returned by the function
+     * @throws NullPointerException     if handle, arguments or type are null
+     * @throws IllegalArgumentException if handle was not registered in this registry
+     */
+    public <T> CompletableFuture<T> call(Handle handle, List<?> arguments, Class<T> type) {
+        Objects.requireNonNull(type, "type is required to call lua function");
+        return call(handle, arguments).thenApply(result -> objectMapper.convertValue(result, type));
+    }
+
+    /**
+     * Forgets which functions were uploaded, so the next call of each function sends its source again
+     * This should be used when it is known that Neovim lost its functions, to avoid an additional round trip
+     */
+    public void invalidate() {
+        uploaded.clear();
+    }
+
+    private CompletableFuture<Object> dispatch(String hash, String source, List<?> arguments) {
+        var dispatcherArguments = new ArrayList<>(arguments.size() + 2);
+        dispatcherArguments.add(hash);
+        if (source != null) {
+            dispatcherArguments.add(source);
+        }
+        dispatcherArguments.addAll(arguments);
+        return reactiveRpcStreamer.response(new RequestMessage.Builder(NeovimApi.EXEC_LUA)
+                        .addArgument(source != null ? UPLOAD_CHUNK : CALL_CHUNK)
+                        .addArgument(dispatcherArguments))
+                .thenApply(ResponseMessage::getResult);
+    }
+
+    private static Object unwrap(Object result) {
+        // Function returning nil produces an empty table, which may be reported as either list or map
+        if (result instanceof List<?> list) {
+            return list.isEmpty() ? null : list.get(0);
+        }
+        if (result instanceof Map<?, ?> map && map.isEmpty()) {
+            return null;
+        }
+        throw new IllegalStateException("Unexpected lua function dispatcher result: " + result);
+    }
+
+    private static String hash(String source) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be available on every platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.metadata;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.api.CommandInfo;
+import com.ensarsarajcic.neovim.java.api.types.api.GetCommandsOptions;
+import com.ensarsarajcic.neovim.java.api.types.api.OptionInfo;
+import com.ensarsarajcic.neovim.java.api.types.apiinfo.ApiInfo;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.core.MessagePack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of large and rarely changing Neovim metadata, persisted in a compact binary file
+ * <p>
+ * Entries are keyed by Neovim version and build (output of {@code :version}), so they are fetched from Neovim
+ * only the first time a specific build is used, or when the build changes. Key is resolved using a single small
+ * atomic call, after which cached entries are served from memory.
+ * <p>
+ * Following metadata is cached:
+ * <ul>
+ *     <li>{@link #getApiInfo()} - persisted, channel id is always taken from the current connection</li>
+ *     <li>{@link #getAllOptionsInfo()} - persisted. Note that {@link OptionInfo#isWasSet()} and last set info
+ *     describe the session which populated the cache</li>
+ *     <li>{@link #getCommands(GetCommandsOptions)} - kept in memory only, since commands are defined by user
+ *     configuration and plugins, not by Neovim build</li>
+ * </ul>
+ * <p>
+ * Failures to read or write the cache file are logged and do not fail requests - metadata is fetched from Neovim
+ * instead.
+ */
+public final class ApiMetadataCache {
+    private static final Logger log = LoggerFactory.getLogger(ApiMetadataCache.class);
+
+    private static final int MAGIC = 0x4e564a4d;
+    private static final int FORMAT_VERSION = 1;
+    private static final String API_INFO_ENTRY = "api_info";
+    private static final String ALL_OPTIONS_INFO_ENTRY = "all_options_info";
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final Path cacheFile;
+    private final ObjectMapper objectMapper;
+    private final Map<Boolean, CompletableFuture<Map<String, CommandInfo>>> commands = new ConcurrentHashMap<>();
+
+    private CompletableFuture<CacheState> cacheState;
+    private CompletableFuture<ApiInfo> apiInfo;
+    private CompletableFuture<Map<String, OptionInfo>> allOptionsInfo;
+
+    /**
+     * Creates a new {@link ApiMetadataCache} stored in {@link #getDefaultCacheFile()}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} connected to Neovim
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public ApiMetadataCache(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, getDefaultCacheFile());
+    }
+
+    /**
+     * Creates a new {@link ApiMetadataCache}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} connected to Neovim
+     * @param cacheFile           file used to persist metadata - it is created if it doesn't exist
+     * @throws NullPointerException if any parameter is null
+     */
+    public ApiMetadataCache(ReactiveRpcStreamer reactiveRpcStreamer, Path cacheFile) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to fetch metadata");
+        Objects.requireNonNull(cacheFile, "cacheFile is required to persist metadata");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.cacheFile = cacheFile;
+        this.objectMapper = ObjectMappers.defaultNeovimMapper();
+    }
+
+    /**
+     * Provides default location of metadata cache file
+     * That is {@code neovim-java/api-metadata.bin} in {@code $XDG_CACHE_HOME}, or in {@code ~/.cache} if it is not set
+     *
+     * @return path to default cache file
+     */
+    public static Path getDefaultCacheFile() {
+        var cacheHome = System.getenv("XDG_CACHE_HOME");
+        var cacheDirectory = cacheHome != null && !cacheHome.isEmpty()
+                ? Paths.get(cacheHome)
+                : Paths.get(System.getProperty("user.home"), ".cache");
+        return cacheDirectory.resolve("neovim-java").resolve("api-metadata.bin");
+    }
+
+    /**
+     * Provides {@link ApiInfo} of connected Neovim instance, fetching it only if it is not cached for its build
+     *
+     * @return {@link CompletableFuture} which completes with {@link ApiInfo}
+     */
+    public synchronized CompletableFuture<ApiInfo> getApiInfo() {
+        var result = apiInfo;
+        if (result == null) {
+            result = getCacheState().thenCompose(state -> getEntry(
+                    state,
+                    API_INFO_ENTRY,
+                    () -> fetch(NeovimApi.GET_API_INFO).thenApply(info -> ((List<?>) info).get(1))
+            ).thenApply(metadata -> readApiInfo(state.channelId, metadata)));
+            apiInfo = result;
+            var created = result;
+            result.whenComplete((info, throwable) -> {
+                if (throwable != null) {
+                    resetApiInfo(created);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Provides info about all options, fetching it only if it is not cached for Neovim build
+     *
+     * @return {@link CompletableFuture} which completes with map of option names to {@link OptionInfo}
+     */
+    public synchronized CompletableFuture<Map<String, OptionInfo>> getAllOptionsInfo() {
+        var result = allOptionsInfo;
+        if (result == null) {
+            result = getCacheState().thenCompose(state -> getEntry(
+                    state,
+                    ALL_OPTIONS_INFO_ENTRY,
+                    () -> fetch(NeovimApi.GET_ALL_OPTIONS_INFO)
+            )).thenApply(bytes -> {
+                try {
+                    return objectMapper.readValue(
+                            bytes,
+                            objectMapper.getTypeFactory().constructMapType(Map.class, String.class, OptionInfo.class)
+                    );
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            allOptionsInfo = result;
+            var created = result;
+            result.whenComplete((info, throwable) -> {
+                if (throwable != null) {
+                    resetAllOptionsInfo(created);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Provides commands, fetching them only once per {@link ApiMetadataCache} instance
+     * Commands are not persisted, since they depend on user configuration, use {@link #invalidateCommands()}
+     * after commands are changed
+     *
+     * @param getCommandsOptions options passed to {@link NeovimApi#getCommands(GetCommandsOptions)}
+     * @return {@link CompletableFuture} which completes with map of command names to {@link CommandInfo}
+     */
+    public CompletableFuture<Map<String, CommandInfo>> getCommands(GetCommandsOptions getCommandsOptions) {
+        var result = commands.computeIfAbsent(getCommandsOptions.isBuiltin(), builtin ->
+                reactiveRpcStreamer.response(new RequestMessage.Builder(NeovimApi.GET_COMMANDS).addArgument(getCommandsOptions))
+                        .thenApply(ResponseMessage::getResult)
+                        .thenApply(o -> objectMapper.convertValue(
+                                o,
+                                objectMapper.getTypeFactory().constructMapType(Map.class, String.class, CommandInfo.class)
+                        )));
+        result.whenComplete((commandInfo, throwable) -> {
+            if (throwable != null) {
+                commands.remove(getCommandsOptions.isBuiltin(), result);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Clears commands cached in memory, so they are fetched again on next {@link #getCommands(GetCommandsOptions)}
+     */
+    public void invalidateCommands() {
+        commands.clear();
+    }
+
+    /**
+     * Clears all cached metadata, both from memory and from cache file
+     */
+    public void invalidate() {
+        synchronized (this) {
+            cacheState = null;
+            apiInfo = null;
+            allOptionsInfo = null;
+        }
+        invalidateCommands();
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete metadata cache file {}", cacheFile, e);
+        }
+    }
+
+    private synchronized void resetApiInfo(CompletableFuture<ApiInfo> failed) {
+        if (apiInfo == failed) {
+            apiInfo = null;
+        }
+    }
+
+    private synchronized void resetAllOptionsInfo(CompletableFuture<Map<String, OptionInfo>> failed) {
+        if (allOptionsInfo == failed) {
+            allOptionsInfo = null;
+        }
+    }
+
+    private synchronized CompletableFuture<CacheState> getCacheState() {
+        if (cacheState == null) {
+            var batch = new AtomicBatch(reactiveRpcStreamer);
+            var channelInfo = batch.api().getChannelInfo(0);
+            var version = batch.api().eval("execute('version')");
+            batch.execute();
+            var state = channelInfo.thenCombine(version, (info, versionOutput) -> {
+                var versionKey = createVersionKey(String.valueOf(versionOutput));
+                return new CacheState(info.getId(), versionKey, readEntries(versionKey));
+            });
+            state.whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    synchronized (this) {
+                        if (cacheState == state) {
+                            cacheState = null;
+                        }
+                    }
+                }
+            });
+            cacheState = state;
+        }
+        return cacheState;
+    }
+
+    private CompletableFuture<byte[]> getEntry(CacheState state, String name, Supplier<CompletableFuture<Object>> fetcher) {
+        var cached = state.entries.get(name);
+        if (cached != null) {
+            log.debug("Serving {} from metadata cache", name);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetcher.get().thenApply(result -> {
+            try {
+                var bytes = objectMapper.writeValueAsBytes(result);
+                state.entries.put(name, bytes);
+                writeEntries(state);
+                return bytes;
+            } catch (JsonProcessingException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private CompletableFuture<Object> fetch(String method) {
+        return reactiveRpcStreamer.response(new RequestMessage.Builder(method)).thenApply(ResponseMessage::getResult);
+    }
+
+    private ApiInfo readApiInfo(int channelId, byte[] metadata) {
+        // ApiInfo is encoded as [channelId, metadata] - metadata is appended as is, without decoding it
+        try (var packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packArrayHeader(2);
+            packer.packInt(channelId);
+            packer.writePayload(metadata);
+            return objectMapper.readValue(packer.toByteArray(), ApiInfo.class);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Map<String, byte[]> readEntries(String versionKey) {
+        var entries = new ConcurrentHashMap<String, byte[]>();
+        if (!Files.isRegularFile(cacheFile)) {
+            return entries;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                log.debug("Ignoring metadata cache file {} with unknown format", cacheFile);
+                return entries;
+            }
+            if (!versionKey.equals(input.readUTF())) {
+                log.debug("Ignoring metadata cache file {} created for a different Neovim build", cacheFile);
+                return entries;
+            }
+            int count = input.readInt();
+            var read = new HashMap<String, byte[]>();
+            for (int i = 0; i < count; i++) {
+                var name = input.readUTF();
+                var bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                read.put(name, bytes);
+            }
+            entries.putAll(read);
+        } catch (IOException e) {
+            log.warn("Failed to read metadata cache file {}", cacheFile, e);
+        }
+        return entries;
+    }
+
+    private synchronized void writeEntries(CacheState state) {
+        try {
+            var directory = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            var temporaryFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+            try {
+                try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(FORMAT_VERSION);
+                    output.writeUTF(state.versionKey);
+                    var entries = new HashMap<>(state.entries);
+                    output.writeInt(entries.size());
+                    for (var entry : entries.entrySet()) {
+                        output.writeUTF(entry.getKey());
+                        output.writeInt(entry.getValue().length);
+                        output.write(entry.getValue());
+                    }
+                }
+                try {
+                    Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write metadata cache file {}", cacheFile, e);
+        }
+    }
+
+    private static String createVersionKey(String versionOutput) {
+        var trimmed = versionOutput.trim();
+        var firstLineEnd = trimmed.indexOf('\n');
+        var version = firstLineEnd >= 0 ? trimmed.substring(0, firstLineEnd).trim() : trimmed;
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(trimmed.getBytes(StandardCharsets.UTF_8));
+            var hash = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hash.append(String.format("%02x", digest[i]));
+            }
+            return version + "+" + hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CacheState {
+        private final int channelId;
+        private final String versionKey;
+        private final Map<String, byte[]> entries;
+
+        private CacheState(int channelId, String versionKey, Map<String, byte[]> entries) {
+            this.channelId = channelId;
+            this.versionKey = versionKey;
+            this.entries = entries;
+        }
+    }
+}
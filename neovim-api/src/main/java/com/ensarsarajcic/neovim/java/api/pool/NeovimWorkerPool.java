@@ -0,0 +1,726 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.pool;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimApis;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.corerpc.client.ProcessRpcConnection;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Pool of prewarmed Neovim instances (by default {@code nvim --embed --headless}) for batch text processing
+ * <p>
+ * Spawning and initializing Neovim is usually far more expensive than the job itself, so this pool keeps started
+ * instances around and leases them out one job at a time. Idle worker which served the least jobs is picked first,
+ * spreading the load evenly. Workers are recycled (stopped and replaced) once they served
+ * {@link Builder#withMaxJobsPerWorker(int)} jobs, once their resident memory grows over
+ * {@link Builder#withMaxResidentMemory(long)}, or once they stop responding to health checks. Pool grows up to
+ * {@link Builder#withMaxSize(int)} workers while there are waiting jobs and shrinks back to
+ * {@link Builder#withMinSize(int)} workers after they were idle for {@link Builder#withIdleTimeout(Duration)}.
+ * <p>
+ * Standard error of started processes is drained continuously (and logged on debug level), so processes never block
+ * on a full pipe.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     NeovimWorkerPool pool = new NeovimWorkerPool.Builder()
+ *             .withMinSize(2)
+ *             .withMaxSize(8)
+ *             .withMaxJobsPerWorker(500)
+ *             .build();
+ *     pool.start().get();
+ *
+ *     CompletableFuture<Object> result = pool.submit(api -> api.callFunction("toupper", List.of("text")));
+ *     }
+ * </pre>
+ */
+public final class NeovimWorkerPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(NeovimWorkerPool.class);
+
+    /**
+     * Command used to start workers by default
+     */
+    public static final List<String> DEFAULT_COMMAND = List.of("nvim", "--embed", "--headless", "--clean");
+
+    private static final String MEMORY_EXPRESSION = "vim.loop.resident_set_memory()";
+
+    /**
+     * Started Neovim instance
+     *
+     * @param api        API connected to the instance
+     * @param terminate  action stopping the instance
+     * @param terminated future completed once the instance has stopped (e.g. process has exited)
+     */
+    public record Instance(NeovimApi api, Runnable terminate, CompletableFuture<?> terminated) {
+        public Instance {
+            Objects.requireNonNull(api, "api is required for worker instance");
+            Objects.requireNonNull(terminate, "terminate is required for worker instance");
+            Objects.requireNonNull(terminated, "terminated is required for worker instance");
+        }
+    }
+
+    /**
+     * Starts new Neovim instances for the pool
+     */
+    @FunctionalInterface
+    public interface Launcher {
+        /**
+         * Starts a new instance
+         * Instance does not have to be initialized yet - pool waits for it to respond before leasing it
+         *
+         * @return started {@link Instance}
+         * @throws IOException if instance could not be started
+         */
+        Instance launch() throws IOException;
+    }
+
+    /**
+     * Exclusive lease of a worker
+     * It has to be closed once the job is done, returning the worker to the pool
+     */
+    public final class Lease implements AutoCloseable {
+        private final Worker worker;
+        private boolean released = false;
+
+        private Lease(Worker worker) {
+            this.worker = worker;
+        }
+
+        /**
+         * @return API of the leased worker
+         */
+        public NeovimApi api() {
+            return worker.instance.api();
+        }
+
+        /**
+         * Returns the worker to the pool
+         */
+        @Override
+        public void close() {
+            release(this, false);
+        }
+
+        /**
+         * Stops the worker instead of returning it to the pool
+         * This should be used when the job has left the worker in unknown state
+         */
+        public void discard() {
+            release(this, true);
+        }
+    }
+
+    private static final class Worker {
+        private final Instance instance;
+        private int jobs = 0;
+        private long idleSince;
+        private boolean retired = false;
+        private boolean recycleOnRelease = false;
+
+        private Worker(Instance instance) {
+            this.instance = instance;
+        }
+    }
+
+    private final Launcher launcher;
+    private final int minSize;
+    private final int maxSize;
+    private final int maxJobsPerWorker;
+    private final long maxResidentMemory;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private final Duration idleTimeout;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private ScheduledExecutorService healthCheckScheduler;
+
+    private final List<Worker> idle = new ArrayList<>();
+    private final Deque<CompletableFuture<Lease>> waiters = new ArrayDeque<>();
+    private int size = 0;
+    private int launching = 0;
+    private boolean closed = false;
+
+    private NeovimWorkerPool(Builder builder) {
+        this.launcher = builder.launcher != null ? builder.launcher : processLauncher(builder.command);
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.maxJobsPerWorker = builder.maxJobsPerWorker;
+        this.maxResidentMemory = builder.maxResidentMemory;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+        this.idleTimeout = builder.idleTimeout;
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = Executors.newCachedThreadPool(daemonThreads("neovim-worker-launcher"));
+            this.executor = ownedExecutor;
+        }
+    }
+
+    /**
+     * Starts minimum number of workers and schedules health checks
+     *
+     * @return {@link CompletableFuture} which completes once initial workers are ready
+     */
+    public CompletableFuture<Void> start() {
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Worker pool is closed"));
+            }
+            if (healthCheckInterval != null && healthCheckScheduler == null) {
+                healthCheckScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("neovim-worker-health"));
+                var intervalMillis = healthCheckInterval.toMillis();
+                healthCheckScheduler.scheduleWithFixedDelay(this::checkHealth, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return CompletableFuture.allOf(ensureCapacity().toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Leases a worker, starting a new one if none is idle and pool is not full
+     * If pool is full, returned future completes once a worker is returned to the pool
+     *
+     * @return {@link CompletableFuture} with the {@link Lease}, which has to be closed after use
+     */
+    public CompletableFuture<Lease> acquire() {
+        var future = new CompletableFuture<Lease>();
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Worker pool is closed"));
+            }
+            if (!idle.isEmpty()) {
+                return CompletableFuture.completedFuture(lease(takeLeastUsedIdle()));
+            }
+            waiters.add(future);
+        }
+        ensureCapacity();
+        return future;
+    }
+
+    /**
+     * Runs a job on a leased worker, returning the worker to the pool once the job completes
+     *
+     * @param job job to run, using the API of the worker
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} with the result of the job
+     * @throws NullPointerException if job is null
+     */
+    public <T> CompletableFuture<T> submit(Function<NeovimApi, CompletableFuture<T>> job) {
+        Objects.requireNonNull(job, "job is required to submit it");
+        return acquire().thenCompose(lease -> {
+            CompletableFuture<T> result;
+            try {
+                result = job.apply(lease.api());
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            return result.whenComplete((value, throwable) -> lease.close());
+        });
+    }
+
+    /**
+     * Checks idle workers, recycling the ones which are unresponsive or use too much memory and stopping the ones
+     * idle for too long (while keeping at least minimum number of workers)
+     * Workers stay leasable while they are checked - unhealthy workers leased in the meantime are recycled once
+     * they are returned. This is called periodically if {@link Builder#withHealthCheckInterval(Duration)} was set
+     *
+     * @return {@link CompletableFuture} which completes once the check is done
+     */
+    public CompletableFuture<Void> checkHealth() {
+        var toRetire = new ArrayList<Worker>();
+        var toCheck = new ArrayList<Worker>();
+        synchronized (this) {
+            var now = System.nanoTime();
+            var remaining = size;
+            for (var worker : idle) {
+                if (remaining > minSize && now - worker.idleSince >= idleTimeout.toNanos()) {
+                    toRetire.add(worker);
+                    remaining--;
+                } else {
+                    toCheck.add(worker);
+                }
+            }
+        }
+        for (var worker : toRetire) {
+            log.debug("Stopping worker idle for more than {}", idleTimeout);
+            retire(worker);
+        }
+        var checks = new ArrayList<CompletableFuture<?>>(toCheck.size());
+        for (var worker : toCheck) {
+            checks.add(residentMemory(worker)
+                    .orTimeout(healthCheckTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .handle((memory, throwable) -> {
+                        healthChecked(worker, memory, throwable);
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]))
+                .thenRun(this::ensureCapacity);
+    }
+
+    /**
+     * @return number of started (or starting) workers
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of workers waiting for jobs
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Stops all workers, failing jobs waiting for them
+     * Leased workers are stopped once they are returned
+     */
+    @Override
+    public void close() {
+        List<Worker> idleWorkers;
+        List<CompletableFuture<Lease>> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            idleWorkers = new ArrayList<>(idle);
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+            if (healthCheckScheduler != null) {
+                healthCheckScheduler.shutdownNow();
+            }
+        }
+        for (var waiter : pending) {
+            waiter.completeExceptionally(new IllegalStateException("Worker pool is closed"));
+        }
+        for (var worker : idleWorkers) {
+            retire(worker);
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Creates a {@link Launcher} starting Neovim processes using given command
+     * Command has to start Neovim in embedded mode (with {@code --embed})
+     *
+     * @param command command to run
+     * @return {@link Launcher} starting processes
+     * @throws NullPointerException if command is null
+     */
+    public static Launcher processLauncher(List<String> command) {
+        var commandCopy = List.copyOf(command);
+        var stderrThreads = new AtomicInteger();
+        return () -> {
+            var process = new ProcessBuilder(commandCopy).start();
+            var drainer = new Thread(() -> drainErrors(process), "neovim-worker-stderr-" + stderrThreads.incrementAndGet());
+            drainer.setDaemon(true);
+            drainer.start();
+            var connection = new ProcessRpcConnection(process, true);
+            var rpcStreamer = NeovimApis.getNeovimRpcStreamer();
+            var reactiveRpcStreamer = ReactiveRpcClient.createDefaultInstanceWithCustomStreamer(rpcStreamer);
+            reactiveRpcStreamer.attach(connection);
+            return new Instance(new NeovimStreamApi(reactiveRpcStreamer), () -> {
+                rpcStreamer.stop();
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close worker connection", e);
+                }
+            }, process.onExit());
+        };
+    }
+
+    private static void drainErrors(Process process) {
+        try (var reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.debug("Worker {} stderr: {}", process.pid(), line);
+            }
+        } catch (IOException e) {
+            log.trace("Worker {} stderr closed", process.pid(), e);
+        }
+    }
+
+    private synchronized Lease lease(Worker worker) {
+        worker.jobs++;
+        return new Lease(worker);
+    }
+
+    private Worker takeLeastUsedIdle() {
+        var best = 0;
+        for (var i = 1; i < idle.size(); i++) {
+            if (idle.get(i).jobs < idle.get(best).jobs) {
+                best = i;
+            }
+        }
+        return idle.remove(best);
+    }
+
+    private void healthChecked(Worker worker, Long memory, Throwable throwable) {
+        if (throwable == null && memory <= maxResidentMemory) {
+            return;
+        }
+        synchronized (this) {
+            if (!idle.remove(worker)) {
+                // Leased during the check - a job may simply keep it busy, but its memory is known to be too high
+                if (throwable == null) {
+                    worker.recycleOnRelease = true;
+                }
+                return;
+            }
+        }
+        if (throwable != null) {
+            log.warn("Worker failed health check - recycling it", throwable);
+        } else {
+            log.info("Worker uses {} bytes of memory - recycling it", memory);
+        }
+        retire(worker);
+    }
+
+    private void release(Lease lease, boolean discard) {
+        var worker = lease.worker;
+        boolean recycle;
+        synchronized (this) {
+            if (lease.released) {
+                return;
+            }
+            lease.released = true;
+            recycle = discard || worker.jobs >= maxJobsPerWorker || worker.recycleOnRelease;
+        }
+        if (recycle) {
+            log.debug("Recycling worker after {} jobs", worker.jobs);
+            retire(worker);
+            ensureCapacity();
+        } else {
+            offer(worker, true);
+        }
+    }
+
+    /**
+     * Hands the worker to the oldest waiting job, or puts it back to idle workers
+     */
+    private void offer(Worker worker, boolean resetIdleTime) {
+        while (true) {
+            CompletableFuture<Lease> waiter;
+            synchronized (this) {
+                if (worker.retired) {
+                    return;
+                }
+                if (closed) {
+                    break;
+                }
+                waiter = waiters.poll();
+                if (waiter == null) {
+                    if (resetIdleTime) {
+                        worker.idleSince = System.nanoTime();
+                    }
+                    idle.add(worker);
+                    return;
+                }
+            }
+            var lease = lease(worker);
+            if (waiter.complete(lease)) {
+                return;
+            }
+            // Waiter was cancelled - try the next one
+            synchronized (this) {
+                worker.jobs--;
+            }
+        }
+        retire(worker);
+    }
+
+    private void retire(Worker worker) {
+        synchronized (this) {
+            if (worker.retired) {
+                return;
+            }
+            worker.retired = true;
+            idle.remove(worker);
+            size--;
+        }
+        try {
+            worker.instance.terminate().run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to stop worker", e);
+        }
+    }
+
+    /**
+     * Starts workers needed to reach the minimum size and to serve waiting jobs, within maximum size
+     */
+    private List<CompletableFuture<Void>> ensureCapacity() {
+        int toLaunch;
+        synchronized (this) {
+            if (closed) {
+                return List.of();
+            }
+            var forWaiters = Math.min(waiters.size() - launching, maxSize - size);
+            toLaunch = Math.max(minSize - size, forWaiters);
+            size += Math.max(toLaunch, 0);
+            launching += Math.max(toLaunch, 0);
+        }
+        var launches = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < toLaunch; i++) {
+            launches.add(CompletableFuture.runAsync(this::launchWorker, executor));
+        }
+        return launches;
+    }
+
+    private void launchWorker() {
+        Instance instance;
+        try {
+            instance = launcher.launch();
+        } catch (IOException | RuntimeException e) {
+            launchFailed(e);
+            throw new IllegalStateException("Failed to start worker", e);
+        }
+        var worker = new Worker(instance);
+        // Wait for the instance to respond, so only initialized workers are leased
+        var failure = residentMemory(worker).orTimeout(healthCheckTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((memory, throwable) -> throwable)
+                .join();
+        if (failure != null) {
+            instance.terminate().run();
+            launchFailed(failure);
+            throw new IllegalStateException("Worker did not respond after start", failure);
+        }
+        synchronized (this) {
+            launching--;
+        }
+        instance.terminated().whenComplete((result, exitThrowable) -> workerStopped(worker));
+        offer(worker, true);
+    }
+
+    private void workerStopped(Worker worker) {
+        synchronized (this) {
+            if (worker.retired) {
+                return;
+            }
+        }
+        log.warn("Worker stopped unexpectedly");
+        retire(worker);
+        ensureCapacity();
+    }
+
+    private void launchFailed(Throwable throwable) {
+        log.error("Failed to start worker", throwable);
+        CompletableFuture<Lease> waiter;
+        synchronized (this) {
+            size--;
+            launching--;
+            waiter = waiters.poll();
+        }
+        if (waiter != null) {
+            waiter.completeExceptionally(throwable);
+        }
+    }
+
+    private static CompletableFuture<Long> residentMemory(Worker worker) {
+        return worker.instance.api().callFunction("luaeval", List.of(MEMORY_EXPRESSION))
+                .thenApply(memory -> ((Number) memory).longValue());
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Builder for {@link NeovimWorkerPool}
+     */
+    public static final class Builder {
+        private List<String> command = DEFAULT_COMMAND;
+        private Launcher launcher;
+        private int minSize = 1;
+        private int maxSize = Runtime.getRuntime().availableProcessors();
+        private int maxJobsPerWorker = Integer.MAX_VALUE;
+        private long maxResidentMemory = Long.MAX_VALUE;
+        private Duration healthCheckInterval = Duration.ofSeconds(30);
+        private Duration healthCheckTimeout = Duration.ofSeconds(10);
+        private Duration idleTimeout = Duration.ofMinutes(1);
+        private Executor executor;
+
+        /**
+         * Sets command used to start workers - {@link #DEFAULT_COMMAND} by default
+         *
+         * @param command command starting Neovim in embedded mode
+         * @return this builder
+         */
+        public Builder withCommand(List<String> command) {
+            this.command = List.copyOf(command);
+            return this;
+        }
+
+        /**
+         * Sets custom launcher of workers, replacing the command
+         *
+         * @param launcher launcher used to start workers
+         * @return this builder
+         */
+        public Builder withLauncher(Launcher launcher) {
+            this.launcher = Objects.requireNonNull(launcher, "launcher can't be null");
+            return this;
+        }
+
+        /**
+         * Sets number of workers kept started even when idle - 1 by default
+         *
+         * @param minSize minimum number of workers
+         * @return this builder
+         */
+        public Builder withMinSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * Sets maximum number of workers - number of available processors by default
+         *
+         * @param maxSize maximum number of workers
+         * @return this builder
+         */
+        public Builder withMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets number of jobs after which worker is recycled - unlimited by default
+         *
+         * @param maxJobsPerWorker maximum number of jobs served by a single worker
+         * @return this builder
+         */
+        public Builder withMaxJobsPerWorker(int maxJobsPerWorker) {
+            this.maxJobsPerWorker = maxJobsPerWorker;
+            return this;
+        }
+
+        /**
+         * Sets resident memory (in bytes) over which worker is recycled during health check - unlimited by default
+         *
+         * @param maxResidentMemory maximum resident memory of a worker in bytes
+         * @return this builder
+         */
+        public Builder withMaxResidentMemory(long maxResidentMemory) {
+            this.maxResidentMemory = maxResidentMemory;
+            return this;
+        }
+
+        /**
+         * Sets interval of health checks of idle workers - 30 seconds by default
+         *
+         * @param healthCheckInterval interval of health checks or null to disable periodic checks
+         * @return this builder
+         */
+        public Builder withHealthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        /**
+         * Sets time in which worker has to respond to health check (and to the initial request) - 10 seconds by default
+         *
+         * @param healthCheckTimeout health check timeout
+         * @return this builder
+         */
+        public Builder withHealthCheckTimeout(Duration healthCheckTimeout) {
+            this.healthCheckTimeout = Objects.requireNonNull(healthCheckTimeout, "healthCheckTimeout can't be null");
+            return this;
+        }
+
+        /**
+         * Sets time after which idle workers over minimum size are stopped - 1 minute by default
+         *
+         * @param idleTimeout idle timeout
+         * @return this builder
+         */
+        public Builder withIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = Objects.requireNonNull(idleTimeout, "idleTimeout can't be null");
+            return this;
+        }
+
+        /**
+         * Sets executor used to start workers - a dedicated cached thread pool by default
+         *
+         * @param executor executor used to start workers
+         * @return this builder
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor can't be null");
+            return this;
+        }
+
+        /**
+         * Creates a new {@link NeovimWorkerPool}
+         * Workers are not started until {@link NeovimWorkerPool#start()} or {@link NeovimWorkerPool#acquire()} is called
+         *
+         * @return a new {@link NeovimWorkerPool}
+         * @throws IllegalArgumentException if sizes or job limit are not valid
+         */
+        public NeovimWorkerPool build() {
+            if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+                throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+            }
+            if (maxJobsPerWorker < 1) {
+                throw new IllegalArgumentException("maxJobsPerWorker has to be positive");
+            }
+            return new NeovimWorkerPool(this);
+        }
+    }
+}
@@ -0,0 +1,638 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.quickfix;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Produces quickfix or location lists incrementally, from a stream of entries
+ * <p>
+ * Instead of sending all entries in a single {@code setqflist()} call, which blocks Neovim until the whole list is
+ * processed, a new list is created right away and entries are appended to it using the {@code 'a'} action, in
+ * chunks of at most {@link Options#getChunkSize()} entries. Chunks are sent one at a time, waiting for
+ * {@link Options#getChunkInterval()} between them, so Neovim stays responsive. Entries which arrive slowly (e.g.
+ * from a running compiler) are flushed after the same interval, even if the chunk is not full yet.
+ * <p>
+ * Every append also updates the list title (with number of entries added so far, unless disabled) and context,
+ * which holds {@code running} and {@code count} next to the values provided by the caller. Appends target the
+ * created list by its id, so lists created in the meantime are not affected.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     QuickfixProducer producer = new QuickfixProducer(reactiveRpcStreamer);
+ *
+ *     CompletableFuture<Integer> count = producer.produce(QuickfixProducer.Target.quickfix(), "Build", Map.of(),
+ *             compilerOutput.map(error -> QuickfixProducer.Entry.forFile(error.file(), error.line(), error.column(), error.message())));
+ *     }
+ * </pre>
+ */
+public final class QuickfixProducer {
+    private static final Logger log = LoggerFactory.getLogger(QuickfixProducer.class);
+
+    /**
+     * List which entries are produced into
+     */
+    public static final class Target {
+        private static final Target QUICKFIX = new Target(null);
+
+        private final Window window;
+
+        private Target(Window window) {
+            this.window = window;
+        }
+
+        /**
+         * @return target representing the quickfix list
+         */
+        public static Target quickfix() {
+            return QUICKFIX;
+        }
+
+        /**
+         * Provides target representing location list of given window
+         *
+         * @param window window owning the location list
+         * @return location list target
+         * @throws NullPointerException if window is null
+         */
+        public static Target locationList(Window window) {
+            return new Target(Objects.requireNonNull(window, "window is required for location list"));
+        }
+
+        /**
+         * @return window owning the location list or null for the quickfix list
+         */
+        public Window getWindow() {
+            return window;
+        }
+
+        private List<Object> setArguments(String action, Map<String, Object> what) {
+            return window == null
+                    ? List.of(List.of(), action, what)
+                    : List.of(window.getId(), List.of(), action, what);
+        }
+
+        private List<Object> getArguments(Map<String, Object> what) {
+            return window == null ? List.of(what) : List.of(window.getId(), what);
+        }
+
+        private String setFunction() {
+            return window == null ? "setqflist" : "setloclist";
+        }
+
+        private String getFunction() {
+            return window == null ? "getqflist" : "getloclist";
+        }
+
+        @Override
+        public String toString() {
+            return window == null ? "Target{quickfix}" : "Target{locationList=" + window + '}';
+        }
+    }
+
+    /**
+     * A single quickfix entry
+     * Either a buffer or a file name is used to identify the location. Lines and columns are one based and zero
+     * means they are not set.
+     *
+     * @param buffer    buffer of the entry or null if filename is used
+     * @param filename  name of the file of the entry or null if buffer is used
+     * @param line      line number
+     * @param column    byte column
+     * @param endLine   end line number
+     * @param endColumn end byte column
+     * @param text      description of the entry
+     * @param type      type of the entry ({@code E}, {@code W}, {@code I}, {@code N}) or null
+     */
+    public record Entry(Buffer buffer, String filename, int line, int column, int endLine, int endColumn,
+                        String text, String type) {
+
+        /**
+         * Creates an entry pointing to a file
+         *
+         * @param filename name of the file
+         * @param line     line number
+         * @param column   byte column
+         * @param text     description of the entry
+         * @return a new {@link Entry}
+         * @throws NullPointerException if filename is null
+         */
+        public static Entry forFile(String filename, int line, int column, String text) {
+            Objects.requireNonNull(filename, "filename is required for quickfix entry");
+            return new Entry(null, filename, line, column, 0, 0, text, null);
+        }
+
+        /**
+         * Creates an entry pointing to a buffer
+         *
+         * @param buffer buffer of the entry
+         * @param line   line number
+         * @param column byte column
+         * @param text   description of the entry
+         * @return a new {@link Entry}
+         * @throws NullPointerException if buffer is null
+         */
+        public static Entry forBuffer(Buffer buffer, int line, int column, String text) {
+            Objects.requireNonNull(buffer, "buffer is required for quickfix entry");
+            return new Entry(buffer, null, line, column, 0, 0, text, null);
+        }
+
+        /**
+         * @param endLine   end line number
+         * @param endColumn end byte column
+         * @return copy of this entry with given end position
+         */
+        public Entry withEnd(int endLine, int endColumn) {
+            return new Entry(buffer, filename, line, column, endLine, endColumn, text, type);
+        }
+
+        /**
+         * @param type type of the entry ({@code E}, {@code W}, {@code I}, {@code N})
+         * @return copy of this entry with given type
+         */
+        public Entry withType(String type) {
+            return new Entry(buffer, filename, line, column, endLine, endColumn, text, type);
+        }
+
+        Map<String, Object> toItem() {
+            var item = new HashMap<String, Object>();
+            if (buffer != null) {
+                item.put("bufnr", buffer.getId());
+            } else {
+                item.put("filename", filename);
+            }
+            item.put("lnum", line);
+            item.put("col", column);
+            if (endLine > 0) {
+                item.put("end_lnum", endLine);
+            }
+            if (endColumn > 0) {
+                item.put("end_col", endColumn);
+            }
+            item.put("text", text != null ? text : "");
+            if (type != null) {
+                item.put("type", type);
+            }
+            return item;
+        }
+    }
+
+    private final NeovimApi neovimApi;
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final Options options;
+
+    /**
+     * Creates a new {@link QuickfixProducer} using {@link Options#DEFAULT}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to update lists
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public QuickfixProducer(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, Options.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@link QuickfixProducer}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to update lists
+     * @param options             options of the producer
+     * @throws NullPointerException if reactiveRpcStreamer or options are null
+     */
+    public QuickfixProducer(ReactiveRpcStreamer reactiveRpcStreamer, Options options) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for quickfix producer");
+        Objects.requireNonNull(options, "options are required for quickfix producer");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+        this.options = options;
+    }
+
+    /**
+     * Creates a new list and appends entries from given publisher to it, as they arrive
+     *
+     * @param target  list to produce into
+     * @param title   title of the new list
+     * @param context values stored in the list context, next to {@code running} and {@code count}, may be null
+     * @param entries publisher of entries
+     * @return {@link CompletableFuture} with number of entries, which completes once all are in the list
+     * @throws NullPointerException if target, title or entries are null
+     */
+    public CompletableFuture<Integer> produce(Target target, String title, Map<String, Object> context,
+                                              Flow.Publisher<Entry> entries) {
+        Objects.requireNonNull(target, "target is required for quickfix producer");
+        Objects.requireNonNull(title, "title is required for quickfix producer");
+        Objects.requireNonNull(entries, "entries are required for quickfix producer");
+        var subscriber = new ListSubscriber(target, title, context != null ? context : Map.of());
+        entries.subscribe(subscriber);
+        return subscriber.result;
+    }
+
+    /**
+     * Creates a new list and appends entries from given stream to it
+     * Stream is consumed on {@link Options#getExecutor()}, only as fast as entries are appended.
+     *
+     * @param target  list to produce into
+     * @param title   title of the new list
+     * @param context values stored in the list context, next to {@code running} and {@code count}, may be null
+     * @param entries stream of entries, closed once consumed
+     * @return {@link CompletableFuture} with number of entries, which completes once all are in the list
+     * @throws NullPointerException if target, title or entries are null
+     */
+    public CompletableFuture<Integer> produce(Target target, String title, Map<String, Object> context,
+                                              Stream<Entry> entries) {
+        Objects.requireNonNull(entries, "entries are required for quickfix producer");
+        return produce(target, title, context, new StreamPublisher(entries));
+    }
+
+    /**
+     * Publishes entries of a stream, pulling them only when requested
+     */
+    private final class StreamPublisher implements Flow.Publisher<Entry> {
+        private final Stream<Entry> stream;
+
+        StreamPublisher(Stream<Entry> stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Entry> subscriber) {
+            var iterator = stream.iterator();
+            var demand = new AtomicLong();
+            var cancelled = new AtomicBoolean();
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    // Only the call which raised demand from zero drains the stream
+                    if (demand.getAndAdd(n) == 0) {
+                        options.executor.execute(this::drain);
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    if (cancelled.compareAndSet(false, true)) {
+                        stream.close();
+                    }
+                }
+
+                private void drain() {
+                    try {
+                        do {
+                            long emitted = 0;
+                            var requested = demand.get();
+                            while (emitted < requested && !cancelled.get() && iterator.hasNext()) {
+                                subscriber.onNext(iterator.next());
+                                emitted++;
+                            }
+                            if (!cancelled.get() && !iterator.hasNext()) {
+                                cancel();
+                                subscriber.onComplete();
+                                return;
+                            }
+                            if (demand.addAndGet(-emitted) == 0) {
+                                return;
+                            }
+                        } while (!cancelled.get());
+                    } catch (RuntimeException e) {
+                        cancel();
+                        subscriber.onError(e);
+                    }
+                }
+            });
+        }
+    }
+
+    private final class ListSubscriber implements Flow.Subscriber<Entry> {
+        private final Target target;
+        private final String title;
+        private final Map<String, Object> context;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final Executor delayedExecutor;
+
+        private Flow.Subscription subscription;
+        private List<Map<String, Object>> chunk = new ArrayList<>();
+        private Object listId;
+        private int count = 0;
+        private boolean sending = true;
+        private boolean scheduled = false;
+        private boolean completed = false;
+        private Throwable error;
+
+        ListSubscriber(Target target, String title, Map<String, Object> context) {
+            this.target = target;
+            this.title = title;
+            this.context = context;
+            this.delayedExecutor = options.chunkInterval.isZero()
+                    ? options.executor
+                    : CompletableFuture.delayedExecutor(options.chunkInterval.toNanos(), TimeUnit.NANOSECONDS, options.executor);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                this.subscription = subscription;
+            }
+            createList().whenComplete((id, throwable) -> {
+                if (throwable != null) {
+                    subscription.cancel();
+                    result.completeExceptionally(throwable);
+                    return;
+                }
+                synchronized (this) {
+                    listId = id;
+                    sending = false;
+                }
+                subscription.request(options.chunkSize);
+                sendNext();
+            });
+        }
+
+        @Override
+        public void onNext(Entry entry) {
+            boolean full;
+            boolean schedule = false;
+            synchronized (this) {
+                chunk.add(entry.toItem());
+                count++;
+                full = chunk.size() >= options.chunkSize;
+                if (!full && !sending && !scheduled) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+            if (full) {
+                sendNext();
+            } else if (schedule) {
+                delayedExecutor.execute(this::sendScheduled);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                completed = true;
+                error = throwable;
+            }
+            sendNext();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                completed = true;
+            }
+            sendNext();
+        }
+
+        private void sendScheduled() {
+            synchronized (this) {
+                scheduled = false;
+            }
+            sendNext();
+        }
+
+        private void sendNext() {
+            List<Map<String, Object>> items;
+            boolean last;
+            int itemCount;
+            synchronized (this) {
+                if (sending || result.isDone() || chunk.isEmpty() && !completed) {
+                    return;
+                }
+                sending = true;
+                items = chunk;
+                chunk = new ArrayList<>();
+                last = completed;
+                itemCount = count;
+            }
+            var what = new HashMap<String, Object>();
+            what.put("id", listId);
+            what.put("items", items);
+            what.put("title", last || !options.progressInTitle ? title : title + " (" + itemCount + "...)");
+            what.put("context", context(!last, itemCount));
+            neovimApi.callFunction(target.setFunction(), target.setArguments("a", what))
+                    .whenComplete((ignored, throwable) -> {
+                        if (throwable != null) {
+                            log.warn("Failed to append to {}", target, throwable);
+                            subscription.cancel();
+                            result.completeExceptionally(throwable);
+                        } else if (last) {
+                            finish(itemCount);
+                        } else {
+                            // Stays in sending state until the interval passes, so next chunk is paced
+                            subscription.request(items.size());
+                            delayedExecutor.execute(this::sendPaced);
+                        }
+                    });
+        }
+
+        private void sendPaced() {
+            synchronized (this) {
+                sending = false;
+            }
+            sendNext();
+        }
+
+        private void finish(int itemCount) {
+            Throwable failure;
+            synchronized (this) {
+                failure = error;
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(itemCount);
+            }
+        }
+
+        private CompletableFuture<Object> createList() {
+            var what = new HashMap<String, Object>();
+            what.put("title", options.progressInTitle ? title + " (0...)" : title);
+            what.put("context", context(true, 0));
+            what.put("items", List.of());
+            var batch = new AtomicBatch(reactiveRpcStreamer);
+            batch.api().callFunction(target.setFunction(), target.setArguments(" ", what));
+            var list = batch.api().callFunction(target.getFunction(), target.getArguments(Map.of("id", 0)));
+            batch.execute();
+            return list.thenApply(info -> ((Map<?, ?>) info).get("id"));
+        }
+
+        private Map<String, Object> context(boolean running, int itemCount) {
+            var result = new HashMap<>(context);
+            result.put("running", running);
+            result.put("count", itemCount);
+            return result;
+        }
+    }
+
+    /**
+     * Options of {@link QuickfixProducer}
+     */
+    public static final class Options {
+        /**
+         * Default options - chunks of 1000 entries, 10 milliseconds apart, with progress shown in title
+         */
+        public static final Options DEFAULT = new Builder().build();
+
+        private final int chunkSize;
+        private final Duration chunkInterval;
+        private final boolean progressInTitle;
+        private final Executor executor;
+
+        private Options(Builder builder) {
+            this.chunkSize = builder.chunkSize;
+            this.chunkInterval = builder.chunkInterval;
+            this.progressInTitle = builder.progressInTitle;
+            this.executor = builder.executor;
+        }
+
+        /**
+         * @return maximum number of entries appended at once
+         */
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * @return time between two appends, also the longest time an entry waits for a chunk to fill up
+         */
+        public Duration getChunkInterval() {
+            return chunkInterval;
+        }
+
+        /**
+         * @return whether number of entries added so far is shown in title while producing
+         */
+        public boolean isProgressInTitle() {
+            return progressInTitle;
+        }
+
+        /**
+         * @return executor used for pacing and consuming streams
+         */
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        @Override
+        public String toString() {
+            return "Options{"
+                    + "chunkSize=" + chunkSize
+                    + ", chunkInterval=" + chunkInterval
+                    + ", progressInTitle=" + progressInTitle
+                    + ", executor=" + executor + '}';
+        }
+
+        /**
+         * Builder for {@link Options}
+         */
+        public static final class Builder {
+            private int chunkSize = 1000;
+            private Duration chunkInterval = Duration.ofMillis(10);
+            private boolean progressInTitle = true;
+            private Executor executor = ForkJoinPool.commonPool();
+
+            /**
+             * Sets maximum number of entries appended at once
+             *
+             * @param chunkSize number of entries
+             * @throws IllegalArgumentException if chunkSize is not positive
+             */
+            public Builder withChunkSize(int chunkSize) {
+                if (chunkSize <= 0) {
+                    throw new IllegalArgumentException("chunkSize must be positive");
+                }
+                this.chunkSize = chunkSize;
+                return this;
+            }
+
+            /**
+             * Sets time between two appends
+             *
+             * @param chunkInterval time between appends
+             * @throws IllegalArgumentException if chunkInterval is negative
+             */
+            public Builder withChunkInterval(Duration chunkInterval) {
+                Objects.requireNonNull(chunkInterval, "chunkInterval may not be null");
+                if (chunkInterval.isNegative()) {
+                    throw new IllegalArgumentException("chunkInterval may not be negative");
+                }
+                this.chunkInterval = chunkInterval;
+                return this;
+            }
+
+            /**
+             * Sets whether number of entries added so far is shown in title while producing
+             *
+             * @param progressInTitle true to show progress in title
+             */
+            public Builder withProgressInTitle(boolean progressInTitle) {
+                this.progressInTitle = progressInTitle;
+                return this;
+            }
+
+            /**
+             * Sets executor used for pacing and consuming streams
+             *
+             * @param executor executor to use
+             */
+            public Builder withExecutor(Executor executor) {
+                this.executor = Objects.requireNonNull(executor, "executor may not be null");
+                return this;
+            }
+
+            /**
+             * Creates new {@link Options}
+             *
+             * @return new {@link Options}. Multiple calls will create different instances.
+             */
+            public Options build() {
+                return new Options(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,604 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.search;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.atomic.AtomicBatch;
+import com.ensarsarajcic.neovim.java.api.buffer.BufferStreamApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.quickfix.QuickfixProducer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Searches all loaded buffers at once, using the JVM instead of Neovim to do the matching
+ * <p>
+ * Buffer contents are fetched in bulk - either using {@code nvim_buf_get_lines} calls grouped into atomic requests
+ * ({@link FetchMode#ATOMIC_BATCHES}) or as raw byte lines ({@link FetchMode#BYTE_LINES}), which skips decoding of
+ * lines that do not match a literal search. Lines of each buffer are then split into chunks, which are searched in
+ * parallel on the configured {@link Executor} ({@link ForkJoinPool#commonPool()} by default). Matches are streamed to
+ * subscribers as soon as they are found, so their order is not defined.
+ * <p>
+ * Buffers which can't be read (e.g. wiped while the search is running) are skipped.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferSearch bufferSearch = new BufferSearch(reactiveRpcStreamer);
+ *
+ *     bufferSearch.search(Pattern.compile("TODO|FIXME")).subscribe(subscriber);
+ *     CompletableFuture<Integer> matchCount = bufferSearch.searchToQuickfix(Pattern.compile("TODO"), "TODOs");
+ *     }
+ * </pre>
+ */
+public final class BufferSearch {
+    private static final Logger log = LoggerFactory.getLogger(BufferSearch.class);
+
+    /**
+     * Defines how buffer contents are fetched from Neovim
+     */
+    public enum FetchMode {
+        /**
+         * Lines are fetched as strings, using atomic requests of multiple {@code nvim_buf_get_lines} calls
+         */
+        ATOMIC_BATCHES,
+        /**
+         * Lines are fetched as raw bytes, using one pipelined request per buffer
+         * Lines are decoded only when needed, which literal searches do for matching lines only
+         */
+        BYTE_LINES
+    }
+
+    /**
+     * A single match found in a buffer
+     *
+     * @param buffer    buffer containing the match
+     * @param line      zero based line index
+     * @param column    zero based byte column of the match start, as used by Neovim APIs
+     * @param endColumn zero based byte column just after the match end
+     * @param text      whole line containing the match
+     */
+    public record Match(Buffer buffer, int line, int column, int endColumn, String text) {
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final NeovimApi neovimApi;
+    private final Options options;
+    private final QuickfixProducer quickfixProducer;
+
+    /**
+     * Creates a new {@link BufferSearch} using {@link Options#DEFAULT}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read buffers
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public BufferSearch(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(reactiveRpcStreamer, Options.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@link BufferSearch}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to read buffers
+     * @param options             options of the search
+     * @throws NullPointerException if reactiveRpcStreamer or options are null
+     */
+    public BufferSearch(ReactiveRpcStreamer reactiveRpcStreamer, Options options) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for buffer search");
+        Objects.requireNonNull(options, "options are required for buffer search");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+        this.options = options;
+        this.quickfixProducer = new QuickfixProducer(reactiveRpcStreamer, new QuickfixProducer.Options.Builder()
+                .withChunkSize(options.quickfixChunkSize)
+                .withExecutor(options.executor)
+                .build());
+    }
+
+    /**
+     * Searches all loaded buffers for given regular expression
+     * Search starts once the returned publisher is subscribed to and only a single subscriber is supported.
+     * Cancelling the subscription stops the search.
+     *
+     * @param pattern pattern to search for, matched against each line separately
+     * @return {@link Flow.Publisher} of found matches, which completes once all buffers are searched
+     * @throws NullPointerException if pattern is null
+     */
+    public Flow.Publisher<Match> search(Pattern pattern) {
+        Objects.requireNonNull(pattern, "pattern is required for search");
+        return new SearchPublisher(new RegexQuery(pattern));
+    }
+
+    /**
+     * Searches all loaded buffers for given literal text
+     * Search starts once the returned publisher is subscribed to and only a single subscriber is supported.
+     * Cancelling the subscription stops the search.
+     *
+     * @param literal text to search for
+     * @return {@link Flow.Publisher} of found matches, which completes once all buffers are searched
+     * @throws NullPointerException     if literal is null
+     * @throws IllegalArgumentException if literal is empty or contains a line break
+     */
+    public Flow.Publisher<Match> searchLiteral(String literal) {
+        Objects.requireNonNull(literal, "literal is required for search");
+        if (literal.isEmpty() || literal.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("literal must be a non empty text without line breaks");
+        }
+        return new SearchPublisher(new LiteralQuery(literal));
+    }
+
+    /**
+     * Searches all loaded buffers for given regular expression, replacing the quickfix list with found matches
+     * Matches are appended to a new quickfix list in chunks of {@link Options#getQuickfixChunkSize()} while the
+     * search is still running, using {@link QuickfixProducer}.
+     *
+     * @param pattern pattern to search for
+     * @param title   title of the new quickfix list
+     * @return {@link CompletableFuture} with number of found matches, which completes once all are in the list
+     * @throws NullPointerException if pattern or title are null
+     */
+    public CompletableFuture<Integer> searchToQuickfix(Pattern pattern, String title) {
+        var matches = search(pattern);
+        Flow.Publisher<QuickfixProducer.Entry> entries = subscriber -> matches.subscribe(new QuickfixEntrySubscriber(subscriber));
+        return quickfixProducer.produce(QuickfixProducer.Target.quickfix(), title, null, entries);
+    }
+
+    private void run(Query query, SubmissionPublisher<Match> publisher) {
+        neovimApi.getBuffers()
+                .thenCompose(this::filterLoaded)
+                .thenCompose(buffers -> {
+                    var searches = new ArrayList<CompletableFuture<Void>>();
+                    for (var start = 0; start < buffers.size(); start += options.fetchBatchSize) {
+                        var batch = buffers.subList(start, Math.min(buffers.size(), start + options.fetchBatchSize));
+                        if (options.fetchMode == FetchMode.BYTE_LINES) {
+                            for (var buffer : batch) {
+                                searches.add(skipFailed(buffer, fetchBytes(buffer))
+                                        .thenCompose(lines -> searchLines(buffer, lines, query::find, publisher)));
+                            }
+                        } else {
+                            var atomicBatch = new AtomicBatch(reactiveRpcStreamer);
+                            for (var buffer : batch) {
+                                var lines = atomicBatch.buffer(buffer).getLines(0, -1, false)
+                                        .exceptionallyCompose(throwable -> isCancellation(throwable)
+                                                ? new BufferStreamApi(reactiveRpcStreamer, buffer).getLines(0, -1, false)
+                                                : CompletableFuture.failedFuture(throwable));
+                                searches.add(skipFailed(buffer, lines)
+                                        .thenCompose(fetched -> searchLines(buffer, fetched, query::find, publisher)));
+                            }
+                            atomicBatch.execute();
+                        }
+                    }
+                    return CompletableFuture.allOf(searches.toArray(new CompletableFuture[0]));
+                })
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        publisher.closeExceptionally(throwable);
+                    } else {
+                        publisher.close();
+                    }
+                });
+    }
+
+    private CompletableFuture<List<Buffer>> filterLoaded(List<NeovimBufferApi> bufferApis) {
+        var atomicBatch = new AtomicBatch(reactiveRpcStreamer);
+        var loaded = new ArrayList<CompletableFuture<Boolean>>(bufferApis.size());
+        for (var bufferApi : bufferApis) {
+            loaded.add(atomicBatch.buffer(bufferApi.get()).isLoaded().exceptionally(throwable -> false));
+        }
+        atomicBatch.execute();
+        return CompletableFuture.allOf(loaded.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    var buffers = new ArrayList<Buffer>();
+                    for (var i = 0; i < bufferApis.size(); i++) {
+                        if (Boolean.TRUE.equals(loaded.get(i).join())) {
+                            buffers.add(bufferApis.get(i).get());
+                        }
+                    }
+                    return buffers;
+                });
+    }
+
+    private CompletableFuture<List<ByteBuffer>> fetchBytes(Buffer buffer) {
+        return new BufferStreamApi(reactiveRpcStreamer, buffer).getLinesBytes(0, -1, false);
+    }
+
+    private static <T> CompletableFuture<List<T>> skipFailed(Buffer buffer, CompletableFuture<List<T>> lines) {
+        return lines.exceptionally(throwable -> {
+            log.debug("Skipping buffer {}, which could not be read", buffer, throwable);
+            return List.of();
+        });
+    }
+
+    private <T> CompletableFuture<Void> searchLines(Buffer buffer, List<T> lines, LineSearch<T> lineSearch,
+                                                    SubmissionPublisher<Match> publisher) {
+        if (lines.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var chunks = new ArrayList<CompletableFuture<Void>>();
+        Consumer<Match> sink = publisher::submit;
+        for (var start = 0; start < lines.size(); start += options.chunkLines) {
+            var chunkStart = start;
+            var chunkEnd = Math.min(lines.size(), start + options.chunkLines);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (var line = chunkStart; line < chunkEnd && publisher.hasSubscribers(); line++) {
+                    lineSearch.find(buffer, line, lines.get(line), sink);
+                }
+            }, options.executor));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]));
+    }
+
+    private static boolean isCancellation(Throwable throwable) {
+        return throwable instanceof CancellationException
+                || throwable instanceof CompletionException && throwable.getCause() instanceof CancellationException;
+    }
+
+    static int utf8Length(CharSequence text, int start, int end) {
+        var length = 0;
+        for (var i = start; i < end; i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    @FunctionalInterface
+    private interface LineSearch<T> {
+        void find(Buffer buffer, int line, T text, Consumer<Match> sink);
+    }
+
+    private interface Query {
+        void find(Buffer buffer, int line, String text, Consumer<Match> sink);
+
+        default void find(Buffer buffer, int line, ByteBuffer text, Consumer<Match> sink) {
+            find(buffer, line, StandardCharsets.UTF_8.decode(text.duplicate()).toString(), sink);
+        }
+    }
+
+    private static final class RegexQuery implements Query {
+        private final Pattern pattern;
+
+        RegexQuery(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void find(Buffer buffer, int line, String text, Consumer<Match> sink) {
+            var matcher = pattern.matcher(text);
+            var byteIndex = 0;
+            var charIndex = 0;
+            while (matcher.find()) {
+                byteIndex += utf8Length(text, charIndex, matcher.start());
+                var endColumn = byteIndex + utf8Length(text, matcher.start(), matcher.end());
+                sink.accept(new Match(buffer, line, byteIndex, endColumn, text));
+                charIndex = matcher.start();
+            }
+        }
+    }
+
+    private static final class LiteralQuery implements Query {
+        private final String literal;
+        private final byte[] bytes;
+
+        LiteralQuery(String literal) {
+            this.literal = literal;
+            this.bytes = literal.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void find(Buffer buffer, int line, String text, Consumer<Match> sink) {
+            var byteIndex = 0;
+            var charIndex = 0;
+            for (var index = text.indexOf(literal); index >= 0; index = text.indexOf(literal, index + literal.length())) {
+                byteIndex += utf8Length(text, charIndex, index);
+                sink.accept(new Match(buffer, line, byteIndex, byteIndex + bytes.length, text));
+                charIndex = index;
+            }
+        }
+
+        @Override
+        public void find(Buffer buffer, int line, ByteBuffer text, Consumer<Match> sink) {
+            String decoded = null;
+            var limit = text.limit() - bytes.length;
+            for (var index = text.position(); index <= limit; index++) {
+                if (!matchesAt(text, index)) {
+                    continue;
+                }
+                if (decoded == null) {
+                    decoded = StandardCharsets.UTF_8.decode(text.duplicate()).toString();
+                }
+                var column = index - text.position();
+                sink.accept(new Match(buffer, line, column, column + bytes.length, decoded));
+                index += bytes.length - 1;
+            }
+        }
+
+        private boolean matchesAt(ByteBuffer text, int index) {
+            for (var i = 0; i < bytes.length; i++) {
+                if (text.get(index + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final class SearchPublisher implements Flow.Publisher<Match> {
+        private final Query query;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        SearchPublisher(Query query) {
+            this.query = query;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Match> subscriber) {
+            Objects.requireNonNull(subscriber, "subscriber may not be null");
+            if (!subscribed.compareAndSet(false, true)) {
+                var publisher = new SubmissionPublisher<Match>(Runnable::run, 1);
+                publisher.closeExceptionally(new IllegalStateException("Search publisher supports a single subscriber"));
+                publisher.subscribe(subscriber);
+                return;
+            }
+            var publisher = new SubmissionPublisher<Match>(options.executor, options.bufferSize);
+            publisher.subscribe(subscriber);
+            run(query, publisher);
+        }
+    }
+
+    private static final class QuickfixEntrySubscriber implements Flow.Subscriber<Match> {
+        private final Flow.Subscriber<? super QuickfixProducer.Entry> delegate;
+
+        QuickfixEntrySubscriber(Flow.Subscriber<? super QuickfixProducer.Entry> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(Match match) {
+            delegate.onNext(QuickfixProducer.Entry.forBuffer(match.buffer(), match.line() + 1, match.column() + 1, match.text())
+                    .withEnd(match.line() + 1, match.endColumn() + 1));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+
+    /**
+     * Options of {@link BufferSearch}
+     */
+    public static final class Options {
+        /**
+         * Default options - atomic batches of 50 buffers, chunks of 2000 lines searched on
+         * {@link ForkJoinPool#commonPool()} and quickfix list appended in chunks of 500 entries
+         */
+        public static final Options DEFAULT = new Builder().build();
+
+        private final FetchMode fetchMode;
+        private final int fetchBatchSize;
+        private final int chunkLines;
+        private final int quickfixChunkSize;
+        private final int bufferSize;
+        private final Executor executor;
+
+        private Options(Builder builder) {
+            this.fetchMode = builder.fetchMode;
+            this.fetchBatchSize = builder.fetchBatchSize;
+            this.chunkLines = builder.chunkLines;
+            this.quickfixChunkSize = builder.quickfixChunkSize;
+            this.bufferSize = builder.bufferSize;
+            this.executor = builder.executor;
+        }
+
+        /**
+         * @return how buffer contents are fetched
+         */
+        public FetchMode getFetchMode() {
+            return fetchMode;
+        }
+
+        /**
+         * @return number of buffers fetched in a single atomic request
+         */
+        public int getFetchBatchSize() {
+            return fetchBatchSize;
+        }
+
+        /**
+         * @return number of lines searched by a single task
+         */
+        public int getChunkLines() {
+            return chunkLines;
+        }
+
+        /**
+         * @return number of entries appended to quickfix list at once
+         */
+        public int getQuickfixChunkSize() {
+            return quickfixChunkSize;
+        }
+
+        /**
+         * @return number of matches buffered for a subscriber before search tasks wait for it
+         */
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        /**
+         * @return executor running search tasks and delivering matches
+         */
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        @Override
+        public String toString() {
+            return "Options{"
+                    + "fetchMode=" + fetchMode
+                    + ", fetchBatchSize=" + fetchBatchSize
+                    + ", chunkLines=" + chunkLines
+                    + ", quickfixChunkSize=" + quickfixChunkSize
+                    + ", bufferSize=" + bufferSize
+                    + ", executor=" + executor + '}';
+        }
+
+        /**
+         * Builder for {@link Options}
+         */
+        public static final class Builder {
+            private FetchMode fetchMode = FetchMode.ATOMIC_BATCHES;
+            private int fetchBatchSize = 50;
+            private int chunkLines = 2000;
+            private int quickfixChunkSize = 500;
+            private int bufferSize = Flow.defaultBufferSize();
+            private Executor executor = ForkJoinPool.commonPool();
+
+            /**
+             * Sets how buffer contents are fetched
+             *
+             * @param fetchMode fetch mode
+             */
+            public Builder withFetchMode(FetchMode fetchMode) {
+                this.fetchMode = Objects.requireNonNull(fetchMode, "fetchMode may not be null");
+                return this;
+            }
+
+            /**
+             * Sets number of buffers fetched in a single atomic request
+             *
+             * @param fetchBatchSize number of buffers
+             * @throws IllegalArgumentException if fetchBatchSize is not positive
+             */
+            public Builder withFetchBatchSize(int fetchBatchSize) {
+                if (fetchBatchSize <= 0) {
+                    throw new IllegalArgumentException("fetchBatchSize must be positive");
+                }
+                this.fetchBatchSize = fetchBatchSize;
+                return this;
+            }
+
+            /**
+             * Sets number of lines searched by a single task
+             *
+             * @param chunkLines number of lines
+             * @throws IllegalArgumentException if chunkLines is not positive
+             */
+            public Builder withChunkLines(int chunkLines) {
+                if (chunkLines <= 0) {
+                    throw new IllegalArgumentException("chunkLines must be positive");
+                }
+                this.chunkLines = chunkLines;
+                return this;
+            }
+
+            /**
+             * Sets number of entries appended to quickfix list at once
+             *
+             * @param quickfixChunkSize number of entries
+             * @throws IllegalArgumentException if quickfixChunkSize is not positive
+             */
+            public Builder withQuickfixChunkSize(int quickfixChunkSize) {
+                if (quickfixChunkSize <= 0) {
+                    throw new IllegalArgumentException("quickfixChunkSize must be positive");
+                }
+                this.quickfixChunkSize = quickfixChunkSize;
+                return this;
+            }
+
+            /**
+             * Sets number of matches buffered for a subscriber before search tasks wait for it
+             *
+             * @param bufferSize number of matches
+             * @throws IllegalArgumentException if bufferSize is not positive
+             */
+            public Builder withBufferSize(int bufferSize) {
+                if (bufferSize <= 0) {
+                    throw new IllegalArgumentException("bufferSize must be positive");
+                }
+                this.bufferSize = bufferSize;
+                return this;
+            }
+
+            /**
+             * Sets executor running search tasks and delivering matches
+             *
+             * @param executor executor to use
+             */
+            public Builder withExecutor(Executor executor) {
+                this.executor = Objects.requireNonNull(executor, "executor may not be null");
+                return this;
+            }
+
+            /**
+             * Creates new {@link Options}
+             *
+             * @return new {@link Options}. Multiple calls will create different instances.
+             */
+            public Options build() {
+                return new Options(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.snapshot;
+
+import com.ensarsarajcic.neovim.java.api.types.api.VimCoords;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Tabpage;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable picture of tabpages, windows and buffers of the editor, taken at a single point in time
+ * <p>
+ * Structure (tabpages, their windows and buffers shown in them) is always present, while other information is present
+ * only if its {@link Field} was requested - values which were not requested are null.
+ *
+ * @param currentTabpage current tabpage
+ * @param currentWindow  current window
+ * @param currentBuffer  current buffer
+ * @param tabpages       all tabpages, in order
+ * @param buffers        buffers shown in windows (and all listed buffers, if {@link Field#LISTED_BUFFERS} was
+ *                       requested), in order of appearance
+ */
+public record EditorSnapshot(
+        Tabpage currentTabpage,
+        Window currentWindow,
+        Buffer currentBuffer,
+        List<TabpageInfo> tabpages,
+        Map<Buffer, BufferInfo> buffers) {
+
+    /**
+     * Optional information which may be included in {@link EditorSnapshot}
+     */
+    public enum Field {
+        /**
+         * Cursor position of each window
+         */
+        WINDOW_CURSOR,
+        /**
+         * Width and height of each window
+         */
+        WINDOW_SIZE,
+        /**
+         * Position of each window on the screen
+         */
+        WINDOW_POSITION,
+        /**
+         * Name of each buffer
+         */
+        BUFFER_NAME,
+        /**
+         * Line count of each buffer
+         */
+        BUFFER_LINE_COUNT,
+        /**
+         * Modified flag of each buffer
+         */
+        BUFFER_MODIFIED,
+        /**
+         * Include all listed buffers, not just the ones shown in windows
+         */
+        LISTED_BUFFERS
+    }
+
+    /**
+     * Tabpage and its windows
+     *
+     * @param tabpage tabpage
+     * @param windows windows of this tabpage, in order
+     */
+    public record TabpageInfo(Tabpage tabpage, List<WindowInfo> windows) {
+        public TabpageInfo {
+            Objects.requireNonNull(tabpage, "tabpage is required for tabpage info");
+            windows = List.copyOf(windows);
+        }
+    }
+
+    /**
+     * Window and buffer shown in it
+     *
+     * @param window   window
+     * @param buffer   buffer shown in the window
+     * @param cursor   cursor position (1-indexed row, 0-indexed byte column) or null if not requested
+     * @param width    width of the window or null if not requested
+     * @param height   height of the window or null if not requested
+     * @param position position of the window on the screen (0-indexed) or null if not requested
+     */
+    public record WindowInfo(Window window, Buffer buffer, VimCoords cursor, Integer width, Integer height, VimCoords position) {
+        public WindowInfo {
+            Objects.requireNonNull(window, "window is required for window info");
+            Objects.requireNonNull(buffer, "buffer is required for window info");
+        }
+    }
+
+    /**
+     * Buffer information
+     *
+     * @param buffer    buffer
+     * @param name      full name of the buffer or null if not requested
+     * @param lineCount line count of the buffer or null if not requested (0 for unloaded buffers)
+     * @param modified  modified flag of the buffer or null if not requested
+     */
+    public record BufferInfo(Buffer buffer, String name, Integer lineCount, Boolean modified) {
+        public BufferInfo {
+            Objects.requireNonNull(buffer, "buffer is required for buffer info");
+        }
+    }
+
+    public EditorSnapshot {
+        tabpages = List.copyOf(tabpages);
+        buffers = Collections.unmodifiableMap(new LinkedHashMap<>(buffers));
+    }
+
+    /**
+     * Finds information about given window
+     *
+     * @param window window to look for
+     * @return {@link WindowInfo} or null if window is not present in this snapshot
+     */
+    public WindowInfo findWindow(Window window) {
+        for (var tabpage : tabpages) {
+            for (var windowInfo : tabpage.windows()) {
+                if (windowInfo.window().equals(window)) {
+                    return windowInfo;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds information about given tabpage
+     *
+     * @param tabpage tabpage to look for
+     * @return {@link TabpageInfo} or null if tabpage is not present in this snapshot
+     */
+    public TabpageInfo findTabpage(Tabpage tabpage) {
+        for (var tabpageInfo : tabpages) {
+            if (tabpageInfo.tabpage().equals(tabpage)) {
+                return tabpageInfo;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.snapshot;
+
+import com.ensarsarajcic.neovim.java.api.lua.LuaFunctionRegistry;
+import com.ensarsarajcic.neovim.java.api.types.api.VimCoords;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimHandles;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides {@link EditorSnapshot} of the whole editor using a single request
+ * <p>
+ * Instead of listing tabpages, then their windows and then querying every window and buffer separately, all the
+ * requested information is gathered in Neovim by a Lua helper, registered in {@link LuaFunctionRegistry}, so its
+ * source is sent only once.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     EditorSnapshotQuery query = new EditorSnapshotQuery(reactiveRpcStreamer);
+ *     EditorSnapshot snapshot = query.snapshot(EnumSet.of(Field.WINDOW_SIZE, Field.BUFFER_NAME)).get();
+ *     WindowInfo currentWindow = snapshot.findWindow(snapshot.currentWindow());
+ *     }
+ * </pre>
+ */
+public final class EditorSnapshotQuery {
+
+    private static final String SNAPSHOT_FUNCTION = String.join("\n",
+            "local fields = {}",
+            "for _, field in ipairs(...) do fields[field] = true end",
+            "local api = vim.api",
+            "local buffers, buffer_list = {}, {}",
+            "local function add_buffer(buf)",
+            "  if buffers[buf] then return end",
+            "  local info = { id = buf }",
+            "  if fields.buffer_name then info.name = api.nvim_buf_get_name(buf) end",
+            "  if fields.buffer_line_count then info.line_count = api.nvim_buf_line_count(buf) end",
+            "  if fields.buffer_modified then info.modified = vim.bo[buf].modified end",
+            "  buffers[buf] = info",
+            "  buffer_list[#buffer_list + 1] = info",
+            "end",
+            "local tabpages = {}",
+            "for _, tab in ipairs(api.nvim_list_tabpages()) do",
+            "  local windows = {}",
+            "  for _, win in ipairs(api.nvim_tabpage_list_wins(tab)) do",
+            "    local buf = api.nvim_win_get_buf(win)",
+            "    local info = { id = win, buffer = buf }",
+            "    if fields.window_cursor then info.cursor = api.nvim_win_get_cursor(win) end",
+            "    if fields.window_size then",
+            "      info.width = api.nvim_win_get_width(win)",
+            "      info.height = api.nvim_win_get_height(win)",
+            "    end",
+            "    if fields.window_position then info.position = api.nvim_win_get_position(win) end",
+            "    windows[#windows + 1] = info",
+            "    add_buffer(buf)",
+            "  end",
+            "  tabpages[#tabpages + 1] = { id = tab, windows = windows }",
+            "end",
+            "if fields.listed_buffers then",
+            "  for _, buf in ipairs(api.nvim_list_bufs()) do",
+            "    if vim.bo[buf].buflisted then add_buffer(buf) end",
+            "  end",
+            "end",
+            "return {",
+            "  current = { api.nvim_get_current_tabpage(), api.nvim_get_current_win(), api.nvim_get_current_buf() },",
+            "  tabpages = tabpages,",
+            "  buffers = buffer_list,",
+            "}"
+    );
+
+    private final LuaFunctionRegistry luaFunctionRegistry;
+    private final LuaFunctionRegistry.Handle snapshotFunction;
+
+    /**
+     * Creates a new {@link EditorSnapshotQuery} with its own {@link LuaFunctionRegistry}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to query the editor
+     * @throws NullPointerException if reactiveRpcStreamer is null
+     */
+    public EditorSnapshotQuery(ReactiveRpcStreamer reactiveRpcStreamer) {
+        this(new LuaFunctionRegistry(reactiveRpcStreamer));
+    }
+
+    /**
+     * Creates a new {@link EditorSnapshotQuery} registering its helper in given {@link LuaFunctionRegistry}
+     *
+     * @param luaFunctionRegistry registry used to upload and call the helper
+     * @throws NullPointerException if luaFunctionRegistry is null
+     */
+    public EditorSnapshotQuery(LuaFunctionRegistry luaFunctionRegistry) {
+        Objects.requireNonNull(luaFunctionRegistry, "luaFunctionRegistry is required for editor snapshot query");
+        this.luaFunctionRegistry = luaFunctionRegistry;
+        this.snapshotFunction = luaFunctionRegistry.register(SNAPSHOT_FUNCTION);
+    }
+
+    /**
+     * Takes a snapshot including all optional information
+     *
+     * @return {@link CompletableFuture} with the {@link EditorSnapshot}
+     */
+    public CompletableFuture<EditorSnapshot> snapshot() {
+        return snapshot(EnumSet.allOf(EditorSnapshot.Field.class));
+    }
+
+    /**
+     * Takes a snapshot including just the requested optional information
+     *
+     * @param fields optional information to include
+     * @return {@link CompletableFuture} with the {@link EditorSnapshot}
+     * @throws NullPointerException if fields are null
+     */
+    public CompletableFuture<EditorSnapshot> snapshot(Set<EditorSnapshot.Field> fields) {
+        Objects.requireNonNull(fields, "fields are required for editor snapshot");
+        var fieldNames = new ArrayList<String>(fields.size());
+        for (var field : fields) {
+            fieldNames.add(field.name().toLowerCase(Locale.ROOT));
+        }
+        return luaFunctionRegistry.call(snapshotFunction, List.of(fieldNames))
+                .thenApply(result -> parseSnapshot((Map<?, ?>) result));
+    }
+
+    private static EditorSnapshot parseSnapshot(Map<?, ?> result) {
+        var current = (List<?>) result.get("current");
+        var tabpages = new ArrayList<EditorSnapshot.TabpageInfo>();
+        for (var tabpageObject : (List<?>) result.get("tabpages")) {
+            var tabpage = (Map<?, ?>) tabpageObject;
+            var windows = new ArrayList<EditorSnapshot.WindowInfo>();
+            for (var windowObject : (List<?>) tabpage.get("windows")) {
+                var window = (Map<?, ?>) windowObject;
+                windows.add(new EditorSnapshot.WindowInfo(
+                        NeovimHandles.window(toLong(window.get("id"))),
+                        NeovimHandles.buffer(toLong(window.get("buffer"))),
+                        toCoords(window.get("cursor")),
+                        toInteger(window.get("width")),
+                        toInteger(window.get("height")),
+                        toCoords(window.get("position"))
+                ));
+            }
+            tabpages.add(new EditorSnapshot.TabpageInfo(NeovimHandles.tabpage(toLong(tabpage.get("id"))), windows));
+        }
+        var buffers = new LinkedHashMap<Buffer, EditorSnapshot.BufferInfo>();
+        for (var bufferObject : (List<?>) result.get("buffers")) {
+            var buffer = (Map<?, ?>) bufferObject;
+            var handle = NeovimHandles.buffer(toLong(buffer.get("id")));
+            buffers.put(handle, new EditorSnapshot.BufferInfo(
+                    handle,
+                    (String) buffer.get("name"),
+                    toInteger(buffer.get("line_count")),
+                    (Boolean) buffer.get("modified")
+            ));
+        }
+        return new EditorSnapshot(
+                NeovimHandles.tabpage(toLong(current.get(0))),
+                NeovimHandles.window(toLong(current.get(1))),
+                NeovimHandles.buffer(toLong(current.get(2))),
+                tabpages,
+                buffers
+        );
+    }
+
+    private static long toLong(Object value) {
+        return ((Number) value).longValue();
+    }
+
+    private static Integer toInteger(Object value) {
+        return value == null ? null : ((Number) value).intValue();
+    }
+
+    private static VimCoords toCoords(Object value) {
+        if (value == null) {
+            return null;
+        }
+        var coords = (List<?>) value;
+        return new VimCoords(((Number) coords.get(0)).intValue(), ((Number) coords.get(1)).intValue());
+    }
+}
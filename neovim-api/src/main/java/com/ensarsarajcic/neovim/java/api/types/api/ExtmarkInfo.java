@@ -24,33 +24,45 @@
 
 package com.ensarsarajcic.neovim.java.api.types.api;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import java.util.Map;
+
 /**
  * Class representing vim coordinates (row and column - inside the buffer/file)
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
-@JsonPropertyOrder({"extmark_id", "row", "col"})
+@JsonPropertyOrder({"extmark_id", "row", "col", "details"})
 @JsonIgnoreProperties(ignoreUnknown = true)
 public final class ExtmarkInfo {
 
     private final int extmarkId;
     private final int row;
     private final int col;
+    private final Map<String, Object> details;
+
+    public ExtmarkInfo(int extmarkId, int row, int col) {
+        this(extmarkId, row, col, null);
+    }
 
+    @JsonCreator
     public ExtmarkInfo(
             @JsonProperty("extmark_id")
             int extmarkId,
             @JsonProperty("row")
                     int row,
             @JsonProperty("col")
-                    int col) {
+                    int col,
+            @JsonProperty("details")
+                    Map<String, Object> details) {
         this.extmarkId = extmarkId;
         this.row = row;
         this.col = col;
+        this.details = details;
     }
 
     public int getExtmarkId() {
@@ -65,12 +77,20 @@ public final class ExtmarkInfo {
         return col;
     }
 
+    /**
+     * @return details of the extmark (e.g. {@code end_row}, {@code hl_group}) or null if they were not requested
+     */
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+
     @Override
     public String toString() {
         return "ExtmarkInfo{"
                 + "extmarkId=" + extmarkId
                 + ", row=" + row
                 + ", col=" + col
+                + ", details=" + details
                 + '}';
     }
 }
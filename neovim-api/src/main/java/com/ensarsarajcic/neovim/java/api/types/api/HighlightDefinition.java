@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.types.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * Typed highlight definition, as returned by {@code nvim_get_hl_by_id} and {@code nvim_get_hl_by_name}
+ * Colors which are not set are represented with null
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class HighlightDefinition {
+
+    private final Integer foreground;
+    private final Integer background;
+    private final Integer special;
+    private final boolean reverse;
+    private final boolean italic;
+    private final boolean bold;
+    private final boolean strikethrough;
+    private final boolean underline;
+    private final boolean undercurl;
+    private final Integer blend;
+
+    public HighlightDefinition(
+            @JsonProperty("foreground")
+                    Integer foreground,
+            @JsonProperty("background")
+                    Integer background,
+            @JsonProperty("special")
+                    Integer special,
+            @JsonProperty("reverse")
+                    boolean reverse,
+            @JsonProperty("italic")
+                    boolean italic,
+            @JsonProperty("bold")
+                    boolean bold,
+            @JsonProperty("strikethrough")
+                    boolean strikethrough,
+            @JsonProperty("underline")
+                    boolean underline,
+            @JsonProperty("undercurl")
+                    boolean undercurl,
+            @JsonProperty("blend")
+                    Integer blend) {
+        this.foreground = foreground;
+        this.background = background;
+        this.special = special;
+        this.reverse = reverse;
+        this.italic = italic;
+        this.bold = bold;
+        this.strikethrough = strikethrough;
+        this.underline = underline;
+        this.undercurl = undercurl;
+        this.blend = blend;
+    }
+
+    public Integer getForeground() {
+        return foreground;
+    }
+
+    public Integer getBackground() {
+        return background;
+    }
+
+    public Integer getSpecial() {
+        return special;
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public boolean isStrikethrough() {
+        return strikethrough;
+    }
+
+    public boolean isUnderline() {
+        return underline;
+    }
+
+    public boolean isUndercurl() {
+        return undercurl;
+    }
+
+    public Integer getBlend() {
+        return blend;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HighlightDefinition that = (HighlightDefinition) o;
+        return reverse == that.reverse
+                && italic == that.italic
+                && bold == that.bold
+                && strikethrough == that.strikethrough
+                && underline == that.underline
+                && undercurl == that.undercurl
+                && Objects.equals(foreground, that.foreground)
+                && Objects.equals(background, that.background)
+                && Objects.equals(special, that.special)
+                && Objects.equals(blend, that.blend);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(foreground, background, special, reverse, italic, bold, strikethrough, underline, undercurl, blend);
+    }
+
+    @Override
+    public String toString() {
+        return "HighlightDefinition{"
+                + "foreground=" + foreground
+                + ", background=" + background
+                + ", special=" + special
+                + ", reverse=" + reverse
+                + ", italic=" + italic
+                + ", bold=" + bold
+                + ", strikethrough=" + strikethrough
+                + ", underline=" + underline
+                + ", undercurl=" + undercurl
+                + ", blend=" + blend + '}';
+    }
+}
@@ -24,10 +24,13 @@
 
 package com.ensarsarajcic.neovim.java.api.types.api;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public final class OptionInfo {
@@ -83,6 +86,45 @@ public final class OptionInfo {
         this.flagList = flagList;
     }
 
+    @JsonCreator
+    private OptionInfo(
+            @JsonProperty("name")
+                    String name,
+            @JsonProperty("shortname")
+                    String shortName,
+            @JsonProperty("type")
+                    String type,
+            @JsonProperty("default")
+                    String defaultValue,
+            @JsonProperty("was_set")
+                    boolean wasSet,
+            @JsonProperty("last_set_sid")
+                    String lastSetSId,
+            @JsonProperty("last_set_linenr")
+                    int lastSetLineNr,
+            @JsonProperty("last_set_chan")
+                    int lastSetChan,
+            @JsonProperty("scope")
+                    String scope,
+            @JsonProperty("global_local")
+                    boolean globalLocal,
+            @JsonProperty("commalist")
+                    Object commaList,
+            @JsonProperty("flaglist")
+                    Object flagList) {
+        // Neovim reports commalist and flaglist as booleans, older versions may report lists
+        this(name, shortName, type, defaultValue, wasSet, lastSetSId, lastSetLineNr, lastSetChan, scope, globalLocal,
+                toList(commaList, String::valueOf),
+                toList(flagList, o -> String.valueOf(o).charAt(0)));
+    }
+
+    private static <T> List<T> toList(Object value, Function<Object, T> mapper) {
+        if (value instanceof List) {
+            return ((List<?>) value).stream().map(mapper).collect(Collectors.toList());
+        }
+        return List.of();
+    }
+
     public String getName() {
         return name;
     }
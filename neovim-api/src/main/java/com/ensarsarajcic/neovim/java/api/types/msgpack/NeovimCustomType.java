@@ -27,9 +27,9 @@ package com.ensarsarajcic.neovim.java.api.types.msgpack;
 import java.util.function.Function;
 
 public enum NeovimCustomType {
-    BUFFER(0, Buffer.class, Buffer::new),
-    WINDOW(1, Window.class, Window::new),
-    TABPAGE(2, Tabpage.class, Tabpage::new);
+    BUFFER(0, Buffer.class, NeovimHandles::buffer),
+    WINDOW(1, Window.class, NeovimHandles::window),
+    TABPAGE(2, Tabpage.class, NeovimHandles::tabpage);
 
     private final NeovimTypeSerializer<? extends BaseCustomIdType> serializer;
     private final NeovimTypeDeserializer<? extends BaseCustomIdType> deserializer;
@@ -61,4 +61,19 @@ public enum NeovimCustomType {
     public int getTypeId() {
         return typeId;
     }
+
+    /**
+     * Finds custom type handling given class
+     *
+     * @param type class of the custom type
+     * @return {@link NeovimCustomType} for given class or null if it is not a custom type
+     */
+    public static NeovimCustomType forType(Class<?> type) {
+        for (var neovimCustomType : values()) {
+            if (neovimCustomType.type == type) {
+                return neovimCustomType;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.types.msgpack;
+
+import com.ensarsarajcic.neovim.java.api.util.WeakInterner;
+
+/**
+ * Registry of interned {@link Buffer}, {@link Window} and {@link Tabpage} handles and helpers for their
+ * msgpack extension payloads
+ * <p>
+ * Handles are immutable, so the same instance is shared for each (type, id) pair while it is in use, instead of
+ * creating a new one for every decoded value. Handles are held through weak references, so unused handles are still
+ * garbage collected.
+ * <p>
+ * Payload of a handle extension type is a single msgpack integer. It is encoded and decoded directly, without
+ * creating packers or unpackers.
+ */
+public final class NeovimHandles {
+
+    private static final WeakInterner<Long, Buffer> BUFFERS = new WeakInterner<>();
+    private static final WeakInterner<Long, Window> WINDOWS = new WeakInterner<>();
+    private static final WeakInterner<Long, Tabpage> TABPAGES = new WeakInterner<>();
+
+    private NeovimHandles() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * @param id id of the buffer
+     * @return interned {@link Buffer} with given id
+     */
+    public static Buffer buffer(long id) {
+        return BUFFERS.intern(id, Buffer::new);
+    }
+
+    /**
+     * @param id id of the window
+     * @return interned {@link Window} with given id
+     */
+    public static Window window(long id) {
+        return WINDOWS.intern(id, Window::new);
+    }
+
+    /**
+     * @param id id of the tabpage
+     * @return interned {@link Tabpage} with given id
+     */
+    public static Tabpage tabpage(long id) {
+        return TABPAGES.intern(id, Tabpage::new);
+    }
+
+    /**
+     * Decodes id from a handle extension type payload
+     *
+     * @param payload payload of the extension type (a single msgpack integer)
+     * @return decoded id
+     * @throws IllegalArgumentException if payload is not a single msgpack integer
+     */
+    public static long decodeId(byte[] payload) {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Empty handle payload");
+        }
+        int format = payload[0] & 0xff;
+        if (format <= 0x7f || format >= 0xe0) {
+            // Positive or negative fixint
+            checkLength(payload, 1);
+            return payload[0];
+        }
+        return switch (format) {
+            case 0xcc -> {
+                checkLength(payload, 2);
+                yield payload[1] & 0xffL;
+            }
+            case 0xcd -> {
+                checkLength(payload, 3);
+                yield readBigEndian(payload, 2);
+            }
+            case 0xce -> {
+                checkLength(payload, 5);
+                yield readBigEndian(payload, 4);
+            }
+            case 0xcf -> {
+                checkLength(payload, 9);
+                yield readBigEndian(payload, 8);
+            }
+            case 0xd0 -> {
+                checkLength(payload, 2);
+                yield payload[1];
+            }
+            case 0xd1 -> {
+                checkLength(payload, 3);
+                yield (short) readBigEndian(payload, 2);
+            }
+            case 0xd2 -> {
+                checkLength(payload, 5);
+                yield (int) readBigEndian(payload, 4);
+            }
+            case 0xd3 -> {
+                checkLength(payload, 9);
+                yield readBigEndian(payload, 8);
+            }
+            default -> throw new IllegalArgumentException("Handle payload is not an integer (format " + format + ")");
+        };
+    }
+
+    /**
+     * Encodes id as a handle extension type payload, using the shortest msgpack integer format
+     *
+     * @param id id to encode
+     * @return encoded payload
+     */
+    public static byte[] encodeId(long id) {
+        if (id >= -32 && id <= 0x7f) {
+            return new byte[]{(byte) id};
+        }
+        if (id > 0) {
+            if (id <= 0xff) {
+                return new byte[]{(byte) 0xcc, (byte) id};
+            } else if (id <= 0xffff) {
+                return writeBigEndian(0xcd, id, 2);
+            } else if (id <= 0xffffffffL) {
+                return writeBigEndian(0xce, id, 4);
+            }
+            return writeBigEndian(0xcf, id, 8);
+        }
+        if (id >= Byte.MIN_VALUE) {
+            return new byte[]{(byte) 0xd0, (byte) id};
+        } else if (id >= Short.MIN_VALUE) {
+            return writeBigEndian(0xd1, id, 2);
+        } else if (id >= Integer.MIN_VALUE) {
+            return writeBigEndian(0xd2, id, 4);
+        }
+        return writeBigEndian(0xd3, id, 8);
+    }
+
+    private static void checkLength(byte[] payload, int length) {
+        if (payload.length != length) {
+            throw new IllegalArgumentException("Handle payload has " + payload.length + " bytes, expected " + length);
+        }
+    }
+
+    private static long readBigEndian(byte[] payload, int length) {
+        long value = 0;
+        for (int i = 1; i <= length; i++) {
+            value = (value << 8) | (payload[i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static byte[] writeBigEndian(int format, long value, int length) {
+        var result = new byte[length + 1];
+        result[0] = (byte) format;
+        for (int i = length; i > 0; i--) {
+            result[i] = (byte) value;
+            value >>>= 8;
+        }
+        return result;
+    }
+}
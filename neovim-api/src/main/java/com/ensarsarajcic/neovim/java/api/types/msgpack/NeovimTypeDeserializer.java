@@ -28,7 +28,6 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import org.msgpack.core.MessagePack;
 import org.msgpack.jackson.dataformat.MessagePackExtensionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,13 +57,25 @@ public final class NeovimTypeDeserializer<T extends BaseCustomIdType> extends Js
     public T deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
         var messagePackExtensionType = (MessagePackExtensionType) jsonParser.getEmbeddedObject();
 
+        try {
+            return decode(messagePackExtensionType);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(jsonParser, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes handle directly from an already parsed extension type
+     *
+     * @param messagePackExtensionType extension type holding the handle
+     * @return interned handle
+     * @throws IllegalArgumentException if extension type is not of this type or its payload is not an id
+     */
+    public T decode(MessagePackExtensionType messagePackExtensionType) {
         if (messagePackExtensionType.getType() != typeId) {
             log.error("Tried to parse a bad type ({})", messagePackExtensionType.getType());
-            throw new JsonParseException(jsonParser, "Bad custom type");
+            throw new IllegalArgumentException("Bad custom type");
         }
-
-        return constructor.apply(
-                MessagePack.newDefaultUnpacker(messagePackExtensionType.getData()).unpackLong()
-        );
+        return constructor.apply(NeovimHandles.decodeId(messagePackExtensionType.getData()));
     }
 }
@@ -27,11 +27,9 @@ package com.ensarsarajcic.neovim.java.api.types.msgpack;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
-import org.msgpack.core.MessagePack;
 import org.msgpack.jackson.dataformat.MessagePackExtensionType;
 import org.msgpack.jackson.dataformat.MessagePackGenerator;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 public final class NeovimTypeSerializer<T extends BaseCustomIdType> extends JsonSerializer<T> {
@@ -53,9 +51,7 @@ public final class NeovimTypeSerializer<T extends BaseCustomIdType> extends Json
     public void serialize(T t, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
         var messagePackGenerator = (MessagePackGenerator) jsonGenerator;
 
-        var byteArrayOutputStream = new ByteArrayOutputStream();
-        MessagePack.newDefaultPacker(byteArrayOutputStream).packLong(t.getId()).close();
-        var messagePackExtensionType = new MessagePackExtensionType(typeId, byteArrayOutputStream.toByteArray());
+        var messagePackExtensionType = new MessagePackExtensionType(typeId, NeovimHandles.encodeId(t.getId()));
         messagePackGenerator.writeExtensionType(messagePackExtensionType);
     }
 }
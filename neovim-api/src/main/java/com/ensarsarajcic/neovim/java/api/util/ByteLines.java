@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.util;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageTypeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferInput;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for working with buffer lines as raw bytes
+ * <p>
+ * Neovim buffer lines are arbitrary bytes (usually, but not necessarily, valid UTF-8). These helpers read them
+ * directly from encoded messages as read-only {@link ByteBuffer} slices, without decoding them into strings and
+ * without copying them, and prepare them for sending.
+ */
+public final class ByteLines {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private ByteLines() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Creates an unpacker reading given buffer, without changing its position
+     * Unlike {@link MessagePack#newDefaultUnpacker(ByteBuffer)}, this supports read-only buffers too (such as
+     * raw results and arguments of messages), which are read in small chunks instead of being copied at once
+     *
+     * @param source buffer to read
+     * @return a new {@link MessageUnpacker}
+     */
+    public static MessageUnpacker newUnpacker(ByteBuffer source) {
+        if (source.hasArray()) {
+            return MessagePack.newDefaultUnpacker(source.duplicate());
+        }
+        var input = source.duplicate();
+        return MessagePack.newDefaultUnpacker(new MessageBufferInput() {
+            @Override
+            public MessageBuffer next() {
+                if (!input.hasRemaining()) {
+                    return null;
+                }
+                var chunk = new byte[Math.min(CHUNK_SIZE, input.remaining())];
+                input.get(chunk);
+                return MessageBuffer.wrap(chunk);
+            }
+
+            @Override
+            public void close() {
+                // Nothing to close
+            }
+        });
+    }
+
+    /**
+     * Reads an array of strings (or binary values) from given unpacker as slices of the source
+     * Unpacker has to read from the position of the source buffer (see {@link #newUnpacker(ByteBuffer)}) and has to
+     * be positioned at the array
+     *
+     * @param unpacker unpacker reading the source
+     * @param source   buffer the unpacker is reading
+     * @return read-only slices of the source, one per line
+     * @throws IOException          if data can't be read
+     * @throws MessageTypeException if data is not an array of strings
+     */
+    public static List<ByteBuffer> unpackLines(MessageUnpacker unpacker, ByteBuffer source) throws IOException {
+        var count = unpacker.unpackArrayHeader();
+        var lines = new ArrayList<ByteBuffer>(count);
+        for (var i = 0; i < count; i++) {
+            var format = unpacker.getNextFormat();
+            int length;
+            if (format.getValueType() == ValueType.STRING) {
+                length = unpacker.unpackRawStringHeader();
+            } else if (format.getValueType() == ValueType.BINARY) {
+                length = unpacker.unpackBinaryHeader();
+            } else {
+                throw new MessageTypeException("Expected a line, but got " + format.getValueType());
+            }
+            var offset = Math.toIntExact(unpacker.getTotalReadBytes());
+            unpacker.readPayloadAsReference(length);
+            lines.add(source.duplicate()
+                    .position(source.position() + offset)
+                    .limit(source.position() + offset + length)
+                    .slice()
+                    .asReadOnlyBuffer());
+        }
+        return lines;
+    }
+
+    /**
+     * Converts already decoded lines (strings or byte arrays) into byte buffers
+     * Strings are encoded as UTF-8
+     *
+     * @param lines decoded lines
+     * @return read-only byte buffers, one per line
+     * @throws IllegalArgumentException if a line is neither a string nor a byte array
+     */
+    public static List<ByteBuffer> fromDecoded(List<?> lines) {
+        var result = new ArrayList<ByteBuffer>(lines.size());
+        for (var line : lines) {
+            if (line instanceof String string) {
+                result.add(ByteBuffer.wrap(string.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer());
+            } else if (line instanceof byte[] bytes) {
+                result.add(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+            } else {
+                throw new IllegalArgumentException("Expected a line, but got " + line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prepares lines for sending - they are sent as binary values, which Neovim accepts in place of strings
+     * Buffers backed by a whole array are not copied
+     *
+     * @param lines lines to send
+     * @return byte arrays, one per line
+     */
+    public static List<byte[]> toBinary(List<ByteBuffer> lines) {
+        var result = new ArrayList<byte[]>(lines.size());
+        for (var line : lines) {
+            if (line.hasArray() && line.arrayOffset() == 0 && line.position() == 0
+                    && line.remaining() == line.array().length) {
+                result.add(line.array());
+            } else {
+                var bytes = new byte[line.remaining()];
+                line.duplicate().get(bytes);
+                result.add(bytes);
+            }
+        }
+        return result;
+    }
+}
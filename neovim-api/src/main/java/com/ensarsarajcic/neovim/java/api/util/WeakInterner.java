@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Thread safe interner of immutable values, holding them through weak references
+ * <p>
+ * For each key, the same value instance is returned as long as it is reachable from elsewhere. Once it is garbage
+ * collected, its entry is dropped and a new value is created on the next request.
+ *
+ * @param <K> type of keys - they must implement {@link Object#equals(Object)} and {@link Object#hashCode()}
+ * @param <V> type of interned values
+ */
+public final class WeakInterner<K, V> {
+
+    private final ConcurrentHashMap<K, KeyedReference<K, V>> values = new ConcurrentHashMap<>();
+    private final ReferenceQueue<V> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Provides interned value for given key, creating it if there is none
+     *
+     * @param key     key of the value
+     * @param factory creates the value if there is none - it may be called and its result dropped if another thread
+     *                interns a value for the same key concurrently
+     * @return interned value
+     * @throws NullPointerException if key is null or factory returns null
+     */
+    public V intern(K key, Function<? super K, ? extends V> factory) {
+        expungeStaleEntries();
+        while (true) {
+            var reference = values.get(key);
+            if (reference != null) {
+                var value = reference.get();
+                if (value != null) {
+                    return value;
+                }
+            }
+            V created = Objects.requireNonNull(factory.apply(key), "factory must not return null");
+            var createdReference = new KeyedReference<>(key, created, referenceQueue);
+            if (reference == null ? values.putIfAbsent(key, createdReference) == null : values.replace(key, reference, createdReference)) {
+                return created;
+            }
+        }
+    }
+
+    /**
+     * @return number of currently interned values, including values which are collected, but not yet dropped
+     */
+    public int size() {
+        expungeStaleEntries();
+        return values.size();
+    }
+
+    private void expungeStaleEntries() {
+        KeyedReference<?, ?> reference;
+        while ((reference = (KeyedReference<?, ?>) referenceQueue.poll()) != null) {
+            values.remove(reference.key, reference);
+        }
+    }
+
+    private static final class KeyedReference<K, V> extends WeakReference<V> {
+        private final K key;
+
+        KeyedReference(K key, V value, ReferenceQueue<V> referenceQueue) {
+            super(value, referenceQueue);
+            this.key = key;
+        }
+    }
+}
@@ -2,6 +2,14 @@ module com.ensarsarajcic.neovim.java.neovimapi {
     opens com.ensarsarajcic.neovim.java.api;
     opens com.ensarsarajcic.neovim.java.api.atomic;
     opens com.ensarsarajcic.neovim.java.api.buffer;
+    opens com.ensarsarajcic.neovim.java.api.cache;
+    opens com.ensarsarajcic.neovim.java.api.lua;
+    opens com.ensarsarajcic.neovim.java.api.metadata;
+    opens com.ensarsarajcic.neovim.java.api.pool;
+    opens com.ensarsarajcic.neovim.java.api.local;
+    opens com.ensarsarajcic.neovim.java.api.search;
+    opens com.ensarsarajcic.neovim.java.api.quickfix;
+    opens com.ensarsarajcic.neovim.java.api.snapshot;
     opens com.ensarsarajcic.neovim.java.api.tabpage;
     opens com.ensarsarajcic.neovim.java.api.window;
     opens com.ensarsarajcic.neovim.java.api.types.api;
@@ -12,6 +20,14 @@ module com.ensarsarajcic.neovim.java.neovimapi {
     exports com.ensarsarajcic.neovim.java.api;
     exports com.ensarsarajcic.neovim.java.api.atomic;
     exports com.ensarsarajcic.neovim.java.api.buffer;
+    exports com.ensarsarajcic.neovim.java.api.cache;
+    exports com.ensarsarajcic.neovim.java.api.lua;
+    exports com.ensarsarajcic.neovim.java.api.metadata;
+    exports com.ensarsarajcic.neovim.java.api.pool;
+    exports com.ensarsarajcic.neovim.java.api.local;
+    exports com.ensarsarajcic.neovim.java.api.search;
+    exports com.ensarsarajcic.neovim.java.api.quickfix;
+    exports com.ensarsarajcic.neovim.java.api.snapshot;
     exports com.ensarsarajcic.neovim.java.api.tabpage;
     exports com.ensarsarajcic.neovim.java.api.window;
     exports com.ensarsarajcic.neovim.java.api.types.api;
@@ -109,6 +109,10 @@ public class BaseStreamApiTest {
         }
     }
 
+    protected static CompletableFuture<ResponseMessage> respond(Object result) {
+        return CompletableFuture.completedFuture(new ResponseMessage(1, null, result));
+    }
+
     protected ArgumentCaptor<RequestMessage.Builder> prepareArgumentCaptor(CompletableFuture<ResponseMessage> responseMessageCompletableFuture) {
         var argumentCaptor = ArgumentCaptor.forClass(RequestMessage.Builder.class);
         given(reactiveRpcStreamer.response(argumentCaptor.capture())).willReturn(responseMessageCompletableFuture);
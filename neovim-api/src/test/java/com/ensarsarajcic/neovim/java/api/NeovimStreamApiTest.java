@@ -58,8 +58,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
 
 @RunWith(MockitoJUnitRunner.class)
 public class NeovimStreamApiTest extends BaseStreamApiTest {
@@ -683,6 +686,18 @@ public class NeovimStreamApiTest extends BaseStreamApiTest {
         );
     }
 
+    @Test
+    public void bufferHandlesAreShared() throws InterruptedException, ExecutionException {
+        var buffers = List.of(new MessagePackExtensionType((byte) NeovimCustomType.BUFFER.getTypeId(), new byte[]{1}));
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation ->
+                CompletableFuture.completedFuture(new ResponseMessage(1, null, buffers)));
+
+        var first = neovimStreamApi.getBuffers().get();
+        var second = neovimStreamApi.getBuffers().get();
+
+        assertSame(first.get(0).get(), second.get(0).get());
+    }
+
     @Test
     public void getCurrentBufferTest() throws InterruptedException, ExecutionException {
         // Happy case
@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.atomic;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RpcError;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.RpcException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AtomicBatchTest extends BaseStreamApiTest {
+
+    AtomicBatch atomicBatch;
+
+    @Before
+    public void setUp() {
+        atomicBatch = new AtomicBatch(reactiveRpcStreamer);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new AtomicBatch(null);
+    }
+
+    @Test
+    public void callsAreQueuedUntilExecuted() {
+        atomicBatch.api().getCurrentLine();
+        atomicBatch.buffer(new Buffer(1)).getLineCount();
+
+        assertEquals(2, atomicBatch.size());
+        verify(reactiveRpcStreamer, never()).response(any());
+    }
+
+    @Test
+    public void executeSendsSingleAtomicCallAndResolvesTypedResults() throws ExecutionException, InterruptedException {
+        var argumentCaptor = prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, Arrays.asList(List.of("line", 5, "value"), null))
+        ));
+
+        var line = atomicBatch.api().getCurrentLine();
+        var lineCount = atomicBatch.buffer(new Buffer(1)).getLineCount();
+        var variable = atomicBatch.api().getVariable("var");
+        assertFalse(line.isDone());
+
+        atomicBatch.execute().get();
+
+        verify(reactiveRpcStreamer, times(1)).response(any());
+        var request = argumentCaptor.getValue().build();
+        assertMethodAndArguments(request, NeovimApi.CALL_ATOMIC, List.of(
+                List.of(NeovimApi.GET_CURRENT_LINE, List.of()),
+                List.of(NeovimBufferApi.GET_LINE_COUNT, List.of(new Buffer(1))),
+                List.of(NeovimApi.GET_VAR, List.of("var"))
+        ));
+        assertEquals("line", line.get());
+        assertEquals(Integer.valueOf(5), lineCount.get());
+        assertEquals("value", variable.get());
+    }
+
+    @Test
+    public void partialFailureMapsToPerCallExceptions() throws ExecutionException, InterruptedException {
+        prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, List.of(List.of("line"), List.of(1, 0, "Key not found")))
+        ));
+
+        var line = atomicBatch.api().getCurrentLine();
+        var variable = atomicBatch.api().getVariable("missing");
+        var lineCount = atomicBatch.buffer(new Buffer(1)).getLineCount();
+
+        var response = atomicBatch.execute().get();
+
+        assertEquals(1, response.getError().getIndex());
+        assertEquals("line", line.get());
+        verifyError(variable);
+        try {
+            variable.get();
+        } catch (ExecutionException e) {
+            assertEquals("Key not found", ((RpcException) e.getCause()).getRpcError().getMessage());
+            assertEquals(RpcError.Type.EXCEPTION, ((RpcException) e.getCause()).getRpcError().getType());
+        }
+        // Calls after the failed one were not executed
+        try {
+            lineCount.get();
+            fail("Should have been cancelled");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+    }
+
+    @Test
+    public void failedAtomicCallFailsAllCalls() throws InterruptedException {
+        prepareArgumentCaptor(CompletableFuture.failedFuture(new RpcException(new RpcError(1, "error"))));
+
+        var line = atomicBatch.api().getCurrentLine();
+        var lineCount = atomicBatch.buffer(new Buffer(1)).getLineCount();
+
+        verifyError(atomicBatch.execute());
+        verifyError(line);
+        verifyError(lineCount);
+    }
+
+    @Test
+    public void emptyBatchIsNotSent() throws ExecutionException, InterruptedException {
+        var response = atomicBatch.execute().get();
+
+        assertTrue(response.getResponses().isEmpty());
+        verify(reactiveRpcStreamer, never()).response(any());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cantExecuteTwice() {
+        atomicBatch.execute();
+        atomicBatch.execute();
+    }
+
+    @Test
+    public void callsAfterExecutionAreSentDirectly() throws ExecutionException, InterruptedException {
+        atomicBatch.execute();
+        var argumentCaptor = prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, "line")
+        ));
+
+        var line = atomicBatch.api().getCurrentLine();
+
+        RequestMessage request = argumentCaptor.getValue().build();
+        assertMethodAndArguments(request, NeovimApi.GET_CURRENT_LINE);
+        assertEquals("line", line.get());
+        assertEquals(0, atomicBatch.size());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.atomic;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RpcError;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.RpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MicroBatchingRpcStreamerTest extends BaseStreamApiTest {
+
+    ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNullStreamer() {
+        new MicroBatchingRpcStreamer(null, MicroBatchingRpcStreamer.FlushPolicy.DEFAULT, scheduler);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantBuildPolicyWithoutCalls() {
+        new MicroBatchingRpcStreamer.FlushPolicy.Builder().withMaxCalls(0);
+    }
+
+    @Test
+    public void callsAreMergedOnceMaxCallsIsReached() throws ExecutionException, InterruptedException {
+        var argumentCaptor = prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, Arrays.asList(List.of("line", "value"), null))
+        ));
+        var api = new NeovimStreamApi(batching(Duration.ofHours(1), 2));
+
+        var line = api.getCurrentLine();
+        verify(reactiveRpcStreamer, never()).response(any());
+        var variable = api.getVariable("var");
+
+        verify(reactiveRpcStreamer, times(1)).response(any());
+        assertMethodAndArguments(argumentCaptor.getValue().build(), NeovimApi.CALL_ATOMIC, List.of(
+                List.of(NeovimApi.GET_CURRENT_LINE, List.of()),
+                List.of(NeovimApi.GET_VAR, List.of("var"))
+        ));
+        assertEquals("line", line.get());
+        assertEquals("value", variable.get());
+    }
+
+    @Test
+    public void callsAreMergedOnceMaxDelayPasses() throws ExecutionException, InterruptedException, TimeoutException {
+        var argumentCaptor = prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, Arrays.asList(List.of("line", "value"), null))
+        ));
+        var api = new NeovimStreamApi(batching(Duration.ofMillis(10), 64));
+
+        var line = api.getCurrentLine();
+        var variable = api.getVariable("var");
+
+        assertEquals("line", line.get(5, TimeUnit.SECONDS));
+        assertEquals("value", variable.get(5, TimeUnit.SECONDS));
+        verify(reactiveRpcStreamer, times(1)).response(any());
+        assertEquals(NeovimApi.CALL_ATOMIC, argumentCaptor.getValue().build().getMethod());
+    }
+
+    @Test
+    public void singleCallIsSentAsIs() throws ExecutionException, InterruptedException {
+        var argumentCaptor = prepareArgumentCaptor(CompletableFuture.completedFuture(
+                new ResponseMessage(1, null, "line")
+        ));
+        var streamer = batching(Duration.ofHours(1), 64);
+
+        var line = new NeovimStreamApi(streamer).getCurrentLine();
+        assertEquals(1, streamer.getPendingCount());
+        streamer.flush();
+
+        assertEquals(0, streamer.getPendingCount());
+        assertMethodAndArguments(argumentCaptor.getValue().build(), NeovimApi.GET_CURRENT_LINE);
+        assertEquals("line", line.get());
+    }
+
+    @Test
+    public void excludedMethodsFlushPendingCallsAndAreSentDirectly() {
+        var argumentCaptor = prepareArgumentCaptor(new CompletableFuture<>());
+        var api = new NeovimStreamApi(batching(Duration.ofHours(1), 64));
+
+        api.getCurrentLine();
+        api.input("abc");
+
+        var requests = argumentCaptor.getAllValues();
+        assertEquals(2, requests.size());
+        assertMethodAndArguments(requests.get(0).build(), NeovimApi.GET_CURRENT_LINE);
+        assertMethodAndArguments(requests.get(1).build(), NeovimApi.INPUT, "abc");
+    }
+
+    @Test
+    public void directViewOptsOutOfBatching() {
+        var argumentCaptor = prepareArgumentCaptor(new CompletableFuture<>());
+        var streamer = batching(Duration.ofHours(1), 64);
+
+        new NeovimStreamApi(streamer).getCurrentLine();
+        new NeovimStreamApi(streamer.direct()).getVariable("var");
+
+        var requests = argumentCaptor.getAllValues();
+        assertEquals(2, requests.size());
+        assertMethodAndArguments(requests.get(0).build(), NeovimApi.GET_CURRENT_LINE);
+        assertMethodAndArguments(requests.get(1).build(), NeovimApi.GET_VAR, "var");
+        assertEquals(0, streamer.getPendingCount());
+    }
+
+    @Test
+    public void callsSkippedByFailureAreSentAgain() throws ExecutionException, InterruptedException {
+        var argumentCaptor = ArgumentCaptor.forClass(RequestMessage.Builder.class);
+        given(reactiveRpcStreamer.response(argumentCaptor.capture()))
+                .willReturn(CompletableFuture.completedFuture(
+                        new ResponseMessage(1, null, List.of(List.of("line"), List.of(1, 0, "Key not found")))
+                ))
+                .willReturn(CompletableFuture.completedFuture(new ResponseMessage(2, null, 5)));
+        var streamer = batching(Duration.ofHours(1), 3);
+        var api = new NeovimStreamApi(streamer);
+
+        var line = api.getCurrentLine();
+        var variable = api.getVariable("missing");
+        var buffer = api.getCurrentBuffer();
+
+        assertEquals("line", line.get());
+        verifyError(variable);
+        try {
+            variable.get();
+            fail("Variable call should fail");
+        } catch (ExecutionException e) {
+            assertEquals("Key not found", ((RpcException) e.getCause()).getRpcError().getMessage());
+        }
+        assertTrue(buffer.isDone());
+        assertEquals(0, streamer.getPendingCount());
+        assertMethodAndArguments(argumentCaptor.getAllValues().get(1).build(), NeovimApi.GET_CURRENT_BUF);
+    }
+
+    @Test
+    public void skippedCallsAreSentBeforeNewerCalls() throws ExecutionException, InterruptedException {
+        var firstResponse = new CompletableFuture<ResponseMessage>();
+        var argumentCaptor = ArgumentCaptor.forClass(RequestMessage.Builder.class);
+        given(reactiveRpcStreamer.response(argumentCaptor.capture()))
+                .willReturn(firstResponse)
+                .willReturn(CompletableFuture.completedFuture(
+                        new ResponseMessage(2, null, Arrays.asList(List.of("b", "c", "d"), null))
+                ))
+                .willReturn(CompletableFuture.completedFuture(new ResponseMessage(3, null, "e")));
+        var streamer = batching(Duration.ofHours(1), 3);
+        var api = new NeovimStreamApi(streamer);
+
+        var line = api.getCurrentLine();
+        var b = api.getVariable("b");
+        var c = api.getVariable("c");
+        // Issued while the first atomic call is still running
+        var d = api.getVariable("d");
+        var e = api.getVariable("e");
+        assertEquals(2, streamer.getPendingCount());
+
+        firstResponse.complete(new ResponseMessage(1, null, List.of(List.of(), List.of(0, 0, "error"))));
+
+        verifyError(line);
+        assertEquals(List.of("b", "c", "d", "e"), List.of(b.get(), c.get(), d.get(), e.get()));
+        assertEquals(3, argumentCaptor.getAllValues().size());
+        assertMethodAndArguments(argumentCaptor.getAllValues().get(1).build(), NeovimApi.CALL_ATOMIC, List.of(
+                List.of(NeovimApi.GET_VAR, List.of("b")),
+                List.of(NeovimApi.GET_VAR, List.of("c")),
+                List.of(NeovimApi.GET_VAR, List.of("d"))
+        ));
+        assertMethodAndArguments(argumentCaptor.getAllValues().get(2).build(), NeovimApi.GET_VAR, "e");
+    }
+
+    @Test
+    public void nothingIsSentWhileAtomicCallIsRunning() throws ExecutionException, InterruptedException {
+        var firstResponse = new CompletableFuture<ResponseMessage>();
+        var argumentCaptor = ArgumentCaptor.forClass(RequestMessage.Builder.class);
+        given(reactiveRpcStreamer.response(argumentCaptor.capture()))
+                .willReturn(firstResponse)
+                .willReturn(CompletableFuture.completedFuture(
+                        new ResponseMessage(2, null, Arrays.asList(List.of("c", "d"), null))
+                ))
+                .willReturn(CompletableFuture.completedFuture(new ResponseMessage(3, null, null)));
+        var streamer = batching(Duration.ofHours(1), 2);
+        var api = new NeovimStreamApi(streamer);
+
+        api.getVariable("a");
+        api.getVariable("b");
+        var c = api.getVariable("c");
+        var d = api.getVariable("d");
+        var input = new NeovimStreamApi(streamer.direct()).input("x");
+        assertEquals(1, argumentCaptor.getAllValues().size());
+        assertEquals(3, streamer.getPendingCount());
+
+        firstResponse.complete(new ResponseMessage(1, null, Arrays.asList(List.of("a", "b"), null)));
+
+        assertEquals(List.of("c", "d"), List.of(c.get(), d.get()));
+        input.get();
+        assertEquals(3, argumentCaptor.getAllValues().size());
+        assertMethodAndArguments(argumentCaptor.getAllValues().get(2).build(), NeovimApi.INPUT, "x");
+    }
+
+    @Test
+    public void failedAtomicCallFailsAllCalls() throws InterruptedException {
+        prepareArgumentCaptor(CompletableFuture.failedFuture(new RpcException(new RpcError(1, "error"))));
+        var api = new NeovimStreamApi(batching(Duration.ofHours(1), 2));
+
+        var line = api.getCurrentLine();
+        var variable = api.getVariable("var");
+
+        verifyError(line);
+        verifyError(variable);
+    }
+
+    private MicroBatchingRpcStreamer batching(Duration maxDelay, int maxCalls) {
+        return new MicroBatchingRpcStreamer(reactiveRpcStreamer, new MicroBatchingRpcStreamer.FlushPolicy.Builder()
+                .withMaxDelay(maxDelay)
+                .withMaxCalls(maxCalls)
+                .build(), scheduler);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferChunkPublisherTest extends BaseStreamApiTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    List<String> lines;
+    long changedTick;
+    int atomicCalls;
+    Buffer buffer;
+
+    @Before
+    public void setUp() {
+        lines = IntStream.range(0, 10).mapToObj(i -> "line " + i).toList();
+        changedTick = 1;
+        atomicCalls = 0;
+        buffer = new Buffer(1);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            atomicCalls++;
+            var calls = (List<?>) request.getArguments().get(0);
+            var getLinesArguments = (List<?>) ((List<?>) calls.get(1)).get(1);
+            var start = Math.min((int) getLinesArguments.get(1), lines.size());
+            var end = Math.min((int) getLinesArguments.get(2), lines.size());
+            var result = Arrays.asList(List.of(changedTick, lines.subList(start, end)), null);
+            return CompletableFuture.completedFuture(new ResponseMessage(1, null, result));
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkSizeMustBePositive() {
+        new BufferChunkPublisher(reactiveRpcStreamer, buffer, 0, true);
+    }
+
+    @Test
+    public void chunksAreReadOnlyWhenRequested() {
+        var subscriber = new RecordingSubscriber();
+        new BufferChunkPublisher(reactiveRpcStreamer, buffer, 4, true).subscribe(subscriber);
+
+        assertEquals(0, atomicCalls);
+        subscriber.subscription.request(1);
+        assertEquals(List.of(lines.subList(0, 4)), subscriber.chunks);
+        assertEquals(1, atomicCalls);
+
+        subscriber.subscription.request(5);
+        assertEquals(List.of(lines.subList(0, 4), lines.subList(4, 8), lines.subList(8, 10)), subscriber.chunks);
+        assertTrue(subscriber.completed);
+        assertEquals(3, atomicCalls);
+    }
+
+    @Test
+    public void exactMultipleOfChunkSizeDoesNotEmitEmptyChunk() {
+        var subscriber = new RecordingSubscriber();
+        new BufferChunkPublisher(reactiveRpcStreamer, buffer, 5, true).subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(List.of(lines.subList(0, 5), lines.subList(5, 10)), subscriber.chunks);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void changeWhileStreamingFailsStream() {
+        var subscriber = new RecordingSubscriber();
+        new BufferChunkPublisher(reactiveRpcStreamer, buffer, 4, true).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        changedTick = 2;
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.chunks.size());
+        assertTrue(subscriber.error instanceof ConcurrentModificationException);
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void changesAreIgnoredIfNotRequired() {
+        var subscriber = new RecordingSubscriber();
+        new BufferChunkPublisher(reactiveRpcStreamer, buffer, 4, false).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        changedTick = 2;
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(3, subscriber.chunks.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void bufferIsWrittenToFile() throws IOException, ExecutionException, InterruptedException {
+        var path = temporaryFolder.getRoot().toPath().resolve("buffer.txt");
+        Files.writeString(path, "previous content which is longer than the new one".repeat(10));
+
+        var writtenBytes = new BufferChunkPublisher(reactiveRpcStreamer, buffer, 3, true).writeTo(path, Runnable::run).get();
+
+        var expected = String.join("\n", lines) + "\n";
+        assertEquals(expected, Files.readString(path));
+        assertEquals(expected.length(), writtenBytes.longValue());
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<List<String>> {
+        Flow.Subscription subscription;
+        List<List<String>> chunks = new ArrayList<>();
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(List<String> item) {
+            chunks.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferFileLoaderTest extends BaseStreamApiTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    Buffer buffer;
+    List<RequestMessage> sentRequests;
+    List<CompletableFuture<ResponseMessage>> pendingResponses;
+    volatile boolean holdResponses;
+
+    @Before
+    public void setUp() {
+        buffer = new Buffer(1);
+        sentRequests = new CopyOnWriteArrayList<>();
+        pendingResponses = new CopyOnWriteArrayList<>();
+        holdResponses = false;
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            var response = new CompletableFuture<ResponseMessage>();
+            if (holdResponses) {
+                pendingResponses.add(response);
+            } else {
+                response.complete(new ResponseMessage(1, null, null));
+            }
+            return response;
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkSizeMustBePositive() {
+        new BufferFileLoader(reactiveRpcStreamer, 0, 1);
+    }
+
+    @Test
+    public void fileIsSentInChunks() throws IOException, ExecutionException, InterruptedException {
+        var path = write("first\nsecond\nčetvrti\n\nlast");
+        var progress = new ArrayList<BufferFileLoader.Progress>();
+
+        var result = new BufferFileLoader(reactiveRpcStreamer, 10, 2).load(buffer, path, progress::add, Runnable::run).get();
+
+        assertEquals(5, result.lines());
+        assertEquals(Files.size(path), result.bytes());
+        assertEquals(3, result.chunks());
+        assertEquals(buffer, result.buffer());
+        assertLines(sentRequests.get(0), 0, "first", "second");
+        assertLines(sentRequests.get(1), -1, "četvrti", "");
+        assertLines(sentRequests.get(2), -1, "last");
+        assertEquals(new BufferFileLoader.Progress(Files.size(path), Files.size(path), 5), progress.get(2));
+        assertEquals(new BufferFileLoader.Progress(13, Files.size(path), 2), progress.get(0));
+    }
+
+    @Test
+    public void finalNewlineDoesNotAddEmptyLine() throws IOException, ExecutionException, InterruptedException {
+        var path = write("a\nb\n");
+
+        var result = new BufferFileLoader(reactiveRpcStreamer).load(buffer, path).get();
+
+        assertEquals(2, result.lines());
+        assertLines(sentRequests.get(0), 0, "a", "b");
+    }
+
+    @Test
+    public void emptyFileClearsBuffer() throws IOException, ExecutionException, InterruptedException {
+        var path = write("");
+
+        var result = new BufferFileLoader(reactiveRpcStreamer).load(buffer, path).get();
+
+        assertEquals(0, result.lines());
+        assertLines(sentRequests.get(0), 0);
+    }
+
+    @Test
+    public void carriageReturnsBeforeNewlinesAreDropped() throws IOException, ExecutionException, InterruptedException {
+        var path = write("first\r\nsecond\r\n\r\nlast");
+
+        var result = new BufferFileLoader(reactiveRpcStreamer).load(buffer, path).get();
+
+        assertEquals(4, result.lines());
+        assertLines(sentRequests.get(0), 0, "first", "second", "", "last");
+    }
+
+    @Test
+    public void chunksInFlightAreBoundedWithoutBlockingExecutor() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        var path = write("1\n2\n3\n4\n5\n6\n");
+        holdResponses = true;
+
+        // Direct executor - load would never return if it waited for acknowledgements
+        var result = new BufferFileLoader(reactiveRpcStreamer, 1, 2).load(buffer, path, progress -> { }, Runnable::run);
+
+        assertEquals(2, sentRequests.size());
+        assertFalse(result.isDone());
+        holdResponses = false;
+        pendingResponses.forEach(response -> response.complete(new ResponseMessage(1, null, null)));
+        assertEquals(6, result.get(5, TimeUnit.SECONDS).lines());
+        assertEquals(6, sentRequests.size());
+    }
+
+    private void assertLines(RequestMessage request, int start, String... lines) {
+        assertMethodAndArguments(request, NeovimBufferApi.SET_LINES, buffer, start, -1, false);
+        var sentLines = ((List<?>) request.getArguments().get(4)).stream()
+                .map(line -> new String((byte[]) line, StandardCharsets.UTF_8))
+                .toList();
+        assertEquals(List.of(lines), sentLines);
+    }
+
+    private Path write(String content) throws IOException {
+        var path = temporaryFolder.newFile().toPath();
+        Files.writeString(path, content);
+        return path;
+    }
+}
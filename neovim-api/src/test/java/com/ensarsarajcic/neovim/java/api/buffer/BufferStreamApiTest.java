@@ -30,6 +30,7 @@ import com.ensarsarajcic.neovim.java.api.types.api.GetCommandsOptions;
 import com.ensarsarajcic.neovim.java.api.types.api.HighlightedText;
 import com.ensarsarajcic.neovim.java.api.types.api.VimKeyMap;
 import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
 import org.junit.Assert;
 import org.junit.Before;
@@ -37,11 +38,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -138,6 +143,57 @@ public class BufferStreamApiTest extends BaseStreamApiTest {
         );
     }
 
+    @Test
+    public void getLinesBytesTest() throws ExecutionException, InterruptedException, IOException {
+        // Happy case - raw result is read without decoding, invalid UTF-8 is preserved
+        var invalidUtf8 = new byte[]{(byte) 0xff, 'a'};
+        var encoded = ObjectMappers.defaultNeovimMapper().writeValueAsBytes(List.of("line1", invalidUtf8));
+        assertNormalBehavior(
+                () -> CompletableFuture.completedFuture(new ResponseMessage(1, null, encoded, 0, encoded.length, (data, offset, length) -> {
+                    throw new AssertionError("Result should not be decoded");
+                })),
+                () -> bufferStreamApi.getLinesBytes(1, 3, true),
+                request -> assertMethodAndArguments(request, NeovimBufferApi.GET_LINES, buffer, 1, 3, true),
+                result -> {
+                    assertEquals(2, result.size());
+                    assertEquals(ByteBuffer.wrap("line1".getBytes(StandardCharsets.UTF_8)), result.get(0));
+                    assertEquals(ByteBuffer.wrap(invalidUtf8), result.get(1));
+                    assertTrue(result.get(0).isReadOnly());
+                }
+        );
+
+        // Happy case - already decoded result
+        assertNormalBehavior(
+                () -> CompletableFuture.completedFuture(new ResponseMessage(1, null, List.of("line1"))),
+                () -> bufferStreamApi.getLinesBytes(1, 3, true),
+                request -> assertMethodAndArguments(request, NeovimBufferApi.GET_LINES, buffer, 1, 3, true),
+                result -> assertEquals(List.of(ByteBuffer.wrap("line1".getBytes(StandardCharsets.UTF_8))), result)
+        );
+
+        // Error case
+        assertErrorBehavior(
+                () -> bufferStreamApi.getLinesBytes(7, 4, false),
+                request -> assertMethodAndArguments(request, NeovimBufferApi.GET_LINES, buffer, 7, 4, false)
+        );
+    }
+
+    @Test
+    public void setLinesBytesTest() throws ExecutionException, InterruptedException {
+        // Happy case - lines are sent as binary
+        var backing = "xline1".getBytes(StandardCharsets.UTF_8);
+        var lines = List.of(ByteBuffer.wrap(backing, 1, 5), ByteBuffer.wrap(new byte[]{(byte) 0xff}));
+        assertNormalBehavior(
+                () -> CompletableFuture.completedFuture(new ResponseMessage(1, null, null)),
+                () -> bufferStreamApi.setLinesBytes(1, 3, true, lines),
+                request -> {
+                    assertEquals(NeovimBufferApi.SET_LINES, request.getMethod());
+                    var sentLines = (List<?>) request.getArguments().get(4);
+                    assertArrayEquals("line1".getBytes(StandardCharsets.UTF_8), (byte[]) sentLines.get(0));
+                    assertArrayEquals(new byte[]{(byte) 0xff}, (byte[]) sentLines.get(1));
+                }
+        );
+    }
+
     @Test
     public void getOffsetTest() throws ExecutionException, InterruptedException {
         // Happy case
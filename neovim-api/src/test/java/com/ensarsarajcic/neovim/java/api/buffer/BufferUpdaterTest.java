@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferUpdaterTest extends BaseStreamApiTest {
+
+    Buffer buffer;
+    List<RequestMessage> sentRequests;
+    Object atomicError;
+    BufferUpdater bufferUpdater;
+
+    @Before
+    public void setUp() {
+        buffer = new Buffer(1);
+        sentRequests = new ArrayList<>();
+        atomicError = null;
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            if (NeovimBufferApi.GET_LINES.equals(request.getMethod())) {
+                return respond(List.of("a", "hello world", "c", "d"));
+            }
+            var calls = (List<?>) request.getArguments().get(0);
+            var results = new ArrayList<>();
+            calls.forEach(call -> results.add(null));
+            return respond(Arrays.asList(results, atomicError));
+        });
+        bufferUpdater = new BufferUpdater(reactiveRpcStreamer);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new BufferUpdater(null);
+    }
+
+    @Test
+    public void onlyChangedPartsAreSentBottomUp() throws ExecutionException, InterruptedException {
+        var hunks = bufferUpdater.update(buffer, List.of("a", "hello there world", "c")).get();
+
+        assertEquals(2, hunks.size());
+        assertEquals(2, sentRequests.size());
+        assertMethodAndArguments(sentRequests.get(1), NeovimApi.CALL_ATOMIC, List.of(
+                List.of(NeovimBufferApi.SET_LINES, List.of(buffer, 3, 4, true, List.of())),
+                List.of(NeovimBufferApi.SET_TEXT, List.of(buffer, 1, 6, 1, 6, List.of("there ")))
+        ));
+    }
+
+    @Test
+    public void textColumnsAreInBytes() throws ExecutionException, InterruptedException {
+        bufferUpdater.update(buffer, List.of("čaj", "x"), List.of("čai", "x")).get();
+
+        assertMethodAndArguments(sentRequests.get(0), NeovimApi.CALL_ATOMIC, List.of(
+                List.of(NeovimBufferApi.SET_TEXT, List.of(buffer, 0, 3, 0, 4, List.of("i")))
+        ));
+    }
+
+    @Test
+    public void unchangedBufferSendsNothing() throws ExecutionException, InterruptedException {
+        assertTrue(bufferUpdater.update(buffer, List.of("a"), List.of("a")).get().isEmpty());
+        assertTrue(sentRequests.isEmpty());
+    }
+
+    @Test
+    public void failedHunkFailsUpdate() throws InterruptedException {
+        atomicError = List.of(0, 0, "Index out of bounds");
+
+        verifyError(bufferUpdater.update(buffer, List.of("a", "b", "c"), List.of("a", "c")));
+    }
+}
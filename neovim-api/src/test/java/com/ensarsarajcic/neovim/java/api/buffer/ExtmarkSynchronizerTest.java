@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExtmarkSynchronizerTest extends BaseStreamApiTest {
+
+    private static final int NAMESPACE = 3;
+
+    record StoredMark(int row, int col, Map<?, ?> options) {
+    }
+
+    Buffer buffer;
+    TreeMap<Integer, StoredMark> storedMarks;
+    int nextId;
+    long changedTick;
+    List<String> sentMethods;
+    ExtmarkSynchronizer synchronizer;
+
+    @Before
+    public void setUp() {
+        buffer = new Buffer(1);
+        storedMarks = new TreeMap<>();
+        nextId = 1;
+        changedTick = 1;
+        sentMethods = new ArrayList<>();
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            if (NeovimApi.CALL_ATOMIC.equals(request.getMethod())) {
+                var results = new ArrayList<>();
+                for (var call : (List<?>) request.getArguments().get(0)) {
+                    var method = (String) ((List<?>) call).get(0);
+                    sentMethods.add(method);
+                    results.add(execute(method, (List<?>) ((List<?>) call).get(1)));
+                }
+                return respond(Arrays.asList(results, null));
+            }
+            sentMethods.add(request.getMethod());
+            return respond(execute(request.getMethod(), request.getArguments()));
+        });
+        synchronizer = new ExtmarkSynchronizer(reactiveRpcStreamer, buffer, NAMESPACE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void markCantContainId() {
+        new ExtmarkSynchronizer.Mark(0, 0, Map.of("id", 5));
+    }
+
+    @Test
+    public void unchangedMarksAreOnlyValidated() throws ExecutionException, InterruptedException {
+        var marks = List.of(ExtmarkSynchronizer.Mark.highlight(1, 0, 4, "Error"), ExtmarkSynchronizer.Mark.highlight(2, 1, 3, "Warn"));
+        var first = synchronizer.apply(marks).get();
+        sentMethods.clear();
+
+        var second = synchronizer.apply(marks).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(0, 0, 2, 0, 1), first);
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(2, 0, 0, 0, 0), second);
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), sentMethods);
+        assertEquals(2, storedMarks.size());
+    }
+
+    @Test
+    public void onlyDeltaIsSent() throws ExecutionException, InterruptedException {
+        synchronizer.apply(List.of(
+                ExtmarkSynchronizer.Mark.highlight(1, 0, 4, "Error"),
+                ExtmarkSynchronizer.Mark.highlight(2, 0, 4, "Error"),
+                ExtmarkSynchronizer.Mark.highlight(3, 0, 4, "Error")
+        )).get();
+        sentMethods.clear();
+
+        var result = synchronizer.apply(List.of(
+                ExtmarkSynchronizer.Mark.highlight(1, 0, 4, "Error"),
+                ExtmarkSynchronizer.Mark.highlight(5, 0, 4, "Error")
+        )).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(1, 1, 0, 1, 1), result);
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.SET_EXTMARK, NeovimBufferApi.DEL_EXTMARK), sentMethods);
+        assertEquals(List.of(1, 5), storedMarks.values().stream().map(StoredMark::row).sorted().toList());
+        assertEquals(2, synchronizer.getAppliedCount());
+    }
+
+    @Test
+    public void changesAreSplitIntoBatches() throws ExecutionException, InterruptedException {
+        synchronizer = new ExtmarkSynchronizer(reactiveRpcStreamer, buffer, NAMESPACE, 2);
+        var marks = new ArrayList<ExtmarkSynchronizer.Mark>();
+        for (int i = 0; i < 5; i++) {
+            marks.add(ExtmarkSynchronizer.Mark.highlight(i, 0, 1, "Error"));
+        }
+
+        assertEquals(3, synchronizer.apply(marks).get().batches());
+        assertEquals(5, storedMarks.size());
+    }
+
+    @Test
+    public void positionsAreRefreshedWhenBufferChanges() throws ExecutionException, InterruptedException {
+        var mark = ExtmarkSynchronizer.Mark.highlight(2, 0, 4, "Error");
+        synchronizer.apply(List.of(mark)).get();
+        // Line was inserted above the mark
+        var id = storedMarks.firstKey();
+        storedMarks.put(id, new StoredMark(3, 0, storedMarks.get(id).options()));
+        changedTick++;
+        sentMethods.clear();
+
+        var result = synchronizer.apply(List.of(mark)).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(0, 1, 0, 0, 1), result);
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.GET_EXTMARKS, NeovimBufferApi.SET_EXTMARK), sentMethods);
+        assertEquals(2, storedMarks.get(id).row());
+    }
+
+    @Test
+    public void rangeEndsAreRefreshedWhenBufferChanges() throws ExecutionException, InterruptedException {
+        var mark = ExtmarkSynchronizer.Mark.highlight(2, 0, 4, "Error");
+        synchronizer.apply(List.of(mark)).get();
+        // Text was inserted inside of the highlighted range - only its end moved
+        var id = storedMarks.firstKey();
+        var movedOptions = new HashMap<Object, Object>(storedMarks.get(id).options());
+        movedOptions.put("end_col", 6);
+        storedMarks.put(id, new StoredMark(2, 0, movedOptions));
+        changedTick++;
+        sentMethods.clear();
+
+        var result = synchronizer.apply(List.of(mark)).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(0, 1, 0, 0, 1), result);
+        assertEquals(4, storedMarks.get(id).options().get("end_col"));
+    }
+
+    @Test
+    public void unknownMarksAreReusedOrDeleted() throws ExecutionException, InterruptedException {
+        storedMarks.put(100, new StoredMark(0, 0, Map.of()));
+        storedMarks.put(101, new StoredMark(1, 0, Map.of()));
+        nextId = 102;
+
+        var result = synchronizer.apply(List.of(ExtmarkSynchronizer.Mark.highlight(4, 0, 1, "Error"))).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(0, 1, 0, 1, 1), result);
+        assertEquals(1, storedMarks.size());
+    }
+
+    @Test
+    public void marksOutsideOfRangeAreKept() throws ExecutionException, InterruptedException {
+        synchronizer.apply(List.of(
+                ExtmarkSynchronizer.Mark.highlight(1, 0, 4, "Error"),
+                ExtmarkSynchronizer.Mark.highlight(10, 0, 4, "Error")
+        )).get();
+
+        var result = synchronizer.apply(List.of(), 5, 20).get();
+
+        assertEquals(new ExtmarkSynchronizer.ApplyResult(0, 0, 0, 1, 1), result);
+        assertEquals(1, storedMarks.firstEntry().getValue().row());
+        assertEquals(1, storedMarks.size());
+    }
+
+    @Test
+    public void clearForgetsMarks() throws ExecutionException, InterruptedException {
+        synchronizer.apply(List.of(ExtmarkSynchronizer.Mark.highlight(1, 0, 4, "Error"))).get();
+
+        synchronizer.clear().get();
+
+        assertEquals(0, synchronizer.getAppliedCount());
+        assertEquals(0, storedMarks.size());
+    }
+
+    private Object execute(String method, List<?> arguments) {
+        switch (method) {
+            case NeovimBufferApi.GET_CHANGEDTICK:
+                return changedTick;
+            case NeovimBufferApi.GET_EXTMARKS:
+                return storedMarks.entrySet().stream()
+                        .map(entry -> List.of(entry.getKey(), entry.getValue().row(), entry.getValue().col(),
+                                details(entry.getValue())))
+                        .toList();
+            case NeovimBufferApi.SET_EXTMARK:
+                var options = (Map<?, ?>) arguments.get(4);
+                var id = options.containsKey("id") ? (Integer) options.get("id") : nextId++;
+                storedMarks.put(id, new StoredMark((int) arguments.get(2), (int) arguments.get(3), options));
+                return id;
+            case NeovimBufferApi.DEL_EXTMARK:
+                return storedMarks.remove((Integer) arguments.get(2)) != null;
+            case NeovimBufferApi.CLEAR_NAMESPACE:
+                storedMarks.clear();
+                return null;
+            default:
+                throw new IllegalArgumentException(method);
+        }
+    }
+
+    private static Map<?, ?> details(StoredMark mark) {
+        var details = new HashMap<Object, Object>(mark.options());
+        details.remove("id");
+        details.put("ns_id", NAMESPACE);
+        return details;
+    }
+}
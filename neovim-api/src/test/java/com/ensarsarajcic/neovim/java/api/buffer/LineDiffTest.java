@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.buffer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineDiffTest {
+
+    @Test(expected = NullPointerException.class)
+    public void cantDiffNull() {
+        LineDiff.diff(null, List.of());
+    }
+
+    @Test
+    public void equalVersionsHaveNoHunks() {
+        assertEquals(List.of(), LineDiff.diff(List.of("a", "b"), List.of("a", "b")));
+        assertEquals(List.of(), LineDiff.diff(List.of(), List.of()));
+    }
+
+    @Test
+    public void prefixAndSuffixAreSkipped() {
+        assertEquals(List.of(new LineDiff.Hunk(2, 3, 2, 4)),
+                LineDiff.diff(List.of("a", "b", "c", "d"), List.of("a", "b", "x", "y", "d")));
+        assertEquals(List.of(new LineDiff.Hunk(1, 1, 1, 2)),
+                LineDiff.diff(List.of("a", "b"), List.of("a", "x", "b")));
+        assertEquals(List.of(new LineDiff.Hunk(0, 2, 0, 0)),
+                LineDiff.diff(List.of("a", "b", "c"), List.of("c")));
+    }
+
+    @Test
+    public void separateChangesAreSeparateHunks() {
+        var hunks = LineDiff.diff(List.of("a", "b", "c", "d", "e"), List.of("a", "x", "c", "e", "f"));
+
+        assertEquals(List.of(
+                new LineDiff.Hunk(1, 2, 1, 2),
+                new LineDiff.Hunk(3, 4, 3, 3),
+                new LineDiff.Hunk(5, 5, 4, 5)
+        ), hunks);
+    }
+
+    @Test
+    public void largeRewriteIsSingleHunk() {
+        var oldLines = IntStream.range(0, LineDiff.MAX_EDIT_DISTANCE).mapToObj(i -> "old" + i).toList();
+        var newLines = IntStream.range(0, LineDiff.MAX_EDIT_DISTANCE).mapToObj(i -> "new" + i).toList();
+
+        assertEquals(List.of(new LineDiff.Hunk(0, oldLines.size(), 0, newLines.size())),
+                LineDiff.diff(oldLines, newLines));
+    }
+
+    @Test
+    public void appliedHunksProduceNewVersion() {
+        var random = new Random(42);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            var oldLines = randomLines(random);
+            var newLines = randomLines(random);
+
+            var hunks = LineDiff.diff(oldLines, newLines);
+
+            var result = new ArrayList<>(oldLines);
+            int previousEnd = -1;
+            for (var hunk : hunks) {
+                assertTrue(hunk.oldStart() > previousEnd);
+                assertTrue(hunk.oldLength() > 0 || hunk.newLength() > 0);
+                previousEnd = hunk.oldEnd();
+            }
+            for (int i = hunks.size() - 1; i >= 0; i--) {
+                var hunk = hunks.get(i);
+                result.subList(hunk.oldStart(), hunk.oldEnd()).clear();
+                result.addAll(hunk.oldStart(), newLines.subList(hunk.newStart(), hunk.newEnd()));
+            }
+            assertEquals(newLines, result);
+        }
+    }
+
+    private static List<String> randomLines(Random random) {
+        return IntStream.range(0, random.nextInt(30))
+                .mapToObj(i -> String.valueOf((char) ('a' + random.nextInt(4))))
+                .toList();
+    }
+}
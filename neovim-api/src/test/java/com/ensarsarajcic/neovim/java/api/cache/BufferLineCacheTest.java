@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.RpcException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferLineCacheTest extends BaseStreamApiTest {
+
+    Map<Long, List<String>> bufferLines;
+    Map<Long, Long> changedTicks;
+    List<List<String>> sentAtomicCalls;
+    BufferLineCache bufferLineCache;
+
+    @Before
+    public void setUp() {
+        bufferLines = new HashMap<>();
+        changedTicks = new HashMap<>();
+        sentAtomicCalls = new ArrayList<>();
+        bufferLines.put(1L, List.of("first", "second", "third"));
+        changedTicks.put(1L, 3L);
+        bufferLines.put(2L, List.of("other"));
+        changedTicks.put(2L, 7L);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            assertEquals(NeovimApi.CALL_ATOMIC, request.getMethod());
+            return respondAtomic((List<?>) request.getArguments().get(0));
+        });
+        bufferLineCache = new BufferLineCache(reactiveRpcStreamer);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new BufferLineCache(null);
+    }
+
+    @Test
+    public void unchangedBufferIsOnlyCheckedForChangedTick() throws ExecutionException, InterruptedException {
+        assertEquals(List.of("first", "second", "third"), bufferLineCache.getLines(new Buffer(1), 0, -1, false).get());
+        assertEquals(List.of("first", "second", "third"), bufferLineCache.getLines(new Buffer(1), 0, -1, false).get());
+
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.GET_LINES), sentAtomicCalls.get(0));
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), sentAtomicCalls.get(1));
+        assertEquals(2, sentAtomicCalls.size());
+    }
+
+    @Test
+    public void changedBufferIsFetchedAgain() throws ExecutionException, InterruptedException {
+        bufferLineCache.getLines(new Buffer(1), 0, -1, false).get();
+        bufferLines.put(1L, List.of("changed"));
+        changedTicks.put(1L, 4L);
+
+        assertEquals(List.of("changed"), bufferLineCache.getLines(new Buffer(1), 0, -1, false).get());
+        assertEquals(List.of("changed"), bufferLineCache.getLines(new Buffer(1), 0, -1, false).get());
+
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), sentAtomicCalls.get(1));
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.GET_LINES), sentAtomicCalls.get(2));
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), sentAtomicCalls.get(3));
+        assertEquals(1, bufferLineCache.getCachedRangeCount());
+    }
+
+    @Test
+    public void rangesAreServedFromCachedWholeBuffer() throws ExecutionException, InterruptedException {
+        bufferLineCache.getLines(new Buffer(1), 0, -1, false).get();
+
+        assertEquals(List.of("second"), bufferLineCache.getLines(new Buffer(1), 1, 2, true).get());
+        assertEquals(List.of("second", "third"), bufferLineCache.getLines(new Buffer(1), -3, -1, false).get());
+        assertEquals(List.of("third"), bufferLineCache.getLines(new Buffer(1), 2, 10, false).get());
+
+        assertEquals(4, sentAtomicCalls.size());
+        sentAtomicCalls.subList(1, 4).forEach(calls -> assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), calls));
+    }
+
+    @Test
+    public void multipleReadsAreCheckedInSingleAtomicCall() throws ExecutionException, InterruptedException {
+        bufferLineCache.getLines(new Buffer(1), 0, -1, false).get();
+        sentAtomicCalls.clear();
+
+        var results = bufferLineCache.getLines(List.of(
+                new BufferLineCache.LineRead(new Buffer(1), 0, -1, false),
+                new BufferLineCache.LineRead(new Buffer(2), 0, -1, false),
+                new BufferLineCache.LineRead(new Buffer(1), 0, 1, false)
+        ));
+
+        assertEquals(List.of("first", "second", "third"), results.get(0).get());
+        assertEquals(List.of("other"), results.get(1).get());
+        assertEquals(List.of("first"), results.get(2).get());
+        assertEquals(1, sentAtomicCalls.size());
+        assertEquals(List.of(
+                NeovimBufferApi.GET_CHANGEDTICK,
+                NeovimBufferApi.GET_CHANGEDTICK,
+                NeovimBufferApi.GET_LINES
+        ), sentAtomicCalls.get(0));
+    }
+
+    @Test
+    public void staleReadsAreFetchedInSingleAtomicCall() throws ExecutionException, InterruptedException {
+        bufferLineCache.getLines(new Buffer(1), 0, -1, false).get();
+        bufferLineCache.getLines(new Buffer(2), 0, -1, false).get();
+        bufferLines.put(1L, List.of("changed", "lines"));
+        changedTicks.put(1L, 4L);
+        bufferLines.put(2L, List.of("changed other"));
+        changedTicks.put(2L, 8L);
+        sentAtomicCalls.clear();
+
+        var results = bufferLineCache.getLines(List.of(
+                new BufferLineCache.LineRead(new Buffer(1), 0, -1, false),
+                new BufferLineCache.LineRead(new Buffer(2), 0, -1, false),
+                new BufferLineCache.LineRead(new Buffer(1), 1, 2, false)
+        ));
+
+        assertEquals(List.of("changed", "lines"), results.get(0).get());
+        assertEquals(List.of("changed other"), results.get(1).get());
+        assertEquals(List.of("lines"), results.get(2).get());
+        assertEquals(2, sentAtomicCalls.size());
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.GET_CHANGEDTICK), sentAtomicCalls.get(0));
+        assertEquals(List.of(
+                NeovimBufferApi.GET_CHANGEDTICK,
+                NeovimBufferApi.GET_LINES,
+                NeovimBufferApi.GET_CHANGEDTICK,
+                NeovimBufferApi.GET_LINES,
+                NeovimBufferApi.GET_LINES
+        ), sentAtomicCalls.get(1));
+    }
+
+    @Test
+    public void failedReadDoesNotFailOtherReads() throws ExecutionException, InterruptedException {
+        var results = bufferLineCache.getLines(List.of(
+                new BufferLineCache.LineRead(new Buffer(5), 0, -1, false),
+                new BufferLineCache.LineRead(new Buffer(2), 0, -1, false)
+        ));
+
+        try {
+            results.get(0).get();
+            fail("Read of invalid buffer should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+        }
+        assertEquals(List.of("other"), results.get(1).get());
+        assertEquals(2, sentAtomicCalls.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedRangesAreEvicted() throws ExecutionException, InterruptedException {
+        bufferLineCache = new BufferLineCache(reactiveRpcStreamer, 400);
+
+        bufferLineCache.getLines(new Buffer(1), 0, 2, false).get();
+        bufferLineCache.getLines(new Buffer(2), 0, -1, false).get();
+        assertEquals(2, bufferLineCache.getCachedRangeCount());
+        bufferLineCache.getLines(new Buffer(1), 0, 2, false).get();
+        bufferLineCache.getLines(new Buffer(1), 1, 3, false).get();
+
+        assertTrue(bufferLineCache.getUsedBytes() <= 400);
+        sentAtomicCalls.clear();
+        // Buffer 1 was used more recently, so buffer 2 was evicted
+        bufferLineCache.getLines(new Buffer(1), 0, 2, false).get();
+        bufferLineCache.getLines(new Buffer(2), 0, -1, false).get();
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK), sentAtomicCalls.get(0));
+        assertEquals(List.of(NeovimBufferApi.GET_CHANGEDTICK, NeovimBufferApi.GET_LINES), sentAtomicCalls.get(1));
+    }
+
+    @Test
+    public void invalidateDropsBufferLines() throws ExecutionException, InterruptedException {
+        bufferLineCache.getLines(new Buffer(1), 0, -1, false).get();
+        bufferLineCache.getLines(new Buffer(2), 0, -1, false).get();
+
+        bufferLineCache.invalidate(new Buffer(1));
+
+        assertEquals(1, bufferLineCache.getCachedRangeCount());
+        bufferLineCache.invalidateAll();
+        assertEquals(0, bufferLineCache.getCachedRangeCount());
+        assertEquals(0, bufferLineCache.getUsedBytes());
+    }
+
+    private CompletableFuture<ResponseMessage> respondAtomic(List<?> calls) {
+        var methods = new ArrayList<String>();
+        var results = new ArrayList<>();
+        Object error = null;
+        for (int i = 0; i < calls.size(); i++) {
+            var call = (List<?>) calls.get(i);
+            var method = (String) call.get(0);
+            var arguments = (List<?>) call.get(1);
+            methods.add(method);
+            var bufferId = ((Buffer) arguments.get(0)).getId();
+            if (!bufferLines.containsKey(bufferId)) {
+                error = List.of(i, 0, "Invalid buffer id: " + bufferId);
+                break;
+            }
+            switch (method) {
+                case NeovimBufferApi.GET_CHANGEDTICK -> results.add(changedTicks.get(bufferId));
+                case NeovimBufferApi.GET_LINES -> {
+                    var lines = bufferLines.get(bufferId);
+                    var start = Math.floorMod((int) arguments.get(1), lines.size() + 1);
+                    var end = Math.floorMod((int) arguments.get(2), lines.size() + 1);
+                    results.add(lines.subList(start, end));
+                }
+                default -> throw new IllegalArgumentException(method);
+            }
+        }
+        sentAtomicCalls.add(methods);
+        var response = new ArrayList<>();
+        response.add(results);
+        response.add(error);
+        return respond(response);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Tabpage;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EditorStateMirrorTest extends BaseStreamApiTest {
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    List<RequestMessage> sentRequests;
+    CompletableFuture<ResponseMessage> initialState;
+    EditorStateMirror editorStateMirror;
+
+    @Before
+    public void setUp() {
+        notifications = new SubmissionPublisher<>(Runnable::run, 16);
+        sentRequests = new ArrayList<>();
+        initialState = respond(List.of(1, 1000, 1, "n", 1, 0));
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            switch (request.getMethod()) {
+                case NeovimApi.GET_CHANNEL_INFO:
+                    return respond(Map.of("id", 3));
+                case NeovimApi.CALL_FUNCTION:
+                    return initialState;
+                default:
+                    return respond("");
+            }
+        });
+        editorStateMirror = new EditorStateMirror(reactiveRpcStreamer, Duration.ofMillis(50));
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new EditorStateMirror(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantConstructWithNegativeThrottle() {
+        new EditorStateMirror(reactiveRpcStreamer, Duration.ofMillis(-1));
+    }
+
+    @Test
+    public void snapshotIsEmptyBeforeStart() {
+        var snapshot = editorStateMirror.getSnapshot();
+        assertFalse(editorStateMirror.isActive());
+        assertEquals(0, snapshot.version());
+        assertNull(snapshot.buffer());
+    }
+
+    @Test
+    public void startRegistersAutocommandsAndReadsInitialState() throws ExecutionException, InterruptedException {
+        editorStateMirror.start().get();
+
+        assertTrue(editorStateMirror.isActive());
+        var script = (String) sentRequests.get(1).getArguments().get(0);
+        assertTrue(script.contains("augroup NeovimJavaEditorState3"));
+        assertTrue(script.contains("autocmd BufEnter * call NeovimJavaEditorStateNotify3('BufEnter')"));
+        assertTrue(script.contains("autocmd ModeChanged * call NeovimJavaEditorStateNotify3('ModeChanged')"));
+        assertTrue(script.contains("autocmd CursorMoved,CursorMovedI * call NeovimJavaEditorStateCursor3()"));
+        assertTrue(script.contains("timer_start(50, 'NeovimJavaEditorStateFlush3')"));
+        assertTrue(script.contains("rpcnotify(3, 'neovim_java_editor_state'"));
+        assertMethodAndArguments(sentRequests.get(2), NeovimApi.CALL_FUNCTION, "NeovimJavaEditorStateState3", List.of());
+
+        var snapshot = editorStateMirror.getSnapshot();
+        assertEquals(1, snapshot.version());
+        assertEquals(new Buffer(1), snapshot.buffer());
+        assertEquals(new Window(1000), snapshot.window());
+        assertEquals(new Tabpage(1), snapshot.tabpage());
+        assertEquals("n", snapshot.mode());
+        assertEquals(1, snapshot.line());
+        assertEquals(0, snapshot.column());
+    }
+
+    @Test
+    public void notificationsUpdateSnapshot() throws ExecutionException, InterruptedException {
+        editorStateMirror.start().get();
+
+        notify("WinEnter", 2, 1001, 1, "n", 10, 4);
+        var afterWinEnter = editorStateMirror.getSnapshot();
+        notify("ModeChanged", 2, 1001, 1, "i", 10, 4);
+        notify("CursorMoved", 2, 1001, 1, "i", 12, 0);
+
+        assertEquals(2, afterWinEnter.version());
+        assertEquals(new Window(1001), afterWinEnter.window());
+        assertEquals("n", afterWinEnter.mode());
+        var snapshot = editorStateMirror.getSnapshot();
+        assertEquals(4, snapshot.version());
+        assertSame(afterWinEnter.buffer(), snapshot.buffer());
+        assertEquals("i", snapshot.mode());
+        assertEquals(12, snapshot.line());
+        assertEquals(0, snapshot.column());
+    }
+
+    @Test
+    public void staleInitialStateIsIgnored() throws ExecutionException, InterruptedException {
+        initialState = new CompletableFuture<>();
+        var started = editorStateMirror.start();
+
+        notify("BufEnter", 5, 1000, 1, "n", 3, 2);
+        initialState.complete(new ResponseMessage(1, null, List.of(1, 1000, 1, "n", 1, 0)));
+        started.get();
+
+        var snapshot = editorStateMirror.getSnapshot();
+        assertEquals(1, snapshot.version());
+        assertEquals(new Buffer(5), snapshot.buffer());
+        assertEquals(3, snapshot.line());
+    }
+
+    @Test
+    public void otherNotificationsAreIgnored() throws ExecutionException, InterruptedException {
+        editorStateMirror.start().get();
+
+        notifications.submit(new NotificationMessage.Builder("other").addArgument("BufEnter").build());
+
+        assertEquals(1, editorStateMirror.getSnapshot().version());
+    }
+
+    @Test
+    public void stopRemovesAutocommandsAndFreezesSnapshot() throws ExecutionException, InterruptedException {
+        editorStateMirror.start().get();
+
+        editorStateMirror.stop().get();
+        notify("BufEnter", 5, 1000, 1, "n", 3, 2);
+
+        assertFalse(editorStateMirror.isActive());
+        var removal = (String) sentRequests.get(sentRequests.size() - 1).getArguments().get(0);
+        assertTrue(removal.contains("augroup! NeovimJavaEditorState3"));
+        assertTrue(removal.contains("call timer_stop(g:NeovimJavaEditorStateTimer3)"));
+        assertTrue(removal.contains("delfunction NeovimJavaEditorStateState3"));
+        assertEquals(1, editorStateMirror.getSnapshot().version());
+        assertEquals(new Buffer(1), editorStateMirror.getSnapshot().buffer());
+    }
+
+    private void notify(String event, int buffer, int window, int tabpage, String mode, int line, int column) {
+        notifications.submit(new NotificationMessage.Builder(EditorStateMirror.NOTIFICATION_NAME)
+                .addArgument(event)
+                .addArgument(List.of(buffer, window, tabpage, mode, line, column))
+                .build());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.api.HighlightDefinition;
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HighlightResolverTest extends BaseStreamApiTest {
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    List<RequestMessage> sentRequests;
+    int foreground;
+    HighlightResolver highlightResolver;
+
+    @Before
+    public void setUp() throws ExecutionException, InterruptedException {
+        notifications = new SubmissionPublisher<>(Runnable::run, 16);
+        sentRequests = new ArrayList<>();
+        foreground = 0xff0000;
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            switch (request.getMethod()) {
+                case NeovimApi.GET_CHANNEL_INFO:
+                    return respond(Map.of("id", 4));
+                case NeovimApi.EXEC:
+                    return respond("");
+                case NeovimApi.GET_HIGHLIGHT_BY_ID:
+                case NeovimApi.GET_HIGHLIGHT_BY_NAME:
+                    return respond(Map.of("foreground", foreground, "bold", true));
+                case NeovimApi.GET_HL_ID_BY_NAME:
+                    return respond(42);
+                case NeovimApi.GET_COLOR_BY_NAME:
+                    return respond(0x00ff00);
+                default:
+                    throw new IllegalArgumentException(request.getMethod());
+            }
+        });
+        highlightResolver = new HighlightResolver(reactiveRpcStreamer);
+        highlightResolver.start().get();
+        sentRequests.clear();
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test
+    public void startRegistersColorSchemeAutocommand() throws ExecutionException, InterruptedException {
+        highlightResolver.stop().get();
+
+        var removal = (String) sentRequests.get(0).getArguments().get(0);
+        assertTrue(removal.contains("augroup! NeovimJavaHighlightResolver4"));
+    }
+
+    @Test
+    public void highlightsAreTypedAndCached() throws ExecutionException, InterruptedException {
+        var byName = highlightResolver.getHighlightByName("Comment").get();
+        var byId = highlightResolver.getHighlightById(10).get();
+        highlightResolver.getHighlightByName("Comment").get();
+        highlightResolver.getHighlightById(10).get();
+
+        assertEquals(Integer.valueOf(0xff0000), byName.getForeground());
+        assertNull(byName.getBackground());
+        assertTrue(byName.isBold());
+        assertFalse(byName.isItalic());
+        assertEquals(byName, byId);
+        assertEquals(2, sentRequests.size());
+    }
+
+    @Test
+    public void colorSchemeDropsHighlightsButKeepsIdsAndColors() throws ExecutionException, InterruptedException {
+        highlightResolver.getHighlightByName("Comment").get();
+        assertEquals(Integer.valueOf(42), highlightResolver.getHighlightId("Comment").get());
+        assertEquals(Integer.valueOf(0x00ff00), highlightResolver.getColorByName("Green").get());
+        foreground = 0x0000ff;
+
+        notifications.submit(new NotificationMessage.Builder(HighlightResolver.NOTIFICATION_NAME).addArgument("default").build());
+
+        assertEquals(Integer.valueOf(0x0000ff), highlightResolver.getHighlightByName("Comment").get().getForeground());
+        highlightResolver.getHighlightId("Comment").get();
+        highlightResolver.getColorByName("Green").get();
+        assertEquals(4, sentRequests.size());
+    }
+
+    @Test
+    public void redrawEventsFeedUiGroups() throws ExecutionException, InterruptedException {
+        notifications.submit(new NotificationMessage.Builder(
+                "redraw",
+                new ArrayList<>(List.of(
+                        List.of("hl_attr_define",
+                                List.of(7, Map.of("background", 0x101010, "italic", true), Map.of(), List.of())),
+                        List.of("hl_group_set", List.of("CursorLine", 7))
+                ))).build());
+
+        var cursorLine = highlightResolver.getHighlightByName("CursorLine").get();
+
+        assertEquals(Integer.valueOf(0x101010), cursorLine.getBackground());
+        assertNull(cursorLine.getForeground());
+        assertTrue(cursorLine.isItalic());
+        assertEquals(cursorLine, highlightResolver.getAttributes(7).orElseThrow());
+        assertTrue(sentRequests.isEmpty());
+    }
+
+    @Test
+    public void rawRedrawEventsAreNotFullyDecoded() throws Exception {
+        var encoded = ObjectMappers.defaultNeovimMapper().writeValueAsBytes(List.of(
+                List.of("grid_line", List.of(1, 0, 0, List.of(List.of("a", 7)), false)),
+                List.of("hl_attr_define", List.of(7, Map.of("foreground", 0xff0000), Map.of(), List.of())),
+                List.of("flush", List.of()),
+                List.of("hl_group_set", List.of("Search", 7))
+        ));
+        var redraw = new NotificationMessage("redraw", encoded, 0, encoded.length, (data, offset, length) -> {
+            throw new AssertionError("Redraw should not be decoded");
+        });
+
+        notifications.submit(redraw);
+
+        assertEquals(Integer.valueOf(0xff0000), highlightResolver.getHighlightByName("Search").get().getForeground());
+        assertFalse(redraw.isDecoded());
+        assertTrue(sentRequests.isEmpty());
+    }
+}
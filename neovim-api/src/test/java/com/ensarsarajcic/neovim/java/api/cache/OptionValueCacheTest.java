@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.cache;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.api.window.NeovimWindowApi;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OptionValueCacheTest extends BaseStreamApiTest {
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    List<RequestMessage> sentRequests;
+    int valueCounter;
+    OptionValueCache optionValueCache;
+
+    @Before
+    public void setUp() throws ExecutionException, InterruptedException {
+        notifications = new SubmissionPublisher<>(Runnable::run, 16);
+        sentRequests = new ArrayList<>();
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            switch (request.getMethod()) {
+                case NeovimApi.GET_CHANNEL_INFO:
+                    return respond(Map.of("id", 5));
+                case NeovimApi.EXEC:
+                    return respond("");
+                default:
+                    return respond(++valueCounter);
+            }
+        });
+        optionValueCache = new OptionValueCache(reactiveRpcStreamer);
+        optionValueCache.start().get();
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new OptionValueCache(null);
+    }
+
+    @Test
+    public void startRegistersAutocommandsForChannel() {
+        assertTrue(optionValueCache.isActive());
+        assertEquals(NeovimApi.GET_CHANNEL_INFO, sentRequests.get(0).getMethod());
+        var exec = sentRequests.get(1);
+        assertEquals(NeovimApi.EXEC, exec.getMethod());
+        var script = (String) exec.getArguments().get(0);
+        assertTrue(script.contains("augroup NeovimJavaOptionCache5"));
+        assertTrue(script.contains("autocmd OptionSet * call rpcnotify(5, 'neovim_java_option_cache'"));
+        assertTrue(script.contains("dictwatcheradd(g:, '*', 'NeovimJavaOptionCacheWatcher5')"));
+    }
+
+    @Test
+    public void valuesAreServedFromCache() throws ExecutionException, InterruptedException {
+        sentRequests.clear();
+
+        assertEquals(1, optionValueCache.getOption("textwidth").get());
+        assertEquals(1, optionValueCache.getOption("textwidth").get());
+        assertEquals(2, optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get());
+        assertEquals(2, optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get());
+        assertEquals(3, optionValueCache.getWindowOption(new Window(1000), "wrap").get());
+        assertEquals(3, optionValueCache.getWindowOption(new Window(1000), "wrap").get());
+        assertEquals(4, optionValueCache.getVariable("var").get());
+        assertEquals(4, optionValueCache.getVariable("var").get());
+
+        assertEquals(4, sentRequests.size());
+        assertEquals(NeovimApi.GET_OPTION, sentRequests.get(0).getMethod());
+        assertEquals(NeovimBufferApi.GET_OPTION, sentRequests.get(1).getMethod());
+        assertEquals(NeovimWindowApi.GET_OPTION, sentRequests.get(2).getMethod());
+        assertEquals(NeovimApi.GET_VAR, sentRequests.get(3).getMethod());
+    }
+
+    @Test
+    public void scopesAreTrackedSeparately() throws ExecutionException, InterruptedException {
+        assertEquals(1, optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get());
+        assertEquals(2, optionValueCache.getBufferOption(new Buffer(2), "shiftwidth").get());
+        assertEquals(3, optionValueCache.getOption("shiftwidth").get());
+        assertEquals(1, optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get());
+    }
+
+    @Test
+    public void optionSetDropsOptionInAllScopes() throws ExecutionException, InterruptedException {
+        optionValueCache.getOption("shiftwidth").get();
+        optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get();
+        optionValueCache.getBufferOption(new Buffer(1), "filetype").get();
+
+        notify("OptionSet", "shiftwidth", 1, 1000);
+
+        assertEquals(4, optionValueCache.getOption("shiftwidth").get());
+        assertEquals(5, optionValueCache.getBufferOption(new Buffer(1), "shiftwidth").get());
+        assertEquals(3, optionValueCache.getBufferOption(new Buffer(1), "filetype").get());
+    }
+
+    @Test
+    public void bufferEventsDropBufferAndWindowOptions() throws ExecutionException, InterruptedException {
+        optionValueCache.getBufferOption(new Buffer(1), "filetype").get();
+        optionValueCache.getBufferOption(new Buffer(2), "filetype").get();
+        optionValueCache.getWindowOption(new Window(1000), "wrap").get();
+
+        notify("FileType", "", 1, 1000);
+
+        assertEquals(4, optionValueCache.getBufferOption(new Buffer(1), "filetype").get());
+        assertEquals(2, optionValueCache.getBufferOption(new Buffer(2), "filetype").get());
+        assertEquals(5, optionValueCache.getWindowOption(new Window(1000), "wrap").get());
+    }
+
+    @Test
+    public void variableChangeDropsVariable() throws ExecutionException, InterruptedException {
+        optionValueCache.getVariable("a").get();
+        optionValueCache.getVariable("b").get();
+
+        notify("VarChanged", "a", 0, 0);
+
+        assertEquals(3, optionValueCache.getVariable("a").get());
+        assertEquals(2, optionValueCache.getVariable("b").get());
+    }
+
+    @Test
+    public void stopRemovesAutocommandsAndDisablesCaching() throws ExecutionException, InterruptedException {
+        optionValueCache.getOption("textwidth").get();
+
+        optionValueCache.stop().get();
+
+        assertFalse(optionValueCache.isActive());
+        var removal = (String) sentRequests.get(sentRequests.size() - 1).getArguments().get(0);
+        assertTrue(removal.contains("augroup! NeovimJavaOptionCache5"));
+        assertEquals(2, optionValueCache.getOption("textwidth").get());
+        assertEquals(3, optionValueCache.getOption("textwidth").get());
+    }
+
+    private void notify(String event, String name, int buffer, int window) {
+        notifications.submit(new NotificationMessage.Builder(OptionValueCache.NOTIFICATION_NAME)
+                .addArgument(event)
+                .addArgument(name)
+                .addArgument(buffer)
+                .addArgument(window)
+                .build());
+    }
+}
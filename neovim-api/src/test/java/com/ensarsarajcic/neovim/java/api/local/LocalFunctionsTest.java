@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.local;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LocalFunctionsTest {
+
+    // Recorded using nvim_strwidth with default options
+    private static final Object[][] WIDTH_FIXTURES = {
+            {"", 0},
+            {"hello", 5},
+            {"\t", 1},
+            {"日本語", 6},
+            {"ｱｲｳ", 3},
+            {"ＡＢ", 4},
+            {"한글", 4},
+            {"\u00e9", 1},
+            {"e\u0301", 1},
+            {"\u0301", 1},
+            {"\u0301\u0301", 1},
+            {"😀", 2},
+            {"€", 1},
+            {"α", 1},
+            {"a😀b日", 6},
+    };
+
+    // Recorded using nvim_replace_termcodes(str, true, true, true)
+    private static final String[][] TERMCODES_FIXTURES = {
+            {"", ""},
+            {"abc", "abc"},
+            {"<CR>", "\r"},
+            {"<cr>", "\r"},
+            {"<Esc>", "\u001b"},
+            {"<Tab>", "\t"},
+            {"<NL>", "\n"},
+            {"<Space>", " "},
+            {"<Bar>", "|"},
+            {"<lt>", "<"},
+            {"<C-a>", "\u0001"},
+            {"<c-W>", "\u0017"},
+            {"<C-[>", "\u001b"},
+            {"<Esc>:w<CR>", "\u001b:w\r"},
+            {"a<b", "a<b"},
+            {"<foo bar>", "<foo bar>"},
+            {"<>", "<>"},
+    };
+
+    /**
+     * Strings Neovim translates differently than they are written - non-ASCII characters have {@code 0x80} bytes
+     * of their UTF-8 encoding escaped ("\u00c0" is C3 80) and a leading {@code #<digit>} is a function key
+     */
+    private static final String[] NEOVIM_TERMCODES_FIXTURES = {
+            "\u00c0",
+            "caf\u00e9<CR>",
+            "\u4e2d",
+            "#1",
+            "#0<CR>",
+    };
+
+    @Mock
+    NeovimApi neovimApi;
+
+    LocalFunctions localFunctions;
+
+    @Before
+    public void setUp() {
+        localFunctions = new LocalFunctions(neovimApi);
+    }
+
+    @Test
+    public void stringWidthMatchesRecordedFixtures() throws ExecutionException, InterruptedException {
+        for (var fixture : WIDTH_FIXTURES) {
+            var string = (String) fixture[0];
+            assertEquals(string, fixture[1], localFunctions.stringWidth(string).get());
+            assertEquals(string, fixture[1], localFunctions.localStringWidth(string));
+        }
+        verify(neovimApi, never()).stringWidth(anyString());
+    }
+
+    @Test
+    public void optionsAreReadOnStart() throws ExecutionException, InterruptedException {
+        given(neovimApi.getOption("ambiwidth")).willReturn(CompletableFuture.completedFuture("double"));
+        given(neovimApi.getOption("emoji")).willReturn(CompletableFuture.completedFuture(true));
+
+        localFunctions.start().get();
+
+        assertEquals(2, localFunctions.localStringWidth("€"));
+        assertEquals(4, localFunctions.localStringWidth("αβ"));
+        assertEquals(6, localFunctions.localStringWidth("日本語"));
+        assertEquals(5, localFunctions.localStringWidth("hello"));
+    }
+
+    @Test
+    public void versionDependentWidthIsPassedToNeovim() throws ExecutionException, InterruptedException {
+        given(neovimApi.stringWidth("👍🏽")).willReturn(CompletableFuture.completedFuture(2));
+
+        assertEquals(Integer.valueOf(2), localFunctions.stringWidth("👍🏽").get());
+        verify(neovimApi).stringWidth("👍🏽");
+    }
+
+    @Test
+    public void pictographsWhichAreNotWideArePassedToNeovim() throws ExecutionException, InterruptedException {
+        // Recorded using nvim_strwidth with default options - wide only because 'emoji' is on
+        for (var pictograph : List.of("\ud83c\udf21", "\ud83c\udf24", "\ud83c\udf2c", "\ud83c\udf36", "\ud83c\udf7d")) {
+            given(neovimApi.stringWidth(pictograph)).willReturn(CompletableFuture.completedFuture(2));
+
+            assertEquals(pictograph, Integer.valueOf(2), localFunctions.stringWidth(pictograph).get());
+            assertEquals(pictograph, 2, localFunctions.localStringWidth(pictograph));
+            verify(neovimApi).stringWidth(pictograph);
+        }
+    }
+
+    @Test
+    public void replaceTermcodesMatchesRecordedFixtures() throws ExecutionException, InterruptedException {
+        for (var fixture : TERMCODES_FIXTURES) {
+            assertEquals(fixture[0], fixture[1], localFunctions.replaceTermcodes(fixture[0], true, true, true).get());
+        }
+        verify(neovimApi, never()).replaceTermcodes(anyString(), anyBoolean(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void ltAndSpecialFlagsAreRespected() throws ExecutionException, InterruptedException {
+        assertEquals("<lt>\r", localFunctions.replaceTermcodes("<lt><CR>", true, false, true).get());
+        assertEquals("<lt><CR>", localFunctions.replaceTermcodes("<lt><CR>", true, true, false).get());
+        verify(neovimApi, never()).replaceTermcodes(anyString(), anyBoolean(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void specialKeysArePassedToNeovimAndCached() throws ExecutionException, InterruptedException {
+        given(neovimApi.replaceTermcodes("x<BS>", true, true, true))
+                .willReturn(CompletableFuture.completedFuture("x\u0080kb"));
+
+        assertEquals("x\u0080kb", localFunctions.replaceTermcodes("x<BS>", true, true, true).get());
+        assertEquals("x\u0080kb", localFunctions.replaceTermcodes("x<BS>", true, true, true).get());
+        verify(neovimApi, times(1)).replaceTermcodes("x<BS>", true, true, true);
+
+        localFunctions.invalidate();
+        localFunctions.replaceTermcodes("x<BS>", true, true, true).get();
+        verify(neovimApi, times(2)).replaceTermcodes("x<BS>", true, true, true);
+    }
+
+    @Test
+    public void nonAsciiAndFunctionKeysArePassedToNeovim() throws ExecutionException, InterruptedException {
+        for (var fixture : NEOVIM_TERMCODES_FIXTURES) {
+            given(neovimApi.replaceTermcodes(fixture, true, true, true))
+                    .willReturn(CompletableFuture.completedFuture("translated " + fixture));
+
+            assertEquals(fixture, "translated " + fixture, localFunctions.replaceTermcodes(fixture, true, true, true).get());
+        }
+
+        // Without fromPart, a leading #<digit> is plain text
+        assertEquals("#1", localFunctions.replaceTermcodes("#1", false, true, true).get());
+        verify(neovimApi, never()).replaceTermcodes("#1", false, true, true);
+    }
+
+    @Test
+    public void literalEscapesArePassedToNeovim() throws ExecutionException, InterruptedException {
+        given(neovimApi.replaceTermcodes("\\<CR>", true, true, true))
+                .willReturn(CompletableFuture.completedFuture("\\\r"));
+
+        assertEquals("\\\r", localFunctions.replaceTermcodes("\\<CR>", true, true, true).get());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.lua;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LuaFunctionRegistryTest extends BaseStreamApiTest {
+
+    List<RequestMessage> sentRequests;
+    Set<Object> neovimFunctions;
+    Object functionResult;
+    LuaFunctionRegistry registry;
+
+    @Before
+    public void setUp() {
+        sentRequests = new ArrayList<>();
+        neovimFunctions = new HashSet<>();
+        functionResult = List.of(42);
+        // Simulates the dispatcher - keeps uploaded functions and reports missing ones
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            var arguments = (List<?>) request.getArguments().get(1);
+            if (LuaFunctionRegistry.UPLOAD_CHUNK.equals(request.getArguments().get(0))) {
+                neovimFunctions.add(arguments.get(0));
+            }
+            if (!neovimFunctions.contains(arguments.get(0))) {
+                return respond(false);
+            }
+            return respond(functionResult);
+        });
+        registry = new LuaFunctionRegistry(reactiveRpcStreamer);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new LuaFunctionRegistry(null);
+    }
+
+    @Test
+    public void handlesAreBasedOnSource() {
+        assertEquals(registry.register("return 1"), registry.register("return 1"));
+        assertEquals(registry.register("return 1"), new LuaFunctionRegistry(reactiveRpcStreamer).register("return 1"));
+        assertNotEquals(registry.register("return 1"), registry.register("return 2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownHandlesAreRejected() {
+        registry.call(new LuaFunctionRegistry.Handle("unknown"), List.of());
+    }
+
+    @Test
+    public void sourceIsSentOnlyWithFirstCall() throws ExecutionException, InterruptedException {
+        var handle = registry.register("return vim.api.nvim_buf_line_count(...)");
+
+        assertEquals(42, registry.call(handle, List.of(1), Integer.class).get().intValue());
+        assertEquals(42, registry.call(handle, List.of(2), Integer.class).get().intValue());
+
+        assertEquals(2, sentRequests.size());
+        var first = sentRequests.get(0);
+        var second = sentRequests.get(1);
+        assertEquals(NeovimApi.EXEC_LUA, first.getMethod());
+        assertEquals(LuaFunctionRegistry.UPLOAD_CHUNK, first.getArguments().get(0));
+        assertEquals(List.of(handle.hash(), "return vim.api.nvim_buf_line_count(...)", 1), first.getArguments().get(1));
+        // Only the handle and arguments, with a constant chunk invoking the installed dispatcher
+        assertEquals(LuaFunctionRegistry.CALL_CHUNK, second.getArguments().get(0));
+        assertEquals(List.of(handle.hash(), 2), second.getArguments().get(1));
+    }
+
+    @Test
+    public void missingFunctionsAreUploadedAgain() throws ExecutionException, InterruptedException {
+        var handle = registry.register("return 42");
+        registry.call(handle, List.of()).get();
+
+        neovimFunctions.clear();
+
+        assertEquals(42, registry.call(handle, List.of()).get());
+        assertEquals(3, sentRequests.size());
+        assertEquals(LuaFunctionRegistry.CALL_CHUNK, sentRequests.get(1).getArguments().get(0));
+        assertEquals(List.of(handle.hash(), "return 42"), sentRequests.get(2).getArguments().get(1));
+
+        registry.call(handle, List.of()).get();
+        assertEquals(LuaFunctionRegistry.CALL_CHUNK, sentRequests.get(3).getArguments().get(0));
+    }
+
+    @Test
+    public void invalidateSendsSourceAgain() throws ExecutionException, InterruptedException {
+        var handle = registry.register("return 42");
+        registry.call(handle, List.of()).get();
+
+        registry.invalidate();
+        registry.call(handle, List.of()).get();
+
+        assertEquals(2, sentRequests.size());
+        assertEquals("return 42", ((List<?>) sentRequests.get(1).getArguments().get(1)).get(1));
+    }
+
+    @Test
+    public void nilResultsAreNull() throws ExecutionException, InterruptedException {
+        var handle = registry.register("print(...)");
+
+        functionResult = List.of();
+        assertNull(registry.call(handle, List.of("a")).get());
+        functionResult = Map.of();
+        assertNull(registry.call(handle, List.of("a")).get());
+    }
+}
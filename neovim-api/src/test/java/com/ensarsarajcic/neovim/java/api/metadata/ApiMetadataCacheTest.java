@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.metadata;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.api.GetCommandsOptions;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ApiMetadataCacheTest extends BaseStreamApiTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    Path cacheFile;
+    List<String> sentMethods;
+    int channelId;
+    String version;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheFile = temporaryFolder.getRoot().toPath().resolve("cache").resolve("api-metadata.bin");
+        sentMethods = new ArrayList<>();
+        channelId = 3;
+        version = "\nNVIM v0.9.1\nBuild type: Release\nLuaJIT 2.1.0-beta3";
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentMethods.add(request.getMethod());
+            switch (request.getMethod()) {
+                case NeovimApi.CALL_ATOMIC:
+                    return respond(Arrays.asList(List.of(Map.of("id", channelId), version), null));
+                case NeovimApi.GET_API_INFO:
+                    return respond(List.of(channelId, apiMetadata()));
+                case NeovimApi.GET_ALL_OPTIONS_INFO:
+                    return respond(Map.of("shiftwidth", Map.of("name", "shiftwidth", "type", "number", "default", 8, "scope", "buf", "commalist", false, "flaglist", false)));
+                case NeovimApi.GET_COMMANDS:
+                    return respond(Map.of("Test", Map.of("name", "Test", "nargs", "0")));
+                default:
+                    throw new IllegalArgumentException(request.getMethod());
+            }
+        });
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNullFile() {
+        new ApiMetadataCache(reactiveRpcStreamer, null);
+    }
+
+    @Test
+    public void apiInfoIsFetchedOnceAndPersisted() throws ExecutionException, InterruptedException {
+        var cache = new ApiMetadataCache(reactiveRpcStreamer, cacheFile);
+
+        var apiInfo = cache.getApiInfo().get();
+
+        assertEquals(Integer.valueOf(3), apiInfo.getChannelId());
+        assertEquals(11, apiInfo.getVersion().getLevel());
+        assertSame(cache.getApiInfo(), cache.getApiInfo());
+        assertEquals(List.of(NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO), sentMethods);
+        assertTrue(Files.isRegularFile(cacheFile));
+    }
+
+    @Test
+    public void persistedApiInfoIsUsedForSameBuild() throws ExecutionException, InterruptedException {
+        new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getApiInfo().get();
+        sentMethods.clear();
+        channelId = 7;
+
+        var apiInfo = new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getApiInfo().get();
+
+        assertEquals(List.of(NeovimApi.CALL_ATOMIC), sentMethods);
+        assertEquals(Integer.valueOf(7), apiInfo.getChannelId());
+        assertEquals(9, apiInfo.getVersion().getMinor());
+    }
+
+    @Test
+    public void differentBuildFetchesApiInfoAgain() throws ExecutionException, InterruptedException {
+        new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getApiInfo().get();
+        sentMethods.clear();
+        version = "\nNVIM v0.10.0-dev-1234+g0123456\nBuild type: Release";
+
+        new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getApiInfo().get();
+
+        assertEquals(List.of(NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO), sentMethods);
+    }
+
+    @Test
+    public void allOptionsInfoIsPersisted() throws ExecutionException, InterruptedException {
+        new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getAllOptionsInfo().get();
+        sentMethods.clear();
+
+        var cache = new ApiMetadataCache(reactiveRpcStreamer, cacheFile);
+        var optionsInfo = cache.getAllOptionsInfo().get();
+        cache.getApiInfo().get();
+
+        assertEquals(List.of(NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO), sentMethods);
+        assertEquals("number", optionsInfo.get("shiftwidth").getType());
+    }
+
+    @Test
+    public void commandsAreCachedInMemoryOnly() throws ExecutionException, InterruptedException {
+        var cache = new ApiMetadataCache(reactiveRpcStreamer, cacheFile);
+
+        assertTrue(cache.getCommands(new GetCommandsOptions(false)).get().containsKey("Test"));
+        cache.getCommands(new GetCommandsOptions(false)).get();
+        assertEquals(List.of(NeovimApi.GET_COMMANDS), sentMethods);
+
+        cache.invalidateCommands();
+        cache.getCommands(new GetCommandsOptions(false)).get();
+        assertEquals(List.of(NeovimApi.GET_COMMANDS, NeovimApi.GET_COMMANDS), sentMethods);
+        assertFalse(Files.exists(cacheFile));
+    }
+
+    @Test
+    public void corruptFileIsIgnored() throws ExecutionException, InterruptedException, IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Files.write(cacheFile, new byte[]{1, 2, 3});
+
+        var apiInfo = new ApiMetadataCache(reactiveRpcStreamer, cacheFile).getApiInfo().get();
+
+        assertEquals(11, apiInfo.getVersion().getLevel());
+        assertEquals(List.of(NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO), sentMethods);
+    }
+
+    @Test
+    public void invalidateDeletesCacheFile() throws ExecutionException, InterruptedException {
+        var cache = new ApiMetadataCache(reactiveRpcStreamer, cacheFile);
+        cache.getApiInfo().get();
+
+        cache.invalidate();
+        assertFalse(Files.exists(cacheFile));
+
+        cache.getApiInfo().get();
+        assertEquals(List.of(
+                NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO, NeovimApi.CALL_ATOMIC, NeovimApi.GET_API_INFO
+        ), sentMethods);
+    }
+
+    private static Map<String, Object> apiMetadata() {
+        return Map.of(
+                "version", Map.of(
+                        "major", 0, "minor", 9, "patch", 1,
+                        "api_level", 11, "api_compatible", 0, "api_prerelease", false
+                ),
+                "functions", List.of(),
+                "error_types", Map.of(),
+                "types", Map.of(),
+                "ui_events", List.of(),
+                "ui_options", List.of()
+        );
+    }
+}
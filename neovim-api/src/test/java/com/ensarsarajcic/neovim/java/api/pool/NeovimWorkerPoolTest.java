@@ -0,0 +1,284 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.pool;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NeovimWorkerPoolTest {
+
+    static final class FakeInstance {
+        final AtomicLong memory = new AtomicLong(1000);
+        final CompletableFuture<Void> terminated = new CompletableFuture<>();
+        volatile boolean failHealthCheck = false;
+        volatile CompletableFuture<Long> pendingHealthCheck;
+        NeovimWorkerPool.Instance instance;
+    }
+
+    List<FakeInstance> instances;
+    boolean failLaunch;
+    boolean failReadiness;
+
+    @Before
+    public void setUp() {
+        instances = new ArrayList<>();
+        failLaunch = false;
+        failReadiness = false;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantBuildWithInvalidSizes() {
+        new NeovimWorkerPool.Builder().withMinSize(3).withMaxSize(2).build();
+    }
+
+    @Test
+    public void startPrewarmsMinimumWorkers() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(2).withMaxSize(4).build();
+
+        pool.start().get();
+
+        assertEquals(2, instances.size());
+        assertEquals(2, pool.getSize());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void leastUsedIdleWorkerIsLeased() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(2).withMaxSize(2).build();
+        pool.start().get();
+
+        var usedApis = new HashSet<NeovimApi>();
+        for (var i = 0; i < 4; i++) {
+            usedApis.add(pool.submit(CompletableFuture::completedFuture).get());
+        }
+
+        assertEquals(2, instances.size());
+        assertEquals(2, usedApis.size());
+    }
+
+    @Test
+    public void poolGrowsUpToMaxSizeAndQueuesJobs() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(0).withMaxSize(2).build();
+
+        var first = pool.acquire().get();
+        var second = pool.acquire().get();
+        var third = pool.acquire();
+
+        assertEquals(2, instances.size());
+        assertFalse(third.isDone());
+
+        first.close();
+
+        assertSame(first.api(), third.get().api());
+        assertEquals(2, pool.getSize());
+        second.close();
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void workersAreRecycledAfterMaxJobs() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).withMaxJobsPerWorker(2).build();
+        pool.start().get();
+
+        for (var i = 0; i < 3; i++) {
+            pool.submit(CompletableFuture::completedFuture).get();
+        }
+
+        assertEquals(2, instances.size());
+        assertTrue(instances.get(0).terminated.isDone());
+        assertFalse(instances.get(1).terminated.isDone());
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void discardedWorkersAreReplaced() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).build();
+        pool.start().get();
+
+        pool.acquire().get().discard();
+
+        assertEquals(2, instances.size());
+        assertTrue(instances.get(0).terminated.isDone());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void healthCheckRecyclesUnhealthyWorkers() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(3).withMaxSize(3).withMaxResidentMemory(10_000).build();
+        pool.start().get();
+
+        instances.get(0).memory.set(20_000);
+        instances.get(1).failHealthCheck = true;
+        pool.checkHealth().get();
+
+        assertEquals(5, instances.size());
+        assertTrue(instances.get(0).terminated.isDone());
+        assertTrue(instances.get(1).terminated.isDone());
+        assertFalse(instances.get(2).terminated.isDone());
+        assertEquals(3, pool.getIdleCount());
+    }
+
+    @Test
+    public void workersStayLeasableWhileChecked() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).withMaxResidentMemory(10_000).build();
+        pool.start().get();
+        instances.get(0).pendingHealthCheck = new CompletableFuture<>();
+
+        var check = pool.checkHealth();
+        assertEquals(1, pool.getIdleCount());
+        var lease = pool.acquire();
+        assertTrue(lease.isDone());
+
+        instances.get(0).pendingHealthCheck.complete(20_000L);
+        check.get();
+        assertEquals(1, instances.size());
+        assertFalse(instances.get(0).terminated.isDone());
+
+        // Recycled once the job is done
+        instances.get(0).pendingHealthCheck = null;
+        lease.get().close();
+        assertTrue(instances.get(0).terminated.isDone());
+        assertEquals(2, instances.size());
+    }
+
+    @Test
+    public void idleWorkersOverMinimumAreStopped() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(3).withIdleTimeout(Duration.ZERO).build();
+        var leases = List.of(pool.acquire().get(), pool.acquire().get(), pool.acquire().get());
+        leases.forEach(NeovimWorkerPool.Lease::close);
+
+        pool.checkHealth().get();
+
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(2, instances.stream().filter(instance -> instance.terminated.isDone()).count());
+    }
+
+    @Test
+    public void exitedWorkersAreReplaced() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).build();
+        pool.start().get();
+
+        instances.get(0).terminated.complete(null);
+
+        assertEquals(2, instances.size());
+        assertEquals(1, pool.getSize());
+        assertSame(instances.get(1).instance.api(), pool.acquire().get().api());
+    }
+
+    @Test
+    public void failedLaunchFailsWaitingJob() throws InterruptedException {
+        var pool = builder().withMinSize(0).withMaxSize(1).build();
+        failLaunch = true;
+
+        try {
+            pool.acquire().get();
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void startFailsWhenWorkerDoesNotRespond() throws InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).build();
+        failReadiness = true;
+
+        try {
+            pool.start().get();
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, pool.getSize());
+        assertTrue(instances.get(0).terminated.isDone());
+    }
+
+    @Test
+    public void closeStopsWorkersAndFailsWaitingJobs() throws ExecutionException, InterruptedException {
+        var pool = builder().withMinSize(1).withMaxSize(1).build();
+        var lease = pool.acquire().get();
+        var waiting = pool.acquire();
+
+        pool.close();
+
+        assertTrue(waiting.isCompletedExceptionally());
+        assertFalse(instances.get(0).terminated.isDone());
+        lease.close();
+        assertTrue(instances.get(0).terminated.isDone());
+        assertTrue(pool.acquire().isCompletedExceptionally());
+    }
+
+    private NeovimWorkerPool.Builder builder() {
+        return new NeovimWorkerPool.Builder()
+                .withLauncher(this::launch)
+                .withExecutor(Runnable::run)
+                .withHealthCheckInterval(null);
+    }
+
+    private NeovimWorkerPool.Instance launch() throws IOException {
+        if (failLaunch) {
+            throw new IOException("nvim not found");
+        }
+        var fake = new FakeInstance();
+        fake.failHealthCheck = failReadiness;
+        var api = mock(NeovimApi.class);
+        given(api.callFunction(anyString(), any())).willAnswer(invocation -> {
+            if (fake.pendingHealthCheck != null) {
+                return fake.pendingHealthCheck;
+            }
+            return fake.failHealthCheck
+                    ? CompletableFuture.failedFuture(new IOException("Broken pipe"))
+                    : CompletableFuture.completedFuture(fake.memory.get());
+        });
+        fake.instance = new NeovimWorkerPool.Instance(api, () -> fake.terminated.complete(null), fake.terminated);
+        instances.add(fake);
+        return fake.instance;
+    }
+}
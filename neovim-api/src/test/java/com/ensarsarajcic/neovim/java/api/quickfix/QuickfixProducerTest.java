@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.quickfix;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QuickfixProducerTest extends BaseStreamApiTest {
+
+    Queue<Runnable> tasks;
+    List<List<?>> calls;
+    QuickfixProducer producer;
+
+    @Before
+    public void setUp() {
+        tasks = new ArrayDeque<>();
+        calls = new ArrayList<>();
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            Object result;
+            if (request.getMethod().equals(NeovimApi.CALL_ATOMIC)) {
+                var results = new ArrayList<>();
+                for (var call : (List<?>) request.getArguments().get(0)) {
+                    var arguments = (List<?>) ((List<?>) call).get(1);
+                    calls.add(arguments);
+                    results.add(((String) arguments.get(0)).startsWith("get") ? Map.of("id", 7) : 0);
+                }
+                var response = new ArrayList<>();
+                response.add(results);
+                response.add(null);
+                result = response;
+            } else {
+                assertEquals(NeovimApi.CALL_FUNCTION, request.getMethod());
+                calls.add(request.getArguments());
+                result = 0;
+            }
+            return respond(result);
+        });
+        producer = new QuickfixProducer(reactiveRpcStreamer, new QuickfixProducer.Options.Builder()
+                .withChunkSize(2)
+                .withChunkInterval(Duration.ZERO)
+                .withExecutor(tasks::add)
+                .build());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new QuickfixProducer(null);
+    }
+
+    @Test
+    public void streamIsAppendedInBoundedChunks() throws ExecutionException, InterruptedException {
+        var result = producer.produce(QuickfixProducer.Target.quickfix(), "Build", Map.of("tool", "make"),
+                IntStream.rangeClosed(1, 5).mapToObj(line -> QuickfixProducer.Entry.forFile("main.c", line, 1, "error")));
+        runTasks();
+
+        assertEquals(Integer.valueOf(5), result.get());
+        assertEquals(List.of("setqflist", "getqflist"), List.of(calls.get(0).get(0), calls.get(1).get(0)));
+        var created = (Map<?, ?>) ((List<?>) calls.get(0).get(1)).get(2);
+        assertEquals("Build (0...)", created.get("title"));
+        assertEquals(Map.of("tool", "make", "running", true, "count", 0), created.get("context"));
+
+        var appended = 0;
+        for (var call : calls.subList(2, calls.size())) {
+            assertEquals("setqflist", call.get(0));
+            var arguments = (List<?>) call.get(1);
+            assertEquals("a", arguments.get(1));
+            var what = (Map<?, ?>) arguments.get(2);
+            assertEquals(7, what.get("id"));
+            var items = (List<?>) what.get("items");
+            assertTrue(items.size() <= 2);
+            appended += items.size();
+        }
+        assertEquals(5, appended);
+        var last = (Map<?, ?>) ((List<?>) calls.get(calls.size() - 1).get(1)).get(2);
+        assertEquals("Build", last.get("title"));
+        assertEquals(Map.of("tool", "make", "running", false, "count", 5), last.get("context"));
+        var firstItem = (Map<?, ?>) ((List<?>) ((Map<?, ?>) ((List<?>) calls.get(2).get(1)).get(2)).get("items")).get(0);
+        assertEquals(Map.of("filename", "main.c", "lnum", 1, "col", 1, "text", "error"), firstItem);
+    }
+
+    @Test
+    public void failedPublisherFailsResultAfterLastAppend() throws InterruptedException {
+        var publisher = new SubmissionPublisher<QuickfixProducer.Entry>(tasks::add, 4);
+        var result = producer.produce(QuickfixProducer.Target.quickfix(), "Lint", null, publisher);
+        publisher.submit(QuickfixProducer.Entry.forBuffer(new Buffer(3), 4, 2, "unused").withType("W"));
+        runTasks();
+        publisher.closeExceptionally(new IllegalStateException("linter crashed"));
+        runTasks();
+
+        try {
+            result.get();
+            fail("Producing should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        var last = (Map<?, ?>) ((List<?>) calls.get(calls.size() - 1).get(1)).get(2);
+        assertEquals(Map.of("running", false, "count", 1), last.get("context"));
+        var item = (Map<?, ?>) ((List<?>) ((Map<?, ?>) ((List<?>) calls.get(2).get(1)).get(2)).get("items")).get(0);
+        assertEquals(3L, item.get("bufnr"));
+        assertEquals("W", item.get("type"));
+    }
+
+    @Test
+    public void locationListOfWindowIsUsed() throws ExecutionException, InterruptedException {
+        var result = producer.produce(QuickfixProducer.Target.locationList(new Window(1000)), "Symbols", null,
+                List.of(QuickfixProducer.Entry.forFile("a.txt", 1, 1, "a")).stream());
+        runTasks();
+
+        assertEquals(Integer.valueOf(1), result.get());
+        assertEquals(List.of(1000L, Map.of("id", 0)), calls.get(1).get(1));
+        for (var call : calls) {
+            assertTrue(((String) call.get(0)).endsWith("loclist"));
+        }
+        assertEquals(1000L, ((List<?>) calls.get(2).get(1)).get(0));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
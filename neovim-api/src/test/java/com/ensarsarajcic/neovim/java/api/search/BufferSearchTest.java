@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.search;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimCustomType;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferSearchTest extends BaseStreamApiTest {
+
+    static final class CollectingSubscriber implements Flow.Subscriber<BufferSearch.Match> {
+        final List<BufferSearch.Match> matches = new ArrayList<>();
+        final CompletableFuture<List<BufferSearch.Match>> done = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public synchronized void onNext(BufferSearch.Match item) {
+            matches.add(item);
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            matches.sort(Comparator.comparingLong((BufferSearch.Match match) -> match.buffer().getId())
+                    .thenComparingInt(BufferSearch.Match::line)
+                    .thenComparingInt(BufferSearch.Match::column));
+            done.complete(matches);
+        }
+    }
+
+    List<String> sentMethods;
+    List<List<?>> quickfixCalls;
+
+    @Before
+    public void setUp() {
+        sentMethods = new ArrayList<>();
+        quickfixCalls = new ArrayList<>();
+        var lines = Map.of(
+                1L, List.of("foo bar", "nothing", "ěfoo foo"),
+                2L, List.of("xfoo"),
+                3L, List.of("foo in unloaded buffer")
+        );
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            synchronized (this) {
+                sentMethods.add(request.getMethod());
+            }
+            Object result = switch (request.getMethod()) {
+                case NeovimApi.LIST_BUFS -> List.of(bufferExt(1), bufferExt(2), bufferExt(3));
+                case NeovimApi.CALL_ATOMIC -> {
+                    var results = new ArrayList<>();
+                    for (var call : (List<?>) request.getArguments().get(0)) {
+                        var method = (String) ((List<?>) call).get(0);
+                        if (method.equals(NeovimApi.CALL_FUNCTION)) {
+                            var arguments = (List<?>) ((List<?>) call).get(1);
+                            synchronized (this) {
+                                quickfixCalls.add(arguments);
+                            }
+                            results.add(arguments.get(0).equals("getqflist") ? Map.of("id", 5) : 0);
+                            continue;
+                        }
+                        var bufferId = ((Buffer) ((List<?>) ((List<?>) call).get(1)).get(0)).getId();
+                        results.add(method.equals(NeovimBufferApi.IS_LOADED) ? bufferId != 3 : lines.get(bufferId));
+                    }
+                    var response = new ArrayList<>();
+                    response.add(results);
+                    response.add(null);
+                    yield response;
+                }
+                case NeovimBufferApi.GET_LINES -> lines.get(((Buffer) request.getArguments().get(0)).getId());
+                case NeovimApi.CALL_FUNCTION -> {
+                    synchronized (this) {
+                        quickfixCalls.add(request.getArguments());
+                    }
+                    yield 0;
+                }
+                default -> throw new IllegalArgumentException(request.getMethod());
+            };
+            return respond(result);
+        });
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new BufferSearch(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cantSearchForMultipleLines() {
+        new BufferSearch(reactiveRpcStreamer).searchLiteral("a\nb");
+    }
+
+    @Test
+    public void regexSearchFindsMatchesInLoadedBuffers() throws ExecutionException, InterruptedException {
+        var bufferSearch = new BufferSearch(reactiveRpcStreamer, options().withChunkLines(1).build());
+        var subscriber = new CollectingSubscriber();
+
+        bufferSearch.search(Pattern.compile("fo+")).subscribe(subscriber);
+
+        assertExpectedMatches(subscriber.done.get());
+        assertEquals(List.of(NeovimApi.LIST_BUFS, NeovimApi.CALL_ATOMIC, NeovimApi.CALL_ATOMIC), sentMethods);
+    }
+
+    @Test
+    public void literalSearchWorksOnByteLines() throws ExecutionException, InterruptedException {
+        var bufferSearch = new BufferSearch(reactiveRpcStreamer,
+                options().withFetchMode(BufferSearch.FetchMode.BYTE_LINES).build());
+        var subscriber = new CollectingSubscriber();
+
+        bufferSearch.searchLiteral("foo").subscribe(subscriber);
+
+        assertExpectedMatches(subscriber.done.get());
+        assertEquals(List.of(NeovimApi.LIST_BUFS, NeovimApi.CALL_ATOMIC, NeovimBufferApi.GET_LINES, NeovimBufferApi.GET_LINES), sentMethods);
+    }
+
+    @Test
+    public void literalSearchWorksOnStrings() throws ExecutionException, InterruptedException {
+        var bufferSearch = new BufferSearch(reactiveRpcStreamer, options().withFetchBatchSize(1).build());
+        var subscriber = new CollectingSubscriber();
+
+        bufferSearch.searchLiteral("foo").subscribe(subscriber);
+
+        assertExpectedMatches(subscriber.done.get());
+    }
+
+    @Test
+    public void matchesAreAppendedToQuickfixInChunks() throws ExecutionException, InterruptedException {
+        var bufferSearch = new BufferSearch(reactiveRpcStreamer, options().withQuickfixChunkSize(3).build());
+
+        assertEquals(Integer.valueOf(4), bufferSearch.searchToQuickfix(Pattern.compile("foo"), "Search").get());
+
+        assertEquals(4, quickfixCalls.size());
+        assertEquals("setqflist", quickfixCalls.get(0).get(0));
+        assertEquals(" ", ((List<?>) quickfixCalls.get(0).get(1)).get(1));
+        assertEquals("getqflist", quickfixCalls.get(1).get(0));
+        var first = (Map<?, ?>) ((List<?>) quickfixCalls.get(2).get(1)).get(2);
+        assertEquals(5, first.get("id"));
+        assertEquals(3, ((List<?>) first.get("items")).size());
+        var last = (Map<?, ?>) ((List<?>) quickfixCalls.get(3).get(1)).get(2);
+        assertEquals("Search", last.get("title"));
+        var items = (List<?>) last.get("items");
+        assertEquals(1, items.size());
+        var item = (Map<?, ?>) items.get(0);
+        assertEquals(2L, item.get("bufnr"));
+        assertEquals(1, item.get("lnum"));
+        assertEquals(2, item.get("col"));
+        assertEquals(5, item.get("end_col"));
+        assertEquals("xfoo", item.get("text"));
+    }
+
+    @Test
+    public void searchSupportsSingleSubscriber() throws InterruptedException {
+        var publisher = new BufferSearch(reactiveRpcStreamer, options().build()).searchLiteral("foo");
+        publisher.subscribe(new CollectingSubscriber());
+        var second = new CollectingSubscriber();
+
+        publisher.subscribe(second);
+
+        try {
+            second.done.get();
+            fail("Second subscriber should be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static BufferSearch.Options.Builder options() {
+        return new BufferSearch.Options.Builder().withExecutor(Runnable::run);
+    }
+
+    private static void assertExpectedMatches(List<BufferSearch.Match> matches) {
+        assertEquals(List.of(
+                new BufferSearch.Match(new Buffer(1), 0, 0, 3, "foo bar"),
+                new BufferSearch.Match(new Buffer(1), 2, 2, 5, "ěfoo foo"),
+                new BufferSearch.Match(new Buffer(1), 2, 6, 9, "ěfoo foo"),
+                new BufferSearch.Match(new Buffer(2), 0, 1, 4, "xfoo")
+        ), matches);
+    }
+
+    private static MessagePackExtensionType bufferExt(int id) {
+        return new MessagePackExtensionType((byte) NeovimCustomType.BUFFER.getTypeId(), new byte[]{(byte) id});
+    }
+}
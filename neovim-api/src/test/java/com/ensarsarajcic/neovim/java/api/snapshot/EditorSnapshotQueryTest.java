@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.snapshot;
+
+import com.ensarsarajcic.neovim.java.api.BaseStreamApiTest;
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.lua.LuaFunctionRegistry;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Tabpage;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Window;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EditorSnapshotQueryTest extends BaseStreamApiTest {
+
+    List<RequestMessage> sentRequests;
+    Object snapshotResult;
+    EditorSnapshotQuery editorSnapshotQuery;
+
+    @Before
+    public void setUp() {
+        sentRequests = new ArrayList<>();
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            RequestMessage request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            return respond(List.of(snapshotResult));
+        });
+        editorSnapshotQuery = new EditorSnapshotQuery(reactiveRpcStreamer);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithNull() {
+        new EditorSnapshotQuery((LuaFunctionRegistry) null);
+    }
+
+    @Test
+    public void snapshotIsTakenInSingleRequest() throws ExecutionException, InterruptedException {
+        snapshotResult = Map.of(
+                "current", List.of(2, 1001, 3),
+                "tabpages", List.of(
+                        Map.of("id", 1, "windows", List.of(
+                                Map.of("id", 1000, "buffer", 1, "cursor", List.of(5, 2), "width", 80, "height", 20,
+                                        "position", List.of(0, 0)))),
+                        Map.of("id", 2, "windows", List.of(
+                                Map.of("id", 1001, "buffer", 3, "cursor", List.of(1, 0), "width", 40, "height", 20,
+                                        "position", List.of(0, 0)),
+                                Map.of("id", 1002, "buffer", 1, "cursor", List.of(7, 1), "width", 39, "height", 20,
+                                        "position", List.of(0, 41))))),
+                "buffers", List.of(
+                        Map.of("id", 1, "name", "/tmp/a.txt", "line_count", 10, "modified", false),
+                        Map.of("id", 3, "name", "", "line_count", 1, "modified", true))
+        );
+
+        var snapshot = editorSnapshotQuery.snapshot().get();
+
+        assertEquals(1, sentRequests.size());
+        assertEquals(NeovimApi.EXEC_LUA, sentRequests.get(0).getMethod());
+        var fields = (List<?>) ((List<?>) sentRequests.get(0).getArguments().get(1)).get(2);
+        assertEquals(EditorSnapshot.Field.values().length, fields.size());
+        assertTrue(fields.contains("buffer_line_count"));
+
+        assertEquals(new Tabpage(2), snapshot.currentTabpage());
+        assertEquals(new Window(1001), snapshot.currentWindow());
+        assertEquals(new Buffer(3), snapshot.currentBuffer());
+        assertEquals(2, snapshot.tabpages().size());
+        var window = snapshot.findWindow(new Window(1002));
+        assertSame(window, snapshot.findTabpage(new Tabpage(2)).windows().get(1));
+        assertEquals(new Buffer(1), window.buffer());
+        assertEquals(7, window.cursor().getRow());
+        assertEquals(41, window.position().getCol());
+        assertEquals(39, window.width().intValue());
+        assertEquals(List.of(new Buffer(1), new Buffer(3)), List.copyOf(snapshot.buffers().keySet()));
+        var buffer = snapshot.buffers().get(new Buffer(1));
+        assertEquals("/tmp/a.txt", buffer.name());
+        assertEquals(10, buffer.lineCount().intValue());
+        assertEquals(false, buffer.modified());
+    }
+
+    @Test
+    public void onlyRequestedFieldsAreSent() throws ExecutionException, InterruptedException {
+        snapshotResult = Map.of(
+                "current", List.of(1, 1000, 1),
+                "tabpages", List.of(Map.of("id", 1, "windows", List.of(Map.of("id", 1000, "buffer", 1, "width", 80, "height", 20)))),
+                "buffers", List.of(Map.of("id", 1))
+        );
+
+        var snapshot = editorSnapshotQuery.snapshot(EnumSet.of(EditorSnapshot.Field.WINDOW_SIZE)).get();
+
+        assertEquals(List.of("window_size"), ((List<?>) sentRequests.get(0).getArguments().get(1)).get(2));
+        var window = snapshot.findWindow(new Window(1000));
+        assertEquals(80, window.width().intValue());
+        assertNull(window.cursor());
+        assertNull(window.position());
+        assertNull(snapshot.buffers().get(new Buffer(1)).name());
+        assertNull(snapshot.findWindow(new Window(1001)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotsAreImmutable() throws ExecutionException, InterruptedException {
+        snapshotResult = Map.of(
+                "current", List.of(1, 1000, 1),
+                "tabpages", List.of(Map.of("id", 1, "windows", List.of(Map.of("id", 1000, "buffer", 1)))),
+                "buffers", List.of(Map.of("id", 1))
+        );
+
+        editorSnapshotQuery.snapshot(EnumSet.noneOf(EditorSnapshot.Field.class)).get().buffers().clear();
+    }
+}
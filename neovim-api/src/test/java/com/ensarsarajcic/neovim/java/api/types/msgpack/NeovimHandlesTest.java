@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.api.types.msgpack;
+
+import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class NeovimHandlesTest {
+
+    private static final long[] IDS = {
+            0, 1, 127, 128, 255, 256, 65535, 65536, 0xffffffffL, 0x100000000L, Long.MAX_VALUE,
+            -1, -32, -33, -128, -129, Short.MIN_VALUE, Short.MIN_VALUE - 1, Integer.MIN_VALUE, Long.MIN_VALUE
+    };
+
+    @Test
+    public void idsAreEncodedLikeMessagePack() throws IOException {
+        for (var id : IDS) {
+            var packer = MessagePack.newDefaultBufferPacker();
+            packer.packLong(id);
+            packer.close();
+
+            assertArrayEquals("Encoding of " + id, packer.toByteArray(), NeovimHandles.encodeId(id));
+        }
+    }
+
+    @Test
+    public void idsAreDecodedInAllIntegerFormats() {
+        for (var id : IDS) {
+            assertEquals(id, NeovimHandles.decodeId(NeovimHandles.encodeId(id)));
+        }
+        // Non shortest encodings are valid as well
+        assertEquals(5, NeovimHandles.decodeId(new byte[]{(byte) 0xcf, 0, 0, 0, 0, 0, 0, 0, 5}));
+        assertEquals(-5, NeovimHandles.decodeId(new byte[]{(byte) 0xd2, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xfb}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonIntegerPayloadIsRejected() {
+        NeovimHandles.decodeId(new byte[]{(byte) 0xa1, 'a'});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedPayloadIsRejected() {
+        NeovimHandles.decodeId(new byte[]{(byte) 0xcd, 1});
+    }
+
+    @Test
+    public void handlesAreInterned() {
+        var buffer = NeovimHandles.buffer(1000);
+
+        assertSame(buffer, NeovimHandles.buffer(1000));
+        assertNotSame(buffer, NeovimHandles.buffer(1001));
+        assertEquals(new Window(1000), NeovimHandles.window(1000));
+        assertSame(NeovimHandles.tabpage(1000), NeovimHandles.tabpage(1000));
+    }
+
+    @Test
+    public void deserializerProducesInternedHandles() throws IOException {
+        var mapper = ObjectMappers.defaultNeovimMapper();
+        var payload = NeovimHandles.encodeId(300);
+        var packer = MessagePack.newDefaultBufferPacker();
+        packer.packExtensionTypeHeader((byte) NeovimCustomType.BUFFER.getTypeId(), payload.length).addPayload(payload);
+        var bytes = packer.toByteArray();
+
+        // Parser of the shared mapper keeps its position in a reused source array, so each read gets a copy
+        var first = mapper.readValue(bytes.clone(), Buffer.class);
+        var second = mapper.readValue(bytes.clone(), Buffer.class);
+
+        assertSame(first, second);
+        assertEquals(new Buffer(300), first);
+    }
+}
@@ -28,6 +28,7 @@ import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
 import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
 import com.ensarsarajcic.neovim.java.notifications.buffer.BufferEvent;
+import com.ensarsarajcic.neovim.java.notifications.buffer.BufferLinesEvent;
 import com.ensarsarajcic.neovim.java.notifications.global.GlobalEvent;
 import com.ensarsarajcic.neovim.java.notifications.ui.NeovimRedrawEvent;
 import com.ensarsarajcic.neovim.java.notifications.ui.UiEvent;
@@ -105,12 +106,16 @@ public final class NeovimStreamNotificationHandler implements NeovimNotification
         FilterProcessor<NotificationMessage> bufferEventFilterProcessor = new FilterProcessor<>(
                 notificationMessage -> notificationMessage.getName().startsWith(BufferEvent.PREFIX));
         MappingProcessor<NotificationMessage, BufferEvent> bufferEventMappingProcessor =
-                new MappingProcessor<>(
-                        notificationMessage ->
-                                NotificationCreatorCollector.getBufferEventCreators()
-                                        .get(notificationMessage.getName())
-                                        .apply(notificationMessage.getArguments())
-                );
+                new MappingProcessor<>(notificationMessage -> {
+                    var rawArguments = notificationMessage.getRawArguments();
+                    if (rawArguments != null && notificationMessage.getName().equals(BufferLinesEvent.NAME)) {
+                        // Lines are kept as raw bytes and decoded only if they are read as strings
+                        return BufferLinesEvent.fromRawArguments(rawArguments);
+                    }
+                    return NotificationCreatorCollector.getBufferEventCreators()
+                            .get(notificationMessage.getName())
+                            .apply(notificationMessage.getArguments());
+                });
         reactiveRpcStreamer.notificationsFlow().subscribe(bufferEventFilterProcessor);
         bufferEventFilterProcessor.subscribe(bufferEventMappingProcessor);
         return bufferEventMappingProcessor;
@@ -25,13 +25,27 @@
 package com.ensarsarajcic.neovim.java.notifications.buffer;
 
 import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimHandles;
+import com.ensarsarajcic.neovim.java.api.util.ByteLines;
 import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.core.MessagePackException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
+/**
+ * Event sent when lines of an attached buffer change
+ * <p>
+ * Events created from raw notification arguments (see {@link #fromRawArguments(ByteBuffer)}) keep changed lines as
+ * raw bytes, which are available using {@link #getLineBytes()} without any decoding. Such lines are decoded into
+ * strings only once {@link #getLineData()} is called.
+ */
 public final class BufferLinesEvent implements BufferEvent {
     public static final String NAME = "nvim_buf_lines_event";
 
@@ -40,9 +54,9 @@ public final class BufferLinesEvent implements BufferEvent {
             ObjectMapper objectMapper = ObjectMappers.defaultNeovimMapper();
             return new BufferLinesEvent(
                     objectMapper.readerFor(Buffer.class).readValue(objectMapper.writeValueAsBytes(list.get(0))),
-                    (Integer) list.get(1),
-                    (Integer) list.get(2),
-                    (Integer) list.get(3),
+                    list.get(1) != null ? ((Number) list.get(1)).intValue() : -1,
+                    ((Number) list.get(2)).intValue(),
+                    ((Number) list.get(3)).intValue(),
                     (List<String>) list.get(4),
                     (Boolean) list.get(5)
             );
@@ -56,8 +70,9 @@ public final class BufferLinesEvent implements BufferEvent {
     private final int changedTick;
     private final int firstLine;
     private final int lastLine;
-    private final List<String> lineData;
     private final boolean more;
+    private volatile List<String> lineData;
+    private volatile List<ByteBuffer> lineBytes;
 
     public BufferLinesEvent(Buffer buffer, int changedTick, int firstLine, int lastLine, List<String> lineData, boolean more) {
         this.buffer = buffer;
@@ -68,10 +83,46 @@ public final class BufferLinesEvent implements BufferEvent {
         this.more = more;
     }
 
+    private BufferLinesEvent(Buffer buffer, int changedTick, int firstLine, int lastLine, boolean more, List<ByteBuffer> lineBytes) {
+        this.buffer = buffer;
+        this.changedTick = changedTick;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+        this.more = more;
+        this.lineBytes = lineBytes;
+    }
+
+    /**
+     * Creates a {@link BufferLinesEvent} directly from raw (msgpack encoded) notification arguments
+     * Changed lines are not decoded - they are kept as slices of given buffer
+     *
+     * @param rawArguments encoded arguments array of {@link #NAME} notification
+     * @return a new {@link BufferLinesEvent}, with changedTick -1 if it was not reported
+     * @throws IllegalArgumentException if arguments can't be read
+     */
+    public static BufferLinesEvent fromRawArguments(ByteBuffer rawArguments) {
+        try (var unpacker = ByteLines.newUnpacker(rawArguments)) {
+            unpacker.unpackArrayHeader();
+            var bufferHeader = unpacker.unpackExtensionTypeHeader();
+            var buffer = NeovimHandles.buffer(NeovimHandles.decodeId(unpacker.readPayload(bufferHeader.getLength())));
+            var changedTick = unpacker.tryUnpackNil() ? -1 : unpacker.unpackInt();
+            var firstLine = unpacker.unpackInt();
+            var lastLine = unpacker.unpackInt();
+            var lineBytes = ByteLines.unpackLines(unpacker, rawArguments);
+            var more = unpacker.unpackBoolean();
+            return new BufferLinesEvent(buffer, changedTick, firstLine, lastLine, more, Collections.unmodifiableList(lineBytes));
+        } catch (IOException | MessagePackException e) {
+            throw new IllegalArgumentException("Failed to read " + NAME + " arguments", e);
+        }
+    }
+
     public Buffer getBuffer() {
         return buffer;
     }
 
+    /**
+     * @return changedtick of the buffer after the change or -1 if Neovim did not report it
+     */
     public int getChangedTick() {
         return changedTick;
     }
@@ -84,8 +135,39 @@ public final class BufferLinesEvent implements BufferEvent {
         return lastLine;
     }
 
+    /**
+     * Provides changed lines
+     * If this event was created from raw arguments, lines are decoded as UTF-8 on the first call
+     *
+     * @return changed lines, or null if event was created without them
+     */
     public List<String> getLineData() {
-        return lineData;
+        var decoded = lineData;
+        if (decoded == null && lineBytes != null) {
+            var lines = new ArrayList<String>(lineBytes.size());
+            for (var line : lineBytes) {
+                lines.add(StandardCharsets.UTF_8.decode(line.duplicate()).toString());
+            }
+            decoded = Collections.unmodifiableList(lines);
+            lineData = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Provides changed lines as raw bytes
+     * If this event was created from raw arguments, these are exact bytes of the lines, without any copying
+     * Otherwise, lines are encoded as UTF-8 on the first call
+     *
+     * @return read-only buffers, one per changed line, or null if event was created without lines
+     */
+    public List<ByteBuffer> getLineBytes() {
+        var bytes = lineBytes;
+        if (bytes == null && lineData != null) {
+            bytes = Collections.unmodifiableList(ByteLines.fromDecoded(lineData));
+            lineBytes = bytes;
+        }
+        return bytes;
     }
 
     public boolean isMore() {
@@ -104,7 +186,7 @@ public final class BufferLinesEvent implements BufferEvent {
                 + ", changedTick=" + changedTick
                 + ", firstLine=" + firstLine
                 + ", lastLine=" + lastLine
-                + ", lineData=" + lineData
+                + ", lineData=" + getLineData()
                 + ", more=" + more + '}';
     }
 }
@@ -0,0 +1,415 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.buffer.BufferStreamApi;
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Local replica of a buffer, maintained from buffer update events
+ * <p>
+ * Once {@link #attach()} completes, the mirror holds the full buffer content and applies each
+ * {@link BufferLinesEvent} to it. Reads ({@link #getLines(int, int, boolean)}, {@link #getLineCount()},
+ * {@link #getOffset(int)}) are then answered locally in O(log n), without any requests.
+ * <p>
+ * When Neovim detaches the buffer (e.g. it was unloaded), {@link BufferDetachEvent} is received, the mirror stops
+ * accepting reads and {@link #onDetach()} completes. It may be attached again afterwards.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     BufferMirror mirror = new BufferMirror(reactiveRpcStreamer, buffer);
+ *     mirror.attach().get();
+ *
+ *     List<String> lines = mirror.getLines(0, -1, false);
+ *     }
+ * </pre>
+ */
+public final class BufferMirror {
+    private static final Logger log = LoggerFactory.getLogger(BufferMirror.class);
+
+    private static final Map<String, Function<List, BufferEvent>> CREATORS = Map.of(
+            BufferLinesEvent.NAME, BufferLinesEvent.CREATOR,
+            BufferChangedTickEvent.NAME, BufferChangedTickEvent.CREATOR,
+            BufferDetachEvent.NAME, BufferDetachEvent.CREATOR
+    );
+
+    /**
+     * Listener observing changes of mirrored lines, called while the mirror is locked for writing
+     */
+    interface LinesListener {
+        /**
+         * Called once the full buffer content is received after attaching
+         *
+         * @param lines       mirrored lines
+         * @param changedTick changedtick of the content
+         */
+        void contentLoaded(LineRope lines, long changedTick);
+
+        /**
+         * Called before a range of lines is replaced, so lines still hold the previous content
+         *
+         * @param lines       mirrored lines
+         * @param from        index of the first replaced line (inclusive)
+         * @param to          index of the last replaced line (exclusive)
+         * @param newLines    lines replacing the range
+         * @param changedTick changedtick after the change
+         */
+        void linesReplaced(LineRope lines, int from, int to, List<String> newLines, long changedTick);
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final Buffer buffer;
+    private final LinesListener linesListener;
+    private final NeovimBufferApi bufferApi;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LineRope lines = new LineRope();
+
+    private volatile boolean attached = false;
+    private volatile long changedTick = -1;
+    private CompletableFuture<Void> ready = new CompletableFuture<>();
+    private CompletableFuture<Void> detached = new CompletableFuture<>();
+    private EventSubscriber subscriber;
+
+    /**
+     * Creates a new {@link BufferMirror}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to attach and receive buffer events
+     * @param buffer              buffer to mirror
+     * @throws NullPointerException if any parameter is null
+     */
+    public BufferMirror(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer) {
+        this(reactiveRpcStreamer, buffer, null);
+    }
+
+    BufferMirror(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, LinesListener linesListener) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required to mirror buffer");
+        Objects.requireNonNull(buffer, "buffer is required to mirror it");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.buffer = buffer;
+        this.linesListener = linesListener;
+        this.bufferApi = new BufferStreamApi(reactiveRpcStreamer, buffer);
+    }
+
+    /**
+     * Attaches to the buffer, requesting its full content
+     *
+     * @return {@link CompletableFuture} which completes once the full content is received
+     */
+    public synchronized CompletableFuture<Void> attach() {
+        if (subscriber != null) {
+            return ready;
+        }
+        ready = new CompletableFuture<>();
+        detached = new CompletableFuture<>();
+        subscriber = new EventSubscriber();
+        reactiveRpcStreamer.notificationsFlow().subscribe(subscriber);
+        var currentReady = ready;
+        bufferApi.attach(true, Map.of()).whenComplete((success, throwable) -> {
+            if (throwable != null) {
+                failAttach(currentReady, throwable);
+            } else if (!Boolean.TRUE.equals(success)) {
+                failAttach(currentReady, new IllegalStateException("Failed to attach to " + buffer));
+            }
+        });
+        return currentReady;
+    }
+
+    /**
+     * Detaches from the buffer and stops receiving its events
+     *
+     * @return {@link CompletableFuture} which completes once Neovim confirms detaching
+     */
+    public CompletableFuture<Void> detach() {
+        markDetached();
+        return bufferApi.detach().thenApply(success -> null);
+    }
+
+    /**
+     * @return {@link CompletableFuture} which completes once the mirror is detached from the buffer
+     */
+    public synchronized CompletableFuture<Void> onDetach() {
+        return detached;
+    }
+
+    /**
+     * @return true if the mirror is attached and holds the current buffer content
+     */
+    public boolean isAttached() {
+        return attached;
+    }
+
+    /**
+     * @return mirrored buffer
+     */
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return value of {@code b:changedtick} as of the last received event
+     */
+    public long getChangedTick() {
+        return changedTick;
+    }
+
+    /**
+     * @return number of lines in the buffer
+     * @throws IllegalStateException if the mirror is not attached
+     */
+    public int getLineCount() {
+        lock.readLock().lock();
+        try {
+            checkAttached();
+            return lines.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Provides a single line
+     *
+     * @param index zero-based index of the line
+     * @return line at given index
+     * @throws IllegalStateException     if the mirror is not attached
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public String getLine(int index) {
+        lock.readLock().lock();
+        try {
+            checkAttached();
+            return lines.get(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Provides a range of lines, following the semantics of {@link NeovimBufferApi#getLines(int, int, boolean)}
+     * Negative indices are counted from the end (-1 being the index after the last line)
+     *
+     * @param start          index of the first line (inclusive)
+     * @param end            index of the last line (exclusive)
+     * @param strictIndexing whether out of bounds indices should fail, instead of being clamped
+     * @return list of lines in range
+     * @throws IllegalStateException     if the mirror is not attached
+     * @throws IndexOutOfBoundsException if strictIndexing is set and range is out of bounds
+     */
+    public List<String> getLines(int start, int end, boolean strictIndexing) {
+        lock.readLock().lock();
+        try {
+            checkAttached();
+            int lineCount = lines.size();
+            int from = normalizeIndex(start, lineCount, strictIndexing);
+            int to = normalizeIndex(end, lineCount, strictIndexing);
+            if (from >= to) {
+                return List.of();
+            }
+            return lines.get(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Provides byte offset of a line, following the semantics of {@link NeovimBufferApi#getOffset(int)}
+     * Each line takes its UTF-8 length plus one byte for the line ending
+     *
+     * @param index zero-based index of the line - may be equal to line count to get size of the buffer
+     * @return byte offset of the line
+     * @throws IllegalStateException     if the mirror is not attached
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public long getOffset(int index) {
+        lock.readLock().lock();
+        try {
+            checkAttached();
+            return lines.byteOffset(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads mirrored lines while holding the read lock
+     */
+    <T> T read(Function<LineRope, T> reader) {
+        lock.readLock().lock();
+        try {
+            checkAttached();
+            return reader.apply(lines);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int normalizeIndex(int index, int lineCount, boolean strictIndexing) {
+        int normalized = index < 0 ? lineCount + 1 + index : index;
+        if (normalized < 0 || normalized > lineCount) {
+            if (strictIndexing) {
+                throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+            }
+            return Math.max(0, Math.min(normalized, lineCount));
+        }
+        return normalized;
+    }
+
+    private void checkAttached() {
+        if (!attached) {
+            throw new IllegalStateException("Buffer mirror of " + buffer + " is not attached");
+        }
+    }
+
+    private void failAttach(CompletableFuture<Void> attachFuture, Throwable throwable) {
+        markDetached();
+        attachFuture.completeExceptionally(throwable);
+    }
+
+    private void markDetached() {
+        CompletableFuture<Void> detachedFuture;
+        synchronized (this) {
+            attached = false;
+            if (subscriber != null) {
+                subscriber.cancel();
+                subscriber = null;
+            }
+            detachedFuture = detached;
+        }
+        detachedFuture.complete(null);
+    }
+
+    private void applyLines(BufferLinesEvent event) {
+        lock.writeLock().lock();
+        try {
+            int lineCount = lines.size();
+            int firstLine = Math.min(event.getFirstLine(), lineCount);
+            int lastLine = event.getLastLine() < 0 ? lineCount : Math.min(event.getLastLine(), lineCount);
+            // Changedtick is not reported for some changes (e.g. in terminal buffers) - keep the last known one
+            long tick = event.getChangedTick() >= 0 ? event.getChangedTick() : changedTick;
+            if (attached && linesListener != null) {
+                linesListener.linesReplaced(lines, firstLine, lastLine, event.getLineData(), tick);
+            }
+            lines.replace(firstLine, lastLine, event.getLineData());
+            changedTick = tick;
+            if (!attached && !event.isMore() && linesListener != null) {
+                linesListener.contentLoaded(lines, changedTick);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!event.isMore()) {
+            CompletableFuture<Void> readyFuture;
+            synchronized (this) {
+                readyFuture = ready;
+            }
+            attached = true;
+            readyFuture.complete(null);
+        }
+    }
+
+    /**
+     * Reads buffer events straight from notifications, so they are applied in order they were received
+     */
+    private final class EventSubscriber implements Flow.Subscriber<NotificationMessage> {
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            var current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(NotificationMessage notification) {
+            if (cancelled) {
+                return;
+            }
+            var creator = CREATORS.get(notification.getName());
+            if (creator == null) {
+                return;
+            }
+            BufferEvent item;
+            try {
+                item = creator.apply(notification.getArguments());
+            } catch (RuntimeException e) {
+                log.error("Failed to read buffer event {} - detaching mirror", notification.getName(), e);
+                markDetached();
+                return;
+            }
+            if (item instanceof BufferLinesEvent linesEvent && buffer.equals(linesEvent.getBuffer())) {
+                applyLines(linesEvent);
+            } else if (item instanceof BufferChangedTickEvent changedTickEvent && buffer.equals(changedTickEvent.getBuffer())) {
+                changedTick = changedTickEvent.getChangedTick();
+            } else if (item instanceof BufferDetachEvent detachEvent && buffer.equals(detachEvent.getBuffer())) {
+                log.debug("{} was detached", buffer);
+                markDetached();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (cancelled) {
+                return;
+            }
+            log.error("Buffer events of {} failed - detaching mirror", buffer, throwable);
+            markDetached();
+        }
+
+        @Override
+        public void onComplete() {
+            if (!cancelled) {
+                markDetached();
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Opt-in feed of byte precise buffer changes, based on Lua {@code on_bytes} callback
+ * <p>
+ * Buffer updates sent by {@code nvim_buf_attach} over RPC ({@link BufferLinesEvent}) contain whole changed lines,
+ * so a single character typed in a long line sends the whole line again. Once {@link #start()} completes, this feed
+ * instead attaches to the buffer from Lua, collects {@code on_bytes} changes (along with inserted text) made during
+ * a single event loop tick and sends them in one notification, as a flat array of tuples. Received changes are
+ * published as {@link ByteEdit}s by {@link #edits()}.
+ * <p>
+ * Publisher completes once the feed is stopped or Neovim detaches the buffer (e.g. it is unloaded). If the buffer is
+ * reloaded (e.g. using {@code :edit}), positions of further changes can't be related to earlier ones, so the feed is
+ * stopped and the publisher fails with {@link IllegalStateException}. A feed can't be started again - a new one
+ * should be created instead.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     ByteChangeFeed feed = new ByteChangeFeed(reactiveRpcStreamer, buffer);
+ *     feed.edits().subscribe(parserSubscriber);
+ *     feed.start().get();
+ *     }
+ * </pre>
+ */
+public final class ByteChangeFeed {
+    private static final Logger log = LoggerFactory.getLogger(ByteChangeFeed.class);
+
+    /**
+     * Name of notifications sent by the Lua callback
+     */
+    public static final String NOTIFICATION_NAME = "neovim_java_byte_changes";
+
+    private static final int TUPLE_SIZE = 11;
+
+    // Arguments: channel id, buffer number
+    private static final String ATTACH_SCRIPT = """
+            local channel, buf = ...
+            local feeds = NeovimJavaByteFeeds or {}
+            NeovimJavaByteFeeds = feeds
+            local key = channel .. ':' .. buf
+            if feeds[key] then feeds[key].active = false end
+            local feed = { active = true, edits = {}, scheduled = false }
+            feeds[key] = feed
+            local function flush()
+              feed.scheduled = false
+              if #feed.edits > 0 then
+                local edits = feed.edits
+                feed.edits = {}
+                vim.rpcnotify(channel, '%1$s', buf, edits)
+              end
+            end
+            local function finish(reason)
+              flush()
+              if feeds[key] == feed then feeds[key] = nil end
+              if feed.active then
+                feed.active = false
+                vim.rpcnotify(channel, '%1$s', buf, reason)
+              end
+            end
+            local function read(b, sr, sc, er, ec)
+              if er >= vim.api.nvim_buf_line_count(b) then
+                local last = er - 1
+                local line = vim.api.nvim_buf_get_lines(b, last, last + 1, true)[1]
+                return table.concat(vim.api.nvim_buf_get_text(b, sr, sc, last, #line, {}), '\\n') .. '\\n'
+              end
+              return table.concat(vim.api.nvim_buf_get_text(b, sr, sc, er, ec, {}), '\\n')
+            end
+            return vim.api.nvim_buf_attach(buf, false, {
+              on_bytes = function(_, b, tick, sr, sc, so, oer, oec, oeb, ner, nec, neb)
+                if not feed.active then return true end
+                local text = ''
+                if neb > 0 then
+                  local ok, result = pcall(read, b, sr, sc, sr + ner, ner == 0 and sc + nec or nec)
+                  text = ok and result or vim.NIL
+                end
+                local edits = feed.edits
+                local n = #edits
+                edits[n + 1], edits[n + 2], edits[n + 3], edits[n + 4] = tick, sr, sc, so
+                edits[n + 5], edits[n + 6], edits[n + 7] = oer, oec, oeb
+                edits[n + 8], edits[n + 9], edits[n + 10], edits[n + 11] = ner, nec, neb, text
+                if not feed.scheduled then
+                  feed.scheduled = true
+                  vim.schedule(flush)
+                end
+              end,
+              on_reload = function()
+                finish('reload')
+                return true
+              end,
+              on_detach = function()
+                finish('detach')
+              end,
+            })
+            """.formatted(NOTIFICATION_NAME);
+
+    private static final String STOP_SCRIPT = """
+            local key = select(1, ...) .. ':' .. select(2, ...)
+            local feed = NeovimJavaByteFeeds and NeovimJavaByteFeeds[key]
+            if feed then
+              feed.active = false
+              NeovimJavaByteFeeds[key] = nil
+            end
+            """;
+
+    /**
+     * A single byte range change, as reported by {@code on_bytes}
+     * Old and new end positions are extents relative to the start - rows are row deltas and columns are relative
+     * to start column only if the row delta is zero.
+     *
+     * @param buffer         changed buffer
+     * @param changedTick    value of {@code b:changedtick} after the change
+     * @param startRow       zero based row where the change starts
+     * @param startColumn    zero based byte column where the change starts
+     * @param startByte      byte offset of the change start in the buffer
+     * @param oldEndRow      row extent of the replaced text
+     * @param oldEndColumn   column extent of the replaced text
+     * @param oldEndByte     length of the replaced text in bytes
+     * @param newEndRow      row extent of the inserted text
+     * @param newEndColumn   column extent of the inserted text
+     * @param newEndByte     length of the inserted text in bytes
+     * @param text           inserted text, with lines separated by {@code \n}, or null if it could not be read
+     */
+    public record ByteEdit(Buffer buffer, long changedTick, int startRow, int startColumn, long startByte,
+                           int oldEndRow, int oldEndColumn, long oldEndByte,
+                           int newEndRow, int newEndColumn, long newEndByte, String text) {
+
+        /**
+         * @return true if this change only inserts text
+         */
+        public boolean isInsertion() {
+            return oldEndByte == 0;
+        }
+
+        /**
+         * @return true if this change only deletes text
+         */
+        public boolean isDeletion() {
+            return newEndByte == 0;
+        }
+    }
+
+    private final ReactiveRpcStreamer reactiveRpcStreamer;
+    private final NeovimApi neovimApi;
+    private final Buffer buffer;
+    private final SubmissionPublisher<ByteEdit> publisher;
+
+    private volatile boolean active = false;
+    private boolean stopped = false;
+    private Integer channelId;
+    private NotificationSubscriber subscriber;
+
+    /**
+     * Creates a new {@link ByteChangeFeed}, delivering edits on {@link ForkJoinPool#commonPool()}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to attach and receive changes
+     * @param buffer              buffer to watch
+     * @throws NullPointerException if any parameter is null
+     */
+    public ByteChangeFeed(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer) {
+        this(reactiveRpcStreamer, buffer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new {@link ByteChangeFeed}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to attach and receive changes
+     * @param buffer              buffer to watch
+     * @param executor            executor delivering edits to subscribers
+     * @throws NullPointerException if any parameter is null
+     */
+    public ByteChangeFeed(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, Executor executor) {
+        Objects.requireNonNull(reactiveRpcStreamer, "reactiveRpcStreamer is required for byte change feed");
+        Objects.requireNonNull(buffer, "buffer is required for byte change feed");
+        Objects.requireNonNull(executor, "executor is required for byte change feed");
+        this.reactiveRpcStreamer = reactiveRpcStreamer;
+        this.neovimApi = new NeovimStreamApi(reactiveRpcStreamer);
+        this.buffer = buffer;
+        this.publisher = new SubmissionPublisher<>(executor, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Installs the {@code on_bytes} callback and starts publishing changes
+     *
+     * @return {@link CompletableFuture} which completes once the callback is installed
+     * @throws IllegalStateException if the feed was already stopped
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (stopped) {
+            throw new IllegalStateException("Byte change feed of " + buffer + " was stopped");
+        }
+        if (subscriber == null) {
+            subscriber = new NotificationSubscriber();
+            reactiveRpcStreamer.notificationsFlow().subscribe(subscriber);
+        }
+        return neovimApi.getChannelInfo(0)
+                .thenCompose(channelInfo -> {
+                    synchronized (this) {
+                        channelId = channelInfo.getId();
+                    }
+                    return execLua(ATTACH_SCRIPT, channelInfo.getId());
+                })
+                .thenAccept(attached -> {
+                    if (!Boolean.TRUE.equals(attached)) {
+                        finish(new IllegalStateException("Failed to attach to " + buffer));
+                        throw new IllegalStateException("Failed to attach to " + buffer);
+                    }
+                    active = true;
+                });
+    }
+
+    /**
+     * Stops publishing changes and removes the callback, completing {@link #edits()}
+     *
+     * @return {@link CompletableFuture} which completes once the callback is removed
+     */
+    public CompletableFuture<Void> stop() {
+        Integer channel;
+        synchronized (this) {
+            channel = channelId;
+        }
+        finish(null);
+        if (channel == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return execLua(STOP_SCRIPT, channel).thenApply(ignored -> null);
+    }
+
+    /**
+     * Provides published changes, in order they were made
+     *
+     * @return {@link Flow.Publisher} of {@link ByteEdit}s
+     */
+    public Flow.Publisher<ByteEdit> edits() {
+        return publisher;
+    }
+
+    /**
+     * @return true if the callback is installed and changes are published
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return watched buffer
+     */
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    private CompletableFuture<Object> execLua(String script, int channel) {
+        return reactiveRpcStreamer.response(new RequestMessage.Builder(NeovimApi.EXEC_LUA)
+                        .addArgument(script)
+                        .addArgument(List.of(channel, buffer.getId())))
+                .thenApply(ResponseMessage::getResult);
+    }
+
+    private void finish(Throwable error) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            active = false;
+            if (subscriber != null) {
+                subscriber.cancel();
+                subscriber = null;
+            }
+        }
+        if (error != null) {
+            publisher.closeExceptionally(error);
+        } else {
+            publisher.close();
+        }
+    }
+
+    private void handle(List<?> arguments) {
+        if (arguments.size() < 2 || ((Number) arguments.get(0)).longValue() != buffer.getId()) {
+            return;
+        }
+        var payload = arguments.get(1);
+        if ("detach".equals(payload)) {
+            log.debug("{} was detached", buffer);
+            finish(null);
+        } else if ("reload".equals(payload)) {
+            finish(new IllegalStateException(buffer + " was reloaded"));
+        } else if (payload instanceof List<?> tuples) {
+            for (var i = 0; i + TUPLE_SIZE <= tuples.size(); i += TUPLE_SIZE) {
+                if (publisher.isClosed()) {
+                    return;
+                }
+                publisher.submit(new ByteEdit(
+                        buffer,
+                        toLong(tuples.get(i)),
+                        toInt(tuples.get(i + 1)),
+                        toInt(tuples.get(i + 2)),
+                        toLong(tuples.get(i + 3)),
+                        toInt(tuples.get(i + 4)),
+                        toInt(tuples.get(i + 5)),
+                        toLong(tuples.get(i + 6)),
+                        toInt(tuples.get(i + 7)),
+                        toInt(tuples.get(i + 8)),
+                        toLong(tuples.get(i + 9)),
+                        tuples.get(i + 10) instanceof String text ? text : null
+                ));
+            }
+        }
+    }
+
+    private static int toInt(Object value) {
+        return ((Number) value).intValue();
+    }
+
+    private static long toLong(Object value) {
+        return ((Number) value).longValue();
+    }
+
+    private final class NotificationSubscriber implements Flow.Subscriber<NotificationMessage> {
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            var current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(NotificationMessage notification) {
+            if (cancelled || !NOTIFICATION_NAME.equals(notification.getName())) {
+                return;
+            }
+            try {
+                handle(notification.getArguments());
+            } catch (RuntimeException e) {
+                log.error("Failed to read byte changes of {} - stopping feed", buffer, e);
+                finish(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!cancelled) {
+                finish(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!cancelled) {
+                finish(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Sequence of lines stored in a randomized balanced tree (implicit treap, merged by subtree size)
+ * <p>
+ * Reading a line, computing offset of a line (or line at an offset) and replacing a range of lines are O(log n) (plus
+ * the number of lines read or inserted), regardless of how many lines are stored. Offsets are kept in UTF-8 bytes,
+ * UTF-16 code units and code points ({@link Unit}). Byte offsets are computed the same way as
+ * {@code nvim_buf_get_offset} - each line takes its UTF-8 length plus one byte for the line ending.
+ * <p>
+ * This class is not thread safe.
+ */
+final class LineRope {
+
+    /**
+     * Unit in which offsets are measured - line endings always take a single unit
+     */
+    enum Unit {
+        /**
+         * UTF-8 bytes, as used by Neovim
+         */
+        BYTES,
+        /**
+         * UTF-16 code units, as used by Java strings and LSP
+         */
+        UTF16,
+        /**
+         * Unicode code points
+         */
+        CODE_POINTS
+    }
+
+    private static final class Node {
+        private final String line;
+        private final int bytes;
+        private final int codePoints;
+        private Node left;
+        private Node right;
+        private int size;
+        private long totalBytes;
+        private long totalUtf16;
+        private long totalCodePoints;
+
+        private Node(String line) {
+            this.line = line;
+            this.bytes = utf8Length(line);
+            this.codePoints = line.codePointCount(0, line.length());
+            update();
+        }
+
+        private void update() {
+            size = 1 + size(left) + size(right);
+            totalBytes = bytes + 1L + totalBytes(left) + totalBytes(right);
+            totalUtf16 = line.length() + 1L + total(left, Unit.UTF16) + total(right, Unit.UTF16);
+            totalCodePoints = codePoints + 1L + total(left, Unit.CODE_POINTS) + total(right, Unit.CODE_POINTS);
+        }
+
+        private int length(Unit unit) {
+            return switch (unit) {
+                case BYTES -> bytes;
+                case UTF16 -> line.length();
+                case CODE_POINTS -> codePoints;
+            };
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root;
+
+    /**
+     * @return number of lines
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * @return total number of bytes, including line endings
+     */
+    long totalBytes() {
+        return totalBytes(root);
+    }
+
+    /**
+     * @param unit unit of the length
+     * @return total length, including line endings
+     */
+    long total(Unit unit) {
+        return total(root, unit);
+    }
+
+    /**
+     * Provides a single line
+     *
+     * @param index index of the line
+     * @return line at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    String get(int index) {
+        Objects.checkIndex(index, size());
+        var node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.line;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Provides a range of lines
+     *
+     * @param from index of the first line (inclusive)
+     * @param to   index of the last line (exclusive)
+     * @return list of lines in range
+     * @throws IndexOutOfBoundsException if range is out of bounds
+     */
+    List<String> get(int from, int to) {
+        Objects.checkFromToIndex(from, to, size());
+        var result = new ArrayList<String>(to - from);
+        collect(root, from, to, 0, result);
+        return result;
+    }
+
+    /**
+     * Provides byte offset of the start of a line
+     *
+     * @param line index of the line - it may be equal to {@link #size()} to get the total number of bytes
+     * @return number of bytes before given line
+     * @throws IndexOutOfBoundsException if line is out of bounds
+     */
+    long byteOffset(int line) {
+        return offset(line, Unit.BYTES);
+    }
+
+    /**
+     * Provides offset of the start of a line
+     *
+     * @param line index of the line - it may be equal to {@link #size()} to get the total length
+     * @param unit unit of the offset
+     * @return number of units before given line
+     * @throws IndexOutOfBoundsException if line is out of bounds
+     */
+    long offset(int line, Unit unit) {
+        Objects.checkIndex(line, size() + 1);
+        long offset = 0;
+        var node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (line <= leftSize) {
+                node = node.left;
+            } else {
+                offset += total(node.left, unit) + node.length(unit) + 1;
+                line -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the line containing given offset - offset of a line ending belongs to the line it ends
+     *
+     * @param offset offset to look up
+     * @param unit   unit of the offset
+     * @return index of the line or {@link #size()} if offset is equal to the total length
+     * @throws IndexOutOfBoundsException if offset is negative or larger than the total length
+     */
+    int lineAt(long offset, Unit unit) {
+        if (offset < 0 || offset > total(root, unit)) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+        int line = 0;
+        var node = root;
+        while (node != null) {
+            long leftTotal = total(node.left, unit);
+            if (offset < leftTotal) {
+                node = node.left;
+            } else if (offset <= leftTotal + node.length(unit)) {
+                return line + size(node.left);
+            } else {
+                offset -= leftTotal + node.length(unit) + 1;
+                line += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Replaces a range of lines
+     *
+     * @param from  index of the first replaced line (inclusive)
+     * @param to    index of the last replaced line (exclusive)
+     * @param lines new lines
+     * @throws IndexOutOfBoundsException if range is out of bounds
+     */
+    void replace(int from, int to, List<String> lines) {
+        Objects.checkFromToIndex(from, to, size());
+        var head = split(root, from);
+        var tail = split(head[1], to - from);
+        root = merge(merge(head[0], build(lines, 0, lines.size())), tail[1]);
+    }
+
+    private static void collect(Node node, int from, int to, int offset, List<String> result) {
+        if (node == null || from >= offset + node.size || to <= offset) {
+            return;
+        }
+        int index = offset + size(node.left);
+        collect(node.left, from, to, offset, result);
+        if (index >= from && index < to) {
+            result.add(node.line);
+        }
+        collect(node.right, from, to, index + 1, result);
+    }
+
+    private Node[] split(Node node, int count) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            var parts = split(node.left, count);
+            node.left = parts[1];
+            node.update();
+            parts[1] = node;
+            return parts;
+        } else {
+            var parts = split(node.right, count - leftSize - 1);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        }
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        // Picking the root proportionally to subtree sizes keeps the tree balanced in expectation
+        if (random.nextInt(left.size + right.size) < left.size) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static Node build(List<String> lines, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        var node = new Node(lines.get(middle));
+        node.left = build(lines, from, middle);
+        node.right = build(lines, middle + 1, to);
+        node.update();
+        return node;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static long totalBytes(Node node) {
+        return node == null ? 0 : node.totalBytes;
+    }
+
+    private static long total(Node node, Unit unit) {
+        if (node == null) {
+            return 0;
+        }
+        return switch (unit) {
+            case BYTES -> node.totalBytes;
+            case UTF16 -> node.totalUtf16;
+            case CODE_POINTS -> node.totalCodePoints;
+        };
+    }
+
+    static int utf8Length(String line) {
+        int length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < line.length() && Character.isLowSurrogate(line.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Feed of buffer changes in the form of LSP {@code TextDocumentContentChangeEvent}s, with UTF-16 based positions
+ * <p>
+ * Buffer is mirrored using {@link BufferMirror} and each {@link BufferLinesEvent} is turned into a range edit
+ * against the content before the event. A change of a single line is narrowed down to the changed characters.
+ * The first change published after {@link #attach()} holds the full content of the buffer.
+ * <p>
+ * Mirrored lines are indexed by their length in UTF-8 bytes, UTF-16 code units and code points, so conversions
+ * between LSP positions, document offsets and Neovim byte offsets only need O(log n) steps (plus the length of the
+ * single line involved). The same index answers {@link NeovimBufferApi#getOffset(int)} locally using
+ * {@link #getOffset(int)}.
+ * <p>
+ * The feed can only be attached once - its publisher completes once the buffer is detached. Changes are published
+ * while the mirror is updated, so a slow subscriber slows the mirror down.
+ * <p>
+ * Example:
+ * <pre>
+ *     {@code
+ *     TextDocumentChangeFeed feed = new TextDocumentChangeFeed(reactiveRpcStreamer, buffer);
+ *     feed.changes().subscribe(languageServerSubscriber);
+ *     feed.attach().get();
+ *     }
+ * </pre>
+ */
+public final class TextDocumentChangeFeed {
+
+    /**
+     * Position in a document, as defined by LSP
+     *
+     * @param line      zero based line
+     * @param character zero based offset in the line, in UTF-16 code units
+     */
+    public record Position(int line, int character) {
+    }
+
+    /**
+     * Range in a document, as defined by LSP
+     *
+     * @param start start position (inclusive)
+     * @param end   end position (exclusive)
+     */
+    public record Range(Position start, Position end) {
+    }
+
+    /**
+     * A single change of the document, as defined by LSP {@code TextDocumentContentChangeEvent}
+     *
+     * @param range       replaced range or null if text holds the full content of the document
+     * @param rangeLength length of the replaced range in UTF-16 code units
+     * @param text        new text of the range (or of the whole document)
+     * @param changedTick value of {@code b:changedtick} after the change
+     */
+    public record ContentChange(Range range, int rangeLength, String text, long changedTick) {
+
+        /**
+         * @return true if this change holds the full content of the document
+         */
+        public boolean isFullContent() {
+            return range == null;
+        }
+    }
+
+    private final BufferMirror mirror;
+    private final SubmissionPublisher<ContentChange> publisher;
+    private boolean attachCalled = false;
+
+    /**
+     * Creates a new {@link TextDocumentChangeFeed}, delivering changes on {@link ForkJoinPool#commonPool()}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to attach and receive buffer events
+     * @param buffer              buffer to watch
+     * @throws NullPointerException if any parameter is null
+     */
+    public TextDocumentChangeFeed(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer) {
+        this(reactiveRpcStreamer, buffer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new {@link TextDocumentChangeFeed}
+     *
+     * @param reactiveRpcStreamer {@link ReactiveRpcStreamer} used to attach and receive buffer events
+     * @param buffer              buffer to watch
+     * @param executor            executor delivering changes to subscribers
+     * @throws NullPointerException if any parameter is null
+     */
+    public TextDocumentChangeFeed(ReactiveRpcStreamer reactiveRpcStreamer, Buffer buffer, Executor executor) {
+        Objects.requireNonNull(executor, "executor is required for text document change feed");
+        this.publisher = new SubmissionPublisher<>(executor, Flow.defaultBufferSize());
+        this.mirror = new BufferMirror(reactiveRpcStreamer, buffer, new ChangeListener());
+    }
+
+    /**
+     * Attaches to the buffer and starts publishing changes
+     *
+     * @return {@link CompletableFuture} which completes once the full content is received
+     * @throws IllegalStateException if the feed was already attached before
+     */
+    public synchronized CompletableFuture<Void> attach() {
+        if (attachCalled) {
+            throw new IllegalStateException("Text document change feed can only be attached once");
+        }
+        attachCalled = true;
+        var ready = mirror.attach();
+        mirror.onDetach().whenComplete((ignored, throwable) -> publisher.close());
+        return ready;
+    }
+
+    /**
+     * Detaches from the buffer, completing {@link #changes()}
+     *
+     * @return {@link CompletableFuture} which completes once Neovim confirms detaching
+     */
+    public CompletableFuture<Void> detach() {
+        return mirror.detach();
+    }
+
+    /**
+     * @return {@link Flow.Publisher} of changes, in order they were made
+     */
+    public Flow.Publisher<ContentChange> changes() {
+        return publisher;
+    }
+
+    /**
+     * @return mirror holding current content of the buffer
+     */
+    public BufferMirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Provides byte offset of a line, following the semantics of {@link NeovimBufferApi#getOffset(int)}
+     *
+     * @param line zero-based index of the line - may be equal to line count to get size of the buffer
+     * @return byte offset of the line
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if line is out of bounds
+     */
+    public long getOffset(int line) {
+        return mirror.getOffset(line);
+    }
+
+    /**
+     * Converts offset in the document (in UTF-16 code units, counting one unit per line ending) into a position
+     *
+     * @param offset offset in the document
+     * @return position of the offset
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if offset is out of bounds
+     */
+    public Position toPosition(long offset) {
+        return mirror.read(lines -> {
+            var line = lines.lineAt(offset, LineRope.Unit.UTF16);
+            return new Position(line, (int) (offset - lines.offset(line, LineRope.Unit.UTF16)));
+        });
+    }
+
+    /**
+     * Converts a position into offset in the document, in UTF-16 code units
+     * Characters past the end of the line are clamped to the line length, as defined by LSP
+     *
+     * @param position position to convert
+     * @return offset in the document
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if line of the position is out of bounds
+     */
+    public long toOffset(Position position) {
+        return mirror.read(lines -> lines.offset(position.line(), LineRope.Unit.UTF16)
+                + clampCharacter(lines, position));
+    }
+
+    /**
+     * Converts a position into offset in the document, in code points
+     *
+     * @param position position to convert
+     * @return offset in the document in code points
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if line of the position is out of bounds
+     */
+    public long toCodePointOffset(Position position) {
+        return mirror.read(lines -> {
+            var character = clampCharacter(lines, position);
+            var text = character > 0 ? lines.get(position.line()) : "";
+            return lines.offset(position.line(), LineRope.Unit.CODE_POINTS) + text.codePointCount(0, character);
+        });
+    }
+
+    /**
+     * Converts a position into byte offset in the buffer, as used by Neovim (e.g. {@code line2byte()}, extmarks)
+     *
+     * @param position position to convert
+     * @return byte offset in the buffer
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if line of the position is out of bounds
+     */
+    public long toByteOffset(Position position) {
+        return mirror.read(lines -> {
+            var character = clampCharacter(lines, position);
+            var text = character > 0 ? lines.get(position.line()) : "";
+            return lines.offset(position.line(), LineRope.Unit.BYTES) + utf8Length(text, character);
+        });
+    }
+
+    /**
+     * Converts byte offset in the buffer, as used by Neovim, into a position
+     * Offsets in the middle of a multibyte character are moved to the start of the character.
+     *
+     * @param byteOffset byte offset in the buffer
+     * @return position of the offset
+     * @throws IllegalStateException     if the feed is not attached
+     * @throws IndexOutOfBoundsException if offset is out of bounds
+     */
+    public Position fromByteOffset(long byteOffset) {
+        return mirror.read(lines -> {
+            var line = lines.lineAt(byteOffset, LineRope.Unit.BYTES);
+            var column = byteOffset - lines.offset(line, LineRope.Unit.BYTES);
+            if (column == 0) {
+                return new Position(line, 0);
+            }
+            return new Position(line, utf16Index(lines.get(line), column));
+        });
+    }
+
+    private static int clampCharacter(LineRope lines, Position position) {
+        if (position.line() == lines.size()) {
+            return 0;
+        }
+        var length = lines.get(position.line()).length();
+        return Math.max(0, Math.min(position.character(), length));
+    }
+
+    private static int utf8Length(String text, int end) {
+        var length = 0;
+        for (var i = 0; i < end; i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int utf16Index(String text, long byteColumn) {
+        var bytes = 0;
+        var index = 0;
+        while (index < text.length()) {
+            var codePoint = text.codePointAt(index);
+            var length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes + length > byteColumn) {
+                break;
+            }
+            bytes += length;
+            index += Character.charCount(codePoint);
+        }
+        return index;
+    }
+
+    /**
+     * Turns mirrored line replacements into range edits, using lines before the change
+     */
+    private final class ChangeListener implements BufferMirror.LinesListener {
+
+        @Override
+        public void contentLoaded(LineRope lines, long changedTick) {
+            publisher.submit(new ContentChange(null, 0, String.join("\n", lines.get(0, lines.size())), changedTick));
+        }
+
+        @Override
+        public void linesReplaced(LineRope lines, int from, int to, List<String> newLines, long changedTick) {
+            publisher.submit(toChange(lines, from, to, newLines, changedTick));
+        }
+
+        private ContentChange toChange(LineRope lines, int from, int to, List<String> newLines, long changedTick) {
+            var lineCount = lines.size();
+            if (to - from == 1 && newLines.size() == 1) {
+                return lineChange(from, lines.get(from), newLines.get(0), changedTick);
+            }
+            var text = new StringBuilder();
+            if (to < lineCount) {
+                // Whole lines, including their line endings
+                newLines.forEach(line -> text.append(line).append('\n'));
+                var length = lines.offset(to, LineRope.Unit.UTF16) - lines.offset(from, LineRope.Unit.UTF16);
+                return new ContentChange(new Range(new Position(from, 0), new Position(to, 0)), (int) length,
+                        text.toString(), changedTick);
+            }
+            // Range reaches the end of the buffer, which has no line ending after the last line
+            var end = lineCount == 0 ? new Position(0, 0) : new Position(lineCount - 1, lines.get(lineCount - 1).length());
+            var endOffset = Math.max(0, lines.total(LineRope.Unit.UTF16) - 1);
+            if (from > 0) {
+                newLines.forEach(line -> text.append('\n').append(line));
+                var start = new Position(from - 1, lines.get(from - 1).length());
+                var startOffset = lines.offset(from, LineRope.Unit.UTF16) - 1;
+                return new ContentChange(new Range(start, end), (int) (endOffset - startOffset), text.toString(), changedTick);
+            }
+            return new ContentChange(new Range(new Position(0, 0), end), (int) endOffset, String.join("\n", newLines),
+                    changedTick);
+        }
+
+        private ContentChange lineChange(int line, String oldLine, String newLine, long changedTick) {
+            var maxCommon = Math.min(oldLine.length(), newLine.length());
+            var prefix = 0;
+            while (prefix < maxCommon && oldLine.charAt(prefix) == newLine.charAt(prefix)) {
+                prefix++;
+            }
+            if (prefix > 0 && Character.isHighSurrogate(oldLine.charAt(prefix - 1))) {
+                prefix--;
+            }
+            var suffix = 0;
+            while (suffix < maxCommon - prefix
+                    && oldLine.charAt(oldLine.length() - 1 - suffix) == newLine.charAt(newLine.length() - 1 - suffix)) {
+                suffix++;
+            }
+            if (suffix > 0 && Character.isLowSurrogate(oldLine.charAt(oldLine.length() - suffix))) {
+                suffix--;
+            }
+            var oldEnd = oldLine.length() - suffix;
+            return new ContentChange(new Range(new Position(line, prefix), new Position(line, oldEnd)),
+                    oldEnd - prefix, newLine.substring(prefix, newLine.length() - suffix), changedTick);
+        }
+    }
+}
@@ -1,4 +1,6 @@
 module neovim.notifications {
+    opens com.ensarsarajcic.neovim.java.notifications.buffer;
+
     exports com.ensarsarajcic.neovim.java.notifications.global;
     exports com.ensarsarajcic.neovim.java.notifications.buffer;
     exports com.ensarsarajcic.neovim.java.notifications.ui;
@@ -14,6 +16,7 @@ module neovim.notifications {
     requires com.ensarsarajcic.neovim.java.corerpc;
     requires com.ensarsarajcic.neovim.java.reactivecorerpc;
     requires org.slf4j;
+    requires msgpack.core;
     requires com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.annotation;
     requires com.fasterxml.jackson.core;
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.NeovimHandles;
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BufferLinesEventTest {
+
+    @Test
+    public void rawArgumentsKeepLinesAsBytes() throws IOException {
+        var invalidUtf8 = new byte[]{'a', (byte) 0xff};
+        var raw = encodeArguments(4, 12, 1, 3, invalidUtf8, true);
+
+        var event = BufferLinesEvent.fromRawArguments(raw);
+
+        assertEquals(new Buffer(4), event.getBuffer());
+        assertEquals(12, event.getChangedTick());
+        assertEquals(1, event.getFirstLine());
+        assertEquals(3, event.getLastLine());
+        assertEquals(true, event.isMore());
+        assertEquals(List.of(ByteBuffer.wrap("čć".getBytes(StandardCharsets.UTF_8)), ByteBuffer.wrap(invalidUtf8)),
+                event.getLineBytes());
+        assertEquals(List.of("čć", "a�"), event.getLineData());
+    }
+
+    @Test
+    public void missingChangedTickIsReported() throws IOException {
+        var raw = encodeArguments(1, null, 0, -1, new byte[0], false);
+
+        var event = BufferLinesEvent.fromRawArguments(raw);
+
+        assertEquals(-1, event.getChangedTick());
+        assertEquals(-1, event.getLastLine());
+    }
+
+    @Test
+    public void decodedEventsProvideBytes() {
+        var event = new BufferLinesEvent(new Buffer(1), 2, 0, 1, List.of("čć"), false);
+
+        assertEquals(List.of(ByteBuffer.wrap("čć".getBytes(StandardCharsets.UTF_8))), event.getLineBytes());
+    }
+
+    @Test
+    public void eventsWithoutLinesAreNullSafe() {
+        var event = new BufferLinesEvent(new Buffer(1), 2, 0, 1, null, false);
+
+        assertNull(event.getLineData());
+        assertNull(event.getLineBytes());
+        assertTrue(event.toString().contains("lineData=null"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedArgumentsAreRejected() {
+        BufferLinesEvent.fromRawArguments(ByteBuffer.wrap(new byte[]{(byte) 0x96, 0x01}).asReadOnlyBuffer());
+    }
+
+    private static ByteBuffer encodeArguments(int buffer, Integer changedTick, int firstLine, int lastLine,
+                                              byte[] secondLine, boolean more) throws IOException {
+        var packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(6);
+        var id = NeovimHandles.encodeId(buffer);
+        packer.packExtensionTypeHeader((byte) 0, id.length);
+        packer.writePayload(id);
+        if (changedTick == null) {
+            packer.packNil();
+        } else {
+            packer.packInt(changedTick);
+        }
+        packer.packInt(firstLine);
+        packer.packInt(lastLine);
+        packer.packArrayHeader(2);
+        packer.packString("čć");
+        packer.packRawStringHeader(secondLine.length);
+        packer.writePayload(secondLine);
+        packer.packBoolean(more);
+        // Same as arguments of incoming notifications
+        return ByteBuffer.wrap(packer.toByteArray()).asReadOnlyBuffer();
+    }
+}
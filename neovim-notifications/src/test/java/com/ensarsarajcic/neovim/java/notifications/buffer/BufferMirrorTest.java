@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.buffer.NeovimBufferApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferMirrorTest {
+
+    @Mock
+    ReactiveRpcStreamer reactiveRpcStreamer;
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    List<RequestMessage> sentRequests;
+    Buffer buffer;
+    boolean attachResult;
+    BufferMirror bufferMirror;
+
+    @Before
+    public void setUp() {
+        notifications = new SubmissionPublisher<>();
+        sentRequests = new ArrayList<>();
+        buffer = new Buffer(3);
+        attachResult = true;
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            sentRequests.add(invocation.<RequestMessage.Builder>getArgument(0).build());
+            return CompletableFuture.completedFuture(new ResponseMessage(1, null, attachResult));
+        });
+        bufferMirror = new BufferMirror(reactiveRpcStreamer, buffer);
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithoutBuffer() {
+        new BufferMirror(reactiveRpcStreamer, null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cantReadBeforeAttaching() {
+        bufferMirror.getLineCount();
+    }
+
+    @Test
+    public void attachLoadsFullContent() throws Exception {
+        var attach = bufferMirror.attach();
+        assertEquals(NeovimBufferApi.ATTACH_BUFFER, sentRequests.get(0).getMethod());
+        assertEquals(true, sentRequests.get(0).getArguments().get(1));
+        assertFalse(attach.isDone());
+
+        sendLines(buffer, 5, 0, -1, List.of("first", "second", "third"), false);
+        attach.get(5, TimeUnit.SECONDS);
+
+        assertTrue(bufferMirror.isAttached());
+        assertEquals(3, bufferMirror.getLineCount());
+        assertEquals(5, bufferMirror.getChangedTick());
+        assertEquals(List.of("first", "second", "third"), bufferMirror.getLines(0, -1, false));
+        assertEquals(13, bufferMirror.getOffset(2));
+        assertEquals(1, sentRequests.size());
+    }
+
+    @Test
+    public void linesEventsAreApplied() throws Exception {
+        var attach = bufferMirror.attach();
+        sendLines(buffer, 5, 0, -1, List.of("a", "b", "c", "d"), false);
+        attach.get(5, TimeUnit.SECONDS);
+
+        // Replace "b" and "c" with "x"
+        sendLines(buffer, 6, 1, 3, List.of("x"), false);
+        // Insert at the end
+        sendLines(buffer, 7, 3, 3, List.of("e", "f"), false);
+        // Event for another buffer is ignored
+        sendLines(new Buffer(4), 9, 0, 1, List.of(), false);
+        sendChangedTick(buffer, 8);
+        awaitChangedTick(8);
+
+        assertEquals(List.of("a", "x", "d", "e", "f"), bufferMirror.getLines(0, -1, true));
+        assertEquals(List.of("d", "e"), bufferMirror.getLines(-4, -2, true));
+        assertEquals(List.of("e", "f"), bufferMirror.getLines(3, 100, false));
+        assertEquals("x", bufferMirror.getLine(1));
+    }
+
+    @Test
+    public void missingChangedTickIsNotStored() throws Exception {
+        var attach = bufferMirror.attach();
+        sendLines(buffer, 5, 0, -1, List.of("a"), false);
+        attach.get(5, TimeUnit.SECONDS);
+
+        notifications.submit(new NotificationMessage.Builder(BufferLinesEvent.NAME)
+                .addArgument(buffer)
+                .addArgument(null)
+                .addArgument(0)
+                .addArgument(1)
+                .addArgument(List.of("x"))
+                .addArgument(false)
+                .build());
+        awaitLine("x");
+
+        assertEquals(5, bufferMirror.getChangedTick());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void strictIndexingFailsOutOfBounds() throws Exception {
+        var attach = bufferMirror.attach();
+        sendLines(buffer, 5, 0, -1, List.of("a"), false);
+        attach.get(5, TimeUnit.SECONDS);
+
+        bufferMirror.getLines(0, 5, true);
+    }
+
+    @Test
+    public void detachEventDetachesMirror() throws Exception {
+        var attach = bufferMirror.attach();
+        sendLines(buffer, 5, 0, -1, List.of("a"), false);
+        attach.get(5, TimeUnit.SECONDS);
+
+        notifications.submit(new NotificationMessage.Builder(BufferDetachEvent.NAME).addArgument(buffer).build());
+        bufferMirror.onDetach().get(5, TimeUnit.SECONDS);
+
+        assertFalse(bufferMirror.isAttached());
+    }
+
+    @Test
+    public void failedAttachFailsFuture() throws Exception {
+        attachResult = false;
+
+        var attach = bufferMirror.attach();
+
+        assertTrue(attach.isCompletedExceptionally());
+        assertTrue(bufferMirror.onDetach().isDone());
+    }
+
+    private void sendLines(Buffer target, int changedTick, int firstLine, int lastLine, List<String> lines, boolean more) {
+        notifications.submit(new NotificationMessage.Builder(BufferLinesEvent.NAME)
+                .addArgument(target)
+                .addArgument(changedTick)
+                .addArgument(firstLine)
+                .addArgument(lastLine)
+                .addArgument(lines)
+                .addArgument(more)
+                .build());
+    }
+
+    private void sendChangedTick(Buffer target, int changedTick) {
+        notifications.submit(new NotificationMessage.Builder(BufferChangedTickEvent.NAME)
+                .addArgument(target)
+                .addArgument(changedTick)
+                .build());
+    }
+
+    private void awaitLine(String line) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!line.equals(bufferMirror.getLine(0)) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(line, bufferMirror.getLine(0));
+    }
+
+    private void awaitChangedTick(long changedTick) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bufferMirror.getChangedTick() != changedTick && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(changedTick, bufferMirror.getChangedTick());
+    }
+}
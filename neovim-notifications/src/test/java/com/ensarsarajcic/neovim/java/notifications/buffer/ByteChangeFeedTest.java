@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.NeovimApi;
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.RequestMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ByteChangeFeedTest {
+
+    static final class CollectingSubscriber implements Flow.Subscriber<ByteChangeFeed.ByteEdit> {
+        final List<ByteChangeFeed.ByteEdit> edits = new ArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ByteChangeFeed.ByteEdit item) {
+            edits.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    @Mock
+    ReactiveRpcStreamer reactiveRpcStreamer;
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    List<RequestMessage> sentRequests;
+    Object attachResult;
+    ByteChangeFeed feed;
+    CollectingSubscriber subscriber;
+
+    @Before
+    public void setUp() {
+        notifications = new SubmissionPublisher<>(Runnable::run, 16);
+        sentRequests = new ArrayList<>();
+        attachResult = true;
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any())).willAnswer(invocation -> {
+            var request = invocation.<RequestMessage.Builder>getArgument(0).build();
+            sentRequests.add(request);
+            var result = request.getMethod().equals(NeovimApi.GET_CHANNEL_INFO) ? Map.of("id", 4) : attachResult;
+            return CompletableFuture.completedFuture(new ResponseMessage(1, null, result));
+        });
+        feed = new ByteChangeFeed(reactiveRpcStreamer, new Buffer(2), Runnable::run);
+        subscriber = new CollectingSubscriber();
+        feed.edits().subscribe(subscriber);
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cantConstructWithoutBuffer() {
+        new ByteChangeFeed(reactiveRpcStreamer, null);
+    }
+
+    @Test
+    public void startInstallsCallbackForChannelAndBuffer() throws ExecutionException, InterruptedException {
+        feed.start().get();
+
+        assertTrue(feed.isActive());
+        assertEquals(NeovimApi.EXEC_LUA, sentRequests.get(1).getMethod());
+        var script = (String) sentRequests.get(1).getArguments().get(0);
+        assertTrue(script.contains("on_bytes"));
+        assertTrue(script.contains(ByteChangeFeed.NOTIFICATION_NAME));
+        assertEquals(List.of(4, 2L), sentRequests.get(1).getArguments().get(1));
+    }
+
+    @Test
+    public void batchedTuplesArePublishedAsEdits() throws ExecutionException, InterruptedException {
+        feed.start().get();
+
+        notifications.submit(changes(2, Arrays.asList(
+                10, 3, 5, 42, 0, 0, 0, 0, 1, 1, "x",
+                11, 3, 6, 43, 0, 2, 2, 1, 0, 7, "\n  b",
+                12, 0, 0, 0, 1, 0, 9, 0, 0, 0, null
+        )));
+        // Other buffers are ignored
+        notifications.submit(changes(5, List.of(1, 0, 0, 0, 0, 0, 0, 0, 1, 1, "y")));
+
+        assertEquals(3, subscriber.edits.size());
+        var insertion = subscriber.edits.get(0);
+        assertEquals(new ByteChangeFeed.ByteEdit(new Buffer(2), 10, 3, 5, 42, 0, 0, 0, 0, 1, 1, "x"), insertion);
+        assertTrue(insertion.isInsertion());
+        var replacement = subscriber.edits.get(1);
+        assertEquals(1, replacement.newEndRow());
+        assertEquals("\n  b", replacement.text());
+        assertFalse(replacement.isInsertion() || replacement.isDeletion());
+        var deletion = subscriber.edits.get(2);
+        assertTrue(deletion.isDeletion());
+        assertNull(deletion.text());
+    }
+
+    @Test
+    public void detachCompletesEdits() throws ExecutionException, InterruptedException {
+        feed.start().get();
+
+        notifications.submit(changes(2, "detach"));
+
+        subscriber.done.get();
+        assertFalse(feed.isActive());
+    }
+
+    @Test
+    public void reloadFailsEdits() throws InterruptedException {
+        feed.start();
+
+        notifications.submit(changes(2, "reload"));
+
+        try {
+            subscriber.done.get();
+            fail("Reload should fail the feed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void stopRemovesCallbackAndCompletesEdits() throws ExecutionException, InterruptedException {
+        feed.start().get();
+
+        feed.stop().get();
+
+        subscriber.done.get();
+        assertEquals(NeovimApi.EXEC_LUA, sentRequests.get(2).getMethod());
+        assertEquals(List.of(4, 2L), sentRequests.get(2).getArguments().get(1));
+        notifications.submit(changes(2, List.of(1, 0, 0, 0, 0, 0, 0, 0, 1, 1, "y")));
+        assertTrue(subscriber.edits.isEmpty());
+    }
+
+    @Test
+    public void failedAttachFailsStart() throws InterruptedException {
+        attachResult = false;
+
+        try {
+            feed.start().get();
+            fail("Start should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(subscriber.done.isCompletedExceptionally());
+    }
+
+    private static NotificationMessage changes(int buffer, Object payload) {
+        var arguments = new ArrayList<Object>();
+        arguments.add(buffer);
+        arguments.add(payload);
+        return new NotificationMessage(ByteChangeFeed.NOTIFICATION_NAME, arguments);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineRopeTest {
+
+    @Test
+    public void emptyRope() {
+        var lineRope = new LineRope();
+
+        assertEquals(0, lineRope.size());
+        assertEquals(0, lineRope.byteOffset(0));
+        assertEquals(List.of(), lineRope.get(0, 0));
+    }
+
+    @Test
+    public void byteOffsetsCountUtf8AndLineEndings() {
+        var lineRope = new LineRope();
+        lineRope.replace(0, 0, List.of("abc", "čć", "😀", ""));
+
+        assertEquals(0, lineRope.byteOffset(0));
+        assertEquals(4, lineRope.byteOffset(1));
+        assertEquals(9, lineRope.byteOffset(2));
+        assertEquals(14, lineRope.byteOffset(3));
+        assertEquals(15, lineRope.byteOffset(4));
+        assertEquals(15, lineRope.totalBytes());
+    }
+
+    @Test
+    public void offsetsAndLinesInOtherUnits() {
+        var lineRope = new LineRope();
+        lineRope.replace(0, 0, List.of("abc", "\u010d\u0107", "\ud83d\ude00", ""));
+
+        assertEquals(4, lineRope.offset(1, LineRope.Unit.UTF16));
+        assertEquals(7, lineRope.offset(2, LineRope.Unit.UTF16));
+        assertEquals(10, lineRope.offset(3, LineRope.Unit.UTF16));
+        assertEquals(11, lineRope.total(LineRope.Unit.UTF16));
+        assertEquals(9, lineRope.offset(3, LineRope.Unit.CODE_POINTS));
+        assertEquals(10, lineRope.total(LineRope.Unit.CODE_POINTS));
+
+        assertEquals(0, lineRope.lineAt(3, LineRope.Unit.UTF16));
+        assertEquals(1, lineRope.lineAt(4, LineRope.Unit.UTF16));
+        assertEquals(2, lineRope.lineAt(9, LineRope.Unit.UTF16));
+        assertEquals(3, lineRope.lineAt(10, LineRope.Unit.UTF16));
+        assertEquals(2, lineRope.lineAt(8, LineRope.Unit.CODE_POINTS));
+        assertEquals(2, lineRope.lineAt(12, LineRope.Unit.BYTES));
+        assertEquals(4, lineRope.lineAt(15, LineRope.Unit.BYTES));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void cantReadOutOfBounds() {
+        var lineRope = new LineRope();
+        lineRope.replace(0, 0, List.of("a"));
+
+        lineRope.get(1);
+    }
+
+    @Test
+    public void randomEditsMatchList() {
+        var random = new Random(42);
+        var lineRope = new LineRope();
+        var expected = new ArrayList<String>();
+
+        for (int i = 0; i < 2000; i++) {
+            int from = random.nextInt(expected.size() + 1);
+            int to = from + random.nextInt(Math.min(5, expected.size() - from) + 1);
+            var replacement = new ArrayList<String>();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                replacement.add("line " + random.nextInt(1000) + (random.nextBoolean() ? " ž" : ""));
+            }
+            lineRope.replace(from, to, replacement);
+            expected.subList(from, to).clear();
+            expected.addAll(from, replacement);
+
+            assertEquals(expected.size(), lineRope.size());
+            int index = random.nextInt(expected.size() + 1);
+            assertEquals(expectedOffset(expected, index), lineRope.byteOffset(index));
+        }
+        assertEquals(expected, lineRope.get(0, lineRope.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), lineRope.get(i));
+        }
+        assertEquals(expected.subList(10, 50), lineRope.get(10, 50));
+    }
+
+    private static long expectedOffset(List<String> lines, int index) {
+        long offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return offset;
+    }
+}
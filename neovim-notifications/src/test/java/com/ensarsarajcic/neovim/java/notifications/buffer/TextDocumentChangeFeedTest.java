@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Ensar Sarajčić
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.ensarsarajcic.neovim.java.notifications.buffer;
+
+import com.ensarsarajcic.neovim.java.api.types.msgpack.Buffer;
+import com.ensarsarajcic.neovim.java.corerpc.message.NotificationMessage;
+import com.ensarsarajcic.neovim.java.corerpc.message.ResponseMessage;
+import com.ensarsarajcic.neovim.java.corerpc.reactive.ReactiveRpcStreamer;
+import com.ensarsarajcic.neovim.java.notifications.buffer.TextDocumentChangeFeed.ContentChange;
+import com.ensarsarajcic.neovim.java.notifications.buffer.TextDocumentChangeFeed.Position;
+import com.ensarsarajcic.neovim.java.notifications.buffer.TextDocumentChangeFeed.Range;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TextDocumentChangeFeedTest {
+
+    @Mock
+    ReactiveRpcStreamer reactiveRpcStreamer;
+
+    SubmissionPublisher<NotificationMessage> notifications;
+    Buffer buffer;
+    TextDocumentChangeFeed feed;
+    List<ContentChange> changes;
+    CompletableFuture<Void> completed;
+
+    @Before
+    public void setUp() {
+        notifications = new SubmissionPublisher<>();
+        buffer = new Buffer(3);
+        changes = new CopyOnWriteArrayList<>();
+        completed = new CompletableFuture<>();
+        given(reactiveRpcStreamer.notificationsFlow()).willReturn(notifications);
+        given(reactiveRpcStreamer.response(any()))
+                .willReturn(CompletableFuture.completedFuture(new ResponseMessage(1, null, true)));
+        feed = new TextDocumentChangeFeed(reactiveRpcStreamer, buffer, Runnable::run);
+        feed.changes().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ContentChange item) {
+                changes.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        notifications.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cantAttachTwice() {
+        feed.attach();
+        feed.attach();
+    }
+
+    @Test
+    public void firstChangeHoldsFullContent() throws Exception {
+        attach(List.of("first", "second"));
+
+        assertEquals(1, changes.size());
+        assertNull(changes.get(0).range());
+        assertTrue(changes.get(0).isFullContent());
+        assertEquals("first\nsecond", changes.get(0).text());
+        assertEquals(5, changes.get(0).changedTick());
+    }
+
+    @Test
+    public void singleLineChangeIsNarrowed() throws Exception {
+        attach(List.of("a 😀 b", "next"));
+
+        sendLines(6, 0, 1, List.of("a 😁 b"));
+
+        var change = awaitChange(1);
+        // Surrogate pairs are never split, even though they share the high surrogate
+        assertEquals(new Range(new Position(0, 2), new Position(0, 4)), change.range());
+        assertEquals(2, change.rangeLength());
+        assertEquals("😁", change.text());
+        assertEquals(6, change.changedTick());
+    }
+
+    @Test
+    public void linesInTheMiddleAreReplacedWithLineEndings() throws Exception {
+        attach(List.of("a", "čć", "c", "d"));
+
+        sendLines(6, 1, 3, List.of("x", "y", "z"));
+        sendLines(7, 1, 1, List.of("new"));
+        sendLines(8, 0, 2, List.of());
+
+        assertEquals(new ContentChange(new Range(new Position(1, 0), new Position(3, 0)), 5, "x\ny\nz\n", 6),
+                awaitChange(1));
+        assertEquals(new ContentChange(new Range(new Position(1, 0), new Position(1, 0)), 0, "new\n", 7),
+                awaitChange(2));
+        assertEquals(new ContentChange(new Range(new Position(0, 0), new Position(2, 0)), 6, "", 8),
+                awaitChange(3));
+    }
+
+    @Test
+    public void linesAtTheEndAreReplacedAfterPreviousLine() throws Exception {
+        attach(List.of("ab", "cd", "ef"));
+
+        sendLines(6, 3, 3, List.of("gh"));
+        sendLines(7, 1, 4, List.of());
+        sendLines(8, 0, 1, List.of("x", "y"));
+
+        assertEquals(new ContentChange(new Range(new Position(2, 2), new Position(2, 2)), 0, "\ngh", 6),
+                awaitChange(1));
+        assertEquals(new ContentChange(new Range(new Position(0, 2), new Position(3, 2)), 9, "", 7),
+                awaitChange(2));
+        assertEquals(new ContentChange(new Range(new Position(0, 0), new Position(0, 2)), 2, "x\ny", 8),
+                awaitChange(3));
+    }
+
+    @Test
+    public void positionsAreConvertedLocally() throws Exception {
+        attach(List.of("abc", "č😀x", ""));
+
+        assertEquals(4, feed.getOffset(1));
+        assertEquals(12, feed.getOffset(2));
+        assertEquals(new Position(1, 3), feed.toPosition(7));
+        assertEquals(7, feed.toOffset(new Position(1, 3)));
+        assertEquals(8, feed.toOffset(new Position(1, 100)));
+        assertEquals(6, feed.toCodePointOffset(new Position(1, 3)));
+        assertEquals(10, feed.toByteOffset(new Position(1, 3)));
+        assertEquals(new Position(1, 3), feed.fromByteOffset(10));
+        // Offset inside of a multibyte character moves to its start
+        assertEquals(new Position(1, 1), feed.fromByteOffset(8));
+        assertEquals(new Position(2, 0), feed.fromByteOffset(12));
+    }
+
+    @Test
+    public void detachCompletesChanges() throws Exception {
+        attach(List.of("a"));
+
+        notifications.submit(new NotificationMessage.Builder(BufferDetachEvent.NAME).addArgument(buffer).build());
+
+        completed.get(5, TimeUnit.SECONDS);
+    }
+
+    private void attach(List<String> lines) throws Exception {
+        var attach = feed.attach();
+        sendLines(5, 0, -1, lines);
+        attach.get(5, TimeUnit.SECONDS);
+        awaitChange(0);
+    }
+
+    private void sendLines(int changedTick, int firstLine, int lastLine, List<String> lines) {
+        notifications.submit(new NotificationMessage.Builder(BufferLinesEvent.NAME)
+                .addArgument(buffer)
+                .addArgument(changedTick)
+                .addArgument(firstLine)
+                .addArgument(lastLine)
+                .addArgument(new ArrayList<>(lines))
+                .addArgument(false)
+                .build());
+    }
+
+    private ContentChange awaitChange(int index) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (changes.size() <= index && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return changes.get(index);
+    }
+}
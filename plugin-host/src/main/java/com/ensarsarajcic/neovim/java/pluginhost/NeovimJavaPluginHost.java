@@ -27,6 +27,7 @@ package com.ensarsarajcic.neovim.java.pluginhost;
 import com.ensarsarajcic.neovim.java.api.NeovimApi;
 import com.ensarsarajcic.neovim.java.api.NeovimApis;
 import com.ensarsarajcic.neovim.java.api.NeovimStreamApi;
+import com.ensarsarajcic.neovim.java.api.metadata.ApiMetadataCache;
 import com.ensarsarajcic.neovim.java.api.types.apiinfo.ApiInfo;
 import com.ensarsarajcic.neovim.java.api.util.ObjectMappers;
 import com.ensarsarajcic.neovim.java.corerpc.client.RpcConnection;
@@ -41,6 +42,7 @@ import com.ensarsarajcic.neovim.java.notifications.NeovimStreamNotificationHandl
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 
@@ -54,6 +56,7 @@ public final class NeovimJavaPluginHost {
     private final RpcStreamer client;
     private final ReactiveRpcStreamer reactiveClient;
     private final RemotePluginManager remotePluginManager;
+    private final ApiMetadataCache apiMetadataCache;
 
     private ApiInfo apiInfo = null;
     private PluginApi pluginApi = null;
@@ -63,6 +66,17 @@ public final class NeovimJavaPluginHost {
     }
 
     public NeovimJavaPluginHost(NeovimHandlerProxy neovimHandlerProxy) {
+        this(neovimHandlerProxy, false);
+    }
+
+    /**
+     * Creates a new plugin host
+     *
+     * @param neovimHandlerProxy proxy used to dispatch notifications and requests to handlers
+     * @param cacheApiMetadata   whether API info should be read through {@link ApiMetadataCache}, persisting it in
+     *                           {@link ApiMetadataCache#getDefaultCacheFile()}, instead of fetching it on every start
+     */
+    public NeovimJavaPluginHost(NeovimHandlerProxy neovimHandlerProxy, boolean cacheApiMetadata) {
         this.rpcConnection = new StdIoRpcConnection();
         this.neovimHandlerProxy = neovimHandlerProxy;
         this.neovimHandlerManager = new NeovimHandlerManager(neovimHandlerProxy, (type, o) -> {
@@ -80,13 +94,15 @@ public final class NeovimJavaPluginHost {
         neovimStreamNotificationHandler = new NeovimStreamNotificationHandler(reactiveClient);
         remotePluginManager = new RemotePluginManager(neovimHandlerManager, neovimHandlerProxy, client);
         api = new NeovimStreamApi(reactiveClient);
+        apiMetadataCache = cacheApiMetadata ? new ApiMetadataCache(reactiveClient) : null;
     }
 
     public CompletableFuture<Void> start(String[] args) {
         if (apiInfo != null) throw new RuntimeException("Plugin already started!");
 
         client.attach(rpcConnection);
-        return api.getApiInfo()
+        var apiInfoFuture = apiMetadataCache != null ? apiMetadataCache.getApiInfo() : api.getApiInfo();
+        return apiInfoFuture
                 .thenAccept(info -> {
                     neovimHandlerManager.attachToStream(client);
                     this.apiInfo = info;
@@ -106,6 +122,13 @@ public final class NeovimJavaPluginHost {
         return api;
     }
 
+    /**
+     * @return cache used to read API info, if host was created with metadata caching enabled
+     */
+    public Optional<ApiMetadataCache> getApiMetadataCache() {
+        return Optional.ofNullable(apiMetadataCache);
+    }
+
     public ApiInfo getApiInfo() {
         return apiInfo;
     }